@@ -0,0 +1,77 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of saving to and reading from the in-memory log history, as the
+ * history of the execution grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InMemoryLogHistoryRepositoryBenchmark {
+
+    private static final int TAIL = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    private InMemoryLogHistoryRepository history;
+    private long index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The history is full, so each save evicts the oldest line
+        history = new InMemoryLogHistoryRepository(lines, Long.MAX_VALUE);
+        for (index = 0; index < lines; index++) {
+            history.save(StubSessions.EXECUTION_ID, StubSessions.event(index));
+        }
+    }
+
+    @Benchmark
+    public LogEntry save() {
+        return history.save(StubSessions.EXECUTION_ID, StubSessions.event(index++));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void findAll(
+            Blackhole blackhole
+    ) {
+        history.find(StubSessions.EXECUTION_ID).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void findTail(
+            Blackhole blackhole
+    ) {
+        history.find(StubSessions.EXECUTION_ID, index - TAIL).forEach(blackhole::consume);
+    }
+
+}
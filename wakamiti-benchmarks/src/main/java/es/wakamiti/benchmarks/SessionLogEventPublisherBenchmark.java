@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks;
+
+
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import es.wakamiti.service.infrastructure.logging.LogStreamProperties;
+import es.wakamiti.service.infrastructure.logging.SessionLogEventPublisher;
+import es.wakamiti.service.infrastructure.logging.SlowConsumerPolicy;
+import jakarta.websocket.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Cost of {@link SessionLogEventPublisher#publish} with a number of
+ * subscribed sessions, which discard the frames sent to them.
+ *
+ * <p>The publisher runs with the {@code DROP} policy, as in production, so
+ * the sessions that do not keep up skip frames instead of slowing down the
+ * publishing thread.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionLogEventPublisherBenchmark {
+
+    @Param({"0", "1", "100", "1000"})
+    public int subscribers;
+
+    @Param({"false", "true"})
+    public boolean batch;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final List<Session> sessions = new ArrayList<>();
+    private SessionLogEventPublisher publisher;
+    private long index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        publisher = new SessionLogEventPublisher(
+                new InMemoryLogHistoryRepository(10_000, 10_000_000),
+                new LogStreamProperties(Duration.ofMillis(50), 65536, 1024, SlowConsumerPolicy.DROP),
+                StubSessions.metrics(),
+                StubSessions.executions()
+        );
+        for (int i = 0; i < subscribers; i++) {
+            Session session = StubSessions.session(
+                    String.valueOf(i), Map.of("batch", List.of(String.valueOf(batch))), sent);
+            publisher.subscribe(StubSessions.EXECUTION_ID, session);
+            sessions.add(session);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessions.forEach(session -> publisher.unsubscribe(StubSessions.EXECUTION_ID, session));
+        publisher.clear(StubSessions.EXECUTION_ID);
+    }
+
+    @Benchmark
+    public void publish() {
+        publisher.publish(StubSessions.EXECUTION_ID, StubSessions.event(index++));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks;
+
+
+import es.wakamiti.service.domain.model.ExecutionRecord;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.ExecutionRepository;
+import es.wakamiti.service.domain.spi.LogStreamMetrics;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * WebSocket sessions and log events for the benchmarks.
+ */
+final class StubSessions {
+
+    static final String EXECUTION_ID = "benchmark";
+
+    private StubSessions() {
+        // Utility class
+    }
+
+    /**
+     * Creates an open session that discards the messages sent to it,
+     * counting them.
+     *
+     * @param id         the session ID
+     * @param parameters the request parameters, e.g. {@code batch}
+     * @param sent       counter of the messages sent
+     */
+    static Session session(
+            String id,
+            Map<String, List<String>> parameters,
+            AtomicLong sent
+    ) {
+        RemoteEndpoint.Basic remote = (RemoteEndpoint.Basic) Proxy.newProxyInstance(
+                StubSessions.class.getClassLoader(), new Class<?>[]{RemoteEndpoint.Basic.class}, (_, method, _) -> {
+                    if (method.getName().startsWith("send")) {
+                        sent.incrementAndGet();
+                    }
+                    return null;
+                });
+        return (Session) Proxy.newProxyInstance(
+                StubSessions.class.getClassLoader(), new Class<?>[]{Session.class}, (proxy, method, args) ->
+                        switch (method.getName()) {
+                            case "getId" -> id;
+                            case "isOpen" -> true;
+                            case "getBasicRemote" -> remote;
+                            case "getRequestParameterMap" -> parameters;
+                            case "getNegotiatedExtensions" -> List.of();
+                            case "hashCode" -> System.identityHashCode(proxy);
+                            case "equals" -> proxy == args[0];
+                            case "toString" -> "Session " + id;
+                            default -> null;
+                        });
+    }
+
+    /**
+     * Creates metrics that discard what they are told.
+     */
+    static LogStreamMetrics metrics() {
+        return new LogStreamMetrics() {
+
+            @Override
+            public void published() {
+                // Not measured
+            }
+
+            @Override
+            public void sent(
+                    long bytes
+            ) {
+                // Not measured
+            }
+
+            @Override
+            public void sendFailed() {
+                // Not measured
+            }
+
+            @Override
+            public void dropped() {
+                // Not measured
+            }
+        };
+    }
+
+    /**
+     * Creates an execution repository that discards what it is told.
+     */
+    static ExecutionRepository executions() {
+        return new ExecutionRepository() {
+
+            @Override
+            public void submitted(
+                    String executionId,
+                    String command,
+                    Instant timestamp
+            ) {
+                // Not recorded
+            }
+
+            @Override
+            public void started(
+                    String executionId,
+                    Instant timestamp
+            ) {
+                // Not recorded
+            }
+
+            @Override
+            public void logged(
+                    String executionId,
+                    LogEntry entry
+            ) {
+                // Not recorded
+            }
+
+            @Override
+            public void finished(
+                    String executionId,
+                    Instant timestamp,
+                    int status
+            ) {
+                // Not recorded
+            }
+
+            @Override
+            public List<ExecutionRecord> find(
+                    int offset,
+                    int limit
+            ) {
+                return List.of();
+            }
+
+            @Override
+            public long count() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Creates a log event like the ones of a test run.
+     */
+    static LogEvent event(
+            long index
+    ) {
+        return new LogEvent(
+                Instant.now(),
+                "INFO",
+                "main",
+                "es.wakamiti.core",
+                Map.of(),
+                "Step {} of scenario '{}' passed",
+                new Object[]{index, "Benchmark"},
+                null
+        );
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks;
+
+
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import es.wakamiti.service.infrastructure.logging.LogStreamProperties;
+import es.wakamiti.service.infrastructure.logging.SessionLogEventPublisher;
+import es.wakamiti.service.infrastructure.logging.SlowConsumerPolicy;
+import jakarta.websocket.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Cost of subscribing a new session to an execution with some history: the
+ * history is replayed, and every frame is sent, before the session is
+ * removed again.
+ *
+ * <p>The publisher runs with the {@code PAUSE} policy so that no frame of
+ * the replay is skipped.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscribeReplayBenchmark {
+
+    @Param({"100", "10000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean batch;
+
+    private final AtomicLong sent = new AtomicLong();
+    private SessionLogEventPublisher publisher;
+    private long sessions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        publisher = new SessionLogEventPublisher(
+                new InMemoryLogHistoryRepository(lines, Long.MAX_VALUE),
+                new LogStreamProperties(Duration.ofMillis(50), 65536, 1024, SlowConsumerPolicy.PAUSE),
+                StubSessions.metrics(),
+                StubSessions.executions()
+        );
+        for (int i = 0; i < lines; i++) {
+            publisher.publish(StubSessions.EXECUTION_ID, StubSessions.event(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        publisher.clear(StubSessions.EXECUTION_ID);
+    }
+
+    @Benchmark
+    public long subscribe() {
+        Session session = StubSessions.session(
+                String.valueOf(sessions++), Map.of("batch", List.of(String.valueOf(batch))), sent);
+        publisher.subscribe(StubSessions.EXECUTION_ID, session);
+        publisher.flush(StubSessions.EXECUTION_ID);
+        publisher.unsubscribe(StubSessions.EXECUTION_ID, session);
+        return sent.get();
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks;
+
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.infrastructure.logging.WebSocketAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Cost of {@link WebSocketAppender#doAppend} on the logging thread, with a
+ * publisher that only counts the events.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebSocketAppenderBenchmark {
+
+    @Param({"BLOCK", "DROP_OLDEST"})
+    public String overflowPolicy;
+
+    private final LoggerContext context = new LoggerContext();
+    private final AtomicLong published = new AtomicLong();
+    private WebSocketAppender appender;
+    private LoggingEvent event;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg%n");
+        layout.start();
+
+        appender = new WebSocketAppender();
+        appender.setContext(context);
+        appender.setLayout(layout);
+        appender.setPublisher(new CountingPublisher(published));
+        appender.setOverflowPolicy(overflowPolicy);
+        appender.start();
+
+        event = new LoggingEvent(
+                getClass().getName(), context.getLogger("es.wakamiti.core"), ch.qos.logback.classic.Level.INFO,
+                "Step {} of scenario '{}' passed", null, new Object[]{1, "Benchmark"});
+        event.setMDCPropertyMap(Map.of(LogEventPublisher.EXECUTION_ID, StubSessions.EXECUTION_ID));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appender.stop();
+    }
+
+    @Benchmark
+    public void append() {
+        appender.doAppend(event);
+    }
+
+    /**
+     * Publisher that only counts the events, so that the benchmark measures
+     * the appender.
+     */
+    private record CountingPublisher(
+            AtomicLong published
+    ) implements LogEventPublisher<Object> {
+
+        @Override
+        public void publish(
+                String executionId,
+                LogEvent event
+        ) {
+            published.incrementAndGet();
+        }
+
+        @Override
+        public void subscribe(
+                String executionId,
+                Object subscriber
+        ) {
+            // Not used
+        }
+
+        @Override
+        public void unsubscribe(
+                String executionId,
+                Object subscriber
+        ) {
+            // Not used
+        }
+
+        @Override
+        public void flush(
+                String executionId
+        ) {
+            // Not used
+        }
+
+        @Override
+        public void clear(
+                String executionId
+        ) {
+            // Not used
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks.load;
+
+
+/**
+ * Histogram of latencies in microseconds, with a fixed memory footprint.
+ *
+ * <p>Values below {@value #LINEAR} are counted exactly; above that, every
+ * power of two is split in {@value #SUB_BUCKETS} buckets, so a value is
+ * reported with an error below 1.6%, whatever its magnitude. Not thread
+ * safe: each client records into its own histogram, and they are
+ * {@linkplain #add added up} at the end of the run.</p>
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR + (Long.SIZE - 7) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    void record(
+            long micros
+    ) {
+        long value = Math.max(micros, 0);
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void add(
+            LatencyHistogram other
+    ) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the highest value of the bucket holding the percentile, or
+     * {@code 0} if nothing was recorded
+     */
+    long percentile(
+            double percentile
+    ) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int index(
+            long value
+    ) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // The shift leaves the value in [SUB_BUCKETS, LINEAR)
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 7;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highest(
+            int index
+    ) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long lowest = (long) ((index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks.load;
+
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * WebSocket client watching the log of an execution, which records the
+ * latency of every synthetic line it receives.
+ *
+ * <p>Text frames are split in lines, and binary frames are decoded as the
+ * {@code wakamiti-log.v1} protocol defines. The latency of a line is the
+ * time from its scheduled emission to the end of the frame holding it; the
+ * lines scheduled during the warm-up count as received, but their latency
+ * is not recorded. The listener methods are called by one thread at a time,
+ * and the results are only read once the session is
+ * {@linkplain #closed() closed}.</p>
+ */
+final class LoadClient implements WebSocket.Listener {
+
+    private static final int LOGGER_RECORD = 0x01;
+    private static final int EVENT_RECORD = 0x02;
+    private static final int DEFLATED = 0x01;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final CompletableFuture<String> closed = new CompletableFuture<>();
+    private final StringBuilder text = new StringBuilder();
+    private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    private final Inflater inflater = new Inflater(true);
+
+    private byte[] inflated = new byte[8192];
+    private long lines;
+    private long other;
+    private long frames;
+    private long bytes;
+    private volatile long measureFrom;
+
+    /**
+     * Sets the end of the warm-up.
+     *
+     * @param nanoTime the {@link System#nanoTime()} of the first line whose
+     *                 latency is recorded
+     */
+    void measureFrom(
+            long nanoTime
+    ) {
+        this.measureFrom = nanoTime;
+    }
+
+    @Override
+    public CompletionStage<?> onText(
+            WebSocket webSocket,
+            CharSequence data,
+            boolean last
+    ) {
+        text.append(data);
+        if (last) {
+            long received = System.nanoTime();
+            frames++;
+            bytes += text.length();
+            int start = 0;
+            while (start < text.length()) {
+                int end = text.indexOf("\n", start);
+                if (end < 0) {
+                    end = text.length();
+                }
+                line(text.substring(start, end), received);
+                start = end + 1;
+            }
+            text.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(
+            WebSocket webSocket,
+            ByteBuffer data,
+            boolean last
+    ) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        binary.writeBytes(chunk);
+        if (last) {
+            long received = System.nanoTime();
+            frames++;
+            bytes += binary.size();
+            decode(binary.toByteArray(), received);
+            binary.reset();
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(
+            WebSocket webSocket,
+            int statusCode,
+            String reason
+    ) {
+        closed.complete(reason);
+        return null;
+    }
+
+    @Override
+    public void onError(
+            WebSocket webSocket,
+            Throwable error
+    ) {
+        closed.completeExceptionally(error);
+    }
+
+    /**
+     * Completes with the close reason, i.e. the exit status of the
+     * execution.
+     */
+    CompletableFuture<String> closed() {
+        return closed;
+    }
+
+    LatencyHistogram latencies() {
+        return latencies;
+    }
+
+    /**
+     * @return the synthetic lines received
+     */
+    long lines() {
+        return lines;
+    }
+
+    /**
+     * @return the other lines received, e.g. the skipped lines notices
+     */
+    long other() {
+        return other;
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    /**
+     * @return the characters of the text frames plus the bytes of the
+     * binary ones
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    private void line(
+            String line,
+            long received
+    ) {
+        int start = line.indexOf(SyntheticWakamitiRunner.PREFIX);
+        if (start < 0) {
+            if (!line.isBlank()) {
+                other++;
+            }
+            return;
+        }
+        start += SyntheticWakamitiRunner.PREFIX.length();
+        int end = line.indexOf(' ', start);
+        long scheduled = Long.parseLong(line, start, end < 0 ? line.length() : end, 10);
+        lines++;
+        if (scheduled - measureFrom >= 0) {
+            latencies.record(TimeUnit.NANOSECONDS.toMicros(received - scheduled));
+        }
+    }
+
+    private void decode(
+            byte[] frame,
+            long received
+    ) {
+        ByteBuffer records = ByteBuffer.wrap(frame, 1, frame.length - 1);
+        if ((frame[0] & DEFLATED) != 0) {
+            records = inflate(frame);
+        }
+        while (records.hasRemaining()) {
+            int type = records.get();
+            if (type == LOGGER_RECORD) {
+                varint(records);
+                int length = (int) varint(records);
+                records.position(records.position() + length);
+            } else if (type == EVENT_RECORD) {
+                varint(records);
+                varint(records);
+                records.get();
+                varint(records);
+                byte[] message = new byte[(int) varint(records)];
+                records.get(message);
+                line(new String(message, StandardCharsets.UTF_8), received);
+            } else {
+                throw new IllegalStateException("Unknown record type " + type);
+            }
+        }
+    }
+
+    private ByteBuffer inflate(
+            byte[] frame
+    ) {
+        inflater.reset();
+        inflater.setInput(frame, 1, frame.length - 1);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == inflated.length) {
+                    inflated = Arrays.copyOf(inflated, length * 2);
+                }
+                int inflatedLength = inflater.inflate(inflated, length, inflated.length - length);
+                if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflatedLength;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+        return ByteBuffer.wrap(inflated, 0, length);
+    }
+
+    private static long varint(
+            ByteBuffer buffer
+    ) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+}
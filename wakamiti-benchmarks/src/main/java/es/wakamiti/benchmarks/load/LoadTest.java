@@ -0,0 +1,329 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks.load;
+
+
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.microprofile.server.Server;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * End-to-end load test of the log streaming.
+ *
+ * <p>Starts the service in this JVM, with {@link SyntheticWakamitiRunner}
+ * in place of the real runner, submits a number of executions logging lines
+ * at a steady rate, and watches each one with a number of WebSocket
+ * clients. When the executions end, it reports the latency from the
+ * scheduled emission of each line to its reception, the throughput, and the
+ * heap used by the JVM.</p>
+ *
+ * <p>The options are given as {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>{@code clients}: WebSocket clients per execution (10)</li>
+ *   <li>{@code executions}: concurrent executions (1)</li>
+ *   <li>{@code rate}: lines per second of each execution (1000)</li>
+ *   <li>{@code duration}: seconds logging (30)</li>
+ *   <li>{@code warmup}: first seconds whose latency is not recorded (5)</li>
+ *   <li>{@code length}: characters of each line (120)</li>
+ *   <li>{@code batch}: whether the clients ask for batched frames (false)</li>
+ *   <li>{@code binary}: whether the clients use the binary protocol
+ *   (false)</li>
+ *   <li>{@code result}: file where the results are written as JSON
+ *   (none)</li>
+ * </ul>
+ * <p>The service is configured as usual from {@code application.yml}, and
+ * any of its properties can be overridden with system properties, e.g.
+ * {@code -Dwakamiti.log.stream.slow-consumer=pause}.</p>
+ */
+public final class LoadTest {
+
+    private static final Duration SETTLE = Duration.ofMillis(500);
+    private static final Duration HEAP_SAMPLING = Duration.ofMillis(100);
+    private static final Duration GRACE = Duration.ofSeconds(60);
+
+    private LoadTest() {
+        // Utility class
+    }
+
+    public static void main(
+            String[] args
+    ) throws Exception {
+        Map<String, String> options = options(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "10"));
+        int executions = Integer.parseInt(options.getOrDefault("executions", "1"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int length = Integer.parseInt(options.getOrDefault("length", "120"));
+        boolean batch = Boolean.parseBoolean(options.getOrDefault("batch", "false"));
+        boolean binary = Boolean.parseBoolean(options.getOrDefault("binary", "false"));
+        long lines = (long) rate * duration;
+
+        Server server = startServer(executions);
+        HttpClient http = HttpClient.newHttpClient();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            List<LoadClient> listeners = new ArrayList<>();
+            List<CompletableFuture<WebSocket>> connections = new ArrayList<>();
+            for (int execution = 0; execution < executions; execution++) {
+                String id = submit(http, server.port(), SyntheticWakamitiRunner.command(rate, lines, length));
+                URI uri = URI.create("ws://127.0.0.1:%d/exec/%s?batch=%b".formatted(server.port(), id, batch));
+                for (int i = 0; i < clients; i++) {
+                    LoadClient listener = new LoadClient();
+                    WebSocket.Builder builder = http.newWebSocketBuilder();
+                    if (binary) {
+                        builder.subprotocols(LogEventPublisher.BINARY_PROTOCOL);
+                    }
+                    connections.add(builder.buildAsync(uri, listener));
+                    listeners.add(listener);
+                }
+            }
+            CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new)).join();
+            // Let the sessions subscribe before the first line
+            Thread.sleep(SETTLE);
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            AtomicLong peakHeap = new AtomicLong();
+            sampler.scheduleAtFixedRate(
+                    () -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                    0, HEAP_SAMPLING.toMillis(), TimeUnit.MILLISECONDS
+            );
+            long[] gc = gc();
+
+            long start = System.nanoTime();
+            listeners.forEach(it -> it.measureFrom(start + TimeUnit.SECONDS.toNanos(warmup)));
+            SyntheticWakamitiRunner.start();
+            List<String> statuses = new ArrayList<>();
+            for (LoadClient listener : listeners) {
+                try {
+                    statuses.add(listener.closed().get(
+                            duration + GRACE.toSeconds() - TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                            TimeUnit.SECONDS
+                    ));
+                } catch (TimeoutException _) {
+                    statuses.add("timeout");
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            sampler.shutdownNow();
+            long[] gcAfter = gc();
+            System.gc();
+            long liveHeap = memory.getHeapMemoryUsage().getUsed();
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            long received = 0;
+            long other = 0;
+            long frames = 0;
+            long bytes = 0;
+            for (LoadClient listener : listeners) {
+                latencies.add(listener.latencies());
+                received += listener.lines();
+                other += listener.other();
+                frames += listener.frames();
+                bytes += listener.bytes();
+            }
+            long expected = lines * executions * clients;
+            long failed = statuses.stream().filter(it -> !"0".equals(it)).count();
+
+            Map<String, Object> results = new HashMap<>(Map.of(
+                    "clients", clients,
+                    "executions", executions,
+                    "rate", rate,
+                    "duration", duration,
+                    "length", length,
+                    "batch", batch,
+                    "binary", binary
+            ));
+            results.putAll(Map.of(
+                    "linesExpected", expected,
+                    "linesReceived", received,
+                    "otherLines", other,
+                    "failedClients", failed,
+                    "framesPerSecond", Math.round(frames / elapsed),
+                    "linesPerSecond", Math.round(received / elapsed),
+                    "bytesPerSecond", Math.round(bytes / elapsed)
+            ));
+            results.putAll(Map.of(
+                    "latencyP50Micros", latencies.percentile(50),
+                    "latencyP99Micros", latencies.percentile(99),
+                    "latencyP999Micros", latencies.percentile(99.9),
+                    "latencyMaxMicros", latencies.max(),
+                    "heapPeakBytes", peakHeap.get(),
+                    "heapLiveBytes", liveHeap,
+                    "gcCount", gcAfter[0] - gc[0],
+                    "gcMillis", gcAfter[1] - gc[1]
+            ));
+            report(results);
+            if (options.containsKey("result")) {
+                write(Path.of(options.get("result")), results);
+            }
+        } finally {
+            sampler.shutdownNow();
+            server.stop();
+        }
+    }
+
+    private static Map<String, String> options(
+            String[] args
+    ) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(
+                    arg.substring(2, separator < 0 ? arg.length() : separator),
+                    separator < 0 ? "true" : arg.substring(separator + 1)
+            );
+        }
+        return options;
+    }
+
+    /**
+     * Starts the service on a free port, as {@code WakamitiServiceApplication}
+     * does.
+     */
+    private static Server startServer(
+            int executions
+    ) {
+        System.setProperty("helidon.service-registry.check-unrecognized-contracts", "false");
+        // Writing every line to the console would be most of the cost
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("es.wakamiti")).detachAppender("Console");
+
+        Config config = Config.builder()
+                .sources(
+                        ConfigSources.systemProperties().build(),
+                        ConfigSources.create(Map.of(
+                                "server.port", "0",
+                                "wakamiti.execution.max-concurrent", String.valueOf(executions)
+                        ), "load-test").build(),
+                        ConfigSources.classpath("application.yml").build()
+                )
+                .build();
+        return Server.builder()
+                .config(config)
+                .build()
+                .start();
+    }
+
+    /**
+     * Submits an execution.
+     *
+     * @return the execution ID
+     */
+    private static String submit(
+            HttpClient http,
+            int port,
+            String command
+    ) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:%d/exec".formatted(port)))
+                        .header("Content-Type", "text/plain")
+                        .POST(HttpRequest.BodyPublishers.ofString(command))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString()
+        );
+        if (response.statusCode() != 202) {
+            throw new IllegalStateException("Execution rejected with " + response.statusCode() + ": " + response.body());
+        }
+        return response.body().trim();
+    }
+
+    /**
+     * @return the collections and the milliseconds spent in them so far, by
+     * every collector
+     */
+    private static long[] gc() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(collector.getCollectionCount(), 0);
+            totals[1] += Math.max(collector.getCollectionTime(), 0);
+        }
+        return totals;
+    }
+
+    private static void report(
+            Map<String, Object> results
+    ) {
+        long expected = (long) results.get("linesExpected");
+        long received = (long) results.get("linesReceived");
+        System.out.printf("""
+
+                Clients:     %d x %d executions, %s frames%s
+                Load:        %d lines/s per execution for %d s, %d characters per line
+                Received:    %d of %d lines (%.2f%%), %d other lines, %d clients failed
+                Throughput:  %d lines/s, %d frames/s, %d bytes/s
+                Latency:     p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms
+                Heap:        %d MiB peak, %d MiB live after the run, %d GCs (%d ms)
+                %n""",
+                results.get("clients"), results.get("executions"),
+                (boolean) results.get("binary") ? "binary" : "text", (boolean) results.get("batch") ? ", batched" : "",
+                results.get("rate"), results.get("duration"), results.get("length"),
+                received, expected, expected == 0 ? 100.0 : received * 100.0 / expected,
+                results.get("otherLines"), results.get("failedClients"),
+                results.get("linesPerSecond"), results.get("framesPerSecond"), results.get("bytesPerSecond"),
+                millis(results.get("latencyP50Micros")), millis(results.get("latencyP99Micros")),
+                millis(results.get("latencyP999Micros")), millis(results.get("latencyMaxMicros")),
+                (long) results.get("heapPeakBytes") >> 20, (long) results.get("heapLiveBytes") >> 20,
+                results.get("gcCount"), results.get("gcMillis")
+        );
+    }
+
+    private static double millis(
+            Object micros
+    ) {
+        return (long) micros / 1000.0;
+    }
+
+    private static void write(
+            Path file,
+            Map<String, Object> results
+    ) {
+        StringBuilder json = new StringBuilder("{");
+        results.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(it -> json.append(json.length() > 1 ? ",\n  " : "\n  ")
+                        .append('"').append(it.getKey()).append("\": ").append(it.getValue()));
+        json.append("\n}\n");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
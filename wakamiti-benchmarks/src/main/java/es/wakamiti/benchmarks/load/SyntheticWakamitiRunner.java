@@ -0,0 +1,103 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.benchmarks.load;
+
+
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.inject.Alternative;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Runner logging lines at a steady rate, in place of the real one when the
+ * service runs within the {@link LoadTest}.
+ *
+ * <p>The command is {@code <rate> <lines> <length>}: the lines per second,
+ * how many lines, and the length of each one. Every line starts with
+ * {@value #PREFIX} and the {@link System#nanoTime()} at which it was
+ * scheduled, so the clients can tell how long it took to reach them. Lines
+ * are scheduled at fixed intervals from the start, not from the previous
+ * line, so a runner held up by a slow pipeline does not hide the delay
+ * (coordinated omission): the late lines just carry their original
+ * time.</p>
+ *
+ * <p>All the runners wait for the {@linkplain #start() start} signal, given
+ * once every client is connected.</p>
+ */
+@Alternative
+@Priority(1)
+@Dependent
+public class SyntheticWakamitiRunner implements WakamitiRunner {
+
+    static final String PREFIX = "load ";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("es.wakamiti.core");
+    private static final CountDownLatch START = new CountDownLatch(1);
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    static String command(
+            int rate,
+            long lines,
+            int length
+    ) {
+        return rate + " " + lines + " " + length;
+    }
+
+    /**
+     * Lets every runner start logging.
+     */
+    static void start() {
+        START.countDown();
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        String[] arguments = command.trim().split("\\s+");
+        int rate = Integer.parseInt(arguments[0]);
+        long lines = Long.parseLong(arguments[1]);
+        // The prefix and a nanoTime take about 25 characters
+        String padding = "x".repeat(Math.max(0, Integer.parseInt(arguments[2]) - 25));
+        started.set(true);
+
+        try {
+            START.await();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        long origin = System.nanoTime();
+        for (long line = 0; line < lines && started.get(); line++) {
+            long scheduled = origin + line * 1_000_000_000L / rate;
+            long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            LOGGER.info(PREFIX + "{} {}", scheduled, padding);
+        }
+        return started.getAndSet(false) ? 0 : 1;
+    }
+
+    @Override
+    public void stop() {
+        started.set(false);
+    }
+
+}
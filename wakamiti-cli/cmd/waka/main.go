@@ -11,6 +11,7 @@ import (
 	"os"
 	"os/signal"
 	"syscall"
+	"time"
 
 	"es.wakamiti/wakamiti-cli/internal/client"
 	"es.wakamiti/wakamiti-cli/internal/config"
@@ -27,9 +28,18 @@ func main() {
 
 // run contains the core application logic and returns an exit code.
 func run(ctx context.Context) int {
+	startTimeout, err := time.ParseDuration(config.Getenv("WAKAMITI_START_TIMEOUT", "60s"))
+	if err != nil {
+		startTimeout = 60 * time.Second
+	}
 	conf := config.Config{
 		ServiceHost: config.Getenv("WAKAMITI_HOST", "127.0.0.1"),
 		ServicePort: config.Getenv("WAKAMITI_PORT", "7264"),
+		// The service is started when it is not running, and stops itself when idle
+		ServiceCommand: config.ServiceCommand(),
+		ServiceLog:     config.Getenv("WAKAMITI_SERVICE_LOG", config.ServiceLog()),
+		StartTimeout:   startTimeout,
+		IdleTimeout:    config.Getenv("WAKAMITI_IDLE_TIMEOUT", "PT15M"),
 	}
 	cli := client.Client{Config: conf}
 
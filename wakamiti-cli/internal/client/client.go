@@ -13,6 +13,7 @@ import (
 	"fmt"
 	"io"
 	"net/http"
+	"net/url"
 	"os"
 	"strconv"
 	"strings"
@@ -32,17 +33,26 @@ func (c *Client) Run(ctx context.Context, args []string) int {
 	bodyTxt := strings.Join(args, " ")
 
 	postURL := fmt.Sprintf("http://%s:%s/exec", c.Config.ServiceHost, c.Config.ServicePort)
-	wsURL := fmt.Sprintf("ws://%s:%s/exec", c.Config.ServiceHost, c.Config.ServicePort)
 
-	// 1) Asynchronous POST (we don't wait for result, but validate status)
-	if err := c.DoPostText(ctx, postURL, bodyTxt); err != nil {
+	// 1) Asynchronous POST (we don't wait for result, but validate status and get the execution ID),
+	//    starting the service first if it is not running
+	id, err := c.DoPostText(ctx, postURL, bodyTxt)
+	if err != nil && c.canStartService(err) {
+		if err = c.StartService(ctx); err == nil {
+			id, err = c.DoPostText(ctx, postURL, bodyTxt)
+		}
+	}
+	if err != nil {
 		if !errors.Is(err, context.Canceled) {
 			fmt.Fprintf(os.Stderr, "Error starting execution: %v\n", err)
 		}
 		return 255
 	}
 
-	// 2) Connect to WS and stream progress.
+	// 2) Connect to the execution WS and stream progress, asking for the lines
+	//    to be coalesced into batched frames with sequence headers, so that the
+	//    stream can be resumed if the connection is lost.
+	wsURL := fmt.Sprintf("ws://%s:%s/exec/%s?batch=true&seq=true", c.Config.ServiceHost, c.Config.ServicePort, url.PathEscape(id))
 	exitCode, err := c.StreamWS(ctx, wsURL)
 	if err != nil {
 		// A nil error with a non-zero exit code is a valid scenario (e.g., script returns non-zero).
@@ -55,70 +65,199 @@ func (c *Client) Run(ctx context.Context, args []string) int {
 	return exitCode
 }
 
-// DoPostText sends a POST request with plain text body to the specified URL.
-func (c *Client) DoPostText(ctx context.Context, url, body string) error {
+// DoPostText sends a POST request with plain text body to the specified URL
+// and returns the response body, i.e. the execution ID.
+func (c *Client) DoPostText(ctx context.Context, url, body string) (string, error) {
 	req, err := http.NewRequestWithContext(ctx, http.MethodPost, url, bytes.NewBufferString(body))
 	if err != nil {
-		return fmt.Errorf("failed to create request: %w", err)
+		return "", fmt.Errorf("failed to create request: %w", err)
 	}
 	req.Header.Set("Content-Type", "text/plain; charset=utf-8")
 
 	httpClient := &http.Client{}
 	resp, err := httpClient.Do(req)
 	if err != nil {
-		return fmt.Errorf("request failed: %w", err)
+		return "", fmt.Errorf("request failed: %w", err)
 	}
 	defer resp.Body.Close()
 
+	respBody, _ := io.ReadAll(resp.Body)
 	if resp.StatusCode < 200 || resp.StatusCode >= 300 {
-		respBody, _ := io.ReadAll(resp.Body)
-		return fmt.Errorf("service returned status %s: %s", resp.Status, strings.TrimSpace(string(respBody)))
+		return "", fmt.Errorf("service returned status %s: %s", resp.Status, strings.TrimSpace(string(respBody)))
 	}
-	return nil
+	return strings.TrimSpace(string(respBody)), nil
+}
+
+// Reconnection settings used when the WebSocket connection is lost before
+// the server closes the session.
+var (
+	reconnectAttempts   = 5
+	reconnectBackoff    = 200 * time.Millisecond
+	reconnectMaxBackoff = 2 * time.Second
+)
+
+// streamResult is the outcome of reading a WebSocket connection until it ends.
+type streamResult struct {
+	next int64 // sequence number of the next log line to receive
+	err  error // error that ended the connection
 }
 
 // StreamWS connects to a WebSocket URL and prints received messages to stdout.
+// A message may hold several lines when the session uses batched frames.
+// The client offers the compact binary subprotocol and per-message compression;
+// servers that do not accept them keep sending text frames.
+// If the connection is lost before the server closes the session, it reconnects
+// and resumes the stream after the last log line received.
 func (c *Client) StreamWS(ctx context.Context, wsURL string) (int, error) {
-	d := websocket.Dialer{HandshakeTimeout: 10 * time.Second}
+	d := websocket.Dialer{
+		HandshakeTimeout:  10 * time.Second,
+		Subprotocols:      []string{binaryProtocol},
+		EnableCompression: true,
+	}
 	conn, _, err := d.DialContext(ctx, wsURL, nil)
 	if err != nil {
 		return 1, fmt.Errorf("failed to connect to WebSocket: %w", err)
 	}
-	defer conn.Close()
 
-	resultChan := make(chan struct {
-		exitCode int
-		err      error
-	}, 1)
+	var next int64
+	stalls := 0
+	for {
+		res, stopped := c.readWS(ctx, conn, next)
+		_ = conn.Close()
+		if res.next > next {
+			next, stalls = res.next, 0
+		} else {
+			stalls++
+		}
+		if stopped || !connectionLost(res.err) || stalls > reconnectAttempts {
+			return c.HandleServerClose(res.err)
+		}
+		if conn, err = reconnect(ctx, d, resumeURL(wsURL, next)); err != nil {
+			if errors.Is(err, context.Canceled) {
+				return 1, err
+			}
+			return 1, fmt.Errorf("failed to reconnect to WebSocket: %w", err)
+		}
+	}
+}
+
+// readWS prints the messages received from a WebSocket connection until it is
+// closed. When the context is cancelled, it sends a STOP request and waits for
+// the server to close the session; in this case, it also returns true.
+func (c *Client) readWS(ctx context.Context, conn *websocket.Conn, next int64) (streamResult, bool) {
+	resultChan := make(chan streamResult, 1)
 
-	go func() {
+	go func(received int64) {
+		decoder := newFrameDecoder()
 		for {
-			_, msg, err := conn.ReadMessage()
+			kind, msg, err := conn.ReadMessage()
 			if err != nil {
-				exitCode, streamErr := c.HandleServerClose(err)
-				resultChan <- struct {
-					exitCode int
-					err      error
-				}{exitCode, streamErr}
+				resultChan <- streamResult{received, err}
 				return
 			}
-			if text := strings.TrimSpace(string(msg)); text != "" {
-				fmt.Println(text)
+			var seq int64
+			if kind == websocket.BinaryMessage {
+				seq = printRecords(decoder, msg)
+			} else {
+				seq = printFrame(msg)
+			}
+			if seq >= received {
+				received = seq + 1
 			}
 		}
-	}()
+	}(next)
 
 	select {
 	case res := <-resultChan:
-		return res.exitCode, res.err
+		return res, false
 	case <-ctx.Done():
 		fmt.Fprintln(os.Stderr, "> Stop request sent. The application will stop when the server closes the session.")
 		_ = conn.WriteMessage(websocket.TextMessage, []byte("STOP"))
 		select {
 		case res := <-resultChan:
-			return res.exitCode, res.err
+			return res, true
 		case <-time.After(3 * time.Second):
-			return 1, context.Canceled
+			return streamResult{next, context.Canceled}, true
+		}
+	}
+}
+
+// reconnect dials the WebSocket URL again, waiting longer after each failed attempt.
+func reconnect(ctx context.Context, d websocket.Dialer, wsURL string) (*websocket.Conn, error) {
+	backoff := reconnectBackoff
+	var err error
+	for attempt := 0; attempt < reconnectAttempts; attempt++ {
+		fmt.Fprintf(os.Stderr, "> Connection lost, reconnecting in %v...\n", backoff)
+		select {
+		case <-ctx.Done():
+			return nil, context.Canceled
+		case <-time.After(backoff):
+		}
+		var conn *websocket.Conn
+		if conn, _, err = d.DialContext(ctx, wsURL, nil); err == nil {
+			return conn, nil
+		}
+		backoff = min(2*backoff, reconnectMaxBackoff)
+	}
+	return nil, err
+}
+
+// connectionLost tells whether a connection ended without the server closing the session.
+func connectionLost(err error) bool {
+	var ce *websocket.CloseError
+	if errors.As(err, &ce) {
+		return ce.Code == websocket.CloseAbnormalClosure
+	}
+	return err != nil && !errors.Is(err, context.Canceled)
+}
+
+// resumeURL returns the WebSocket URL that resumes the stream from the given log line.
+func resumeURL(wsURL string, next int64) string {
+	u, err := url.Parse(wsURL)
+	if err != nil {
+		return wsURL
+	}
+	q := u.Query()
+	q.Set("from", strconv.FormatInt(next, 10))
+	u.RawQuery = q.Encode()
+	return u.String()
+}
+
+// printFrame prints the lines of a message and returns the sequence number of
+// its last log line, taken from the "#<sequence>" header line of sequenced
+// frames, or -1 if the message has no header.
+func printFrame(msg []byte) int64 {
+	text := string(msg)
+	if header, rest, found := strings.Cut(text, "\n"); found && strings.HasPrefix(header, "#") {
+		if seq, err := strconv.ParseInt(strings.TrimSpace(header[1:]), 10, 64); err == nil {
+			printLines(rest)
+			return seq
+		}
+	}
+	printLines(text)
+	return -1
+}
+
+// printRecords prints the log lines of a binary message and returns the
+// sequence number of the last one, or -1 if it has none.
+func printRecords(decoder *frameDecoder, msg []byte) int64 {
+	records, err := decoder.Decode(msg)
+	if err != nil {
+		fmt.Fprintf(os.Stderr, "> Invalid log frame: %v\n", err)
+	}
+	seq := int64(-1)
+	for _, rec := range records {
+		printLines(rec.Message)
+		seq = rec.Sequence
+	}
+	return seq
+}
+
+// printLines prints each non-blank line of a text to stdout.
+func printLines(text string) {
+	for _, line := range strings.Split(text, "\n") {
+		if trimmed := strings.TrimSpace(line); trimmed != "" {
+			fmt.Println(trimmed)
 		}
 	}
 }
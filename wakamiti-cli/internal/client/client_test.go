@@ -21,6 +21,11 @@ import (
 	"github.com/gorilla/websocket"
 )
 
+func init() {
+	// Keep reconnection tests fast.
+	reconnectBackoff = 10 * time.Millisecond
+}
+
 func TestDoPostText_SendsPlainTextBody(t *testing.T) {
 	wantBody := "--foo bar --baz=1"
 	client := &Client{}
@@ -38,12 +43,17 @@ func TestDoPostText_SendsPlainTextBody(t *testing.T) {
 			t.Fatalf("body=%q want %q", string(b), wantBody)
 		}
 		w.WriteHeader(202)
+		_, _ = w.Write([]byte("42\n"))
 	}))
 	defer srv.Close()
 
-	if err := client.DoPostText(context.Background(), srv.URL, wantBody); err != nil {
+	id, err := client.DoPostText(context.Background(), srv.URL, wantBody)
+	if err != nil {
 		t.Fatalf("unexpected error: %v", err)
 	}
+	if id != "42" {
+		t.Fatalf("id=%q want %q", id, "42")
+	}
 }
 
 func TestDoPostText_Non2xxFails(t *testing.T) {
@@ -53,14 +63,14 @@ func TestDoPostText_Non2xxFails(t *testing.T) {
 	}))
 	defer srv.Close()
 
-	if client.DoPostText(context.Background(), srv.URL, "x") == nil {
+	if _, err := client.DoPostText(context.Background(), srv.URL, "x"); err == nil {
 		t.Fatal("expected error, got nil")
 	}
 }
 
 func TestDoPostText_NetworkError(t *testing.T) {
 	client := &Client{}
-	if client.DoPostText(context.Background(), "http://localhost:1", "x") == nil {
+	if _, err := client.DoPostText(context.Background(), "http://localhost:1", "x"); err == nil {
 		t.Fatal("expected error, got nil")
 	}
 }
@@ -104,6 +114,72 @@ func TestStreamWS_ProgressThenCloseReasonExitCode(t *testing.T) {
 	}
 }
 
+func TestStreamWS_BatchedFrameIsSplitIntoLines(t *testing.T) {
+	client := &Client{}
+	wsURL := startWSServer(t, func(c *websocket.Conn) {
+		_ = c.WriteMessage(websocket.TextMessage, []byte("first\nsecond\r\n\nthird\n"))
+		_ = c.WriteControl(
+			websocket.CloseMessage,
+			websocket.FormatCloseMessage(websocket.CloseNormalClosure, "0"),
+			time.Now().Add(1*time.Second),
+		)
+	})
+
+	oldStdout := os.Stdout
+	r, w, _ := os.Pipe()
+	os.Stdout = w
+
+	code, err := client.StreamWS(context.Background(), wsURL)
+
+	_ = w.Close()
+	os.Stdout = oldStdout
+
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if code != 0 {
+		t.Fatalf("exitCode=%d want 0", code)
+	}
+
+	out, _ := io.ReadAll(r)
+	if want := "first\nsecond\nthird\n"; string(out) != want {
+		t.Fatalf("stdout=%q want %q", string(out), want)
+	}
+}
+
+func TestStreamWS_BinaryFrameIsDecoded(t *testing.T) {
+	client := &Client{}
+	wsURL := startWSServer(t, func(c *websocket.Conn) {
+		_ = c.WriteMessage(websocket.BinaryMessage, encodeFrame(t, true, 0, "first\n", "second\n"))
+		_ = c.WriteControl(
+			websocket.CloseMessage,
+			websocket.FormatCloseMessage(websocket.CloseNormalClosure, "0"),
+			time.Now().Add(1*time.Second),
+		)
+	})
+
+	oldStdout := os.Stdout
+	r, w, _ := os.Pipe()
+	os.Stdout = w
+
+	code, err := client.StreamWS(context.Background(), wsURL)
+
+	_ = w.Close()
+	os.Stdout = oldStdout
+
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if code != 0 {
+		t.Fatalf("exitCode=%d want 0", code)
+	}
+
+	out, _ := io.ReadAll(r)
+	if want := "first\nsecond\n"; string(out) != want {
+		t.Fatalf("stdout=%q want %q", string(out), want)
+	}
+}
+
 func TestStreamWS_CloseReasonErrorText_ReturnsError(t *testing.T) {
 	client := &Client{}
 	wsURL := startWSServer(t, func(c *websocket.Conn) {
@@ -241,10 +317,85 @@ func TestStreamWS_ReadError(t *testing.T) {
 	}
 }
 
+func TestStreamWS_ConnectionLost_ResumesFromLastLine(t *testing.T) {
+	client := &Client{}
+	upgrader := websocket.Upgrader{}
+	var (
+		mu    sync.Mutex
+		froms []string
+	)
+	srv := httptest.NewServer(http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
+		c, err := upgrader.Upgrade(w, r, nil)
+		if err != nil {
+			return
+		}
+		defer c.Close()
+		mu.Lock()
+		froms = append(froms, r.URL.Query().Get("from"))
+		first := len(froms) == 1
+		mu.Unlock()
+
+		if first {
+			_ = c.WriteMessage(websocket.TextMessage, []byte("#1\nline 0\nline 1\n"))
+			// Drop the connection without a close message
+			_ = c.UnderlyingConn().Close()
+			return
+		}
+		_ = c.WriteMessage(websocket.TextMessage, []byte("#2\nline 2\n"))
+		_ = c.WriteControl(
+			websocket.CloseMessage,
+			websocket.FormatCloseMessage(websocket.CloseNormalClosure, "0"),
+			time.Now().Add(1*time.Second),
+		)
+	}))
+	defer srv.Close()
+
+	oldStdout, oldStderr := os.Stdout, os.Stderr
+	r, w, _ := os.Pipe()
+	_, wErr, _ := os.Pipe()
+	os.Stdout, os.Stderr = w, wErr
+
+	code, err := client.StreamWS(context.Background(), "ws"+strings.TrimPrefix(srv.URL, "http")+"/exec/42?seq=true")
+
+	_ = w.Close()
+	_ = wErr.Close()
+	os.Stdout, os.Stderr = oldStdout, oldStderr
+
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if code != 0 {
+		t.Fatalf("exitCode=%d want 0", code)
+	}
+	out, _ := io.ReadAll(r)
+	if want := "line 0\nline 1\nline 2\n"; string(out) != want {
+		t.Fatalf("stdout=%q want %q", string(out), want)
+	}
+	mu.Lock()
+	defer mu.Unlock()
+	if len(froms) != 2 || froms[0] != "" || froms[1] != "2" {
+		t.Fatalf("from=%q want [\"\" \"2\"]", froms)
+	}
+}
+
+func TestResumeURL_KeepsQuery(t *testing.T) {
+	got := resumeURL("ws://localhost:7264/exec/42?batch=true&seq=true", 17)
+	if got != "ws://localhost:7264/exec/42?batch=true&from=17&seq=true" {
+		t.Fatalf("url=%q", got)
+	}
+}
+
 func TestRun_Success(t *testing.T) {
 	upgrader := websocket.Upgrader{}
 	handler := http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
-		if r.URL.Path == "/exec" {
+		switch r.URL.Path {
+		case "/exec":
+			w.WriteHeader(http.StatusAccepted)
+			_, _ = w.Write([]byte("42"))
+		case "/exec/42":
+			if r.URL.Query().Get("batch") != "true" {
+				t.Errorf("query=%q want batch=true", r.URL.RawQuery)
+			}
 			if r.Header.Get("Upgrade") == "websocket" {
 				c, err := upgrader.Upgrade(w, r, nil)
 				if err != nil {
@@ -261,9 +412,9 @@ func TestRun_Success(t *testing.T) {
 						time.Now().Add(1*time.Second),
 					)
 				}
-			} else {
-				w.WriteHeader(http.StatusAccepted)
 			}
+		default:
+			w.WriteHeader(http.StatusNotFound)
 		}
 	})
 
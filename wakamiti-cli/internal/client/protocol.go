@@ -0,0 +1,137 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package client
+
+import (
+	"bufio"
+	"bytes"
+	"compress/flate"
+	"encoding/binary"
+	"errors"
+	"fmt"
+	"io"
+	"time"
+)
+
+// binaryProtocol is the WebSocket subprotocol of the compact binary log stream.
+const binaryProtocol = "wakamiti-log.v1"
+
+const (
+	flagDeflated = 0x01
+	recordLogger = 0x01
+	recordEvent  = 0x02
+)
+
+var levels = []string{"TRACE", "DEBUG", "INFO", "WARN", "ERROR"}
+
+// logRecord is a log line received in a binary frame.
+type logRecord struct {
+	Sequence  int64
+	Timestamp time.Time
+	Level     string
+	Logger    string
+	Message   string
+}
+
+// frameDecoder decodes the binary frames of a session, keeping the logger
+// names defined by the server so far.
+type frameDecoder struct {
+	loggers map[uint64]string
+}
+
+func newFrameDecoder() *frameDecoder {
+	return &frameDecoder{loggers: map[uint64]string{}}
+}
+
+// Decode returns the log records of a binary frame.
+func (d *frameDecoder) Decode(frame []byte) ([]logRecord, error) {
+	if len(frame) == 0 {
+		return nil, errors.New("empty frame")
+	}
+	var body io.Reader = bytes.NewReader(frame[1:])
+	if frame[0]&flagDeflated != 0 {
+		inflater := flate.NewReader(body)
+		defer inflater.Close()
+		body = inflater
+	}
+	r := bufio.NewReader(body)
+
+	var records []logRecord
+	for {
+		kind, err := r.ReadByte()
+		if errors.Is(err, io.EOF) {
+			return records, nil
+		} else if err != nil {
+			return records, err
+		}
+		switch kind {
+		case recordLogger:
+			id, err := binary.ReadUvarint(r)
+			if err != nil {
+				return records, err
+			}
+			name, err := readString(r)
+			if err != nil {
+				return records, err
+			}
+			d.loggers[id] = name
+		case recordEvent:
+			rec, err := d.readEvent(r)
+			if err != nil {
+				return records, err
+			}
+			records = append(records, rec)
+		default:
+			return records, fmt.Errorf("unknown record type %d", kind)
+		}
+	}
+}
+
+func (d *frameDecoder) readEvent(r *bufio.Reader) (logRecord, error) {
+	var rec logRecord
+	seq, err := binary.ReadUvarint(r)
+	if err != nil {
+		return rec, err
+	}
+	millis, err := binary.ReadUvarint(r)
+	if err != nil {
+		return rec, err
+	}
+	level, err := r.ReadByte()
+	if err != nil {
+		return rec, err
+	}
+	logger, err := binary.ReadUvarint(r)
+	if err != nil {
+		return rec, err
+	}
+	message, err := readString(r)
+	if err != nil {
+		return rec, err
+	}
+	rec.Sequence = int64(seq)
+	rec.Timestamp = time.UnixMilli(int64(millis))
+	if int(level) < len(levels) {
+		rec.Level = levels[level]
+	}
+	// The definition of the logger may have been lost along with a dropped frame
+	rec.Logger = d.loggers[logger]
+	rec.Message = message
+	return rec, nil
+}
+
+func readString(r *bufio.Reader) (string, error) {
+	n, err := binary.ReadUvarint(r)
+	if err != nil {
+		return "", err
+	}
+	buf := make([]byte, n)
+	if _, err := io.ReadFull(r, buf); err != nil {
+		return "", err
+	}
+	return string(buf), nil
+}
@@ -0,0 +1,88 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package client
+
+import (
+	"bytes"
+	"compress/flate"
+	"encoding/binary"
+	"testing"
+	"time"
+)
+
+// encodeFrame builds a binary frame with a logger definition and one event per message.
+func encodeFrame(t *testing.T, deflated bool, firstSeq uint64, messages ...string) []byte {
+	t.Helper()
+	var body []byte
+	body = append(body, recordLogger)
+	body = binary.AppendUvarint(body, 0)
+	body = binary.AppendUvarint(body, uint64(len("es.wakamiti.core")))
+	body = append(body, "es.wakamiti.core"...)
+	for i, msg := range messages {
+		body = append(body, recordEvent)
+		body = binary.AppendUvarint(body, firstSeq+uint64(i))
+		body = binary.AppendUvarint(body, 1700000000000)
+		body = append(body, 3)
+		body = binary.AppendUvarint(body, 0)
+		body = binary.AppendUvarint(body, uint64(len(msg)))
+		body = append(body, msg...)
+	}
+	if !deflated {
+		return append([]byte{0}, body...)
+	}
+	var buf bytes.Buffer
+	buf.WriteByte(flagDeflated)
+	w, _ := flate.NewWriter(&buf, flate.DefaultCompression)
+	_, _ = w.Write(body)
+	_ = w.Close()
+	return buf.Bytes()
+}
+
+func TestFrameDecoder_PlainFrame(t *testing.T) {
+	records, err := newFrameDecoder().Decode(encodeFrame(t, false, 7, "first\n", "second\n"))
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if len(records) != 2 {
+		t.Fatalf("records=%d want 2", len(records))
+	}
+	rec := records[1]
+	if rec.Sequence != 8 || rec.Level != "WARN" || rec.Logger != "es.wakamiti.core" || rec.Message != "second\n" {
+		t.Fatalf("unexpected record: %+v", rec)
+	}
+	if !rec.Timestamp.Equal(time.UnixMilli(1700000000000)) {
+		t.Fatalf("timestamp=%v", rec.Timestamp)
+	}
+}
+
+func TestFrameDecoder_DeflatedFrame(t *testing.T) {
+	records, err := newFrameDecoder().Decode(encodeFrame(t, true, 0, "one", "two", "three"))
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if len(records) != 3 || records[2].Message != "three" || records[2].Sequence != 2 {
+		t.Fatalf("unexpected records: %+v", records)
+	}
+}
+
+func TestFrameDecoder_UndefinedLogger(t *testing.T) {
+	frame := []byte{0, recordEvent, 1, 1, 2, 5, 2, 'h', 'i'}
+	records, err := newFrameDecoder().Decode(frame)
+	if err != nil {
+		t.Fatalf("unexpected error: %v", err)
+	}
+	if len(records) != 1 || records[0].Logger != "" || records[0].Level != "INFO" || records[0].Message != "hi" {
+		t.Fatalf("unexpected records: %+v", records)
+	}
+}
+
+func TestFrameDecoder_Truncated(t *testing.T) {
+	frame := encodeFrame(t, false, 0, "complete", "truncated")
+	if _, err := newFrameDecoder().Decode(frame[:len(frame)-3]); err == nil {
+		t.Fatal("expected error")
+	}
+}
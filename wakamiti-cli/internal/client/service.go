@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package client
+
+import (
+	"bufio"
+	"context"
+	"errors"
+	"fmt"
+	"net"
+	"os"
+	"os/exec"
+	"path/filepath"
+	"time"
+)
+
+// Default time to wait for a started service to be ready.
+const defaultStartTimeout = 60 * time.Second
+
+// canStartService tells whether the service can be started after a request
+// failed with the given error, i.e. the service is not running and the CLI
+// knows how to start it on this machine.
+func (c *Client) canStartService(err error) bool {
+	if len(c.Config.ServiceCommand) == 0 || !isLoopback(c.Config.ServiceHost) {
+		return false
+	}
+	var opErr *net.OpError
+	return errors.As(err, &opErr) && opErr.Op == "dial"
+}
+
+// isLoopback tells whether a host is this machine.
+func isLoopback(host string) bool {
+	if host == "localhost" {
+		return true
+	}
+	ip := net.ParseIP(host)
+	return ip != nil && ip.IsLoopback()
+}
+
+// StartService starts the service in the background, detached from the CLI
+// so that it outlives it and stops itself once idle, and waits until it is
+// ready. Instead of retrying to connect, the CLI listens on a socket whose
+// address is given to the service in WAKAMITI_READY_ADDRESS, and the service
+// connects to it as soon as it accepts requests. The time the service took
+// to start is reported on stderr.
+func (c *Client) StartService(ctx context.Context) error {
+	ln, err := net.Listen("tcp", "127.0.0.1:0")
+	if err != nil {
+		return fmt.Errorf("failed to listen for the service: %w", err)
+	}
+	defer ln.Close()
+
+	cmd := exec.Command(c.Config.ServiceCommand[0], c.Config.ServiceCommand[1:]...)
+	cmd.Env = append(os.Environ(),
+		"WAKAMITI_HOST="+c.Config.ServiceHost,
+		"WAKAMITI_PORT="+c.Config.ServicePort,
+		"WAKAMITI_READY_ADDRESS="+ln.Addr().String(),
+	)
+	if c.Config.IdleTimeout != "" {
+		cmd.Env = append(cmd.Env, "WAKAMITI_IDLE_TIMEOUT="+c.Config.IdleTimeout)
+	}
+	if c.Config.ServiceLog != "" {
+		logFile, err := openLog(c.Config.ServiceLog)
+		if err != nil {
+			return fmt.Errorf("failed to open the service log: %w", err)
+		}
+		// The service keeps its own handle of the file
+		defer logFile.Close()
+		cmd.Stdout, cmd.Stderr = logFile, logFile
+	}
+	detach(cmd)
+
+	fmt.Fprintln(os.Stderr, "> Starting the Wakamiti service...")
+	start := time.Now()
+	if err := cmd.Start(); err != nil {
+		return fmt.Errorf("failed to start the service: %w", err)
+	}
+	exited := make(chan error, 1)
+	go func() { exited <- cmd.Wait() }()
+	ready := make(chan error, 1)
+	go func() { ready <- awaitReady(ln) }()
+
+	timeout := c.Config.StartTimeout
+	if timeout <= 0 {
+		timeout = defaultStartTimeout
+	}
+	timer := time.NewTimer(timeout)
+	defer timer.Stop()
+
+	select {
+	case err := <-ready:
+		if err != nil {
+			_ = cmd.Process.Kill()
+			return fmt.Errorf("failed to wait for the service: %w", err)
+		}
+		fmt.Fprintf(os.Stderr, "> Wakamiti service started in %v\n", time.Since(start).Round(time.Millisecond))
+		return nil
+	case err := <-exited:
+		// Another CLI may have started the service at the same time
+		if c.serviceReachable() {
+			return nil
+		}
+		return fmt.Errorf("the service exited before being ready (%v)%s", err, c.seeLog())
+	case <-timer.C:
+		_ = cmd.Process.Kill()
+		return fmt.Errorf("the service was not ready in %v%s", timeout, c.seeLog())
+	case <-ctx.Done():
+		_ = cmd.Process.Kill()
+		return context.Canceled
+	}
+}
+
+// awaitReady waits for the service to connect and tell the port it listens to.
+func awaitReady(ln net.Listener) error {
+	conn, err := ln.Accept()
+	if err != nil {
+		return err
+	}
+	defer conn.Close()
+	_ = conn.SetReadDeadline(time.Now().Add(5 * time.Second))
+	_, err = bufio.NewReader(conn).ReadString('\n')
+	return err
+}
+
+// serviceReachable tells whether the service accepts connections.
+func (c *Client) serviceReachable() bool {
+	conn, err := net.DialTimeout("tcp", net.JoinHostPort(c.Config.ServiceHost, c.Config.ServicePort), time.Second)
+	if err != nil {
+		return false
+	}
+	_ = conn.Close()
+	return true
+}
+
+// seeLog points to the service log in error messages, if there is one.
+func (c *Client) seeLog() string {
+	if c.Config.ServiceLog == "" {
+		return ""
+	}
+	return ", see " + c.Config.ServiceLog
+}
+
+// openLog opens a file for appending, creating it and its directory if needed.
+func openLog(path string) (*os.File, error) {
+	if err := os.MkdirAll(filepath.Dir(path), 0o755); err != nil {
+		return nil, err
+	}
+	return os.OpenFile(path, os.O_CREATE|os.O_WRONLY|os.O_APPEND, 0o644)
+}
@@ -0,0 +1,166 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package client
+
+import (
+	"context"
+	"errors"
+	"fmt"
+	"io"
+	"net"
+	"net/http"
+	"os"
+	"strconv"
+	"strings"
+	"testing"
+	"time"
+
+	"es.wakamiti/wakamiti-cli/internal/config"
+	"github.com/gorilla/websocket"
+)
+
+// TestHelperService is not a test, but the service started by the tests
+// below, running this test binary again with GO_WANT_HELPER_SERVICE set:
+// "ready" serves an execution that ends with status 0, and "fail" exits
+// before being ready.
+func TestHelperService(t *testing.T) {
+	mode := os.Getenv("GO_WANT_HELPER_SERVICE")
+	if mode == "" {
+		t.Skip("helper process")
+	}
+	if mode == "fail" {
+		os.Exit(1)
+	}
+	ln, err := net.Listen("tcp", net.JoinHostPort(os.Getenv("WAKAMITI_HOST"), os.Getenv("WAKAMITI_PORT")))
+	if err != nil {
+		os.Exit(2)
+	}
+	upgrader := websocket.Upgrader{}
+	go func() {
+		_ = http.Serve(ln, http.HandlerFunc(func(w http.ResponseWriter, r *http.Request) {
+			if r.URL.Path == "/exec" {
+				w.WriteHeader(http.StatusAccepted)
+				_, _ = w.Write([]byte("42"))
+				return
+			}
+			c, err := upgrader.Upgrade(w, r, nil)
+			if err != nil {
+				return
+			}
+			defer c.Close()
+			_ = c.WriteMessage(websocket.TextMessage, []byte("done"))
+			_ = c.WriteControl(
+				websocket.CloseMessage,
+				websocket.FormatCloseMessage(websocket.CloseNormalClosure, "0"),
+				time.Now().Add(1*time.Second),
+			)
+		}))
+	}()
+	ready, err := net.Dial("tcp", os.Getenv("WAKAMITI_READY_ADDRESS"))
+	if err != nil {
+		os.Exit(3)
+	}
+	_, _ = fmt.Fprintln(ready, os.Getenv("WAKAMITI_PORT"))
+	_ = ready.Close()
+	// Stop as if idle, once the test is done
+	time.Sleep(3 * time.Second)
+	os.Exit(0)
+}
+
+// helperClient returns a client that starts the helper service on a free port.
+func helperClient(t *testing.T, mode string) *Client {
+	t.Helper()
+	t.Setenv("GO_WANT_HELPER_SERVICE", mode)
+
+	ln, err := net.Listen("tcp", "127.0.0.1:0")
+	if err != nil {
+		t.Fatalf("listen: %v", err)
+	}
+	port := strconv.Itoa(ln.Addr().(*net.TCPAddr).Port)
+	_ = ln.Close()
+
+	return &Client{
+		Config: config.Config{
+			ServiceHost:    "127.0.0.1",
+			ServicePort:    port,
+			ServiceCommand: []string{os.Args[0], "-test.run=^TestHelperService$"},
+			StartTimeout:   10 * time.Second,
+		},
+	}
+}
+
+// captureStderr runs a function and returns what it writes to stderr.
+func captureStderr(f func()) string {
+	oldStderr := os.Stderr
+	r, w, _ := os.Pipe()
+	os.Stderr = w
+	out := make(chan string)
+	go func() {
+		b, _ := io.ReadAll(r)
+		out <- string(b)
+	}()
+
+	f()
+
+	_ = w.Close()
+	os.Stderr = oldStderr
+	return <-out
+}
+
+func TestRun_StartsServiceWhenNotRunning(t *testing.T) {
+	client := helperClient(t, "ready")
+
+	var code int
+	stderr := captureStderr(func() {
+		code = client.Run(context.Background(), []string{"run"})
+	})
+
+	if code != 0 {
+		t.Fatalf("code=%d want 0, stderr=%q", code, stderr)
+	}
+	if !strings.Contains(stderr, "> Wakamiti service started in") {
+		t.Fatalf("stderr=%q want the start time", stderr)
+	}
+}
+
+func TestStartService_ExitedBeforeReady(t *testing.T) {
+	client := helperClient(t, "fail")
+
+	var err error
+	_ = captureStderr(func() {
+		err = client.StartService(context.Background())
+	})
+
+	if err == nil || !strings.Contains(err.Error(), "exited before being ready") {
+		t.Fatalf("err=%v want exited before being ready", err)
+	}
+}
+
+func TestCanStartService(t *testing.T) {
+	dialErr := &net.OpError{Op: "dial", Net: "tcp", Err: errors.New("connection refused")}
+	cases := []struct {
+		name    string
+		host    string
+		command []string
+		err     error
+		want    bool
+	}{
+		{"not running", "127.0.0.1", []string{"java"}, dialErr, true},
+		{"localhost", "localhost", []string{"java"}, dialErr, true},
+		{"no command", "127.0.0.1", nil, dialErr, false},
+		{"remote host", "10.0.0.1", []string{"java"}, dialErr, false},
+		{"other error", "127.0.0.1", []string{"java"}, errors.New("service returned status 429"), false},
+	}
+	for _, tc := range cases {
+		t.Run(tc.name, func(t *testing.T) {
+			client := &Client{Config: config.Config{ServiceHost: tc.host, ServiceCommand: tc.command}}
+			if got := client.canStartService(fmt.Errorf("request failed: %w", tc.err)); got != tc.want {
+				t.Fatalf("canStartService=%v want %v", got, tc.want)
+			}
+		})
+	}
+}
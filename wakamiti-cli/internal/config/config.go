@@ -8,13 +8,30 @@ package config
 
 import (
 	"os"
+	"path/filepath"
 	"strings"
+	"time"
 )
 
+// serviceName is the base name of the service jar, and of its AOT cache.
+const serviceName = "wakamiti-service"
+
 // Config holds the configuration for the Wakamiti CLI.
 type Config struct {
 	ServiceHost string
 	ServicePort string
+
+	// ServiceCommand starts the service when it is not running. If empty,
+	// the service is never started by the CLI.
+	ServiceCommand []string
+	// ServiceLog is the file where the output of the started service is
+	// appended. If empty, the output is discarded.
+	ServiceLog string
+	// StartTimeout is how long the CLI waits for the started service to be ready.
+	StartTimeout time.Duration
+	// IdleTimeout is how long the started service keeps running with no
+	// executions and no sessions, as an ISO-8601 duration (e.g. PT15M).
+	IdleTimeout string
 }
 
 // Getenv retrieves an environment variable or returns a default value if not set.
@@ -25,3 +42,51 @@ func Getenv(key, defaultValue string) string {
 	}
 	return value
 }
+
+// ServiceCommand returns the command that starts the service: the words of
+// WAKAMITI_SERVICE if set, or else java running the service jar found next
+// to the CLI executable, with its AOT cache if there is one. It returns nil
+// if there is neither.
+func ServiceCommand() []string {
+	if command := strings.Fields(Getenv("WAKAMITI_SERVICE", "")); len(command) > 0 {
+		return command
+	}
+	executable, err := os.Executable()
+	if err != nil {
+		return nil
+	}
+	return jarCommand(filepath.Dir(executable))
+}
+
+// jarCommand returns the command that runs the service jar of a directory,
+// or nil if there is no jar.
+func jarCommand(dir string) []string {
+	jar := filepath.Join(dir, serviceName+".jar")
+	if _, err := os.Stat(jar); err != nil {
+		return nil
+	}
+	java := "java"
+	if home := Getenv("JAVA_HOME", ""); home != "" {
+		java = filepath.Join(home, "bin", "java")
+	}
+	command := []string{java}
+	if cache := filepath.Join(dir, serviceName+".aot"); fileExists(cache) {
+		command = append(command, "-XX:AOTCache="+cache)
+	}
+	return append(command, "-jar", jar)
+}
+
+// ServiceLog returns the default file of the output of the started service,
+// in the .wakamiti directory of the user.
+func ServiceLog() string {
+	home, err := os.UserHomeDir()
+	if err != nil {
+		home = os.TempDir()
+	}
+	return filepath.Join(home, ".wakamiti", "service.log")
+}
+
+func fileExists(path string) bool {
+	info, err := os.Stat(path)
+	return err == nil && !info.IsDir()
+}
@@ -2,6 +2,8 @@ package config
 
 import (
 	"os"
+	"path/filepath"
+	"reflect"
 	"testing"
 )
 
@@ -28,3 +30,44 @@ func TestGetenv(t *testing.T) {
 		t.Fatalf("v=%q want %q", v, def)
 	}
 }
+
+func TestJarCommand(t *testing.T) {
+	t.Setenv("JAVA_HOME", "")
+	dir := t.TempDir()
+	jar := filepath.Join(dir, "wakamiti-service.jar")
+	cache := filepath.Join(dir, "wakamiti-service.aot")
+
+	// Case 1: No jar
+	if command := jarCommand(dir); command != nil {
+		t.Fatalf("command=%q want nil", command)
+	}
+
+	// Case 2: Jar
+	if err := os.WriteFile(jar, nil, 0o644); err != nil {
+		t.Fatal(err)
+	}
+	want := []string{"java", "-jar", jar}
+	if command := jarCommand(dir); !reflect.DeepEqual(command, want) {
+		t.Fatalf("command=%q want %q", command, want)
+	}
+
+	// Case 3: Jar with its AOT cache, and JAVA_HOME
+	if err := os.WriteFile(cache, nil, 0o644); err != nil {
+		t.Fatal(err)
+	}
+	home := filepath.Join(dir, "jdk")
+	t.Setenv("JAVA_HOME", home)
+	want = []string{filepath.Join(home, "bin", "java"), "-XX:AOTCache=" + cache, "-jar", jar}
+	if command := jarCommand(dir); !reflect.DeepEqual(command, want) {
+		t.Fatalf("command=%q want %q", command, want)
+	}
+}
+
+func TestServiceCommand_FromEnv(t *testing.T) {
+	t.Setenv("WAKAMITI_SERVICE", " java -Xmx256m -jar /opt/wakamiti/wakamiti-service.jar ")
+
+	want := []string{"java", "-Xmx256m", "-jar", "/opt/wakamiti/wakamiti-service.jar"}
+	if command := ServiceCommand(); !reflect.DeepEqual(command, want) {
+		t.Fatalf("command=%q want %q", command, want)
+	}
+}
@@ -10,7 +10,14 @@ import io.helidon.config.Config;
 import io.helidon.config.ConfigSources;
 import io.helidon.microprofile.server.Server;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -52,10 +59,38 @@ public class WakamitiServiceApplication {
                     .build();
         }
 
-        Server.builder()
+        Server server = Server.builder()
                 .config(config)
                 .build()
                 .start();
+        ready(server.port(), config.get("wakamiti.service.ready-address").asString().orElse(null));
+    }
+
+    /**
+     * Tells that the service accepts requests. If it was started by the CLI,
+     * the CLI waits for it listening at the given address, where the port of
+     * the service is written, instead of retrying to connect until it can.
+     *
+     * @param port    the port the service listens to
+     * @param address the {@code host:port} waiting for the service, if any
+     */
+    private static void ready(
+            int port,
+            String address
+    ) {
+        // Not a constant, so that the logging is set up while the server starts
+        Logger logger = LoggerFactory.getLogger(NAME);
+        logger.info("Service ready on port {} in {} ms", port, ManagementFactory.getRuntimeMXBean().getUptime());
+        if (address == null || address.isBlank()) {
+            return;
+        }
+        int separator = address.lastIndexOf(':');
+        try (Socket socket = new Socket(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+             OutputStream output = socket.getOutputStream()) {
+            output.write((port + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot tell {} that the service is ready: {}", address, e.toString());
+        }
     }
 
 
@@ -7,78 +7,464 @@ package es.wakamiti.service.application.service;
 
 
 import es.wakamiti.service.domain.api.ExecutionService;
+import es.wakamiti.service.domain.model.ExecutionOptions;
+import es.wakamiti.service.domain.model.ExecutionPage;
+import es.wakamiti.service.domain.model.ExecutionPriority;
+import es.wakamiti.service.domain.model.ExecutionProperties;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.ExecutionMetrics;
 import es.wakamiti.service.domain.spi.ExecutionNotifier;
+import es.wakamiti.service.domain.spi.ExecutionRepository;
 import es.wakamiti.service.domain.spi.LogEventPublisher;
 import es.wakamiti.service.domain.spi.WakamitiRunner;
 import io.helidon.common.configurable.ResourceException;
+import io.helidon.http.NotFoundException;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * Implementation of the ExecutionService that handles asynchronous command
  * execution.
+ *
+ * <p>Up to {@link ExecutionProperties#maxConcurrent()} executions run at the
+ * same time. The next ones wait in a queue bounded by
+ * {@link ExecutionProperties#queueSize()}, ordered by
+ * {@link ExecutionPriority} and then by submission, and start as the running
+ * ones finish. Only when the queue is full are the submissions rejected.</p>
+ *
+ * <p>The clients watching a queued execution are told its position in the
+ * queue, and an estimation of when it will start, every time it changes.
+ * The estimation assumes that every execution takes as long as the recent
+ * ones did on average, so it is not given until one has finished.</p>
+ *
+ * <p>Every accepted execution is kept in the {@link ExecutionRepository}
+ * when it is submitted, starts and ends, so its record outlives it.</p>
  */
 @ApplicationScoped
 public class ExecutionServiceImpl implements ExecutionService {
 
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    /**
+     * Logger name of the notices about the queue sent to the clients.
+     */
+    static final String QUEUE_LOGGER = "service.wakamiti.queue";
+    /**
+     * Exit status of the executions stopped while queued.
+     */
+    static final int STOPPED = 1;
+    /**
+     * Maximum executions per page of the history.
+     */
+    static final int MAX_PAGE_SIZE = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+
+    /**
+     * Weight of the last finished execution in the average duration.
+     */
+    private static final double DURATION_WEIGHT = 0.2;
+
+    /**
+     * Execution waiting for a slot, in order of submission within its
+     * priority.
+     */
+    private record Queued(
+            String id,
+            String command,
+            ExecutionOptions options,
+            long order,
+            long submitted
+    ) {
+
+    }
+
+    private record Running(
+            WakamitiRunner runner,
+            long start
+    ) {
+
+    }
+
+    /**
+     * Notice about the queue for the clients of an execution.
+     */
+    private record Notice(
+            String id,
+            String message
+    ) {
+
+    }
+
+    private final Lock lock = new ReentrantLock();
+    /**
+     * Executions in progress, by execution ID.
+     */
+    private final Map<String, Running> executions = new HashMap<>();
+    private final PriorityQueue<Queued> queue = new PriorityQueue<>(
+            Comparator.comparing((Queued it) -> it.options().priority()).thenComparingLong(Queued::order)
+    );
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxConcurrent;
+    private final int queueSize;
 
     private final ExecutionNotifier<?> notifier;
-    private final WakamitiRunner runner;
+    private final Instance<WakamitiRunner> runners;
     private final LogEventPublisher<?> publisher;
+    private final ExecutionMetrics metrics;
+    private final ExecutionRepository repository;
+
+    private long submissions;
+    /**
+     * Average duration of the finished executions, in nanoseconds, or
+     * {@code -1} until one finishes.
+     */
+    private double averageDuration = -1;
 
     @Inject
     public ExecutionServiceImpl(
             ExecutionNotifier<?> notifier,
-            WakamitiRunner runner,
-            LogEventPublisher<?> publisher
+            Instance<WakamitiRunner> runners,
+            LogEventPublisher<?> publisher,
+            ExecutionMetrics metrics,
+            ExecutionRepository repository,
+            ExecutionProperties properties
     ) {
         this.notifier = notifier;
-        this.runner = runner;
+        this.runners = runners;
         this.publisher = publisher;
+        this.metrics = metrics;
+        this.repository = repository;
+        this.maxConcurrent = properties.maxConcurrent();
+        this.queueSize = properties.queueSize();
     }
 
 
     /**
      * Executes a system command asynchronously and streams output to logger.
      *
-     * <p>The method uses a single-threaded ExecutorService to ensure commands
-     * are executed sequentially. This design choice prevents resource conflicts
-     * and maintains predictable execution order, while still providing
-     * asynchronous behavior for the REST API clients.</p>
+     * <p>Each execution runs in its own virtual thread with its own
+     * {@link WakamitiRunner} instance, so it can be stopped without affecting
+     * other executions. The number of executions in progress is bounded by
+     * {@link ExecutionProperties#maxConcurrent()}, and the next ones are
+     * queued.</p>
+     *
+     * <p>The execution ID is bound to the logging context of the execution
+     * thread under {@link LogEventPublisher#EXECUTION_ID}, so that its log
+     * is only published to the clients watching that execution.</p>
+     *
+     * <p>The executions started, queued and rejected, and how long they run,
+     * are recorded in the {@link ExecutionMetrics}.</p>
      *
      * @param command the system command to execute
+     * @param options the priority of the execution in the queue, and the
+     *                features the runner runs
+     *
+     * @return the execution ID
      *
      * @throws IllegalArgumentException if the command is null, empty or wrong
      *                                  commands
-     * @throws ResourceException        if there is already an execution in
-     *                                  progress
+     * @throws ResourceException        if the execution queue is full
      */
     @Override
-    public void execute(
-            String command
+    public String execute(
+            String command,
+            ExecutionOptions options
     ) throws IllegalArgumentException, ResourceException {
         if (command == null || command.trim().isEmpty()) {
             throw new IllegalArgumentException("Command cannot be null or empty");
         }
 
-        if (running.getAndSet(true)) {
-            throw new ResourceException("Maximum concurrent executions reached. Please try again later.");
+        String id = UUID.randomUUID().toString();
+        List<Notice> notices;
+        lock.lock();
+        try {
+            if (executions.size() < maxConcurrent) {
+                // Recorded before its thread records the start
+                repository.submitted(id, command, Instant.now());
+                start(id, command, options, 0);
+                return id;
+            }
+            if (queue.size() >= queueSize) {
+                metrics.rejected();
+                throw new ResourceException("Execution queue is full. Please try again later.");
+            }
+            repository.submitted(id, command, Instant.now());
+            queue.add(new Queued(id, command, options, submissions++, System.nanoTime()));
+            metrics.queued();
+            notices = positions();
+        } finally {
+            lock.unlock();
         }
+        notices.forEach(this::publish);
+        return id;
+    }
 
-        CompletableFuture.supplyAsync(() -> runner.run(command))
-                .thenAccept(notifier::notify)
-                .thenRun(() -> running.set(false))
-                .thenRun(publisher::clear)
-        ;
+    /**
+     * Starts an execution in its own thread. Must be called holding the
+     * {@link #lock}.
+     *
+     * @param queued the nanoseconds the execution was queued
+     */
+    private void start(
+            String id,
+            String command,
+            ExecutionOptions options,
+            long queued
+    ) {
+        WakamitiRunner runner = runners.get();
+        Running execution = new Running(runner, System.nanoTime());
+        executions.put(id, execution);
+        try {
+            executor.execute(() -> run(id, command, options, execution, queued));
+        } catch (RejectedExecutionException e) {
+            executions.remove(id);
+            runners.destroy(runner);
+            metrics.rejected();
+            throw e;
+        }
+    }
+
+    private void run(
+            String id,
+            String command,
+            ExecutionOptions options,
+            Running execution,
+            long queued
+    ) {
+        int status = -1;
+        try {
+            metrics.started();
+            repository.started(id, Instant.now());
+            if (queued > 0) {
+                publish(new Notice(id, "Starting after %d s in the queue"
+                        .formatted(TimeUnit.NANOSECONDS.toSeconds(queued))));
+            }
+            MDC.put(LogEventPublisher.EXECUTION_ID, id);
+            try {
+                status = execution.runner().run(command, options);
+            } finally {
+                MDC.remove(LogEventPublisher.EXECUTION_ID);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Execution {} failed: {}", id, e.getMessage(), e);
+        } finally {
+            Duration duration = Duration.ofNanos(System.nanoTime() - execution.start());
+            try {
+                finish(id, status, execution, duration);
+            } finally {
+                // The slot is freed whatever happens while finishing
+                next(id, duration);
+            }
+        }
     }
 
-    public void stop() {
-        runner.stop();
+    /**
+     * Delivers the rest of the log and the status of a finished execution,
+     * and releases its runner. Each step is done even if the previous ones
+     * fail.
+     */
+    private void finish(
+            String id,
+            int status,
+            Running execution,
+            Duration duration
+    ) {
+        cleanup(id, "flush its log", () -> publisher.flush(id));
+        cleanup(id, "record its end", () -> repository.finished(id, Instant.now(), status));
+        cleanup(id, "notify its status", () -> notifier.notify(id, status));
+        cleanup(id, "clear its log", () -> publisher.clear(id));
+        cleanup(id, "destroy its runner", () -> runners.destroy(execution.runner()));
+        cleanup(id, "record its duration", () -> metrics.finished(duration));
+    }
+
+    private static void cleanup(
+            String id,
+            String step,
+            Runnable action
+    ) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot {} after execution {} finished: {}", step, id, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Frees the slot of a finished execution, and starts the next ones in
+     * the queue.
+     */
+    private void next(
+            String id,
+            Duration duration
+    ) {
+        List<Notice> notices = List.of();
+        lock.lock();
+        try {
+            executions.remove(id);
+            averageDuration = averageDuration < 0
+                    ? duration.toNanos()
+                    : DURATION_WEIGHT * duration.toNanos() + (1 - DURATION_WEIGHT) * averageDuration;
+            boolean dequeued = false;
+            while (executions.size() < maxConcurrent && !queue.isEmpty()) {
+                Queued next = queue.poll();
+                metrics.dequeued();
+                dequeued = true;
+                try {
+                    start(next.id(), next.command(), next.options(), System.nanoTime() - next.submitted());
+                } catch (RejectedExecutionException _) {
+                    // Shutting down
+                    queue.clear();
+                }
+            }
+            if (dequeued) {
+                notices = positions();
+            }
+        } finally {
+            lock.unlock();
+        }
+        notices.forEach(this::publish);
+    }
+
+    /**
+     * Tells every queued execution its position, and when it is expected
+     * to start. Must be called holding the {@link #lock}.
+     */
+    private List<Notice> positions() {
+        List<Queued> ordered = new ArrayList<>(queue);
+        ordered.sort(queue.comparator());
+        long[] free = null;
+        if (averageDuration >= 0) {
+            // When each running execution is expected to finish
+            long now = System.nanoTime();
+            free = executions.values().stream()
+                    .mapToLong(it -> Math.max(0, it.start() + (long) averageDuration - now))
+                    .sorted()
+                    .toArray();
+        }
+        List<Notice> notices = new ArrayList<>(ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            String message = "Queued in position %d of %d".formatted(i + 1, ordered.size());
+            if (free != null && free.length > 0) {
+                // Each slot runs the next executions one after another
+                long wait = free[i % free.length] + (i / free.length) * (long) averageDuration;
+                message += ", expected to start in about %d s"
+                        .formatted(Math.max(1, Math.round(wait / 1e9)));
+            }
+            notices.add(new Notice(ordered.get(i).id(), message));
+        }
+        return notices;
+    }
+
+    /**
+     * Publishes a notice without waiting for it to be delivered, since it
+     * is called from the request threads. The log of an execution is only
+     * flushed when it finishes.
+     */
+    private void publish(
+            Notice notice
+    ) {
+        publisher.publish(notice.id(), LogEvent.of(
+                Instant.now(), "INFO", QUEUE_LOGGER, notice.message() + System.lineSeparator()
+        ));
+    }
+
+    /**
+     * Stops the given execution, or removes it from the queue if it has not
+     * started yet, in which case it ends with the {@value #STOPPED} status.
+     */
+    @Override
+    public void stop(
+            String id
+    ) {
+        List<Notice> notices;
+        lock.lock();
+        try {
+            Running execution = executions.get(id);
+            if (execution != null) {
+                execution.runner().stop();
+                return;
+            }
+            if (!queue.removeIf(it -> it.id().equals(id))) {
+                throw new NotFoundException("Execution not found: " + id);
+            }
+            metrics.dequeued();
+            notices = positions();
+        } finally {
+            lock.unlock();
+        }
+        // Each step is done even if the previous ones fail
+        cleanup(id, "flush its log", () -> publisher.flush(id));
+        cleanup(id, "record its end", () -> repository.finished(id, Instant.now(), STOPPED));
+        cleanup(id, "notify its status", () -> notifier.notify(id, STOPPED));
+        cleanup(id, "clear its log", () -> publisher.clear(id));
+        notices.forEach(this::publish);
+    }
+
+    @Override
+    public int pending() {
+        lock.lock();
+        try {
+            return executions.size() + queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the executions in the {@link ExecutionRepository}, at most
+     * {@value #MAX_PAGE_SIZE} per page.
+     */
+    @Override
+    public ExecutionPage history(
+            int page,
+            int size
+    ) {
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        long offset = (long) page * size;
+        return new ExecutionPage(
+                page,
+                size,
+                repository.count(),
+                offset > Integer.MAX_VALUE ? List.of() : repository.find((int) offset, size)
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lock.lock();
+        try {
+            queue.clear();
+            executions.values().forEach(it -> it.runner().stop());
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdownNow();
     }
 
-}
\ No newline at end of file
+}
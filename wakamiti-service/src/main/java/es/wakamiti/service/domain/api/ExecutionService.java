@@ -6,6 +6,8 @@
 package es.wakamiti.service.domain.api;
 
 
+import es.wakamiti.service.domain.model.ExecutionOptions;
+import es.wakamiti.service.domain.model.ExecutionPage;
 import io.helidon.common.configurable.ResourceException;
 
 
@@ -44,11 +46,11 @@ import io.helidon.common.configurable.ResourceException;
  * <p>Execution Flow:</p>
  * <ol>
  *   <li>Client submits command via REST API (POST /exec)</li>
- *   <li>CommandResource calls {@link #execute(String)} method</li>
- *   <li>Command is queued for asynchronous execution</li>
- *   <li>HTTP 204 No Content response is returned immediately</li>
- *   <li>Command execution begins in background thread</li>
- *   <li>Execution events are broadcast to WebSocket clients via /execution endpoint</li>
+ *   <li>CommandResource calls {@link #execute(String, ExecutionOptions)} method</li>
+ *   <li>Command is assigned an execution ID and queued for asynchronous execution</li>
+ *   <li>HTTP 202 Accepted response is returned immediately with the execution ID</li>
+ *   <li>Command execution begins in its own virtual thread</li>
+ *   <li>Execution events are sent to WebSocket clients via /exec/{id} endpoint</li>
  *   <li>Process output is streamed in real-time as it's generated</li>
  *   <li>Completion status and cleanup notifications are sent to clients</li>
  * </ol>
@@ -56,7 +58,7 @@ import io.helidon.common.configurable.ResourceException;
  * <p>Error Handling Strategy:</p>
  * <ul>
  *   <li><strong>Validation Errors</strong>: Thrown as IllegalArgumentException for immediate HTTP 400 response</li>
- *   <li><strong>Resource Errors</strong>: Thrown as ResourceException for HTTP 429 rate limiting</li>
+ *   <li><strong>Resource Errors</strong>: Thrown as ResourceException for HTTP 429 when the queue is full</li>
  *   <li><strong>Execution Errors</strong>: Caught and broadcast to clients, logged for debugging</li>
  *   <li><strong>System Errors</strong>: Thrown as RuntimeException for HTTP 500 response</li>
  * </ul>
@@ -64,7 +66,8 @@ import io.helidon.common.configurable.ResourceException;
  * <p>Performance Characteristics:</p>
  * <ul>
  *   <li><strong>Non-blocking</strong>: Method returns immediately after command validation and queuing</li>
- *   <li><strong>Scalable</strong>: Uses ExecutorService for concurrent command execution</li>
+ *   <li><strong>Scalable</strong>: Runs up to a configurable number of executions concurrently,
+ *   and queues a configurable number more by priority</li>
  *   <li><strong>Resource-safe</strong>: Automatic cleanup of processes and streams</li>
  *   <li><strong>Real-time</strong>: Output streaming without buffering delays</li>
  * </ul>
@@ -81,12 +84,12 @@ import io.helidon.common.configurable.ResourceException;
  * 
  * // In REST endpoint
  * try {
- *     executionService.execute("ls -la /tmp");
- *     return Response.noContent().build(); // 204 - Command queued successfully
+ *     String id = executionService.execute("ls -la /tmp");
+ *     return Response.accepted(id).build(); // 202 - Command queued successfully
  * } catch (IllegalArgumentException e) {
  *     return Response.status(400).entity(e.getMessage()).build();
  * } catch (ResourceException e) {
- *     return Response.status(429).entity("Too many concurrent executions").build();
+ *     return Response.status(429).entity("Execution queue is full").build();
  * }
  * }</pre>
  */
@@ -98,12 +101,12 @@ public interface ExecutionService {
      * <p>This method validates the provided command and submits it for asynchronous
      * execution. The method returns immediately after validation and queuing,
      * allowing the calling thread to continue without blocking. Command execution
-     * happens in a background thread managed by an ExecutorService.</p>
+     * happens in a dedicated virtual thread, with its own {@code WakamitiRunner}.</p>
      * 
      * <p>Real-time Streaming:</p>
      * <p>As the command executes, its output is continuously streamed to all
      * connected WebSocket clients through the WebSocketAppender. Clients can
-     * connect to the /execution WebSocket endpoint to receive live updates.</p>
+     * connect to the /exec/{id} WebSocket endpoint to receive live updates.</p>
      * 
      * <p>Command Validation:</p>
      * <ul>
@@ -137,26 +140,92 @@ public interface ExecutionService {
      * </ul>
      * 
      * <p>Concurrency Design:</p>
-     * <p>The method uses a single-threaded ExecutorService to ensure commands are
-     * executed sequentially. This design choice prevents resource conflicts and
-     * maintains predictable execution order, while still providing asynchronous
-     * behavior for the REST API clients.</p>
+     * <p>Every submission is identified by an execution ID and runs in its own
+     * virtual thread. The number of executions running at the same time is
+     * bounded by a configurable limit, so that a shared service does not
+     * serialize every client behind the slowest execution nor get overloaded.
+     * The submissions beyond that limit wait in a bounded queue, where the
+     * executions of a higher priority go first, and those of the same priority
+     * in order of submission. The clients of a queued execution are told its
+     * position and expected start over the WebSocket.</p>
+     * 
+     * <p>Incremental Execution:</p>
+     * <p>An incremental execution only runs the features that changed, or
+     * that failed, since their last run with the same configuration and
+     * plugins, and reports the cached results of the others.</p>
+     * 
+     * <p>Sharded Execution:</p>
+     * <p>A sharded execution splits the features into parts that run in
+     * parallel, each one with its own runner, and ends with the first
+     * non-zero exit status of the parts, if any. Its output tells the part
+     * every line comes from.</p>
      * 
      * @param command the system command to execute (must not be null or empty)
+     * @param options the priority of the execution if it has to wait, and
+     *                which features run and how
+     * 
+     * @return the ID assigned to the execution
      * 
      * @throws IllegalArgumentException if command is null, empty, or contains only whitespace.
      *         This exception should be caught by the REST layer and converted to HTTP 400.
-     * @throws ResourceException if the system is currently
-     *         at maximum capacity for concurrent executions. This should be caught by the
+     * @throws ResourceException if the execution queue is full. This should be caught by the
      *         REST layer and converted to HTTP 429.
      * @throws RuntimeException if an unexpected system error occurs during command submission
      *         or if there are issues with the execution infrastructure. This should be caught
      *         by the REST layer and converted to HTTP 500.
      *
      */
-    void execute(
+    String execute(
+            String command,
+            ExecutionOptions options
+    );
+
+    /**
+     * Executes every feature of a command at once, with the
+     * {@link ExecutionOptions#DEFAULT} options.
+     *
+     * @see #execute(String, ExecutionOptions)
+     */
+    default String execute(
             String command
+    ) {
+        return execute(command, ExecutionOptions.DEFAULT);
+    }
+
+    /**
+     * Requests the given execution to stop.
+     *
+     * @param id the execution ID returned by {@link #execute(String)}
+     *
+     * @throws RuntimeException if there is no execution in progress or
+     *         queued with the given ID. This should be converted to HTTP 404.
+     */
+    void stop(
+            String id
     );
 
-    void stop();
+    /**
+     * Counts the executions that have not finished yet, e.g. to tell
+     * whether the service is idle.
+     *
+     * @return the executions in progress or queued
+     */
+    int pending();
+
+    /**
+     * Finds the executions submitted so far, newest first, with those in
+     * progress or queued.
+     *
+     * @param page the page number, from {@code 0}
+     * @param size the executions per page
+     *
+     * @return the executions of the page
+     *
+     * @throws IllegalArgumentException if the page is negative or the size
+     *         is out of range. This should be converted to HTTP 400.
+     */
+    ExecutionPage history(
+            int page,
+            int size
+    );
 }
@@ -0,0 +1,44 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+/**
+ * How a command is executed.
+ *
+ * @param priority    the priority of the execution if it has to wait for
+ *                    others to finish
+ * @param incremental whether to skip the features that passed and have not
+ *                    changed since
+ * @param shards      the number of parts the features are split into, to
+ *                    run them in parallel, or {@code 1} to run them at once
+ */
+public record ExecutionOptions(
+        ExecutionPriority priority,
+        boolean incremental,
+        int shards
+) {
+
+    /**
+     * Every feature at once, with the {@link ExecutionPriority#NORMAL}
+     * priority.
+     */
+    public static final ExecutionOptions DEFAULT = new ExecutionOptions(ExecutionPriority.NORMAL, false, 1);
+
+    /**
+     * @throws IllegalArgumentException if the number of shards is not
+     *                                  positive
+     */
+    public ExecutionOptions {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must be given");
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shards must be greater than 0");
+        }
+    }
+
+}
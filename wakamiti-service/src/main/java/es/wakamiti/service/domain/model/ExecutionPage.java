@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+import java.util.List;
+
+
+/**
+ * A page of the recorded executions, newest first.
+ *
+ * @param page       the page number, from {@code 0}
+ * @param size       the executions per page
+ * @param total      the executions recorded in all the pages
+ * @param executions the executions of the page, fewer than {@code size} in
+ *                   the last one
+ */
+public record ExecutionPage(
+        int page,
+        int size,
+        long total,
+        List<ExecutionRecord> executions
+) {
+
+    public ExecutionPage {
+        executions = List.copyOf(executions);
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+import java.util.Locale;
+
+
+/**
+ * Order in which the queued executions start: the executions of a higher
+ * priority start first, and those of the same priority in the order they
+ * were submitted.
+ */
+public enum ExecutionPriority {
+
+    /**
+     * Executions someone is waiting for, e.g. launched from the CLI.
+     */
+    HIGH,
+    NORMAL,
+    /**
+     * Executions that can wait, e.g. nightly batches.
+     */
+    LOW;
+
+    /**
+     * @param name the name of the priority, in any case
+     * @throws IllegalArgumentException if there is no priority with that
+     *                                  name
+     */
+    public static ExecutionPriority of(
+            String name
+    ) {
+        for (ExecutionPriority priority : values()) {
+            if (priority.name().equals(name.trim().toUpperCase(Locale.ROOT))) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority: " + name);
+    }
+
+}
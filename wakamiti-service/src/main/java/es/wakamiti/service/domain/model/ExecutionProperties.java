@@ -0,0 +1,31 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+/**
+ * Execution engine settings.
+ *
+ * @param maxConcurrent the maximum number of executions allowed to run at the
+ *                      same time
+ * @param queueSize     the maximum number of executions waiting for one of
+ *                      the running ones to finish, {@code 0} to reject them
+ */
+public record ExecutionProperties(
+        int maxConcurrent,
+        int queueSize
+) {
+
+    public ExecutionProperties {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Maximum concurrent executions must be greater than 0");
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Execution queue size must not be negative");
+        }
+    }
+
+}
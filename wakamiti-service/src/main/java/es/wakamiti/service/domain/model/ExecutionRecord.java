@@ -0,0 +1,36 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+import java.time.Instant;
+
+
+/**
+ * What is kept of a submitted execution once it has run.
+ *
+ * @param id        the execution ID
+ * @param command   the command executed
+ * @param submitted when the execution was submitted
+ * @param started   when the execution started running, or {@code null} if
+ *                  it has not started, or was stopped while queued
+ * @param ended     when the execution ended, or {@code null} while it is in
+ *                  progress
+ * @param status    the exit status, or {@code null} while the execution is
+ *                  in progress
+ * @param lines     the number of log lines of the execution so far
+ */
+public record ExecutionRecord(
+        String id,
+        String command,
+        Instant submitted,
+        Instant started,
+        Instant ended,
+        Integer status,
+        long lines
+) {
+
+}
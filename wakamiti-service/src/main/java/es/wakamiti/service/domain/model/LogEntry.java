@@ -0,0 +1,28 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+/**
+ * A log event stored in the history of an execution.
+ *
+ * @param sequence the position of the event in the execution log,
+ *                 monotonically increasing from {@code 0}
+ * @param event    the log event
+ */
+public record LogEntry(
+        long sequence,
+        LogEvent event
+) {
+
+    /**
+     * @return the text form of the event
+     */
+    public String text() {
+        return event.text();
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.model;
+
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+
+/**
+ * A log event produced by an execution.
+ *
+ * <p>The event keeps the message pattern and its arguments as they were
+ * logged, and is only formatted when a consumer asks for it: the
+ * {@link #message()} replaces the {@code {}} placeholders of the pattern with
+ * the arguments, and the {@link #text()} is the line sent to the text
+ * clients, as rendered by the producer (e.g. a logging layout). Each form is
+ * formatted at most once and shared by every consumer, and none is built if
+ * nobody asks for it.</p>
+ */
+public final class LogEvent {
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int ESTIMATED_ARGUMENT_LENGTH = 16;
+
+    private final Instant timestamp;
+    private final String level;
+    private final String thread;
+    private final String logger;
+    private final Map<String, String> mdc;
+    private final String pattern;
+    private final Object[] arguments;
+
+    private Supplier<String> formatter;
+    private Supplier<String> layout;
+    private volatile String message;
+    private volatile String text;
+
+    /**
+     * @param timestamp the time the event was logged
+     * @param level     the name of the level, e.g. {@code INFO}
+     * @param thread    the name of the thread that logged the event
+     * @param logger    the name of the logger
+     * @param mdc       the diagnostic context of the thread
+     * @param pattern   the message pattern, with {@code {}} placeholders
+     * @param arguments the arguments of the placeholders
+     * @param layout    renders the text form of the event, or {@code null}
+     *                  if it is the message
+     */
+    public LogEvent(
+            Instant timestamp,
+            String level,
+            String thread,
+            String logger,
+            Map<String, String> mdc,
+            String pattern,
+            Object[] arguments,
+            Supplier<String> layout
+    ) {
+        this.timestamp = timestamp;
+        this.level = level;
+        this.thread = thread;
+        this.logger = logger;
+        this.mdc = mdc == null ? Map.of() : Collections.unmodifiableMap(mdc);
+        this.pattern = pattern == null ? "" : pattern;
+        this.arguments = arguments == null ? new Object[0] : arguments.clone();
+        this.layout = layout;
+    }
+
+    /**
+     * Creates an event with an already formatted message, which is also its
+     * text form.
+     */
+    public static LogEvent of(
+            Instant timestamp,
+            String level,
+            String logger,
+            String message
+    ) {
+        return new LogEvent(timestamp, level, "", logger, Map.of(), message, null, null);
+    }
+
+    /**
+     * Creates an event whose forms are formatted by its producer, when asked
+     * for. The producer is released once both are formatted.
+     *
+     * @param pattern   the message pattern, with {@code {}} placeholders
+     * @param arguments the arguments of the placeholders
+     * @param message   formats the message
+     * @param layout    renders the text form of the event
+     */
+    public static LogEvent of(
+            Instant timestamp,
+            String level,
+            String thread,
+            String logger,
+            Map<String, String> mdc,
+            String pattern,
+            Object[] arguments,
+            Supplier<String> message,
+            Supplier<String> layout
+    ) {
+        LogEvent event = new LogEvent(timestamp, level, thread, logger, mdc, pattern, arguments, layout);
+        event.formatter = message;
+        return event;
+    }
+
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    public String level() {
+        return level;
+    }
+
+    public String thread() {
+        return thread;
+    }
+
+    public String logger() {
+        return logger;
+    }
+
+    public Map<String, String> mdc() {
+        return mdc;
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    public List<Object> arguments() {
+        return Collections.unmodifiableList(Arrays.asList(arguments));
+    }
+
+    /**
+     * @return the pattern with its placeholders replaced by the arguments
+     */
+    public String message() {
+        String result = message;
+        if (result == null) {
+            synchronized (this) {
+                if ((result = message) == null) {
+                    message = result = formatter == null ? format(pattern, arguments) : formatter.get();
+                    formatter = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the text form of the event
+     */
+    public String text() {
+        String result = text;
+        if (result == null) {
+            synchronized (this) {
+                if ((result = text) == null) {
+                    text = result = layout == null ? message() : layout.get();
+                    // The layout may hold on to the original event
+                    layout = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Approximate length of the text form, without formatting it.
+     */
+    public int estimatedLength() {
+        String result = text;
+        if (result != null) {
+            return result.length();
+        }
+        int length = pattern.length();
+        for (Object argument : arguments) {
+            length += argument instanceof CharSequence chars ? chars.length() : ESTIMATED_ARGUMENT_LENGTH;
+        }
+        return length;
+    }
+
+    /**
+     * Copies the event with the given tag in its diagnostic context, and
+     * in brackets before its message and text, e.g. to tell apart the
+     * events of the parts of an execution run in parallel. The forms of the
+     * copy are formatted from those of this event, when asked for.
+     *
+     * @param key the key of the tag in the diagnostic context
+     * @param tag the tag, without placeholders
+     */
+    public LogEvent tagged(
+            String key,
+            String tag
+    ) {
+        Map<String, String> tagged = new HashMap<>(mdc);
+        tagged.put(key, tag);
+        String prefix = "[" + tag + "] ";
+        return new LogEvent(timestamp, level, thread, logger, tagged, prefix + pattern, arguments, () -> prefix + text());
+    }
+
+    /**
+     * Replaces the {@code {}} placeholders with the arguments, in order. A
+     * placeholder preceded by a backslash is kept as is, and the placeholders
+     * left without an argument too.
+     */
+    private static String format(
+            String pattern,
+            Object[] arguments
+    ) {
+        if (arguments.length == 0) {
+            return pattern;
+        }
+        StringBuilder result = new StringBuilder(pattern.length() + ESTIMATED_ARGUMENT_LENGTH * arguments.length);
+        int argument = 0;
+        int start = 0;
+        int placeholder;
+        while (argument < arguments.length && (placeholder = pattern.indexOf(PLACEHOLDER, start)) >= 0) {
+            if (placeholder > 0 && pattern.charAt(placeholder - 1) == '\\') {
+                result.append(pattern, start, placeholder - 1).append(PLACEHOLDER);
+            } else {
+                result.append(pattern, start, placeholder).append(toString(arguments[argument++]));
+            }
+            start = placeholder + PLACEHOLDER.length();
+        }
+        return result.append(pattern, start, pattern.length()).toString();
+    }
+
+    private static String toString(
+            Object argument
+    ) {
+        return switch (argument) {
+            case Object[] array -> Arrays.deepToString(array);
+            case int[] array -> Arrays.toString(array);
+            case long[] array -> Arrays.toString(array);
+            case double[] array -> Arrays.toString(array);
+            case byte[] array -> Arrays.toString(array);
+            case char[] array -> Arrays.toString(array);
+            case boolean[] array -> Arrays.toString(array);
+            case null, default -> String.valueOf(argument);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "LogEvent[" + timestamp + " " + level + " " + logger + " - " + message() + "]";
+    }
+
+}
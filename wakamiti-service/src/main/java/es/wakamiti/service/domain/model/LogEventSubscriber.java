@@ -9,7 +9,13 @@ package es.wakamiti.service.domain.model;
 public interface LogEventSubscriber {
 
     void onLogEvent(
-            String message
+            LogEntry entry
     );
 
+    /**
+     * Delivers the log events held back by the subscriber, if any.
+     */
+    default void flush() {
+    }
+
 }
@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.spi;
+
+
+import java.time.Duration;
+
+
+/**
+ * Records what happens to the submitted executions.
+ */
+public interface ExecutionMetrics {
+
+    /**
+     * An execution starts running.
+     */
+    void started();
+
+    /**
+     * An execution waits in the queue, because too many are in progress.
+     */
+    void queued();
+
+    /**
+     * An execution recorded with {@link #queued()} leaves the queue, either
+     * to start or because it is stopped.
+     */
+    void dequeued();
+
+    /**
+     * An execution is rejected, because the queue is full.
+     */
+    void rejected();
+
+    /**
+     * An execution started with {@link #started()} ends, whatever its exit
+     * status.
+     *
+     * @param duration the time it was running
+     */
+    void finished(
+            Duration duration
+    );
+
+}
@@ -9,14 +9,17 @@ package es.wakamiti.service.domain.spi;
 public interface ExecutionNotifier<T> {
 
     void notify(
+            String executionId,
             Integer status
     );
 
     void addObserver(
+            String executionId,
             T observer
     );
 
     void removeObserver(
+            String executionId,
             T observer
     );
 
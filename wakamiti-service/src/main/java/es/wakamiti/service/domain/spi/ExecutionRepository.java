@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.spi;
+
+
+import es.wakamiti.service.domain.model.ExecutionRecord;
+import es.wakamiti.service.domain.model.LogEntry;
+
+import java.time.Instant;
+import java.util.List;
+
+
+/**
+ * Keeps the record of every execution, and its log, after it has finished.
+ *
+ * <p>The changes are called in the order they happen to an execution, but
+ * implementations may store them asynchronously, so they are not expected
+ * to be found as soon as the calls return.</p>
+ */
+public interface ExecutionRepository {
+
+    /**
+     * An execution is accepted, whether it starts or waits in the queue.
+     *
+     * @param executionId the execution ID
+     * @param command     the command to execute
+     * @param timestamp   the time of the submission
+     */
+    void submitted(
+            String executionId,
+            String command,
+            Instant timestamp
+    );
+
+    /**
+     * An execution recorded with {@link #submitted} starts running.
+     *
+     * @param executionId the execution ID
+     * @param timestamp   the time it started
+     */
+    void started(
+            String executionId,
+            Instant timestamp
+    );
+
+    /**
+     * An execution produces a log line.
+     *
+     * @param executionId the execution ID
+     * @param entry       the log line, with its sequence number
+     */
+    void logged(
+            String executionId,
+            LogEntry entry
+    );
+
+    /**
+     * An execution ends, after running or stopped while queued.
+     *
+     * @param executionId the execution ID
+     * @param timestamp   the time it ended
+     * @param status      the exit status
+     */
+    void finished(
+            String executionId,
+            Instant timestamp,
+            int status
+    );
+
+    /**
+     * Finds the recorded executions, newest first.
+     *
+     * @param offset the executions to skip
+     * @param limit  the maximum number of executions to return
+     * @return the executions, with the log lines stored so far
+     */
+    List<ExecutionRecord> find(
+            int offset,
+            int limit
+    );
+
+    /**
+     * @return the number of recorded executions
+     */
+    long count();
+
+}
@@ -6,21 +6,42 @@
 package es.wakamiti.service.domain.spi;
 
 
+public interface LogEventPublisher<T> extends LogSink {
 
-public interface LogEventPublisher<T> {
+    /**
+     * Logging context key holding the ID of the execution that produced a
+     * log event. Events without it do not belong to any execution and are
+     * not published.
+     */
+    String EXECUTION_ID = "wakamiti.execution";
+
+    /**
+     * WebSocket subprotocol of the clients receiving the log as compact
+     * binary records instead of text.
+     */
+    String BINARY_PROTOCOL = "wakamiti-log.v1";
 
     void subscribe(
+            String executionId,
             T subscriber
     );
 
     void unsubscribe(
+            String executionId,
             T subscriber
     );
 
-    void publish(
-            String message
+    /**
+     * Waits until every log event produced so far has been published, and
+     * delivered to the subscribers of the execution, so that nothing is
+     * sent after the execution ends.
+     */
+    void flush(
+            String executionId
     );
 
-    void clear();
+    void clear(
+            String executionId
+    );
 
 }
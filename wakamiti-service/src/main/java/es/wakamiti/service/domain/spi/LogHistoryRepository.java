@@ -6,19 +6,66 @@
 package es.wakamiti.service.domain.spi;
 
 
-import java.util.List;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+
+import java.util.stream.Stream;
 
 
 public interface LogHistoryRepository {
 
-    void save(
-            String message
+    /**
+     * Stores an event at the end of the execution log.
+     *
+     * @param executionId the execution ID
+     * @param event       the log event
+     * @return the stored entry, with its sequence number
+     */
+    LogEntry save(
+            String executionId,
+            LogEvent event
     );
 
-    List<String> find();
+    /**
+     * Finds the retained messages of an execution, starting at the given
+     * sequence number. Implementations may have evicted the oldest
+     * messages, so the first entry may have a greater sequence.
+     *
+     * @param executionId  the execution ID
+     * @param fromSequence the first sequence number to return
+     * @return the entries in sequence order, lazily read from the history
+     */
+    Stream<LogEntry> find(
+            String executionId,
+            long fromSequence
+    );
 
-    void clear();
+    default Stream<LogEntry> find(
+            String executionId
+    ) {
+        return find(executionId, 0);
+    }
 
+    /**
+     * Releases the resources held for an execution once it has finished.
+     * In-memory implementations discard its history, maybe a while later,
+     * while persistent ones keep it available to {@link #find(String, long)}.
+     *
+     * @param executionId the execution ID
+     */
+    void close(
+            String executionId
+    );
+
+    /**
+     * @return the number of messages stored for all executions
+     */
     int size();
 
+    /**
+     * @return the approximate size in bytes of the messages counted by
+     * {@link #size()}
+     */
+    long bytes();
+
 }
@@ -0,0 +1,23 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.spi;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+
+
+/**
+ * Where the log events of the executions are published, e.g. by the
+ * runners, which neither subscribe to them nor end them.
+ */
+public interface LogSink {
+
+    void publish(
+            String executionId,
+            LogEvent event
+    );
+
+}
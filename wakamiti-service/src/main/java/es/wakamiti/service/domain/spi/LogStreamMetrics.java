@@ -0,0 +1,38 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.domain.spi;
+
+
+/**
+ * Records the traffic of the log streamed to the clients.
+ */
+public interface LogStreamMetrics {
+
+    /**
+     * A log line is published.
+     */
+    void published();
+
+    /**
+     * A frame is sent to a client.
+     *
+     * @param bytes the size of the frame
+     */
+    void sent(
+            long bytes
+    );
+
+    /**
+     * A frame could not be sent to a client.
+     */
+    void sendFailed();
+
+    /**
+     * A frame is dropped, because the client does not keep up.
+     */
+    void dropped();
+
+}
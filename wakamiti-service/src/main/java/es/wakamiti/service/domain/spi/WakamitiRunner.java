@@ -6,12 +6,41 @@
 package es.wakamiti.service.domain.spi;
 
 
+import es.wakamiti.service.domain.model.ExecutionOptions;
+
+import java.util.List;
+
+
 public interface WakamitiRunner {
 
-    int run(
+    default int run(
             String command
+    ) {
+        return run(command, List.of());
+    }
+
+    /**
+     * Runs the command followed by the given arguments, each one taken as
+     * a single word whatever characters it has, e.g. a path with spaces.
+     */
+    int run(
+            String command,
+            List<String> arguments
     );
 
+    /**
+     * Runs the command, only for the features changed or failed since their
+     * last run if incremental, and split into shards run in parallel if
+     * more than one is asked. Runners that do not track the features run
+     * all of them at once.
+     */
+    default int run(
+            String command,
+            ExecutionOptions options
+    ) {
+        return run(command);
+    }
+
     void stop();
 
 }
@@ -0,0 +1,45 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.exec.CoordinatorProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.execution.coordinator} configuration to the
+ * pool of peers.
+ */
+@ApplicationScoped
+public class CoordinatorPropertiesProvider {
+
+    @Produces
+    public CoordinatorProperties coordinatorProperties(
+            @ConfigProperty(name = "wakamiti.execution.coordinator.peers") Optional<List<String>> peers,
+            @ConfigProperty(name = "wakamiti.execution.coordinator.connect-timeout", defaultValue = "PT2S")
+            Duration connectTimeout,
+            @ConfigProperty(name = "wakamiti.execution.coordinator.idle-timeout", defaultValue = "PT60S")
+            Duration idleTimeout,
+            @ConfigProperty(name = "wakamiti.execution.coordinator.retry-after", defaultValue = "PT30S")
+            Duration retryAfter
+    ) {
+        return new CoordinatorProperties(
+                peers.orElse(List.of()).stream().map(String::trim).map(URI::create).toList(),
+                connectTimeout,
+                idleTimeout,
+                retryAfter
+        );
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.domain.model.ExecutionProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+
+/**
+ * Exposes the {@code wakamiti.execution} configuration to the application
+ * layer, which must not depend on MicroProfile Config directly.
+ */
+@ApplicationScoped
+public class ExecutionPropertiesProvider {
+
+    @Produces
+    public ExecutionProperties executionProperties(
+            @ConfigProperty(name = "wakamiti.execution.max-concurrent", defaultValue = "4") int maxConcurrent,
+            @ConfigProperty(name = "wakamiti.execution.queue-size", defaultValue = "16") int queueSize
+    ) {
+        return new ExecutionProperties(maxConcurrent, queueSize);
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.persistence.ExecutionStoreProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.execution.store} configuration to the
+ * execution repository.
+ */
+@ApplicationScoped
+public class ExecutionStorePropertiesProvider {
+
+    @Produces
+    public ExecutionStoreProperties executionStoreProperties(
+            @ConfigProperty(name = "wakamiti.execution.store.url", defaultValue = "jdbc:h2:mem:wakamiti") String url,
+            @ConfigProperty(name = "wakamiti.execution.store.username", defaultValue = "sa") String username,
+            @ConfigProperty(name = "wakamiti.execution.store.password") Optional<String> password,
+            @ConfigProperty(name = "wakamiti.execution.store.batch-size", defaultValue = "500") int batchSize,
+            @ConfigProperty(name = "wakamiti.execution.store.queue-size", defaultValue = "65536") int queueSize,
+            @ConfigProperty(name = "wakamiti.execution.store.retention", defaultValue = "P7D") Duration retention,
+            @ConfigProperty(name = "wakamiti.execution.store.max-lines", defaultValue = "50000") int maxLines,
+            @ConfigProperty(name = "wakamiti.execution.store.max-stored-lines", defaultValue = "500000") long maxStoredLines
+    ) {
+        return new ExecutionStoreProperties(
+                url, username, password.orElse(""), batchSize, queueSize, retention, maxLines, maxStoredLines
+        );
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.lifecycle.IdleProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.service.idle-timeout} configuration to the
+ * idle shutdown.
+ */
+@ApplicationScoped
+public class IdlePropertiesProvider {
+
+    @Produces
+    public IdleProperties idleProperties(
+            @ConfigProperty(name = "wakamiti.service.idle-timeout") Optional<Duration> timeout
+    ) {
+        return new IdleProperties(timeout.orElse(null));
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.exec.InProcessProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.execution.in-process} configuration to the
+ * cache of plugin classloaders.
+ */
+@ApplicationScoped
+public class InProcessPropertiesProvider {
+
+    @Produces
+    public InProcessProperties inProcessProperties(
+            @ConfigProperty(name = "wakamiti.execution.in-process.main-class") Optional<String> mainClass,
+            @ConfigProperty(name = "wakamiti.execution.in-process.classpath") Optional<List<String>> classpath,
+            @ConfigProperty(name = "wakamiti.execution.in-process.max-loaders", defaultValue = "4") int maxLoaders,
+            @ConfigProperty(name = "wakamiti.execution.in-process.max-heap-ratio", defaultValue = "0.75")
+            double maxHeapRatio,
+            @ConfigProperty(name = "wakamiti.execution.in-process.leak-timeout", defaultValue = "PT1M")
+            Duration leakTimeout
+    ) {
+        return new InProcessProperties(
+                mainClass.orElse(null),
+                classpath.orElse(List.of()),
+                maxLoaders,
+                maxHeapRatio,
+                leakTimeout
+        );
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.exec.IncrementalProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.execution.incremental} configuration to the
+ * cache of feature results.
+ */
+@ApplicationScoped
+public class IncrementalPropertiesProvider {
+
+    @Produces
+    public IncrementalProperties incrementalProperties(
+            @ConfigProperty(
+                    name = "wakamiti.execution.incremental.configuration",
+                    defaultValue = "glob:{wakamiti.yaml,**/wakamiti.yaml}"
+            )
+            String configuration,
+            @ConfigProperty(name = "wakamiti.execution.incremental.plugins") Optional<List<String>> plugins,
+            @ConfigProperty(name = "wakamiti.execution.incremental.cache") Optional<String> cache
+    ) {
+        return new IncrementalProperties(
+                configuration,
+                plugins.orElse(List.of()),
+                cache.map(Path::of).orElseGet(() -> Path.of(System.getProperty("user.home"), ".wakamiti", "results"))
+        );
+    }
+
+}
@@ -39,6 +39,9 @@ public class Log4j2Configurator {
                 .filter(Objects::nonNull)
                 .findFirst()
                 .map(WebSocketAppender.class::cast)
-                .ifPresent(appender -> appender.setPublisher(publisher));
+                .ifPresent(appender -> {
+                    appender.setPublisher(publisher);
+                    publisher.setFlusher(appender::flush);
+                });
     }
 }
\ No newline at end of file
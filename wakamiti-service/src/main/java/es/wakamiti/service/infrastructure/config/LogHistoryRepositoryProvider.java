@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.domain.spi.LogHistoryRepository;
+import es.wakamiti.service.infrastructure.exec.FileLogHistoryRepository;
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Disposes;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+
+/**
+ * Selects the {@link LogHistoryRepository} implementation given by
+ * {@code wakamiti.log.history.store}:
+ * <ul>
+ *   <li>{@code memory}: bounded ring buffers, discarded shortly after the
+ *   execution finishes</li>
+ *   <li>{@code file}: memory-mapped segment files, kept after the execution
+ *   finishes</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class LogHistoryRepositoryProvider {
+
+    private static final String MEMORY = "memory";
+    private static final String FILE = "file";
+
+    @Produces
+    @ApplicationScoped
+    public LogHistoryRepository logHistoryRepository(
+            @ConfigProperty(name = "wakamiti.log.history.store", defaultValue = MEMORY) String store,
+            @ConfigProperty(name = "wakamiti.log.history.max-lines", defaultValue = "50000") int maxLines,
+            @ConfigProperty(name = "wakamiti.log.history.max-bytes", defaultValue = "16777216") long maxBytes,
+            @ConfigProperty(name = "wakamiti.log.history.linger", defaultValue = "PT1M") Duration linger,
+            @ConfigProperty(name = "wakamiti.log.history.directory") Optional<String> directory,
+            @ConfigProperty(name = "wakamiti.log.history.segment-size", defaultValue = "16777216") int segmentSize,
+            @ConfigProperty(name = "wakamiti.log.history.retention", defaultValue = "P7D") Duration retention
+    ) {
+        return switch (store) {
+            case MEMORY -> new InMemoryLogHistoryRepository(maxLines, maxBytes, linger);
+            case FILE -> new FileLogHistoryRepository(
+                    directory.map(Path::of).orElseGet(() -> Path.of(System.getProperty("user.home"), ".wakamiti", "logs")),
+                    segmentSize,
+                    retention
+            );
+            default -> throw new IllegalArgumentException("Unknown log history store: " + store);
+        };
+    }
+
+    public void close(
+            @Disposes LogHistoryRepository history
+    ) {
+        if (history instanceof FileLogHistoryRepository file) {
+            file.shutdown();
+        }
+    }
+
+}
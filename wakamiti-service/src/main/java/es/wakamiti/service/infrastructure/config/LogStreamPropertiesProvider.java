@@ -0,0 +1,35 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.logging.LogStreamProperties;
+import es.wakamiti.service.infrastructure.logging.SlowConsumerPolicy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+
+/**
+ * Exposes the {@code wakamiti.log.stream} configuration to the log event
+ * publisher.
+ */
+@ApplicationScoped
+public class LogStreamPropertiesProvider {
+
+    @Produces
+    public LogStreamProperties logStreamProperties(
+            @ConfigProperty(name = "wakamiti.log.stream.batch-interval", defaultValue = "PT0.05S") Duration batchInterval,
+            @ConfigProperty(name = "wakamiti.log.stream.batch-max-size", defaultValue = "65536") int batchMaxSize,
+            @ConfigProperty(name = "wakamiti.log.stream.queue-size", defaultValue = "1024") int queueSize,
+            @ConfigProperty(name = "wakamiti.log.stream.slow-consumer", defaultValue = "drop") String slowConsumer
+    ) {
+        return new LogStreamProperties(batchInterval, batchMaxSize, queueSize, SlowConsumerPolicy.of(slowConsumer));
+    }
+
+}
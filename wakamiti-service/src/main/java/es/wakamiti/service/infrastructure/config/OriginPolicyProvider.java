@@ -0,0 +1,33 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.webservice.OriginPolicy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.service.allowed-origins} configuration to the
+ * REST resources.
+ */
+@ApplicationScoped
+public class OriginPolicyProvider {
+
+    @Produces
+    public OriginPolicy originPolicy(
+            @ConfigProperty(name = "wakamiti.service.allowed-origins") Optional<List<String>> origins
+    ) {
+        return new OriginPolicy(new HashSet<>(origins.orElse(List.of())));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.CoordinatorWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.DummyWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.FeatureResultCache;
+import es.wakamiti.service.infrastructure.exec.FeatureWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.InProcessWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.PeerPool;
+import es.wakamiti.service.infrastructure.exec.PluginClassLoaderCache;
+import es.wakamiti.service.infrastructure.exec.ProcessWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.WorkerPool;
+import es.wakamiti.service.infrastructure.exec.WorkerWakamitiRunner;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Function;
+
+
+/**
+ * Selects the {@link WakamitiRunner} implementation given by
+ * {@code wakamiti.execution.runner}:
+ * <ul>
+ *   <li>{@code process}: runs the command in a system process, in
+ *   {@code wakamiti.execution.directory} if given</li>
+ *   <li>{@code worker}: runs the command in a worker JVM of the
+ *   {@link WorkerPool}, started along with the service</li>
+ *   <li>{@code in-process}: runs the command inside the service, in a
+ *   classloader of the {@link PluginClassLoaderCache}</li>
+ *   <li>{@code coordinator}: runs the command in a peer service instance of
+ *   the {@link PeerPool}, one per shard</li>
+ *   <li>{@code dummy}: logs fixed lines, whatever the command</li>
+ * </ul>
+ *
+ * <p>The {@code dummy} runner is the default, so that the commands submitted
+ * to a service that has not been configured, e.g. started on demand by the
+ * CLI, are not run in a shell.</p>
+ *
+ * <p>Runners are dependent-scoped, so that every execution gets its own
+ * instance, wrapped in a {@link FeatureWakamitiRunner} which looks for the
+ * features matching {@code wakamiti.execution.features} in the working
+ * directory, for the incremental and sharded executions. The executions are
+ * split into {@code wakamiti.execution.max-shards} shards at most, by
+ * default as many as processors.</p>
+ */
+@ApplicationScoped
+public class WakamitiRunnerProvider {
+
+    private static final String PROCESS = "process";
+    private static final String WORKER = "worker";
+    private static final String IN_PROCESS = "in-process";
+    private static final String COORDINATOR = "coordinator";
+    private static final String DUMMY = "dummy";
+
+    public void initialize(
+            @Observes @Initialized(ApplicationScoped.class) Object init,
+            @ConfigProperty(name = "wakamiti.execution.runner", defaultValue = DUMMY) String runner,
+            WorkerPool pool
+    ) {
+        if (runner.equals(WORKER)) {
+            pool.start();
+        }
+    }
+
+    @Produces
+    @Dependent
+    public WakamitiRunner wakamitiRunner(
+            @ConfigProperty(name = "wakamiti.execution.runner", defaultValue = DUMMY) String runner,
+            @ConfigProperty(name = "wakamiti.execution.directory") Optional<String> directory,
+            LogEventPublisher<?> publisher,
+            WorkerPool pool,
+            PluginClassLoaderCache loaders,
+            PeerPool peers,
+            FeatureResultCache results,
+            @ConfigProperty(name = "wakamiti.execution.features", defaultValue = "glob:**.feature") String features,
+            @ConfigProperty(name = "wakamiti.execution.max-shards") Optional<Integer> maxShards
+    ) {
+        Path workDir = directory.map(Path::of).orElse(null);
+        Function<LogSink, WakamitiRunner> runners = switch (runner) {
+            case PROCESS -> target -> new ProcessWakamitiRunner(target, workDir);
+            case WORKER -> target -> new WorkerWakamitiRunner(pool, target);
+            case IN_PROCESS -> target -> new InProcessWakamitiRunner(loaders, target);
+            case COORDINATOR -> target -> new CoordinatorWakamitiRunner(peers, target);
+            case DUMMY -> _ -> new DummyWakamitiRunner();
+            default -> throw new IllegalArgumentException("Unknown runner: " + runner);
+        };
+        return new FeatureWakamitiRunner(
+                runners,
+                results,
+                publisher,
+                workDir,
+                features,
+                maxShards.orElseGet(Runtime.getRuntime()::availableProcessors)
+        );
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.config;
+
+
+import es.wakamiti.service.infrastructure.exec.WorkerPoolProperties;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Exposes the {@code wakamiti.execution.worker} configuration to the pool
+ * of worker JVMs.
+ */
+@ApplicationScoped
+public class WorkerPoolPropertiesProvider {
+
+    @Produces
+    public WorkerPoolProperties workerPoolProperties(
+            @ConfigProperty(name = "wakamiti.execution.worker.main-class") Optional<String> mainClass,
+            @ConfigProperty(name = "wakamiti.execution.worker.classpath") Optional<List<String>> classpath,
+            @ConfigProperty(name = "wakamiti.execution.worker.jvm-options") Optional<List<String>> jvmOptions,
+            @ConfigProperty(name = "wakamiti.execution.worker.cds-archive") Optional<String> cdsArchive,
+            @ConfigProperty(name = "wakamiti.execution.worker.pool-size", defaultValue = "2") int size,
+            @ConfigProperty(name = "wakamiti.execution.worker.max-runs", defaultValue = "50") int maxRuns,
+            @ConfigProperty(name = "wakamiti.execution.worker.max-memory-growth", defaultValue = "268435456")
+            long maxMemoryGrowth
+    ) {
+        return new WorkerPoolProperties(
+                mainClass.orElse(null),
+                classpath.orElse(List.of()),
+                jvmOptions.orElse(List.of()),
+                cdsArchive.map(Path::of).orElse(null),
+                size,
+                maxRuns,
+                maxMemoryGrowth
+        );
+    }
+
+}
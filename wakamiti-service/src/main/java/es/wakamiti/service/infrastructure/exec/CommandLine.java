@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Words of a command, as the shell splits them: separated by whitespace,
+ * where a word may be quoted to hold whitespace. Between single quotes
+ * every character is taken as is, and between double quotes every one but
+ * {@code \"} and {@code \\}, which stand for the quote and the backslash.
+ *
+ * <p>Unlike the shell, a backslash out of quotes is taken as is, so that
+ * Windows paths need no quoting.</p>
+ */
+final class CommandLine {
+
+    private static final char SINGLE = '\'';
+    private static final char DOUBLE = '"';
+    private static final char ESCAPE = '\\';
+
+    private CommandLine() {
+        // Utility class
+    }
+
+    /**
+     * @return the words of the command
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> split(
+            String command
+    ) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote == SINGLE) {
+                if (c == SINGLE) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (quote == DOUBLE) {
+                if (c == DOUBLE) {
+                    quote = 0;
+                } else if (c == ESCAPE && i + 1 < command.length()
+                        && (command.charAt(i + 1) == DOUBLE || command.charAt(i + 1) == ESCAPE)) {
+                    word.append(command.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                inWord = true;
+                if (c == SINGLE || c == DOUBLE) {
+                    quote = c;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unclosed quote in the command: " + command);
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * @return the argument quoted, so that both {@link #split(String)} and
+     *         a POSIX shell take it as a single word, as is
+     */
+    static String quote(
+            String argument
+    ) {
+        return SINGLE + argument.replace("'", "'\"'\"'") + SINGLE;
+    }
+
+    /**
+     * @return the command followed by the arguments, each one quoted
+     */
+    static String append(
+            String command,
+            List<String> arguments
+    ) {
+        StringBuilder result = new StringBuilder(command.strip());
+        for (String argument : arguments) {
+            result.append(' ').append(quote(argument));
+        }
+        return result.toString();
+    }
+
+}
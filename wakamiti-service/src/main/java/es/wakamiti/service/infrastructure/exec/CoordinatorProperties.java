@@ -0,0 +1,54 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+
+/**
+ * Settings of the coordinator, which runs the executions in peer service
+ * instances.
+ *
+ * @param peers          the base URIs of the peers, e.g.
+ *                       {@code http://localhost:7265/}
+ * @param connectTimeout the time given to a peer to accept a connection
+ * @param idleTimeout    the time a peer running an execution may go without
+ *                       answering, neither with its log nor with the pongs
+ *                       of the pings sent meanwhile, before it is taken as
+ *                       lost
+ * @param retryAfter     the time a failed peer is left aside, while other
+ *                       peers are available
+ */
+public record CoordinatorProperties(
+        List<URI> peers,
+        Duration connectTimeout,
+        Duration idleTimeout,
+        Duration retryAfter
+) {
+
+    public CoordinatorProperties {
+        if (peers == null || peers.isEmpty()) {
+            throw new IllegalArgumentException("Coordinator peers must be given");
+        }
+        if (connectTimeout.isNegative() || connectTimeout.isZero()) {
+            throw new IllegalArgumentException("Coordinator connect timeout must be greater than 0");
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Coordinator idle timeout must be greater than 0");
+        }
+        if (retryAfter.isNegative()) {
+            throw new IllegalArgumentException("Coordinator retry after must not be negative");
+        }
+        // Resolve the endpoints against the base URIs, whatever their form
+        peers = peers.stream()
+                .map(it -> it.getPath() == null || it.getPath().endsWith("/") ? it : URI.create(it + "/"))
+                .toList();
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Runner executing the command in a peer service instance of the
+ * {@link PeerPool}, publishing the log of the peer as the log of the
+ * execution, and ending with the exit status of the peer.
+ *
+ * <p>The arguments are quoted after the command, which the peer splits
+ * again into the same words, as its runner does.</p>
+ *
+ * <p>Along with the sharded executions, every shard runs in its own peer,
+ * so a plan is spread over several machines. The peers must find the
+ * features at the same paths as the coordinator, e.g. in a shared volume
+ * or a checkout in the same directory.</p>
+ *
+ * <p>If a peer cannot be reached, does not accept the execution, or the
+ * connection with it is lost or idle for too long, the execution runs
+ * again from the start in another peer, after telling the clients. The
+ * peer that accepted it is asked to stop it first, if it can still be
+ * reached, so that it does not run twice. The execution ends with the
+ * status {@code 1} once every peer has failed it.</p>
+ *
+ * <p>{@link #stop()} asks the peer to stop the execution, which ends with
+ * the status the peer gives.</p>
+ */
+public class CoordinatorWakamitiRunner implements WakamitiRunner {
+
+    /**
+     * Logger name of the notices about the peers.
+     */
+    static final String COORDINATOR_LOGGER = "service.wakamiti.coordinator";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final int FAILED = 1;
+
+    private final PeerPool peers;
+    private final LogSink publisher;
+
+    private Peer.Watch watch;
+    private boolean stopped;
+
+    public CoordinatorWakamitiRunner(
+            PeerPool peers,
+            LogSink publisher
+    ) {
+        this.peers = peers;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        String id = MDC.get(LogEventPublisher.EXECUTION_ID);
+        String remoteCommand = arguments.isEmpty() ? command : CommandLine.append(command, arguments);
+        Set<Peer> failed = new HashSet<>();
+        Peer peer = peers.acquire(failed);
+        while (peer != null) {
+            try {
+                return run(peer, remoteCommand, id);
+            } catch (Peer.UnavailableException e) {
+                peers.failed(peer);
+                failed.add(peer);
+                notice(id, "Peer %s failed: %s".formatted(peer, e.getMessage()));
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+                return FAILED;
+            } finally {
+                peers.release(peer);
+            }
+            synchronized (this) {
+                if (stopped) {
+                    return FAILED;
+                }
+            }
+            peer = peers.acquire(failed);
+            if (peer != null) {
+                notice(id, "Running again in another peer");
+            }
+        }
+        notice(id, "No peer left to run the execution");
+        return FAILED;
+    }
+
+    private int run(
+            Peer peer,
+            String command,
+            String id
+    ) throws Peer.UnavailableException, InterruptedException {
+        String remoteId = peer.submit(command);
+        LOGGER.debug("Execution {} running in peer {} as {}", id, peer, remoteId);
+        try {
+            Peer.Watch current = peer.watch(remoteId, publisher, id);
+            synchronized (this) {
+                watch = current;
+                if (stopped) {
+                    current.stop();
+                }
+            }
+            try {
+                return current.status();
+            } finally {
+                synchronized (this) {
+                    watch = null;
+                }
+            }
+        } catch (Peer.UnavailableException | InterruptedException e) {
+            // The execution may still be running in the peer
+            peer.stop(remoteId);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (watch != null) {
+            watch.stop();
+        }
+    }
+
+    private void notice(
+            String id,
+            String message
+    ) {
+        publisher.publish(id, LogEvent.of(
+                Instant.now(), "INFO", COORDINATOR_LOGGER, message + System.lineSeparator()
+        ));
+    }
+
+}
@@ -7,15 +7,18 @@ package es.wakamiti.service.infrastructure.exec;
 
 
 import es.wakamiti.service.domain.spi.WakamitiRunner;
-import jakarta.enterprise.context.ApplicationScoped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
-@ApplicationScoped
+/**
+ * Runner logging fixed lines at a slow pace, whatever the command, used
+ * when {@code wakamiti.execution.runner} is {@code dummy}.
+ */
 public class DummyWakamitiRunner implements WakamitiRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("es.wakamiti.core");
@@ -24,13 +27,14 @@ public class DummyWakamitiRunner implements WakamitiRunner {
 
     @Override
     public int run(
-            String command
+            String command,
+            List<String> arguments
     ) {
         started.set(true);
 
         try {
             Thread.sleep(Duration.ofSeconds(3));
-            LOGGER.info("Ejecutando comando: {}", command);
+            LOGGER.info("Ejecutando comando: {}", CommandLine.append(command, arguments));
             Thread.sleep(Duration.ofSeconds(1));
             LOGGER.trace("Esto no debería salir al ws");
             LOGGER.info("Una línea");
@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Feature and configuration files of the working directory of the
+ * executions.
+ */
+final class FeatureFiles {
+
+    private FeatureFiles() {
+        // Utility class
+    }
+
+    /**
+     * Finds the files of a directory matching a pattern, relative to the
+     * directory, in the syntax of
+     * {@link java.nio.file.FileSystem#getPathMatcher(String)}. The hidden
+     * directories, e.g. {@code .git}, are skipped.
+     *
+     * @return the absolute paths of the files, in path order
+     * @throws IOException if the directory cannot be read
+     */
+    static List<Path> find(
+            Path directory,
+            String pattern
+    ) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(pattern);
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path dir,
+                    BasicFileAttributes attributes
+            ) {
+                return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(
+                    Path file,
+                    BasicFileAttributes attributes
+            ) {
+                if (attributes.isRegularFile() && matcher.matches(root.relativize(file))) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        files.sort(null);
+        return files;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+
+/**
+ * Features that passed, kept in a file across the restarts of the service,
+ * so that the incremental executions can skip them while they do not
+ * change.
+ *
+ * <p>A feature is identified by its path, and its result by a SHA-256 hash
+ * of its content along with everything else that may change the result:
+ * the command, the content of the configuration files, and the plugins
+ * with their size and last modification time. A feature is skipped only
+ * while it has the same hash it had when it passed, so changing the
+ * configuration or updating a plugin makes every feature run again.</p>
+ */
+@ApplicationScoped
+public class FeatureResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final String ALGORITHM = "SHA-256";
+
+    private final IncrementalProperties properties;
+    /**
+     * Hash and time of the last pass of the features, by absolute path, or
+     * {@code null} until read from the file.
+     */
+    private Properties passed;
+
+    @Inject
+    public FeatureResultCache(
+            IncrementalProperties properties
+    ) {
+        this.properties = properties;
+    }
+
+    /**
+     * Computes the hashes of the given features of a directory for the
+     * given command.
+     *
+     * @param features the absolute paths of the features, as found by
+     *                 {@link FeatureFiles#find(Path, String)}
+     * @return the hashes of the features, by path, in the given order
+     * @throws UncheckedIOException if the files cannot be read
+     */
+    Map<Path, String> hashes(
+            Path directory,
+            List<Path> features,
+            String command
+    ) {
+        try {
+            directory = directory.toAbsolutePath().normalize();
+            MessageDigest digest = digest();
+            digest.update(command.trim().getBytes(StandardCharsets.UTF_8));
+            for (Path file : FeatureFiles.find(directory, properties.configuration())) {
+                digest.update(directory.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(file));
+            }
+            for (Path plugin : PluginClassLoaderCache.resolve(properties.plugins())) {
+                digest.update((plugin + "@" + Files.size(plugin) + "@" + Files.getLastModifiedTime(plugin).toMillis())
+                                      .getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] context = digest.digest();
+
+            Map<Path, String> hashes = new LinkedHashMap<>();
+            for (Path feature : features) {
+                digest.update(context);
+                digest.update(directory.relativize(feature).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(feature));
+                hashes.put(feature, HexFormat.of().formatHex(digest.digest()));
+            }
+            return hashes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the features of " + directory, e);
+        }
+    }
+
+    /**
+     * @return when the feature last passed, if it had the given hash
+     */
+    synchronized Optional<Instant> passed(
+            Path feature,
+            String hash
+    ) {
+        String entry = load().getProperty(feature.toString());
+        if (entry == null) {
+            return Optional.empty();
+        }
+        String[] parts = entry.split(" ");
+        return parts[0].equals(hash) ? Optional.of(Instant.ofEpochMilli(Long.parseLong(parts[1]))) : Optional.empty();
+    }
+
+    /**
+     * Records the result of the given features, and saves the cache.
+     *
+     * @param features the hashes of the features run, by path
+     * @param passed   whether they passed; otherwise they are forgotten, so
+     *                 that they run again
+     */
+    synchronized void record(
+            Map<Path, String> features,
+            boolean passed
+    ) {
+        Properties cache = load();
+        long now = System.currentTimeMillis();
+        features.forEach((feature, hash) -> {
+            if (passed) {
+                cache.setProperty(feature.toString(), hash + " " + now);
+            } else {
+                cache.remove(feature.toString());
+            }
+        });
+        save(cache);
+    }
+
+    private Properties load() {
+        if (passed == null) {
+            passed = new Properties();
+            try (Reader reader = Files.newBufferedReader(properties.cache(), StandardCharsets.UTF_8)) {
+                passed.load(reader);
+            } catch (NoSuchFileException _) {
+                // Nothing passed yet
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Cannot read the feature results in {}, every feature will run: {}",
+                            properties.cache(), e.getMessage());
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Replaces the file of the cache at once, so that it is never left half
+     * written.
+     */
+    private void save(
+            Properties cache
+    ) {
+        Path file = properties.cache().toAbsolutePath();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                cache.store(writer, "Features passed: path=hash time");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot save the feature results in {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+}
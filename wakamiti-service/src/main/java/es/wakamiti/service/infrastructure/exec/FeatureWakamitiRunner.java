@@ -0,0 +1,346 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.ExecutionOptions;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+/**
+ * Runner choosing the features of the working directory that an execution
+ * runs, and how: skipping those that passed and have not changed since, as
+ * told by the {@link FeatureResultCache}, in the incremental executions,
+ * and splitting them into shards run in parallel, in the sharded ones.
+ *
+ * <p>The features are passed after the command, as absolute paths, each
+ * one as a single argument, and run by a runner of the configured kind. Each shard gets its own runner, run
+ * in its own thread, and the lines it publishes are tagged with the shard,
+ * e.g. {@code [2/8]}, in their text and under {@link #SHARD} in their
+ * diagnostic context. The features are spread by size, the largest first,
+ * so that the shards take about the same time. The execution ends with
+ * the first non-zero status of the shards, if any.</p>
+ *
+ * <p>The features of a shard ending with the status {@code 0} are all
+ * recorded as passed, and otherwise they all run again the next time,
+ * since the status does not tell which of them failed. When no feature
+ * has to run, the execution ends with the status {@code 0} without running
+ * anything.</p>
+ *
+ * <p>The executions neither incremental nor sharded, and those of a
+ * directory without features, run the command as is.</p>
+ */
+public class FeatureWakamitiRunner implements WakamitiRunner {
+
+    /**
+     * Key of the shard in the diagnostic context of the lines it publishes.
+     */
+    public static final String SHARD = "wakamiti.shard";
+    /**
+     * Logger name of the notices about the features run.
+     */
+    static final String FEATURES_LOGGER = "service.wakamiti.features";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final int STOPPED = 1;
+
+    private final Function<LogSink, WakamitiRunner> runners;
+    private final FeatureResultCache cache;
+    private final LogSink publisher;
+    private final Path directory;
+    private final String features;
+    private final int maxShards;
+
+    /**
+     * Runners in progress, one per shard.
+     */
+    private final List<WakamitiRunner> running = new ArrayList<>();
+    private boolean stopped;
+
+    /**
+     * @param runners   creates a runner publishing to the given sink
+     * @param directory the working directory with the features, or
+     *                  {@code null} for the one of the service
+     * @param features  the pattern of the feature files, relative to the
+     *                  working directory, in the syntax of
+     *                  {@link java.nio.file.FileSystem#getPathMatcher(String)}
+     * @param maxShards the number of shards an execution is split into at
+     *                  most
+     */
+    public FeatureWakamitiRunner(
+            Function<LogSink, WakamitiRunner> runners,
+            FeatureResultCache cache,
+            LogSink publisher,
+            Path directory,
+            String features,
+            int maxShards
+    ) {
+        if (maxShards < 1) {
+            throw new IllegalArgumentException("Max shards must be greater than 0");
+        }
+        this.runners = runners;
+        this.cache = cache;
+        this.publisher = publisher;
+        this.directory = directory == null ? Path.of("") : directory;
+        this.features = features;
+        this.maxShards = maxShards;
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        return launch(command, arguments, publisher);
+    }
+
+    @Override
+    public int run(
+            String command,
+            ExecutionOptions options
+    ) {
+        int shards = Math.min(options.shards(), maxShards);
+        if (!options.incremental() && shards == 1) {
+            return launch(command, List.of(), publisher);
+        }
+        String id = MDC.get(LogEventPublisher.EXECUTION_ID);
+        List<Path> found;
+        try {
+            found = FeatureFiles.find(directory, features);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot find the features of " + directory.toAbsolutePath(), e);
+        }
+        if (found.isEmpty()) {
+            notice(id, "No features found, running the command as is");
+            return launch(command, List.of(), publisher);
+        }
+
+        List<Path> selected = found;
+        Map<Path, String> hashes = Map.of();
+        if (options.incremental()) {
+            hashes = cache.hashes(directory, found, command);
+            selected = new ArrayList<>();
+            for (Map.Entry<Path, String> feature : hashes.entrySet()) {
+                Optional<Instant> passed = cache.passed(feature.getKey(), feature.getValue());
+                if (passed.isPresent()) {
+                    notice(id, "Skipped %s: passed unchanged at %s".formatted(feature.getKey(), passed.get()));
+                } else {
+                    selected.add(feature.getKey());
+                }
+            }
+            if (selected.isEmpty()) {
+                notice(id, "All %d features passed unchanged".formatted(found.size()));
+                return 0;
+            }
+            notice(id, "Running %d of %d features, changed or failed since their last run"
+                    .formatted(selected.size(), found.size()));
+        }
+
+        List<List<Path>> parts = split(selected, shards);
+        int[] statuses = parts.size() == 1
+                ? new int[] {launch(command, arguments(parts.getFirst()), publisher)}
+                : runShards(id, command, parts);
+        if (options.incremental()) {
+            for (int i = 0; i < parts.size(); i++) {
+                Map<Path, String> run = new LinkedHashMap<>();
+                for (Path feature : parts.get(i)) {
+                    run.put(feature, hashes.get(feature));
+                }
+                cache.record(run, statuses[i] == 0);
+            }
+        }
+        for (int status : statuses) {
+            if (status != 0) {
+                return status;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        running.forEach(WakamitiRunner::stop);
+    }
+
+    /**
+     * Runs the command in a new runner, unless stopped.
+     */
+    private int launch(
+            String command,
+            List<String> arguments,
+            LogSink target
+    ) {
+        WakamitiRunner runner;
+        synchronized (this) {
+            if (stopped) {
+                return STOPPED;
+            }
+            runner = runners.apply(target);
+            running.add(runner);
+        }
+        try {
+            return runner.run(command, arguments);
+        } finally {
+            synchronized (this) {
+                running.remove(runner);
+            }
+        }
+    }
+
+    /**
+     * Runs every shard in its own thread, and waits for all of them.
+     *
+     * @return the status of each shard
+     */
+    private int[] runShards(
+            String id,
+            String command,
+            List<List<Path>> parts
+    ) {
+        int[] statuses = new int[parts.size()];
+        List<Thread> threads = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            int shard = i;
+            String tag = (i + 1) + "/" + parts.size();
+            List<String> shardArguments = arguments(parts.get(i));
+            notice(id, "Shard %s: %d features".formatted(tag, parts.get(i).size()));
+            threads.add(Thread.ofVirtual().name("wakamiti-shard-" + id + "-" + (i + 1)).start(() -> {
+                MDC.put(LogEventPublisher.EXECUTION_ID, id);
+                MDC.put(SHARD, tag);
+                try {
+                    statuses[shard] = launch(command, shardArguments, new ShardSink(publisher, tag));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Shard {} of execution {} failed: {}", tag, id, e.getMessage(), e);
+                    statuses[shard] = 1;
+                } finally {
+                    MDC.remove(SHARD);
+                    MDC.remove(LogEventPublisher.EXECUTION_ID);
+                }
+            }));
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException _) {
+                    // Stop the shards, and keep waiting for them to end
+                    interrupted = true;
+                    stop();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return statuses;
+    }
+
+    /**
+     * Spreads the features into the given number of shards at most, each
+     * one to the shard with the least bytes so far, from the largest.
+     */
+    private static List<List<Path>> split(
+            List<Path> features,
+            int shards
+    ) {
+        int count = Math.min(shards, features.size());
+        List<List<Path>> parts = new ArrayList<>(count);
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            parts.add(new ArrayList<>());
+        }
+        Map<Path, Long> bytes = features.stream().collect(Collectors.toMap(Function.identity(), FeatureWakamitiRunner::size));
+        List<Path> largestFirst = new ArrayList<>(features);
+        largestFirst.sort(Comparator.<Path, Long>comparing(bytes::get).reversed());
+        for (Path feature : largestFirst) {
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            parts.get(smallest).add(feature);
+            sizes[smallest] += bytes.get(feature);
+        }
+        parts.forEach(part -> part.sort(null));
+        return parts;
+    }
+
+    private static long size(
+            Path feature
+    ) {
+        try {
+            return Files.size(feature);
+        } catch (IOException _) {
+            return 0;
+        }
+    }
+
+    private static List<String> arguments(
+            List<Path> features
+    ) {
+        return features.stream().map(Path::toString).toList();
+    }
+
+    private void notice(
+            String id,
+            String message
+    ) {
+        publisher.publish(id, LogEvent.of(
+                Instant.now(), "INFO", FEATURES_LOGGER, message + System.lineSeparator()
+        ));
+    }
+
+    /**
+     * Sink of the lines of a shard, tagged with the shard.
+     */
+    private static final class ShardSink implements LogSink {
+
+        private final LogSink publisher;
+        private final String tag;
+
+        private ShardSink(
+                LogSink publisher,
+                String tag
+        ) {
+            this.publisher = publisher;
+            this.tag = tag;
+        }
+
+        @Override
+        public void publish(
+                String executionId,
+                LogEvent event
+        ) {
+            publisher.publish(executionId, event.tagged(SHARD, tag));
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogHistoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+
+/**
+ * Log history persisted on local disk, in append-only memory-mapped segment
+ * files.
+ *
+ * <p>The log of each execution is written to its own directory, so it is
+ * kept after the execution finishes (and across service restarts) for
+ * post-mortem analysis, without holding it in the Java heap: replay and
+ * range reads of the executions in progress are served from the mapped
+ * segments. Once closed, the segments of an execution are truncated and
+ * unmapped, and every read of its log reads the files it reaches, so that
+ * no mapping nor open file is left behind. Execution directories older
+ * than the configured retention are deleted when the repository starts, and
+ * then every {@link #PURGE_INTERVAL}.</p>
+ *
+ * <p>Saving to the log of an execution already closed reopens it, and the
+ * events are appended after those already written.</p>
+ */
+public class FileLogHistoryRepository implements LogHistoryRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WakamitiServiceApplication.NAME);
+    private static final Pattern EXECUTION_ID = Pattern.compile("[\\w-]+");
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+
+    /**
+     * Logs of the executions in progress, by execution ID.
+     */
+    private final Map<String, SegmentedLog> logs = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ScheduledExecutorService purger;
+
+    public FileLogHistoryRepository(
+            Path directory,
+            int segmentSize,
+            Duration retention
+    ) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be greater than 0");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        purge(retention);
+        purger = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("wakamiti-log-purge").daemon().factory());
+        purger.scheduleWithFixedDelay(
+                () -> purge(retention),
+                PURGE_INTERVAL.toMillis(),
+                PURGE_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    public LogEntry save(
+            String executionId,
+            LogEvent event
+    ) {
+        return logs.computeIfAbsent(executionId, id -> SegmentedLog.create(resolve(id), segmentSize))
+                .append(event);
+    }
+
+    @Override
+    public Stream<LogEntry> find(
+            String executionId,
+            long fromSequence
+    ) {
+        SegmentedLog log = logs.get(executionId);
+        if (log == null) {
+            if (!EXECUTION_ID.matcher(executionId).matches() || !Files.isDirectory(resolve(executionId))) {
+                return Stream.empty();
+            }
+            log = SegmentedLog.open(resolve(executionId));
+        }
+        return log.from(fromSequence);
+    }
+
+    /**
+     * Flushes the log of the execution to disk, and unmaps it. The log is
+     * kept, and can still be read with {@link #find(String, long)}.
+     */
+    @Override
+    public void close(
+            String executionId
+    ) {
+        SegmentedLog log = logs.remove(executionId);
+        if (log != null) {
+            log.seal();
+        }
+    }
+
+    /**
+     * @return the number of messages stored for the executions in progress
+     */
+    @Override
+    public int size() {
+        return logs.values().stream().mapToInt(SegmentedLog::size).sum();
+    }
+
+    /**
+     * @return the bytes written for the executions in progress
+     */
+    @Override
+    public long bytes() {
+        return logs.values().stream().mapToLong(SegmentedLog::bytes).sum();
+    }
+
+    /**
+     * Stops purging, and flushes the logs of the executions in progress.
+     */
+    public void shutdown() {
+        purger.shutdownNow();
+        List.copyOf(logs.keySet()).forEach(this::close);
+    }
+
+    private Path resolve(
+            String executionId
+    ) {
+        if (!EXECUTION_ID.matcher(executionId).matches()) {
+            throw new IllegalArgumentException("Invalid execution ID: " + executionId);
+        }
+        return directory.resolve(executionId);
+    }
+
+    /**
+     * Deletes the logs of the executions not in progress whose directory was
+     * last modified before the retention.
+     */
+    public void purge(
+            Duration retention
+    ) {
+        FileTime limit = FileTime.from(Instant.now().minus(retention));
+        try (Stream<Path> executions = Files.list(directory)) {
+            for (Path execution : executions.filter(Files::isDirectory).toList()) {
+                if (!logs.containsKey(execution.getFileName().toString())
+                        && Files.getLastModifiedTime(execution).compareTo(limit) < 0) {
+                    delete(execution);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Unable to purge expired execution logs in {}", directory, e);
+        }
+    }
+
+    private static void delete(
+            Path execution
+    ) throws IOException {
+        try (Stream<Path> files = Files.walk(execution)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
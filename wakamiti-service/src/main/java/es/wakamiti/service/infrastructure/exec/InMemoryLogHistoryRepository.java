@@ -6,42 +6,145 @@
 package es.wakamiti.service.infrastructure.exec;
 
 
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
 import es.wakamiti.service.domain.spi.LogHistoryRepository;
-import jakarta.enterprise.context.ApplicationScoped;
 
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 
-@ApplicationScoped
+/**
+ * Log history kept in memory, in a bounded ring buffer per execution.
+ *
+ * <p>Each execution retains at most {@code wakamiti.log.history.max-lines}
+ * lines and {@code wakamiti.log.history.max-bytes} bytes; the oldest lines
+ * are evicted first.</p>
+ *
+ * <p>The history of a finished execution is kept for
+ * {@code wakamiti.log.history.linger}, so that it is still replayed to the
+ * clients that start watching the execution right after it ends, e.g. a
+ * coordinator that submitted it. Only the last {@value #LINGERING} finished
+ * executions are kept this way.</p>
+ */
 public class InMemoryLogHistoryRepository implements LogHistoryRepository {
 
+    private static final int LINGERING = 16;
+
     /**
-     * Thread-safe deque for storing log messages in chronological order.
+     * Ring buffers storing log messages in chronological order, by
+     * execution ID.
      */
-    private final Deque<String> buffer = new ConcurrentLinkedDeque<>();
+    private final Map<String, LogRingBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * When the history of each finished execution is discarded, as given by
+     * {@link System#nanoTime()}, from the first one to finish.
+     */
+    private final Map<String, Long> finished = new LinkedHashMap<>();
+
+    private final int maxLines;
+    private final long maxBytes;
+    private final long linger;
+
+    public InMemoryLogHistoryRepository(
+            int maxLines,
+            long maxBytes
+    ) {
+        this(maxLines, maxBytes, Duration.ZERO);
+    }
+
+    /**
+     * @param linger how long the history of a finished execution is kept
+     */
+    public InMemoryLogHistoryRepository(
+            int maxLines,
+            long maxBytes,
+            Duration linger
+    ) {
+        if (maxLines < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Log history limits must be greater than 0");
+        }
+        if (linger.isNegative()) {
+            throw new IllegalArgumentException("Log history linger must not be negative");
+        }
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.linger = linger.toNanos();
+    }
 
     @Override
-    public void save(
-            String message
+    public LogEntry save(
+            String executionId,
+            LogEvent event
     ) {
-        buffer.addLast(message);
+        LogRingBuffer buffer = buffers.get(executionId);
+        if (buffer == null) {
+            // Checked once per execution, not per line
+            expire();
+            buffer = buffers.computeIfAbsent(executionId, _ -> new LogRingBuffer(maxLines, maxBytes));
+        }
+        return buffer.add(event);
     }
 
     @Override
-    public List<String> find() {
-        return new ArrayList<>(buffer);
+    public Stream<LogEntry> find(
+            String executionId,
+            long fromSequence
+    ) {
+        LogRingBuffer buffer = buffers.get(executionId);
+        return buffer == null ? Stream.empty() : buffer.from(fromSequence);
     }
 
     @Override
-    public void clear() {
-        buffer.clear();
+    public void close(
+            String executionId
+    ) {
+        if (linger == 0) {
+            buffers.remove(executionId);
+            return;
+        }
+        synchronized (finished) {
+            finished.remove(executionId);
+            finished.put(executionId, System.nanoTime() + linger);
+        }
+        expire();
+    }
+
+    /**
+     * Discards the history of the finished executions kept for too long, or
+     * beyond the last {@value #LINGERING}.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        synchronized (finished) {
+            Iterator<Map.Entry<String, Long>> iterator = finished.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> execution = iterator.next();
+                if (finished.size() <= LINGERING && execution.getValue() - now > 0) {
+                    break;
+                }
+                buffers.remove(execution.getKey());
+                iterator.remove();
+            }
+        }
     }
 
     @Override
     public int size() {
-        return buffer.size();
+        return buffers.values().stream().mapToInt(LogRingBuffer::size).sum();
     }
+
+    /**
+     * @return the estimated heap taken by the messages of all executions
+     */
+    @Override
+    public long bytes() {
+        return buffers.values().stream().mapToLong(LogRingBuffer::bytes).sum();
+    }
+
 }
@@ -0,0 +1,50 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.time.Duration;
+import java.util.List;
+
+
+/**
+ * Settings of the executions run inside the service.
+ *
+ * @param mainClass    the main class of the plans
+ * @param classpath    the classpath of the plans, where {@code dir/*}
+ *                     stands for the jar files in the directory
+ * @param maxLoaders   the number of classloaders kept for reuse
+ * @param maxHeapRatio the ratio of the maximum heap that, once retained,
+ *                     makes the least recently used classloader be
+ *                     discarded
+ * @param leakTimeout  the time a discarded classloader is given to be
+ *                     garbage collected before it is reported as leaked
+ */
+public record InProcessProperties(
+        String mainClass,
+        List<String> classpath,
+        int maxLoaders,
+        double maxHeapRatio,
+        Duration leakTimeout
+) {
+
+    public InProcessProperties {
+        if (mainClass == null || mainClass.isBlank()) {
+            throw new IllegalArgumentException("In-process main class must be given");
+        }
+        if (maxLoaders < 1) {
+            throw new IllegalArgumentException("In-process max loaders must be greater than 0");
+        }
+        if (maxHeapRatio <= 0 || maxHeapRatio > 1) {
+            throw new IllegalArgumentException("In-process max heap ratio must be between 0 and 1");
+        }
+        if (leakTimeout.isNegative() || leakTimeout.isZero()) {
+            throw new IllegalArgumentException("In-process leak timeout must be greater than 0");
+        }
+        classpath = List.copyOf(classpath);
+    }
+
+}
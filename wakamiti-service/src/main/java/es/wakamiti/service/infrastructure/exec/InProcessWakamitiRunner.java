@@ -0,0 +1,133 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Runner executing the command inside the service, calling the main class
+ * of the plans with the words of the command, split as by
+ * {@link CommandLine}, followed by the given arguments, in a classloader
+ * of the {@link PluginClassLoaderCache}.
+ *
+ * <p>The command may start with {@code -cp <classpath>} to add plugins to
+ * the configured classpath, with its entries separated by
+ * {@link File#pathSeparator}.</p>
+ *
+ * <p>What the plan writes to the standard output and error, from the
+ * execution thread or the threads it starts, is published line by line,
+ * as the output of the processes. A plan failing with an exception ends
+ * with the status {@code 1}, after publishing its stack trace. Plans run this way must not call
+ * {@link System#exit(int)}, which would stop the service.</p>
+ *
+ * <p>{@link #stop()} interrupts the execution thread, and the execution
+ * ends with the status {@code 1}.</p>
+ */
+public class InProcessWakamitiRunner implements WakamitiRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final String CLASSPATH = "-cp";
+
+    private final PluginClassLoaderCache loaders;
+    private final LogSink publisher;
+
+    private Thread thread;
+    private boolean stopped;
+
+    public InProcessWakamitiRunner(
+            PluginClassLoaderCache loaders,
+            LogSink publisher
+    ) {
+        this.loaders = loaders;
+        this.publisher = publisher;
+        RoutedOutput.install();
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        String id = MDC.get(LogEventPublisher.EXECUTION_ID);
+        List<String> words = new ArrayList<>(CommandLine.split(command));
+        words.addAll(arguments);
+        List<String> classpath = List.of();
+        if (words.size() > 1 && words.getFirst().equals(CLASSPATH)) {
+            classpath = List.of(words.get(1).split(File.pathSeparator));
+            words = words.subList(2, words.size());
+        }
+
+        PluginClassLoaderCache.Entry entry;
+        try {
+            entry = loaders.lease(classpath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot resolve the classpath of the command: " + command, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load the main class of the plans", e);
+        }
+        synchronized (this) {
+            if (stopped) {
+                loaders.release(entry);
+                return 1;
+            }
+            thread = Thread.currentThread();
+        }
+        LOGGER.debug("Execution {} running in-process: {}", id, command);
+
+        int status = 0;
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(entry.loader());
+        RoutedOutput.route(publisher, id);
+        try {
+            entry.main().invoke(null, (Object) words.toArray(String[]::new));
+        } catch (InvocationTargetException e) {
+            // Published as is, whether the standard error is routed or not
+            StringWriter trace = new StringWriter();
+            e.getCause().printStackTrace(new PrintWriter(trace));
+            trace.toString().lines().forEach(line -> ProcessOutput.publish(publisher, id, line));
+            status = 1;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot run the main class of the plans", e);
+        } finally {
+            RoutedOutput.unroute();
+            Thread.currentThread().setContextClassLoader(previous);
+            synchronized (this) {
+                thread = null;
+                // Clear the interruption of stop()
+                Thread.interrupted();
+            }
+            loaders.release(entry);
+        }
+        synchronized (this) {
+            return stopped ? 1 : status;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.nio.file.Path;
+import java.util.List;
+
+
+/**
+ * Settings of the incremental executions.
+ *
+ * @param configuration the pattern of the configuration files, relative to
+ *                      the working directory, in the syntax of
+ *                      {@link java.nio.file.FileSystem#getPathMatcher(String)},
+ *                      whose changes make every feature run again
+ * @param plugins       the plugins, whose updates make every feature run
+ *                      again, where {@code dir/*} stands for the jar files
+ *                      in the directory
+ * @param cache         the file keeping the features that passed
+ */
+public record IncrementalProperties(
+        String configuration,
+        List<String> plugins,
+        Path cache
+) {
+
+    public IncrementalProperties {
+        if (configuration == null || configuration.isBlank()) {
+            throw new IllegalArgumentException("Incremental configuration pattern must be given");
+        }
+        if (cache == null) {
+            throw new IllegalArgumentException("Incremental cache file must be given");
+        }
+        plugins = List.copyOf(plugins);
+    }
+
+}
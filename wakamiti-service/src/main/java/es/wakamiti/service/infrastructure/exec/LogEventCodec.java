@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+
+/**
+ * Binary form of a {@link LogEvent} in the segment files.
+ *
+ * <p>An event is stored as the epoch milliseconds of its timestamp
+ * ({@code long}), the UTF-8 level, thread and logger names, each preceded by
+ * its length ({@code short}), the UTF-8 message preceded by its length
+ * ({@code int}), and finally its text form. Since the text is usually the
+ * message, maybe followed by a line separator, a byte tells whether the text
+ * is stored or derived from the message; if stored, it takes the rest of the
+ * record.</p>
+ *
+ * <p>The stored event is already formatted: the diagnostic context and the
+ * message arguments are not kept.</p>
+ */
+final class LogEventCodec {
+
+    private static final byte TEXT_IS_MESSAGE = 0;
+    private static final byte TEXT_IS_LINE = 1;
+    private static final byte TEXT_STORED = 2;
+
+    private LogEventCodec() {
+        // Utility class
+    }
+
+    static byte[] encode(
+            LogEvent event
+    ) {
+        byte[] level = bytes(event.level());
+        byte[] thread = bytes(event.thread());
+        byte[] logger = bytes(event.logger());
+        String message = event.message();
+        String text = event.text();
+        byte mode = text.equals(message) ? TEXT_IS_MESSAGE
+                : text.length() == message.length() + System.lineSeparator().length()
+                && text.startsWith(message) && text.endsWith(System.lineSeparator()) ? TEXT_IS_LINE
+                : TEXT_STORED;
+        byte[] messageBytes = bytes(message);
+        byte[] textBytes = mode == TEXT_STORED ? bytes(text) : new byte[0];
+        return ByteBuffer.allocate(Long.BYTES + 3 * Short.BYTES + level.length + thread.length + logger.length
+                                           + Integer.BYTES + messageBytes.length + 1 + textBytes.length)
+                .putLong(event.timestamp().toEpochMilli())
+                .putShort((short) level.length).put(level)
+                .putShort((short) thread.length).put(thread)
+                .putShort((short) logger.length).put(logger)
+                .putInt(messageBytes.length).put(messageBytes)
+                .put(mode)
+                .put(textBytes)
+                .array();
+    }
+
+    static LogEvent decode(
+            byte[] record
+    ) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+        String level = string(buffer, Short.toUnsignedInt(buffer.getShort()));
+        String thread = string(buffer, Short.toUnsignedInt(buffer.getShort()));
+        String logger = string(buffer, Short.toUnsignedInt(buffer.getShort()));
+        String message = string(buffer, buffer.getInt());
+        String text = switch (buffer.get()) {
+            case TEXT_IS_MESSAGE -> message;
+            case TEXT_IS_LINE -> message + System.lineSeparator();
+            default -> string(buffer, buffer.remaining());
+        };
+        return new LogEvent(timestamp, level, thread, logger, Map.of(), message, null, () -> text);
+    }
+
+    private static byte[] bytes(
+            String value
+    ) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(
+            ByteBuffer buffer,
+            int length
+    ) {
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+}
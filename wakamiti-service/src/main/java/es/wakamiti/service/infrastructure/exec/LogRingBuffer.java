@@ -0,0 +1,150 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+
+/**
+ * Fixed-capacity, lock-free ring buffer of log entries.
+ *
+ * <p>Producers claim a sequence number with a single atomic increment and
+ * write the entry into the slot {@code sequence % capacity}, overwriting
+ * (evicting) the entry stored {@code capacity} positions before. When the
+ * retained entries exceed the byte budget, the oldest ones are evicted too,
+ * but the newest entry is always kept. Each slot keeps the weight the entry
+ * had when added, which is the one given back when it is evicted.</p>
+ *
+ * <p>Readers never lock nor copy the buffer: they walk the sequence range
+ * between the oldest retained entry and the last claimed one, and skip the
+ * slots that have been evicted or not written yet.</p>
+ */
+final class LogRingBuffer {
+
+    /**
+     * A retained entry, with its weight when added.
+     */
+    private record Slot(
+            LogEntry entry,
+            long weight
+    ) {
+
+    }
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final long maxBytes;
+
+    /**
+     * Next sequence number to claim.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Oldest sequence number retained.
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    LogRingBuffer(
+            int maxLines,
+            long maxBytes
+    ) {
+        this.slots = new AtomicReferenceArray<>(maxLines);
+        this.maxBytes = maxBytes;
+    }
+
+    LogEntry add(
+            LogEvent event
+    ) {
+        long sequence = tail.getAndIncrement();
+        LogEntry entry = new LogEntry(sequence, event);
+        Slot slot = new Slot(entry, weight(event));
+        Slot evicted = slots.getAndSet(index(sequence), slot);
+        if (evicted != null) {
+            bytes.addAndGet(-evicted.weight());
+            advanceHead(evicted.entry().sequence() + 1);
+        }
+        bytes.addAndGet(slot.weight());
+        while (bytes.get() > maxBytes && evictOldest(sequence)) {
+            // Keep evicting until the byte budget is met
+        }
+        return entry;
+    }
+
+    Stream<LogEntry> from(
+            long fromSequence
+    ) {
+        long end = tail.get();
+        long start = Math.max(Math.max(fromSequence, head.get()), end - slots.length());
+        return LongStream.range(start, end)
+                .mapToObj(sequence -> {
+                    Slot slot = slots.get(index(sequence));
+                    return slot != null && slot.entry().sequence() == sequence ? slot.entry() : null;
+                })
+                .filter(Objects::nonNull);
+    }
+
+    int size() {
+        return (int) Math.min(tail.get() - head.get(), slots.length());
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Evicts the oldest retained entry, if it is older than the given
+     * sequence number.
+     *
+     * @return {@code false} if there is nothing left to evict
+     */
+    private boolean evictOldest(
+            long before
+    ) {
+        long oldest = head.get();
+        if (oldest >= before) {
+            return false;
+        }
+        int index = index(oldest);
+        Slot slot = slots.get(index);
+        if (slot != null && slot.entry().sequence() == oldest && slots.compareAndSet(index, slot, null)) {
+            bytes.addAndGet(-slot.weight());
+        }
+        advanceHead(oldest + 1);
+        return true;
+    }
+
+    private void advanceHead(
+            long sequence
+    ) {
+        head.accumulateAndGet(sequence, Math::max);
+    }
+
+    private int index(
+            long sequence
+    ) {
+        return (int) (sequence % slots.length());
+    }
+
+    /**
+     * Approximate heap footprint of the message characters, estimated
+     * without formatting the event. The estimate changes once the event is
+     * formatted, so it is only taken when the entry is added.
+     */
+    private static long weight(
+            LogEvent event
+    ) {
+        return (long) event.estimatedLength() * Character.BYTES;
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Append-only file holding consecutive log entries, memory-mapped while it
+ * is written.
+ *
+ * <p>Each record is an {@code int} header with the length of the encoded
+ * event plus one, followed by the event bytes (see {@link LogEventCodec});
+ * a {@code 0} header marks the end of the written data, since the file is
+ * mapped (and sized) as a whole when it is created.</p>
+ *
+ * <p>Once sealed, the mapping is released and the file is truncated to the
+ * written data. Sealed segments, and those opened from an existing file,
+ * hold no mapping nor open file: they are read from the file by each
+ * stream, only when the stream reaches them.</p>
+ *
+ * <p>The position of every {@value #INDEX_INTERVAL}th record is kept in a
+ * sparse in-memory index, so that reading from a given sequence number only
+ * has to skip a few records. Only one thread may append at a time, while
+ * any number of threads may read concurrently: records are published by
+ * the volatile write of {@link #count}, and the buffer is always accessed
+ * by absolute position. A stream reading the mapping when the segment is
+ * sealed goes on reading the file, where the records keep their
+ * position.</p>
+ */
+final class LogSegment {
+
+    private static final int HEADER = Integer.BYTES;
+    private static final int INDEX_INTERVAL = 128;
+    private static final int UNKNOWN = -1;
+
+    private final Path file;
+    private final long baseSequence;
+    private final Arena arena;
+    private final MemorySegment mapping;
+    private final ByteBuffer buffer;
+
+    private volatile int[] index = new int[16];
+    private volatile int count;
+    private volatile boolean sealed;
+    private int position;
+
+    private LogSegment(
+            Path file,
+            long baseSequence,
+            Arena arena,
+            MemorySegment mapping
+    ) {
+        this.file = file;
+        this.baseSequence = baseSequence;
+        this.arena = arena;
+        this.mapping = mapping;
+        this.buffer = mapping == null ? null : mapping.asByteBuffer();
+        this.sealed = mapping == null;
+    }
+
+    /**
+     * Creates a new, empty segment, mapped until sealed.
+     */
+    static LogSegment create(
+            Path file,
+            long baseSequence,
+            int size
+    ) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new LogSegment(file, baseSequence, arena,
+                                  channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing, sealed segment. Its entries are only counted once
+     * {@link #recover()} is called.
+     */
+    static LogSegment open(
+            Path file,
+            long baseSequence
+    ) {
+        LogSegment segment = new LogSegment(file, baseSequence, null, null);
+        segment.count = UNKNOWN;
+        return segment;
+    }
+
+    static int recordSize(
+            byte[] record
+    ) {
+        return HEADER + record.length;
+    }
+
+    /**
+     * Counts and indexes the entries of an opened segment, reading the file
+     * once.
+     */
+    void recover() {
+        ByteBuffer data = read();
+        int found = 0;
+        while (hasRecord(data, position)) {
+            indexRecord(found);
+            position += HEADER + data.getInt(position) - 1;
+            found++;
+        }
+        count = found;
+    }
+
+    /**
+     * Appends an encoded event, if it fits in the segment.
+     *
+     * @return {@code false} if the segment is full or sealed
+     */
+    boolean append(
+            byte[] record
+    ) {
+        if (sealed || position + recordSize(record) > buffer.capacity()) {
+            return false;
+        }
+        indexRecord(count);
+        buffer.put(position + HEADER, record);
+        buffer.putInt(position, record.length + 1);
+        position += recordSize(record);
+        count = count + 1;
+        return true;
+    }
+
+    private void indexRecord(
+            int record
+    ) {
+        if (record % INDEX_INTERVAL == 0) {
+            int slot = record / INDEX_INTERVAL;
+            int[] positions = index;
+            if (slot == positions.length) {
+                positions = Arrays.copyOf(positions, slot * 2);
+            }
+            positions[slot] = position;
+            index = positions;
+        }
+    }
+
+    Stream<LogEntry> from(
+            long sequence
+    ) {
+        int available = count;
+        int first = (int) Math.min(Math.max(sequence, baseSequence) - baseSequence, Integer.MAX_VALUE);
+        if (available != UNKNOWN && first >= available) {
+            return Stream.empty();
+        }
+        int[] positions = index;
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<LogEntry>(
+                available == UNKNOWN ? Long.MAX_VALUE : available - first,
+                Spliterator.ORDERED | Spliterator.NONNULL | (available == UNKNOWN ? 0 : Spliterator.SIZED)) {
+
+            private ByteBuffer data;
+            private int next;
+            private int position;
+
+            @Override
+            public boolean tryAdvance(
+                    Consumer<? super LogEntry> action
+            ) {
+                if (data == null) {
+                    data = sealed ? read() : buffer;
+                    try {
+                        skip(available == UNKNOWN ? 0 : first / INDEX_INTERVAL * INDEX_INTERVAL,
+                             available == UNKNOWN ? 0 : positions[first / INDEX_INTERVAL]);
+                    } catch (IllegalStateException _) {
+                        // Sealed meanwhile
+                        data = read();
+                        skip(next, position);
+                    }
+                }
+                if (available == UNKNOWN ? !hasRecord(data, position) : next >= available) {
+                    return false;
+                }
+                byte[] record;
+                try {
+                    record = record(data, position);
+                } catch (IllegalStateException _) {
+                    // Sealed meanwhile
+                    data = read();
+                    record = record(data, position);
+                }
+                action.accept(new LogEntry(baseSequence + next, LogEventCodec.decode(record)));
+                position += recordSize(record);
+                next++;
+                return true;
+            }
+
+            private void skip(
+                    int record,
+                    int offset
+            ) {
+                next = record;
+                position = offset;
+                while (next < first && hasRecord(data, position)) {
+                    position += HEADER + data.getInt(position) - 1;
+                    next++;
+                }
+            }
+        }, false);
+    }
+
+    private static boolean hasRecord(
+            ByteBuffer data,
+            int position
+    ) {
+        int header;
+        return position + HEADER <= data.capacity()
+                && (header = data.getInt(position)) > 0
+                && position + HEADER + header - 1 <= data.capacity();
+    }
+
+    private static byte[] record(
+            ByteBuffer data,
+            int position
+    ) {
+        byte[] record = new byte[data.getInt(position) - 1];
+        data.get(position + HEADER, record);
+        return record;
+    }
+
+    private ByteBuffer read() {
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of entries, or {@code -1} for an opened segment
+     *         not recovered
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the bytes written, approximate while another thread appends
+     */
+    int bytes() {
+        // Reading the count first makes the position of its records visible
+        return count <= 0 ? 0 : position;
+    }
+
+    /**
+     * Flushes the written entries to disk, releases the mapping and
+     * truncates the file to the written data. Nothing can be appended
+     * afterwards.
+     */
+    void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        mapping.force();
+        sealed = true;
+        arena.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(position);
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.spi.LogSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Peer service instance, running executions through its {@code POST /exec}
+ * and {@code /exec/{id}} WebSocket endpoints, as any other client.
+ *
+ * <p>The log is received in batched text frames, split into lines and
+ * published again as lines of the local execution. The execution ends when
+ * the peer closes the WebSocket with its exit status.</p>
+ *
+ * <p>While the peer sends nothing, it is pinged, and it is taken as lost
+ * when it neither sends the log nor answers for the idle timeout. The peer
+ * keeps the log of an execution for a while after it ends, so that it is
+ * replayed from the start even if the execution ends before it is
+ * watched.</p>
+ */
+final class Peer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final String STOP = "STOP";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int NORMAL_CLOSURE = 1000;
+    /**
+     * Pings sent within the idle timeout, so that a peer with a slow answer
+     * is not taken as lost.
+     */
+    private static final int PINGS = 4;
+
+    /**
+     * The peer cannot run the execution, or has stopped answering, so the
+     * execution should be moved to another one.
+     */
+    static final class UnavailableException extends IOException {
+
+        UnavailableException(
+                String message
+        ) {
+            super(message);
+        }
+
+        UnavailableException(
+                String message,
+                Throwable cause
+        ) {
+            super(message, cause);
+        }
+
+    }
+
+    /**
+     * Execution watched in the peer.
+     */
+    static final class Watch {
+
+        private final WebSocket socket;
+        private final Listener listener;
+        private final Duration idleTimeout;
+
+        private Watch(
+                WebSocket socket,
+                Listener listener,
+                Duration idleTimeout
+        ) {
+            this.socket = socket;
+            this.listener = listener;
+            this.idleTimeout = idleTimeout;
+        }
+
+        /**
+         * Asks the peer to stop the execution.
+         */
+        void stop() {
+            socket.sendText(STOP, true);
+        }
+
+        /**
+         * Waits for the end of the execution.
+         *
+         * @return the exit status of the execution in the peer
+         * @throws UnavailableException if the connection with the peer is
+         *                              lost, or it does not answer for the
+         *                              idle timeout
+         * @throws InterruptedException if interrupted while waiting
+         */
+        int status() throws UnavailableException, InterruptedException {
+            long interval = idleTimeout.toNanos() / PINGS;
+            while (true) {
+                try {
+                    return listener.status.get(interval, TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof UnavailableException unavailable
+                            ? unavailable
+                            : new UnavailableException("Lost the connection: " + e.getCause().getMessage(),
+                                                       e.getCause());
+                } catch (TimeoutException _) {
+                    if (System.nanoTime() - listener.received >= idleTimeout.toNanos()) {
+                        socket.abort();
+                        throw new UnavailableException("No answer for " + idleTimeout);
+                    }
+                    socket.sendPing(ByteBuffer.allocate(0));
+                }
+            }
+        }
+
+    }
+
+    private final URI uri;
+    private final HttpClient client;
+    private final Duration idleTimeout;
+
+    /**
+     * Executions in progress.
+     */
+    int active;
+    /**
+     * Until when the peer is left aside after failing, if so.
+     */
+    Instant downUntil = Instant.MIN;
+
+    Peer(
+            URI uri,
+            HttpClient client,
+            Duration idleTimeout
+    ) {
+        this.uri = uri;
+        this.client = client;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Submits a command to the peer.
+     *
+     * @return the ID of the execution in the peer
+     * @throws UnavailableException     if the peer cannot be reached, or
+     *                                  does not accept more executions
+     * @throws IllegalArgumentException if the peer rejects the command
+     * @throws InterruptedException     if interrupted while waiting
+     */
+    String submit(
+            String command
+    ) throws UnavailableException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri.resolve("exec"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(command, StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UnavailableException("Cannot submit the command: " + e, e);
+        }
+        return switch (response.statusCode()) {
+            case 202 -> response.body().trim();
+            case 400, 404 -> throw new IllegalArgumentException(response.body());
+            default -> throw new UnavailableException(
+                    "Command not accepted, status " + response.statusCode() + ": " + response.body()
+            );
+        };
+    }
+
+    /**
+     * Watches an execution of the peer, publishing its lines as the lines
+     * of the given local execution.
+     *
+     * @throws UnavailableException if the WebSocket cannot be opened
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Watch watch(
+            String remoteId,
+            LogSink publisher,
+            String id
+    ) throws UnavailableException, InterruptedException {
+        Listener listener = new Listener(publisher, id);
+        try {
+            WebSocket socket = client.newWebSocketBuilder()
+                    .buildAsync(socketUri(remoteId, "?batch=true"), listener)
+                    .get();
+            return new Watch(socket, listener, idleTimeout);
+        } catch (ExecutionException e) {
+            throw new UnavailableException("Cannot watch the execution: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Asks the peer to stop an execution, through a WebSocket of its own,
+     * without waiting for it. Nothing is done if the peer cannot be reached.
+     */
+    void stop(
+            String remoteId
+    ) {
+        client.newWebSocketBuilder()
+                .buildAsync(socketUri(remoteId, ""), new WebSocket.Listener() { })
+                .thenCompose(socket -> socket.sendText(STOP, true))
+                .thenCompose(socket -> socket.sendClose(NORMAL_CLOSURE, ""))
+                .orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((_, error) -> {
+                    if (error != null) {
+                        LOGGER.debug("Cannot stop execution {} in peer {}: {}", remoteId, this, error.toString());
+                    }
+                });
+    }
+
+    private URI socketUri(
+            String remoteId,
+            String query
+    ) {
+        return URI.create(uri.resolve("exec/" + remoteId).toString().replaceFirst("^http", "ws") + query);
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+
+    /**
+     * Publishes the lines of the text frames, and completes the status when
+     * the peer closes the WebSocket.
+     */
+    private static final class Listener implements WebSocket.Listener {
+
+        private final LogSink publisher;
+        private final String id;
+        private final CompletableFuture<Integer> status = new CompletableFuture<>();
+        private final StringBuilder frame = new StringBuilder();
+        /**
+         * When the peer sent something last, as given by {@link System#nanoTime()}.
+         */
+        private volatile long received = System.nanoTime();
+
+        private Listener(
+                LogSink publisher,
+                String id
+        ) {
+            this.publisher = publisher;
+            this.id = id;
+        }
+
+        @Override
+        public CompletionStage<?> onText(
+                WebSocket socket,
+                CharSequence data,
+                boolean last
+        ) {
+            received = System.nanoTime();
+            frame.append(data);
+            if (last) {
+                int start = 0;
+                for (int i = 0; i < frame.length(); i++) {
+                    if (frame.charAt(i) == '\n') {
+                        int end = i > start && frame.charAt(i - 1) == '\r' ? i - 1 : i;
+                        ProcessOutput.publish(publisher, id, frame.substring(start, end));
+                        start = i + 1;
+                    }
+                }
+                if (start < frame.length()) {
+                    ProcessOutput.publish(publisher, id, frame.substring(start));
+                }
+                frame.setLength(0);
+            }
+            socket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(
+                WebSocket socket,
+                ByteBuffer message
+        ) {
+            received = System.nanoTime();
+            socket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(
+                WebSocket socket,
+                int statusCode,
+                String reason
+        ) {
+            if (statusCode != NORMAL_CLOSURE) {
+                status.completeExceptionally(new UnavailableException(
+                        "Connection closed with code " + statusCode + ": " + reason
+                ));
+            } else {
+                try {
+                    status.complete(Integer.parseInt(reason.trim()));
+                } catch (NumberFormatException _) {
+                    status.completeExceptionally(new UnavailableException("Connection closed without status"));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void onError(
+                WebSocket socket,
+                Throwable error
+        ) {
+            status.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Peer service instances the coordinator runs the executions in.
+ *
+ * <p>Every execution goes to the available peer with the fewest executions
+ * in progress, the first one configured in case of a tie. A peer that
+ * fails is left aside for {@link CoordinatorProperties#retryAfter()}, and
+ * only used in that time if no other peer is available.</p>
+ */
+@ApplicationScoped
+public class PeerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+
+    private final CoordinatorProperties properties;
+    private final HttpClient client;
+    private final List<Peer> peers;
+
+    @Inject
+    public PeerPool(
+            CoordinatorProperties properties
+    ) {
+        this.properties = properties;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(properties.connectTimeout())
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.peers = properties.peers().stream().map(uri -> new Peer(uri, client, properties.idleTimeout())).toList();
+    }
+
+    /**
+     * Takes the peer to run an execution in.
+     *
+     * @param excluded the peers that already failed the execution
+     * @return the peer, or {@code null} if all of them are excluded
+     */
+    synchronized Peer acquire(
+            Collection<Peer> excluded
+    ) {
+        Instant now = Instant.now();
+        Peer peer = peers.stream()
+                .filter(it -> !excluded.contains(it))
+                .min(Comparator.comparing((Peer it) -> it.downUntil.isAfter(now))
+                             .thenComparingInt(it -> it.active))
+                .orElse(null);
+        if (peer != null) {
+            peer.active++;
+        }
+        return peer;
+    }
+
+    /**
+     * Gives back a peer once the execution has finished in it.
+     */
+    synchronized void release(
+            Peer peer
+    ) {
+        peer.active--;
+    }
+
+    /**
+     * Leaves aside a peer that failed.
+     */
+    synchronized void failed(
+            Peer peer
+    ) {
+        peer.downUntil = Instant.now().plus(properties.retryAfter());
+        LOGGER.warn("Peer {} failed, left aside for {}", peer, properties.retryAfter());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.shutdownNow();
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+/**
+ * Classloaders of the plans run inside the service, kept for reuse, so
+ * that the next runs with the same plugins find their classes loaded and
+ * their code already compiled.
+ *
+ * <p>The classloaders are keyed by the resolved classpath: the entries
+ * with their last modification time, with {@code dir/*} expanded to the
+ * jar files in the directory, so that an updated plugin gets a new
+ * classloader. They only see the classes of the JDK, and not those of the
+ * service.</p>
+ *
+ * <p>At most {@link InProcessProperties#maxLoaders()} are kept, and the
+ * least recently used one that is not in use is discarded when there are
+ * more, or when the heap retained after the garbage collections exceeds
+ * {@link InProcessProperties#maxHeapRatio()} of the maximum. A discarded
+ * classloader is closed, and reported as leaked if it has not been
+ * collected after {@link InProcessProperties#leakTimeout()}, along with
+ * the threads still using it.</p>
+ *
+ * <p>The lock of the cache only guards its entries: the classpath is
+ * resolved, the classloaders are created and their plans loaded, and the
+ * leaks are looked for, without holding it.</p>
+ */
+@ApplicationScoped
+public class PluginClassLoaderCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final String WILDCARD = "*";
+
+    /**
+     * Cached classloader, its main method of the plans, and the number of
+     * executions using it.
+     */
+    static final class Entry {
+
+        private final List<String> key;
+        private final URLClassLoader loader;
+        private volatile Method main;
+        private int users;
+
+        private Entry(
+                List<String> key,
+                URLClassLoader loader
+        ) {
+            this.key = key;
+            this.loader = loader;
+        }
+
+        ClassLoader loader() {
+            return loader;
+        }
+
+        /**
+         * @return the main method of the plans, loaded by the classloader
+         */
+        Method main() {
+            return main;
+        }
+
+        /**
+         * Loads the main method of the plans, once.
+         */
+        private synchronized void load(
+                String mainClass
+        ) throws ReflectiveOperationException {
+            if (main == null) {
+                main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+            }
+        }
+
+    }
+
+    private record Discarded(
+            List<String> key,
+            WeakReference<ClassLoader> loader,
+            Instant time
+    ) {
+
+    }
+
+    private final InProcessProperties properties;
+    /**
+     * Cached classloaders, from the least to the most recently used.
+     */
+    private final Map<List<String>, Entry> loaders = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Discarded> discarded = new ArrayList<>();
+
+    @Inject
+    public PluginClassLoaderCache(
+            InProcessProperties properties
+    ) {
+        this.properties = properties;
+    }
+
+    /**
+     * Takes the classloader of the configured classpath and the given
+     * entries, creating it if there is none.
+     *
+     * @throws IOException                 if the classpath cannot be
+     *                                      resolved
+     * @throws ReflectiveOperationException if the main class of the plans
+     *                                      cannot be loaded
+     */
+    Entry lease(
+            List<String> classpath
+    ) throws IOException, ReflectiveOperationException {
+        checkLeaks();
+        List<Path> paths = resolve(Stream.concat(properties.classpath().stream(), classpath.stream()).toList());
+        List<String> key = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            key.add(path + "@" + Files.getLastModifiedTime(path).toMillis());
+        }
+        Entry entry = acquire(key, null);
+        if (entry == null) {
+            URL[] urls = new URL[paths.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = paths.get(i).toUri().toURL();
+            }
+            Entry created = new Entry(
+                    key, new URLClassLoader("wakamiti-plugins", urls, ClassLoader.getPlatformClassLoader())
+            );
+            entry = acquire(key, created);
+            if (entry == created) {
+                LOGGER.debug("Created classloader for {}", key);
+            } else {
+                // Created meanwhile by another execution
+                created.loader.close();
+            }
+        }
+        try {
+            entry.load(properties.mainClass());
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            release(entry);
+            throw e;
+        }
+        return entry;
+    }
+
+    /**
+     * Takes the cached classloader of the given key, or caches the given
+     * one if there is none, and evicts the least recently used ones beyond
+     * the limit.
+     *
+     * @param created the classloader to cache, or {@code null} to only take
+     *                a cached one
+     * @return the classloader taken, or {@code null} if there is none and
+     *         none is given
+     */
+    private synchronized Entry acquire(
+            List<String> key,
+            Entry created
+    ) {
+        Entry entry = loaders.get(key);
+        if (entry == null) {
+            if (created == null) {
+                return null;
+            }
+            entry = created;
+            loaders.put(key, entry);
+        }
+        entry.users++;
+        while (loaders.size() > properties.maxLoaders() && evict()) {
+            // Evict until within the limit, or all are in use
+        }
+        return entry;
+    }
+
+    /**
+     * Gives back a classloader, and discards one if the heap retained is
+     * beyond the limit.
+     */
+    void release(
+            Entry entry
+    ) {
+        boolean full = WakamitiWorker.heap() > properties.maxHeapRatio() * Runtime.getRuntime().maxMemory();
+        synchronized (this) {
+            entry.users--;
+            if (full) {
+                LOGGER.debug("Heap retained beyond {} of the maximum", properties.maxHeapRatio());
+                evict();
+            }
+        }
+        checkLeaks();
+    }
+
+    /**
+     * Resolves the entries of a classpath to absolute paths, with
+     * {@code dir/*} expanded to the jar files in the directory.
+     */
+    static List<Path> resolve(
+            List<String> classpath
+    ) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (String entry : classpath) {
+            if (entry.endsWith(WILDCARD)) {
+                Path directory = Path.of(entry.substring(0, entry.length() - WILDCARD.length())).toAbsolutePath();
+                try (Stream<Path> files = Files.list(directory)) {
+                    files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                            .sorted()
+                            .forEach(paths::add);
+                }
+            } else {
+                paths.add(Path.of(entry).toAbsolutePath().normalize());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Discards the least recently used classloader not in use.
+     *
+     * @return {@code false} if all are in use
+     */
+    private boolean evict() {
+        Iterator<Entry> iterator = loaders.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.users == 0) {
+                iterator.remove();
+                discard(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void discard(
+            Entry entry
+    ) {
+        LOGGER.debug("Discarding classloader for {}", entry.key);
+        try {
+            entry.loader.close();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot close the classloader for {}: {}", entry.key, e.getMessage());
+        }
+        discarded.add(new Discarded(entry.key, new WeakReference<>(entry.loader), Instant.now()));
+    }
+
+    /**
+     * Forgets the discarded classloaders already collected, and reports
+     * those not collected in time, which are then forgotten too. The
+     * threads using them are looked for after releasing the lock, since it
+     * takes a snapshot of every thread.
+     */
+    private void checkLeaks() {
+        Instant limit = Instant.now().minus(properties.leakTimeout());
+        List<Discarded> leaked = new ArrayList<>();
+        synchronized (this) {
+            discarded.removeIf(it -> {
+                if (it.loader().get() == null) {
+                    return true;
+                }
+                if (it.time().isAfter(limit)) {
+                    return false;
+                }
+                leaked.add(it);
+                return true;
+            });
+        }
+        for (Discarded it : leaked) {
+            ClassLoader loader = it.loader().get();
+            if (loader == null) {
+                continue;
+            }
+            List<String> threads = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getContextClassLoader() == loader)
+                    .map(Thread::getName)
+                    .toList();
+            LOGGER.warn("Classloader for {} has not been collected {} after being discarded, "
+                                + "it may be leaking. Threads using it: {}",
+                        it.key(), properties.leakTimeout(), threads);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        loaders.values().forEach(this::discard);
+        loaders.clear();
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+
+
+/**
+ * Output of a process, read in chunks of up to {@value #BUFFER_SIZE} bytes
+ * and split into lines in place, without copying them.
+ *
+ * <p>A line cut at the end of a chunk is moved to the start of the buffer
+ * to be completed by the next one, and the buffer grows up to
+ * {@value #MAX_LINE_LENGTH} bytes if the line does not fit. Longer lines
+ * are split, between two characters.</p>
+ *
+ * <p>The bytes after the line where the {@link LineHandler} stops the
+ * reading are kept for the next {@link #read(LineHandler)}, so the same
+ * output can be read in several parts, e.g. one per execution of a
+ * worker.</p>
+ */
+final class ProcessOutput {
+
+    /**
+     * Logger name of the lines written by the processes.
+     */
+    static final String OUTPUT_LOGGER = "es.wakamiti.core";
+
+    /**
+     * Encoding of the output of the processes.
+     */
+    static final Charset CHARSET = Charset.forName(
+            System.getProperty("native.encoding"), Charset.defaultCharset()
+    );
+    static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @FunctionalInterface
+    interface LineHandler {
+
+        /**
+         * @param buffer the buffer holding the line
+         * @param start  the first byte of the line
+         * @param end    the end of the line (exclusive), without the line
+         *               terminator
+         * @return {@code false} to stop reading after this line
+         */
+        boolean line(
+                byte[] buffer,
+                int start,
+                int end
+        );
+
+    }
+
+    private final InputStream input;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * First byte not handled yet.
+     */
+    private int start;
+    /**
+     * End of the bytes already scanned for a line terminator.
+     */
+    private int scanned;
+    /**
+     * End of the bytes read.
+     */
+    private int end;
+
+    ProcessOutput(
+            InputStream input
+    ) {
+        this.input = input;
+    }
+
+    /**
+     * Reads lines until the handler asks to stop, or the output ends. The
+     * last line is handled even if it has no terminator.
+     *
+     * @return {@code true} if the handler stopped the reading, or
+     *         {@code false} if the output ended
+     * @throws IOException if the output cannot be read
+     */
+    boolean read(
+            LineHandler handler
+    ) throws IOException {
+        while (true) {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    int line = start;
+                    start = i + 1;
+                    scanned = start;
+                    if (!handler.line(buffer, line, i > line && buffer[i - 1] == '\r' ? i - 1 : i)) {
+                        return true;
+                    }
+                }
+            }
+            scanned = end;
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                scanned = end;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                if (buffer.length < MAX_LINE_LENGTH) {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_LENGTH));
+                } else {
+                    // The bytes of the last character if it is cut are kept for the next part
+                    start = boundary(buffer, 0, end);
+                    if (!handler.line(buffer, 0, start)) {
+                        return true;
+                    }
+                    continue;
+                }
+            }
+            int read = input.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                if (end > start) {
+                    int line = start;
+                    start = end;
+                    scanned = end;
+                    handler.line(buffer, line, end);
+                }
+                return false;
+            }
+            end += read;
+        }
+    }
+
+    void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * End of the last whole character of the given bytes, so that a line
+     * split there does not cut a multi-byte UTF-8 sequence in two. Other
+     * encodings are split anywhere.
+     *
+     * @param start the first byte of the line
+     * @param end   the end of the bytes of the line (exclusive)
+     */
+    static int boundary(
+            byte[] buffer,
+            int start,
+            int end
+    ) {
+        if (!StandardCharsets.UTF_8.equals(CHARSET)) {
+            return end;
+        }
+        // Up to 3 continuation bytes follow the first byte of a character
+        int first = end - 1;
+        while (first > start && first > end - 4 && (buffer[first] & 0xC0) == 0x80) {
+            first--;
+        }
+        int b = buffer[first];
+        int length = (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 1;
+        return first > start && first + length > end ? first : end;
+    }
+
+    static String decode(
+            byte[] buffer,
+            int start,
+            int end
+    ) {
+        return new String(buffer, start, end - start, CHARSET);
+    }
+
+    /**
+     * Publishes a line of the output of the given execution. Its text form,
+     * with the line separator, is only built if some client asks for it.
+     */
+    static void publish(
+            LogSink publisher,
+            String id,
+            byte[] buffer,
+            int start,
+            int end
+    ) {
+        publish(publisher, id, decode(buffer, start, end));
+    }
+
+    /**
+     * Publishes a line of the output of the given execution, without its
+     * line separator.
+     */
+    static void publish(
+            LogSink publisher,
+            String id,
+            String line
+    ) {
+        publisher.publish(id, new LogEvent(
+                Instant.now(),
+                "INFO",
+                Thread.currentThread().getName(),
+                OUTPUT_LOGGER,
+                Map.of(LogEventPublisher.EXECUTION_ID, id),
+                line,
+                null,
+                () -> line + System.lineSeparator()
+        ));
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/**
+ * Runner executing the command in a system process, through the platform
+ * shell ({@code sh -c} or {@code cmd /c}), with its standard error merged
+ * into its standard output. The arguments are quoted, so that the shell
+ * takes each one as a single word.
+ *
+ * <p>The {@link ProcessOutput} is read on a virtual thread, in large
+ * chunks, and every line is published as soon as it is read, straight to
+ * the {@link LogSink} of the execution bound to the logging
+ * context of {@link #run(String, List)}. Nothing else is buffered: each line is
+ * decoded once from the chunk it was read into.</p>
+ *
+ * <p>{@link #stop()} destroys the process and all its descendants, and
+ * kills those still alive after {@link #STOP_TIMEOUT}. A stopped execution
+ * ends with the status {@code 1}, whatever the process returned.</p>
+ *
+ * <p>A descendant left in the background (e.g. {@code cmd &}) may keep the
+ * output open after the process exits. The rest of the output is read for
+ * {@link #OUTPUT_TIMEOUT} at most, then the descendants are destroyed and
+ * the output is closed. Once the process exits its descendants are no
+ * longer linked to it, so they are taken while it runs, every
+ * {@link #TREE_INTERVAL} at most; those started just before it exits may
+ * be missed, and then left running.</p>
+ */
+public class ProcessWakamitiRunner implements WakamitiRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration OUTPUT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration TREE_INTERVAL = Duration.ofSeconds(1);
+
+    private final LogSink publisher;
+    private final Path directory;
+
+    private volatile Process process;
+    /**
+     * Descendants of the process, the last time they were taken.
+     */
+    private volatile List<ProcessHandle> tree = List.of();
+    private volatile boolean stopped;
+    /**
+     * Whether the rest of the output is discarded, because it was held
+     * open too long after the process exited.
+     */
+    private volatile boolean abandoned;
+
+    /**
+     * @param publisher where the output lines are published
+     * @param directory the working directory of the process, or
+     *                  {@code null} for the one of the service
+     */
+    public ProcessWakamitiRunner(
+            LogSink publisher,
+            Path directory
+    ) {
+        this.publisher = publisher;
+        this.directory = directory;
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        String id = MDC.get(LogEventPublisher.EXECUTION_ID);
+        ProcessBuilder builder = new ProcessBuilder(shell(command, arguments)).redirectErrorStream(true);
+        if (directory != null) {
+            builder.directory(directory.toFile());
+        }
+
+        Thread reader;
+        InputStream output;
+        try {
+            synchronized (this) {
+                if (stopped) {
+                    return 1;
+                }
+                process = builder.start();
+            }
+            LOGGER.debug("Execution {} started process {}: {}", id, process.pid(), command);
+            // Close the standard input, so that the process does not wait for it
+            process.getOutputStream().close();
+            output = process.getInputStream();
+            reader = Thread.ofVirtual()
+                    .name("wakamiti-output-" + process.pid())
+                    .start(() -> read(id, output));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start the command: " + command, e);
+        }
+
+        try {
+            int status = waitFor(process);
+            // The output may still be read after the process exits
+            reader.join(OUTPUT_TIMEOUT.toMillis());
+            if (reader.isAlive()) {
+                LOGGER.warn("Output of process {} of execution {} still open {} after it exited, "
+                                    + "destroying its descendants", process.pid(), id, OUTPUT_TIMEOUT);
+                abandon(output);
+            }
+            LOGGER.debug("Process {} of execution {} exited with status {}", process.pid(), id, status);
+            return stopped ? 1 : status;
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            destroy(process, tree);
+            return -1;
+        }
+    }
+
+    /**
+     * Waits for the process to exit, taking its descendants meanwhile, more
+     * often at first since most of them are started early.
+     */
+    private int waitFor(
+            Process process
+    ) throws InterruptedException {
+        long interval = 10;
+        while (!process.waitFor(interval, TimeUnit.MILLISECONDS)) {
+            tree = process.descendants().toList();
+            interval = Math.min(interval * 2, TREE_INTERVAL.toMillis());
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * Discards the rest of the output, destroys the descendants that hold
+     * it open and closes it.
+     */
+    private void abandon(
+            InputStream output
+    ) {
+        abandoned = true;
+        destroy(process, tree);
+        try {
+            output.close();
+        } catch (IOException _) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public void stop() {
+        Process current;
+        synchronized (this) {
+            stopped = true;
+            current = process;
+        }
+        if (current != null) {
+            destroy(current, tree);
+        }
+    }
+
+    /**
+     * @return the ID of the process, if it has been started
+     */
+    public Optional<Long> pid() {
+        return Optional.ofNullable(process).map(Process::pid);
+    }
+
+    private static List<String> shell(
+            String command,
+            List<String> arguments
+    ) {
+        if (System.getProperty("os.name").toLowerCase().startsWith("windows")) {
+            // Windows paths cannot hold double quotes
+            StringBuilder line = new StringBuilder(command.strip());
+            arguments.forEach(argument -> line.append(" \"").append(argument).append('"'));
+            return List.of("cmd.exe", "/c", line.toString());
+        }
+        return List.of("/bin/sh", "-c", CommandLine.append(command, arguments));
+    }
+
+    /**
+     * Destroys the process and its descendants, which would otherwise keep
+     * running, and holding the output open, after the process dies. Those
+     * still alive after the {@link #STOP_TIMEOUT} are killed.
+     */
+    static void destroy(
+            Process process
+    ) {
+        destroy(process, List.of());
+    }
+
+    /**
+     * Destroys the process, its descendants and the given ones, taken
+     * before, which are no longer linked to it if it has exited.
+     */
+    static void destroy(
+            Process process,
+            List<ProcessHandle> known
+    ) {
+        // Taken before destroying the process, so its children are still linked to it
+        List<ProcessHandle> tree = Stream.concat(process.descendants(), known.stream()).distinct().toList();
+        LOGGER.debug("Destroying process {} and its {} descendants", process.pid(), tree.size());
+        tree.forEach(ProcessHandle::destroy);
+        process.destroy();
+        CompletableFuture.allOf(Stream.concat(Stream.of(process.toHandle()), tree.stream())
+                                        .map(ProcessHandle::onExit)
+                                        .toArray(CompletableFuture[]::new))
+                .orTimeout(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((_, _) -> {
+                    tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+                    if (process.isAlive()) {
+                        process.destroyForcibly();
+                    }
+                });
+    }
+
+    private void read(
+            String id,
+            InputStream output
+    ) {
+        ProcessOutput lines = new ProcessOutput(output);
+        try {
+            lines.read((buffer, start, end) -> {
+                if (abandoned) {
+                    return false;
+                }
+                if (id != null) {
+                    ProcessOutput.publish(publisher, id, buffer, start, end);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            // The stream is closed when the process is destroyed
+            LOGGER.debug("Output of execution {} closed: {}", id, e.getMessage());
+        } finally {
+            try {
+                lines.close();
+            } catch (IOException _) {
+                // Already closed
+            }
+        }
+    }
+
+}
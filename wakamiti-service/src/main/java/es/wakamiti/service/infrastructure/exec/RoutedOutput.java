@@ -0,0 +1,214 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.spi.LogSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+
+/**
+ * Standard output and error of the service shared by the executions run
+ * in-process, writing to the output of the execution of the current
+ * thread, or of the thread that started it, if any.
+ *
+ * <p>Threads started by a plan before the execution, e.g. in a pool, keep
+ * writing to the output of the service.</p>
+ *
+ * <p>The log of the service is not routed: the console appender writes it
+ * to the output of the service captured before (see
+ * {@code ServiceConsoleAppender}).</p>
+ */
+final class RoutedOutput extends OutputStream {
+
+    private static final InheritableThreadLocal<LineOutput> TARGET = new InheritableThreadLocal<>();
+
+    private final OutputStream fallback;
+
+    private RoutedOutput(
+            OutputStream fallback
+    ) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Replaces the standard output and error, once.
+     */
+    static synchronized void install() {
+        if (!(System.out instanceof Routed)) {
+            System.setOut(new Routed(new RoutedOutput(System.out)));
+        }
+        if (!(System.err instanceof Routed)) {
+            System.setErr(new Routed(new RoutedOutput(System.err)));
+        }
+    }
+
+    /**
+     * Routes the output of the current thread, and those it starts, to the
+     * given execution.
+     */
+    static void route(
+            LogSink publisher,
+            String id
+    ) {
+        TARGET.set(new LineOutput(publisher, id));
+    }
+
+    /**
+     * Sends the output of the current thread back to the service, after
+     * publishing the last line of the execution, if it has no terminator.
+     */
+    static void unroute() {
+        System.out.flush();
+        System.err.flush();
+        LineOutput output = TARGET.get();
+        TARGET.remove();
+        if (output != null) {
+            output.close();
+        }
+    }
+
+    private OutputStream target() {
+        LineOutput output = TARGET.get();
+        return output == null || output.closed ? fallback : output;
+    }
+
+    @Override
+    public void write(
+            int b
+    ) throws IOException {
+        target().write(b);
+    }
+
+    @Override
+    public void write(
+            byte[] b,
+            int off,
+            int len
+    ) throws IOException {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        fallback.flush();
+    }
+
+    private static final class Routed extends PrintStream {
+
+        private Routed(
+                RoutedOutput output
+        ) {
+            super(output, true, ProcessOutput.CHARSET);
+        }
+
+    }
+
+    /**
+     * Output of an execution, published line by line.
+     */
+    private static final class LineOutput extends OutputStream {
+
+        private final LogSink publisher;
+        private final String id;
+        private byte[] buffer = new byte[256];
+        private int length;
+        private volatile boolean closed;
+
+        private LineOutput(
+                LogSink publisher,
+                String id
+        ) {
+            this.publisher = publisher;
+            this.id = id;
+        }
+
+        @Override
+        public synchronized void write(
+                int b
+        ) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(
+                byte[] b,
+                int off,
+                int len
+        ) {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    append(b, start, i - start);
+                    publish();
+                    start = i + 1;
+                }
+            }
+            append(b, start, off + len - start);
+        }
+
+        /**
+         * Adds bytes to the current line, which is split between two
+         * characters if it grows beyond {@link ProcessOutput#MAX_LINE_LENGTH}.
+         */
+        private void append(
+                byte[] b,
+                int off,
+                int len
+        ) {
+            while (len > 0) {
+                if (length == ProcessOutput.MAX_LINE_LENGTH) {
+                    split();
+                }
+                if (length + len > buffer.length && buffer.length < ProcessOutput.MAX_LINE_LENGTH) {
+                    buffer = Arrays.copyOf(
+                            buffer, Math.min(Math.max(buffer.length * 2, length + len), ProcessOutput.MAX_LINE_LENGTH)
+                    );
+                }
+                int copied = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, copied);
+                length += copied;
+                off += copied;
+                len -= copied;
+            }
+        }
+
+        /**
+         * Publishes the whole characters of the current line, and keeps the
+         * bytes of the last one if it is cut.
+         */
+        private void split() {
+            int cut = ProcessOutput.boundary(buffer, 0, length);
+            if (id != null) {
+                ProcessOutput.publish(publisher, id, buffer, 0, cut);
+            }
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+
+        private void publish() {
+            int end = length > 0 && buffer[length - 1] == '\r' ? length - 1 : length;
+            if (id != null) {
+                ProcessOutput.publish(publisher, id, buffer, 0, end);
+            }
+            length = 0;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed && length > 0) {
+                publish();
+            }
+            closed = true;
+        }
+
+    }
+
+}
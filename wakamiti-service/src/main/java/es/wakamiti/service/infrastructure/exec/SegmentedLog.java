@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+
+/**
+ * The log of one execution, stored as a directory of {@link LogSegment}
+ * files named after the sequence number of their first entry.
+ *
+ * <p>Only the segment being written is mapped; the log holds nothing else
+ * but the names of the sealed segments, which are read when streamed.</p>
+ */
+final class SegmentedLog {
+
+    private static final String EXTENSION = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentNavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    private LogSegment active;
+    private long nextSequence;
+
+    private SegmentedLog(
+            Path directory,
+            int segmentSize
+    ) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Creates the log of a new execution, or reopens the log of an execution
+     * to append to it after the entries already written.
+     */
+    static SegmentedLog create(
+            Path directory,
+            int segmentSize
+    ) {
+        SegmentedLog log = new SegmentedLog(directory, segmentSize);
+        try {
+            Files.createDirectories(directory);
+            log.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Counted for the size of the log
+        log.segments.values().forEach(LogSegment::recover);
+        if (!log.segments.isEmpty()) {
+            // Appended to a new segment, the last one is sealed
+            Map.Entry<Long, LogSegment> last = log.segments.lastEntry();
+            log.nextSequence = last.getKey() + last.getValue().count();
+        }
+        return log;
+    }
+
+    /**
+     * Opens the log of a finished execution for reading. Nothing is read
+     * until streamed.
+     */
+    static SegmentedLog open(
+            Path directory
+    ) {
+        SegmentedLog log = new SegmentedLog(directory, 0);
+        try {
+            log.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return log;
+    }
+
+    private void load() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(it -> it.getFileName().toString().endsWith(EXTENSION)).toList()) {
+                String name = file.getFileName().toString();
+                long baseSequence = Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+                segments.put(baseSequence, LogSegment.open(file, baseSequence));
+            }
+        }
+    }
+
+    LogEntry append(
+            LogEvent event
+    ) {
+        byte[] bytes = LogEventCodec.encode(event);
+        lock.lock();
+        try {
+            if (active == null || !active.append(bytes)) {
+                active = LogSegment.create(
+                        directory.resolve("%020d%s".formatted(nextSequence, EXTENSION)),
+                        nextSequence,
+                        Math.max(segmentSize, LogSegment.recordSize(bytes))
+                );
+                segments.put(nextSequence, active);
+                active.append(bytes);
+            }
+            return new LogEntry(nextSequence++, event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Stream<LogEntry> from(
+            long sequence
+    ) {
+        Long first = segments.floorKey(sequence);
+        NavigableMap<Long, LogSegment> tail = first == null ? segments : segments.tailMap(first, true);
+        return tail.values().stream().flatMap(segment -> segment.from(sequence));
+    }
+
+    int size() {
+        return segments.values().stream().mapToInt(LogSegment::count).sum();
+    }
+
+    long bytes() {
+        return segments.values().stream().mapToLong(LogSegment::bytes).sum();
+    }
+
+    /**
+     * Flushes the written entries to disk, and releases the segment being
+     * written, truncated to them.
+     */
+    void seal() {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.seal();
+                active = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -8,32 +8,77 @@ package es.wakamiti.service.infrastructure.exec;
 
 import es.wakamiti.service.domain.model.ExecutionObserver;
 import es.wakamiti.service.domain.spi.ExecutionNotifier;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.websocket.CloseReason;
 import jakarta.websocket.Session;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 
+/**
+ * Closes the WebSocket sessions of an execution with its exit status when
+ * it ends.
+ *
+ * <p>The exit status of the last finished executions is remembered, so that
+ * a client that lost the connection and reconnects after the end still gets
+ * it. Such a session is closed once the log replayed to it has been sent,
+ * e.g. the whole log of an execution that ended before it was watched.</p>
+ */
 @ApplicationScoped
 public class SessionExecutionNotifier implements ExecutionNotifier<Session> {
 
-    private final Map<Session, ExecutionObserver> observers = new ConcurrentHashMap<>();
+    private static final int FINISHED_CAPACITY = 1024;
+
+    /**
+     * Observers grouped by the execution they are watching.
+     */
+    private final Map<String, Map<Session, ExecutionObserver>> observers = new ConcurrentHashMap<>();
+
+    /**
+     * Exit status of the last finished executions, by execution ID.
+     */
+    private final Map<String, Integer> finished = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<String, Integer> eldest
+        ) {
+            return size() > FINISHED_CAPACITY;
+        }
+    });
+
+    private final LogEventPublisher<Session> publisher;
+
+    @Inject
+    public SessionExecutionNotifier(
+            LogEventPublisher<Session> publisher
+    ) {
+        this.publisher = publisher;
+    }
 
     @Override
     public void notify(
+            String executionId,
             Integer status
     ) {
-        observers.values().forEach(it -> it.onStatus(status));
+        finished.put(executionId, status);
+        Map<Session, ExecutionObserver> sessions = observers.remove(executionId);
+        if (sessions != null) {
+            sessions.values().forEach(it -> it.onStatus(status));
+        }
     }
 
     @Override
     public void addObserver(
+            String executionId,
             Session session
     ) {
-        this.observers.put(session, status -> {
+        ExecutionObserver observer = status -> {
             if (session.isOpen()) {
                 try {
                     session.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, status.toString()));
@@ -41,14 +86,33 @@ public class SessionExecutionNotifier implements ExecutionNotifier<Session> {
                     // Ignore exception
                 }
             }
+        };
+        this.observers.compute(executionId, (_, sessions) -> {
+            Map<Session, ExecutionObserver> result = sessions == null ? new ConcurrentHashMap<>() : sessions;
+            result.put(session, observer);
+            return result;
         });
+        // The execution may have finished before the session was opened
+        Integer status = finished.get(executionId);
+        if (status != null) {
+            Map<Session, ExecutionObserver> sessions = observers.get(executionId);
+            if (sessions != null && sessions.remove(session) != null) {
+                removeObserver(executionId, session);
+                publisher.flush(executionId);
+                observer.onStatus(status);
+            }
+        }
     }
 
     @Override
     public void removeObserver(
+            String executionId,
             Session session
     ) {
-        this.observers.remove(session);
+        this.observers.computeIfPresent(executionId, (_, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
     }
 
 }
@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+
+/**
+ * Entry point of the worker JVMs of the {@link WorkerPool}, started with
+ * the name of the main class of the plans as argument.
+ *
+ * <p>The worker loads the main class, tells the pool it is
+ * {@value #READY}, and then runs it once for every line read from the
+ * standard input, with the words of the line as arguments, separated by
+ * {@value #SEPARATOR} characters. The standard
+ * output and error of the runs go to the standard output of the worker,
+ * followed by a {@value #DONE} line with the exit status and the heap used
+ * after the last garbage collection. The worker exits when its standard
+ * input is closed.</p>
+ *
+ * <p>The lines of the protocol start with {@value #MARKER}, on a line of
+ * their own, so they cannot be mistaken for the output of the runs.</p>
+ */
+public final class WakamitiWorker {
+
+    static final String MARKER = "\0wakamiti-worker ";
+    static final char SEPARATOR = '\0';
+    static final String READY = "ready";
+    static final String DONE = "done";
+
+    private WakamitiWorker() {
+        // Entry point only
+    }
+
+    public static void main(
+            String[] args
+    ) throws Exception {
+        Method main = Class.forName(args[0]).getMethod("main", String[].class);
+        Charset charset = Charset.forName(System.getProperty("stdout.encoding"), Charset.defaultCharset());
+        LineOutputStream output = new LineOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024)
+        );
+        PrintStream stream = new PrintStream(output, true, charset);
+        System.setOut(stream);
+        System.setErr(stream);
+
+        signal(stream, output, READY + " " + heap());
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in, charset));
+        String command;
+        while ((command = input.readLine()) != null) {
+            int status = 0;
+            try {
+                String[] arguments = command.isEmpty()
+                        ? new String[0]
+                        : command.split(String.valueOf(SEPARATOR), -1);
+                main.invoke(null, (Object) arguments);
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace(stream);
+                status = 1;
+            }
+            signal(stream, output, DONE + " " + status + " " + heap());
+        }
+    }
+
+    private static void signal(
+            PrintStream stream,
+            LineOutputStream output,
+            String message
+    ) {
+        stream.flush();
+        if (!output.atLineStart()) {
+            stream.println();
+        }
+        stream.println(MARKER + message);
+    }
+
+    /**
+     * @return the bytes of heap in use after the last garbage collection
+     */
+    static long heap() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getCollectionUsage)
+                .filter(Objects::nonNull)
+                .mapToLong(MemoryUsage::getUsed)
+                .sum();
+    }
+
+    /**
+     * Remembers whether the last byte written ended a line.
+     */
+    private static final class LineOutputStream extends OutputStream {
+
+        private final OutputStream output;
+        private volatile boolean lineStart = true;
+
+        private LineOutputStream(
+                OutputStream output
+        ) {
+            this.output = output;
+        }
+
+        boolean atLineStart() {
+            return lineStart;
+        }
+
+        @Override
+        public void write(
+                int b
+        ) throws IOException {
+            output.write(b);
+            lineStart = b == '\n';
+        }
+
+        @Override
+        public void write(
+                byte[] b,
+                int off,
+                int len
+        ) throws IOException {
+            output.write(b, off, len);
+            if (len > 0) {
+                lineStart = b[off + len - 1] == '\n';
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+    }
+
+}
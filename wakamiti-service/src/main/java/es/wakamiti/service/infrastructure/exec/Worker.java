@@ -0,0 +1,179 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+
+/**
+ * Worker JVM running {@link WakamitiWorker}, started and leased by the
+ * {@link WorkerPool}.
+ */
+final class Worker {
+
+    private static final byte[] MARKER = WakamitiWorker.MARKER.getBytes(StandardCharsets.US_ASCII);
+    private static final Charset CHARSET = Charset.forName(
+            System.getProperty("native.encoding"), Charset.defaultCharset()
+    );
+
+    private final Process process;
+    private final ProcessOutput output;
+    private final Writer input;
+    private final long initialHeap;
+    private long heap;
+    private int runs;
+
+    private Worker(
+            Process process,
+            long initialHeap,
+            ProcessOutput output
+    ) {
+        this.process = process;
+        this.output = output;
+        this.input = new OutputStreamWriter(process.getOutputStream(), CHARSET);
+        this.initialHeap = initialHeap;
+        this.heap = initialHeap;
+    }
+
+    /**
+     * Starts a worker and waits until it is ready to run.
+     *
+     * @throws IOException if the worker cannot be started, or exits before
+     *                     being ready
+     */
+    static Worker start(
+            List<String> command
+    ) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ProcessOutput output = new ProcessOutput(process.getInputStream());
+        long[] ready = {-1};
+        List<String> startup = new ArrayList<>();
+        boolean signaled = output.read((buffer, start, end) -> {
+            String[] signal = signal(buffer, start, end);
+            if (signal.length == 2 && signal[0].equals(WakamitiWorker.READY)) {
+                ready[0] = Long.parseLong(signal[1]);
+                return false;
+            }
+            startup.add(ProcessOutput.decode(buffer, start, end));
+            return true;
+        });
+        if (!signaled) {
+            ProcessWakamitiRunner.destroy(process);
+            throw new IOException("Worker exited before being ready: " + String.join(System.lineSeparator(), startup));
+        }
+        return new Worker(process, ready[0], output);
+    }
+
+    /**
+     * @return the words of the protocol line, or none if it is an output
+     *         line
+     */
+    private static String[] signal(
+            byte[] buffer,
+            int start,
+            int end
+    ) {
+        if (end - start < MARKER.length || buffer[start] != MARKER[0]) {
+            return new String[0];
+        }
+        for (int i = 1; i < MARKER.length; i++) {
+            if (buffer[start + i] != MARKER[i]) {
+                return new String[0];
+            }
+        }
+        return new String(buffer, start + MARKER.length, end - start - MARKER.length, StandardCharsets.US_ASCII)
+                .split(" ");
+    }
+
+    long pid() {
+        return process.pid();
+    }
+
+    int runs() {
+        return runs;
+    }
+
+    /**
+     * @return the bytes of heap retained since the worker was started
+     */
+    long heapGrowth() {
+        return heap - initialHeap;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Runs the main class of the plans in the worker with the given
+     * arguments, handing each line of its output to the handler as soon as
+     * it is read.
+     *
+     * @return the exit status of the command, or none if the worker exited
+     *         before finishing it
+     * @throws IOException if the worker cannot be reached
+     */
+    OptionalInt run(
+            List<String> arguments,
+            ProcessOutput.LineHandler handler
+    ) throws IOException {
+        runs++;
+        // The worker reads the arguments of a run per line
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) {
+                input.write(WakamitiWorker.SEPARATOR);
+            }
+            input.write(arguments.get(i).replace('\r', ' ').replace('\n', ' '));
+        }
+        input.write('\n');
+        input.flush();
+        int[] status = {-1};
+        boolean signaled = output.read((buffer, start, end) -> {
+            String[] signal = signal(buffer, start, end);
+            if (signal.length == 3 && signal[0].equals(WakamitiWorker.DONE)) {
+                status[0] = Integer.parseInt(signal[1]);
+                heap = Long.parseLong(signal[2]);
+                return false;
+            }
+            return handler.line(buffer, start, end);
+        });
+        return signaled ? OptionalInt.of(status[0]) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the exit status of the worker process, once it exits
+     */
+    int waitFor() throws InterruptedException {
+        return process.waitFor();
+    }
+
+    /**
+     * Destroys the worker and the processes it started.
+     */
+    void destroy() {
+        ProcessWakamitiRunner.destroy(process);
+    }
+
+    /**
+     * Closes the input of the worker, which makes it exit once it is idle.
+     */
+    void close() {
+        try {
+            input.close();
+        } catch (IOException _) {
+            destroy();
+        }
+    }
+
+}
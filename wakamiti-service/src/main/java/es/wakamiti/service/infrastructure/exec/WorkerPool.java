@@ -0,0 +1,188 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Pool of started worker JVMs, so that a run does not pay for the JVM
+ * startup, the loading of the classes of the plans and part of their JIT
+ * compilation.
+ *
+ * <p>{@link WorkerPoolProperties#size()} idle workers are kept started,
+ * and replenished in the background as they are leased, recycled or found
+ * dead. A lease when there is no idle worker starts one right away. Workers
+ * are replaced after {@link WorkerPoolProperties#maxRuns()} runs, or once
+ * they retain more than {@link WorkerPoolProperties#maxMemoryGrowth()}
+ * bytes of heap beyond what they used when started.</p>
+ *
+ * <p>If an AppCDS archive is given, the workers are started from it. The
+ * first worker creates it if it does not exist yet, with the classes it
+ * has loaded when it exits.</p>
+ */
+@ApplicationScoped
+public class WorkerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+
+    private final WorkerPoolProperties properties;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger starting = new AtomicInteger();
+    private final ExecutorService starter = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<String> command;
+    private volatile boolean closed;
+
+    @Inject
+    public WorkerPool(
+            WorkerPoolProperties properties
+    ) {
+        this.properties = properties;
+        this.command = command(properties);
+    }
+
+    private static List<String> command(
+            WorkerPoolProperties properties
+    ) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(properties.jvmOptions());
+        if (properties.cdsArchive() != null) {
+            command.add("-XX:+AutoCreateSharedArchive");
+            command.add("-XX:SharedArchiveFile=" + properties.cdsArchive());
+        }
+        List<String> classpath = new ArrayList<>(properties.classpath());
+        classpath.add(System.getProperty("java.class.path"));
+        command.add("-cp");
+        command.add(String.join(File.pathSeparator, classpath));
+        command.add(WakamitiWorker.class.getName());
+        command.add(properties.mainClass());
+        return List.copyOf(command);
+    }
+
+    /**
+     * Starts the idle workers in the background.
+     */
+    public void start() {
+        if (properties.cdsArchive() != null && Files.notExists(properties.cdsArchive())) {
+            LOGGER.info("Creating the worker AppCDS archive {}", properties.cdsArchive());
+        }
+        replenish();
+    }
+
+    /**
+     * Takes an idle worker, or starts one if there is none.
+     *
+     * @throws IOException if a worker cannot be started
+     */
+    Worker lease() throws IOException {
+        Worker worker;
+        while ((worker = idle.poll()) != null && !worker.isAlive()) {
+            LOGGER.debug("Discarding dead worker {}", worker.pid());
+        }
+        replenish();
+        if (worker == null) {
+            LOGGER.debug("No idle worker, starting one");
+            worker = Worker.start(command);
+        }
+        return worker;
+    }
+
+    /**
+     * Gives back a worker that finished its run, which is kept idle unless
+     * it has to be recycled.
+     */
+    void release(
+            Worker worker
+    ) {
+        if (closed || worker.runs() >= properties.maxRuns()
+                || worker.heapGrowth() > properties.maxMemoryGrowth()
+                || idle.size() >= properties.size()) {
+            LOGGER.debug("Recycling worker {} after {} runs, retaining {} bytes more",
+                         worker.pid(), worker.runs(), worker.heapGrowth());
+            worker.close();
+        } else {
+            idle.add(worker);
+        }
+        replenish();
+    }
+
+    /**
+     * Drops a worker that cannot be used any longer.
+     */
+    void discard(
+            Worker worker
+    ) {
+        worker.destroy();
+        replenish();
+    }
+
+    /**
+     * Starts workers in the background until there are as many idle or
+     * starting as the pool size.
+     */
+    private void replenish() {
+        while (!closed) {
+            int current = starting.get();
+            if (idle.size() + current >= properties.size()) {
+                return;
+            }
+            if (starting.compareAndSet(current, current + 1)) {
+                try {
+                    starter.execute(this::startIdle);
+                } catch (RejectedExecutionException _) {
+                    // Shutting down
+                    starting.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void startIdle() {
+        try {
+            Worker worker = Worker.start(command);
+            LOGGER.debug("Started worker {}", worker.pid());
+            idle.add(worker);
+            if (closed && idle.remove(worker)) {
+                worker.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot start a worker: {}", e.getMessage());
+        } finally {
+            starting.decrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        starter.shutdownNow();
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.close();
+        }
+    }
+
+}
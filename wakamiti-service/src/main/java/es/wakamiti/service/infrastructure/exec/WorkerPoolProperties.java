@@ -0,0 +1,55 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import java.nio.file.Path;
+import java.util.List;
+
+
+/**
+ * Settings of the pool of worker JVMs.
+ *
+ * @param mainClass       the main class of the plans run by the workers
+ * @param classpath       the classpath of the workers, beyond the one of the
+ *                        service
+ * @param jvmOptions      the options of the worker JVMs, e.g. the heap size
+ * @param cdsArchive      the AppCDS archive the workers are started from,
+ *                        created by the first worker if it does not exist,
+ *                        or {@code null} not to use one
+ * @param size            the number of idle workers kept started
+ * @param maxRuns         the number of runs after which a worker is replaced
+ * @param maxMemoryGrowth the bytes of heap a worker may retain beyond what
+ *                        it used when it was started before it is replaced
+ */
+public record WorkerPoolProperties(
+        String mainClass,
+        List<String> classpath,
+        List<String> jvmOptions,
+        Path cdsArchive,
+        int size,
+        int maxRuns,
+        long maxMemoryGrowth
+) {
+
+    public WorkerPoolProperties {
+        if (mainClass == null || mainClass.isBlank()) {
+            throw new IllegalArgumentException("Worker main class must be given");
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("Worker pool size must not be negative");
+        }
+        if (maxRuns < 1) {
+            throw new IllegalArgumentException("Worker max runs must be greater than 0");
+        }
+        if (maxMemoryGrowth < 1) {
+            throw new IllegalArgumentException("Worker max memory growth must be greater than 0");
+        }
+        classpath = List.copyOf(classpath);
+        jvmOptions = List.copyOf(jvmOptions);
+    }
+
+}
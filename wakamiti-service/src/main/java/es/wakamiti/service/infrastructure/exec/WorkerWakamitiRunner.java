@@ -0,0 +1,131 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.exec;
+
+
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+
+/**
+ * Runner executing the command in a worker JVM leased from the
+ * {@link WorkerPool}, with the words of the command, split as by
+ * {@link CommandLine}, followed by the given arguments, as the arguments
+ * of the main class of the plans.
+ *
+ * <p>The output of the worker is read and published line by line, as the
+ * {@link ProcessWakamitiRunner} does, until the worker tells the run is
+ * done. The worker is then given back to the pool. A worker that exits
+ * during the run, e.g. because the plan calls {@link System#exit(int)},
+ * is discarded, and its exit status is the one of the execution. A worker
+ * whose run fails in the service, e.g. because a line cannot be published,
+ * is discarded too.</p>
+ *
+ * <p>{@link #stop()} destroys the worker and the processes it started,
+ * and the execution ends with the status {@code 1}.</p>
+ */
+public class WorkerWakamitiRunner implements WakamitiRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("service.wakamiti.exec");
+
+    private final WorkerPool pool;
+    private final LogSink publisher;
+
+    private Worker worker;
+    private boolean stopped;
+
+    public WorkerWakamitiRunner(
+            WorkerPool pool,
+            LogSink publisher
+    ) {
+        this.pool = pool;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public int run(
+            String command,
+            List<String> arguments
+    ) {
+        String id = MDC.get(LogEventPublisher.EXECUTION_ID);
+        List<String> words = new ArrayList<>(CommandLine.split(command));
+        words.addAll(arguments);
+        Worker leased;
+        try {
+            leased = pool.lease();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a worker for the command: " + command, e);
+        }
+        synchronized (this) {
+            if (stopped) {
+                pool.release(leased);
+                return 1;
+            }
+            worker = leased;
+        }
+        LOGGER.debug("Execution {} running in worker {}: {}", id, leased.pid(), command);
+
+        OptionalInt status = OptionalInt.empty();
+        boolean wasStopped;
+        try {
+            status = leased.run(words, (buffer, start, end) -> {
+                if (id != null) {
+                    ProcessOutput.publish(publisher, id, buffer, start, end);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Worker {} of execution {} closed: {}", leased.pid(), id, e.getMessage());
+        } finally {
+            synchronized (this) {
+                worker = null;
+                wasStopped = stopped;
+            }
+            // Only a worker that finished its run is reused, whatever went wrong otherwise
+            if (!wasStopped && status.isPresent()) {
+                pool.release(leased);
+            } else {
+                pool.discard(leased);
+            }
+        }
+
+        if (wasStopped) {
+            return 1;
+        }
+        if (status.isPresent()) {
+            return status.getAsInt();
+        }
+        try {
+            return leased.waitFor();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @Override
+    public void stop() {
+        Worker current;
+        synchronized (this) {
+            stopped = true;
+            current = worker;
+        }
+        if (current != null) {
+            current.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.lifecycle;
+
+
+import java.time.Duration;
+
+
+/**
+ * Settings of the service started on demand.
+ *
+ * @param timeout the time with no executions and no sessions after which
+ *                the service shuts itself down, or {@code null} to keep it
+ *                running until stopped
+ */
+public record IdleProperties(
+        Duration timeout
+) {
+
+    public IdleProperties {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("Idle timeout must be greater than 0");
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.lifecycle;
+
+
+import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.api.ExecutionService;
+import es.wakamiti.service.infrastructure.logging.SessionLogEventPublisher;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+
+/**
+ * Shuts the service down once it has been idle, with no executions in
+ * progress or queued and no WebSocket sessions, for
+ * {@link IdleProperties#timeout()}, so that a service started on demand by
+ * the CLI does not hold its memory when nobody uses it.
+ *
+ * <p>The activity is checked ten times per timeout, at most once a minute,
+ * so the service shuts down up to a tenth of the timeout later. Nothing is
+ * checked if there is no timeout.</p>
+ */
+@ApplicationScoped
+public class IdleShutdown {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WakamitiServiceApplication.NAME);
+    private static final Duration MAX_CHECK_INTERVAL = Duration.ofMinutes(1);
+
+    private final IdleProperties properties;
+    private final IntSupplier activity;
+    private final Runnable shutdown;
+
+    private ScheduledExecutorService checker;
+    /**
+     * When the service was first seen idle, in nanoseconds, or {@code -1}
+     * while it is in use.
+     */
+    private long idleSince;
+
+    @Inject
+    public IdleShutdown(
+            IdleProperties properties,
+            ExecutionService service,
+            SessionLogEventPublisher publisher
+    ) {
+        this(properties, () -> service.pending() + publisher.getSessionCount(), () -> System.exit(0));
+    }
+
+    /**
+     * @param properties the idle timeout
+     * @param activity   the executions and sessions in progress
+     * @param shutdown   what shuts the service down
+     */
+    public IdleShutdown(
+            IdleProperties properties,
+            IntSupplier activity,
+            Runnable shutdown
+    ) {
+        this.properties = properties;
+        this.activity = activity;
+        this.shutdown = shutdown;
+    }
+
+    /**
+     * Starts checking on startup.
+     */
+    void startup(
+            @Observes @Initialized(ApplicationScoped.class) Object event
+    ) {
+        start();
+    }
+
+    /**
+     * Starts checking the activity, counting the idle time from now.
+     */
+    public synchronized void start() {
+        if (properties.timeout() == null || checker != null) {
+            return;
+        }
+        idleSince = System.nanoTime();
+        long interval = Math.min(properties.timeout().toNanos() / 10, MAX_CHECK_INTERVAL.toNanos());
+        checker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("wakamiti-idle-check").daemon().factory());
+        checker.scheduleAtFixedRate(this::check, interval, interval, TimeUnit.NANOSECONDS);
+        LOGGER.debug("The service shuts down after {} idle", properties.timeout());
+    }
+
+    private synchronized void check() {
+        if (activity.getAsInt() > 0) {
+            idleSince = -1;
+            return;
+        }
+        long now = System.nanoTime();
+        if (idleSince < 0) {
+            idleSince = now;
+        } else if (now - idleSince >= properties.timeout().toNanos()) {
+            LOGGER.info("No executions and no sessions for {}, shutting down", properties.timeout());
+            // Shutting down stops this checker, so it must not wait for it
+            checker.shutdown();
+            Thread.ofPlatform().name("wakamiti-idle-shutdown").start(shutdown);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+}
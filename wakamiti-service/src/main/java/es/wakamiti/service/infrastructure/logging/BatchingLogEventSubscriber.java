@@ -0,0 +1,73 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEventSubscriber;
+
+import java.util.function.ObjLongConsumer;
+
+
+/**
+ * Subscriber that coalesces consecutive log lines into a single frame.
+ *
+ * <p>Lines are appended as they are, line separators included, so the
+ * receiver only has to split the frame by line. The pending frame is sent
+ * when it reaches the maximum size, or when {@link #flush()} is called,
+ * which the publisher does once per batch interval and before the execution
+ * is reported as finished. A maximum size of {@code 1} sends every line in
+ * its own frame.</p>
+ *
+ * <p>If the frames are sequenced, each one starts with a
+ * {@code #<sequence>} header line holding the sequence number of the last
+ * log line in the frame, i.e. the one the client may resume after. That
+ * sequence number is handed to the sender with every frame.</p>
+ */
+final class BatchingLogEventSubscriber implements LogEventSubscriber {
+
+    private static final String SEQUENCE_HEADER = "#%d%n";
+
+    private final StringBuilder pending = new StringBuilder();
+    private final int maxSize;
+    private final boolean sequenced;
+    private final ObjLongConsumer<String> sender;
+
+    private long lastSequence;
+
+    BatchingLogEventSubscriber(
+            int maxSize,
+            boolean sequenced,
+            ObjLongConsumer<String> sender
+    ) {
+        this.maxSize = maxSize;
+        this.sequenced = sequenced;
+        this.sender = sender;
+    }
+
+    @Override
+    public synchronized void onLogEvent(
+            LogEntry entry
+    ) {
+        pending.append(entry.text());
+        lastSequence = entry.sequence();
+        if (pending.length() >= maxSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (!pending.isEmpty()) {
+            String frame = sequenced
+                    ? SEQUENCE_HEADER.formatted(lastSequence) + pending
+                    : pending.toString();
+            pending.setLength(0);
+            sender.accept(frame, lastSequence);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.model.LogEventSubscriber;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.Deflater;
+
+
+/**
+ * Subscriber that sends the log in the compact binary format of the
+ * {@value es.wakamiti.service.domain.spi.LogEventPublisher#BINARY_PROTOCOL}
+ * WebSocket subprotocol.
+ *
+ * <p>Every frame starts with a flags byte: if bit {@code 0} is set, the rest
+ * of the frame is raw DEFLATE data (RFC 1951), otherwise it is sent as is.
+ * The (inflated) rest of the frame is a sequence of records, each one
+ * starting with its type byte:</p>
+ * <ul>
+ *   <li>{@code 0x01} logger: {@code id}, {@code length} and the UTF-8 name.
+ *   Defines the ID used by the following events of the frame for that
+ *   logger, so each name is only sent once per frame.</li>
+ *   <li>{@code 0x02} event: {@code sequence}, {@code epochMillis}, the level
+ *   byte ({@code 0} TRACE, {@code 1} DEBUG, {@code 2} INFO, {@code 3} WARN,
+ *   {@code 4} ERROR), {@code loggerId}, {@code length} and the UTF-8
+ *   message.</li>
+ * </ul>
+ * <p>Every number but the level is an unsigned LEB128 varint. Since the
+ * loggers are defined in every frame that uses them, each frame can be
+ * decoded on its own, and the same frame can be sent to sessions that joined
+ * the stream at different times.</p>
+ *
+ * <p>Records are coalesced as {@link BatchingLogEventSubscriber} does with
+ * the lines, up to the maximum size in bytes. They are encoded straight into
+ * a buffer reused from frame to frame, and each frame is copied once into
+ * the read-only buffer handed to the sender, with the sequence number of
+ * its last event. Frames are only compressed when they are large enough to
+ * benefit from it, and never if the session already compresses every
+ * message with the {@code permessage-deflate} extension.</p>
+ */
+final class BinaryLogEventSubscriber implements LogEventSubscriber {
+
+    static final int DEFLATED = 0x01;
+    static final int LOGGER_RECORD = 0x01;
+    static final int EVENT_RECORD = 0x02;
+    static final List<String> LEVELS = List.of("TRACE", "DEBUG", "INFO", "WARN", "ERROR");
+
+    private static final int DEFLATE_THRESHOLD = 256;
+    private static final int INFO = LEVELS.indexOf("INFO");
+
+    private final Map<String, Integer> loggers = new HashMap<>();
+    private final int maxSize;
+    private final Deflater deflater;
+    private final ObjLongConsumer<ByteBuffer> sender;
+
+    private byte[] pending = new byte[256];
+    private int size;
+    private byte[] deflated = new byte[0];
+    private long lastSequence;
+
+    BinaryLogEventSubscriber(
+            int maxSize,
+            boolean deflate,
+            ObjLongConsumer<ByteBuffer> sender
+    ) {
+        this.maxSize = maxSize;
+        this.deflater = deflate ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.sender = sender;
+    }
+
+    @Override
+    public synchronized void onLogEvent(
+            LogEntry entry
+    ) {
+        LogEvent event = entry.event();
+        Integer logger = loggers.get(String.valueOf(event.logger()));
+        if (logger == null) {
+            logger = defineLogger(String.valueOf(event.logger()));
+        }
+        int level = LEVELS.indexOf(event.level());
+        write(EVENT_RECORD);
+        writeVarint(entry.sequence());
+        writeVarint(event.timestamp().toEpochMilli());
+        write(level < 0 ? INFO : level);
+        writeVarint(logger);
+        writeString(event.message());
+        lastSequence = entry.sequence();
+        if (size >= maxSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (size == 0) {
+            return;
+        }
+        int length = deflater == null || size < DEFLATE_THRESHOLD ? -1 : deflate();
+        ByteBuffer frame = ByteBuffer.allocate(1 + (length < 0 ? size : length));
+        if (length < 0) {
+            frame.put((byte) 0).put(pending, 0, size);
+        } else {
+            frame.put((byte) DEFLATED).put(deflated, 0, length);
+        }
+        size = 0;
+        loggers.clear();
+        sender.accept(frame.flip().asReadOnlyBuffer(), lastSequence);
+    }
+
+    private int defineLogger(
+            String name
+    ) {
+        int id = loggers.size();
+        loggers.put(name, id);
+        write(LOGGER_RECORD);
+        writeVarint(id);
+        writeString(name);
+        return id;
+    }
+
+    /**
+     * Compresses the pending records into {@link #deflated}, reusing the
+     * deflater and its output buffer across frames.
+     *
+     * @return the compressed length, or {@code -1} if it is not smaller
+     */
+    private int deflate() {
+        if (deflated.length < size) {
+            deflated = new byte[pending.length];
+        }
+        deflater.reset();
+        deflater.setInput(pending, 0, size);
+        deflater.finish();
+        int length = deflater.deflate(deflated, 0, size - 1);
+        return deflater.finished() ? length : -1;
+    }
+
+    private void ensureCapacity(
+            int extra
+    ) {
+        if (size + extra > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, size + extra));
+        }
+    }
+
+    private void write(
+            int value
+    ) {
+        ensureCapacity(1);
+        pending[size++] = (byte) value;
+    }
+
+    private void writeVarint(
+            long value
+    ) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            pending[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        pending[size++] = (byte) value;
+    }
+
+    /**
+     * Writes the UTF-8 length and bytes of a string, encoding it in place.
+     */
+    private void writeString(
+            String value
+    ) {
+        int length = utf8Length(value);
+        writeVarint(length);
+        ensureCapacity(length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                pending[size++] = (byte) c;
+            } else if (c < 0x800) {
+                pending[size++] = (byte) (0xC0 | c >> 6);
+                pending[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                pending[size++] = (byte) (0xF0 | codePoint >> 18);
+                pending[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                pending[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                pending[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                pending[size++] = '?';
+            } else {
+                pending[size++] = (byte) (0xE0 | c >> 12);
+                pending[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                pending[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private static int utf8Length(
+            String value
+    ) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 && c < 0x800) {
+                length += 1;
+            } else if (c >= 0x800 && !Character.isSurrogate(c)) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // Two chars encoded in four bytes
+                length += 2;
+                i++;
+            }
+        }
+        return length;
+    }
+
+}
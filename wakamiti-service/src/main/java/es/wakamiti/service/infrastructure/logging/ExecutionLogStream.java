@@ -0,0 +1,264 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEventSubscriber;
+import jakarta.websocket.Session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+
+/**
+ * The WebSocket sessions watching the log of one execution.
+ *
+ * <p>The sessions receiving the live log in the same {@link Format} share a
+ * single encoder: each frame is built (and, for binary frames, encoded) once,
+ * and the same frame is queued to all of them. A new session first gets the
+ * history replayed through an encoder of its own, and joins the shared one
+ * once it has caught up, right after a frame boundary, so it neither misses
+ * nor repeats any line. A session whose writer paused because it did not
+ * keep up leaves the shared encoder, and joins it again the same way once it
+ * has {@linkplain #resume resumed} from the lines it missed.</p>
+ */
+final class ExecutionLogStream {
+
+    /**
+     * How the frames of a session are built.
+     *
+     * @param binary    whether the frames use the binary protocol
+     * @param maxSize   the maximum size of a batched frame, {@code 1} for a
+     *                  frame per line
+     * @param sequenced whether text frames start with a sequence header
+     * @param deflate   whether binary frames are compressed
+     */
+    record Format(
+            boolean binary,
+            int maxSize,
+            boolean sequenced,
+            boolean deflate
+    ) {
+
+        /**
+         * Creates an encoder whose frames are queued to the given writers.
+         */
+        LogEventSubscriber encoder(
+                Collection<SessionWriter> writers
+        ) {
+            if (binary) {
+                return new BinaryLogEventSubscriber(maxSize, deflate, (frame, sequence) -> {
+                    for (SessionWriter writer : writers) {
+                        writer.send(frame.asReadOnlyBuffer(), sequence);
+                    }
+                });
+            }
+            return new BatchingLogEventSubscriber(maxSize, sequenced, (frame, sequence) -> {
+                for (SessionWriter writer : writers) {
+                    writer.send(frame, sequence);
+                }
+            });
+        }
+    }
+
+    /**
+     * Encoder shared by the sessions of a format.
+     */
+    private record Shared(
+            LogEventSubscriber encoder,
+            Set<SessionWriter> writers
+    ) {
+
+    }
+
+    /**
+     * Session replaying the history, not sharing frames yet.
+     */
+    private record Joining(
+            Format format,
+            SessionWriter writer,
+            ResumingLogEventSubscriber subscriber
+    ) {
+
+    }
+
+    private final Lock lock = new ReentrantLock();
+    private final Map<Format, Shared> shared = new HashMap<>();
+    private final Map<Session, Joining> joining = new HashMap<>();
+    private final Map<Session, Format> members = new HashMap<>();
+
+    /**
+     * Adds a new session, which receives the live log events from now on,
+     * held back until it {@linkplain #catchUp caught up} with the history.
+     */
+    void subscribe(
+            Session session,
+            SessionWriter writer,
+            Format format,
+            long from
+    ) {
+        ResumingLogEventSubscriber subscriber = new ResumingLogEventSubscriber(from, format.encoder(List.of(writer)));
+        lock.lock();
+        try {
+            joining.put(session, new Joining(format, writer, subscriber));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays the history to a new session, and then adds it to the
+     * sessions sharing the live log.
+     *
+     * @param history reads the history from a sequence number
+     */
+    void catchUp(
+            Session session,
+            LongFunction<Stream<LogEntry>> history
+    ) {
+        Joining joiner;
+        lock.lock();
+        try {
+            joiner = joining.get(session);
+        } finally {
+            lock.unlock();
+        }
+        if (joiner == null) {
+            return;
+        }
+        joiner.subscriber().replay(history.apply(joiner.subscriber().from()));
+        lock.lock();
+        try {
+            // Replaced if the session resumed meanwhile
+            if (!joining.remove(session, joiner)) {
+                return;
+            }
+            joiner.subscriber().release();
+            Shared frames = shared.computeIfAbsent(joiner.format(), format -> {
+                Set<SessionWriter> writers = new CopyOnWriteArraySet<>();
+                return new Shared(format.encoder(writers), writers);
+            });
+            // The pending frame holds lines the session already got
+            frames.encoder().flush();
+            frames.writers().add(joiner.writer());
+            members.put(session, joiner.format());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays the lines a paused session missed, from the given sequence
+     * number, and then adds it back to the sessions sharing the live log.
+     *
+     * @param history reads the history from a sequence number
+     * @return {@code false} if the session is no longer watching the log
+     */
+    boolean resume(
+            Session session,
+            SessionWriter writer,
+            long from,
+            LongFunction<Stream<LogEntry>> history
+    ) {
+        lock.lock();
+        try {
+            Joining joiner = joining.remove(session);
+            Format format = joiner == null ? members.remove(session) : joiner.format();
+            if (format == null) {
+                return false;
+            }
+            Shared frames = shared.get(format);
+            if (frames != null && frames.writers().remove(writer) && frames.writers().isEmpty()) {
+                shared.remove(format);
+            }
+            joining.put(session, new Joining(
+                    format, writer, new ResumingLogEventSubscriber(from, format.encoder(List.of(writer)))));
+            // No live line can be queued before the missed ones from now on
+            writer.unpause();
+        } finally {
+            lock.unlock();
+        }
+        catchUp(session, history);
+        return true;
+    }
+
+    /**
+     * Removes a session.
+     *
+     * @return {@code true} if there are no sessions left
+     */
+    boolean unsubscribe(
+            Session session,
+            SessionWriter writer
+    ) {
+        lock.lock();
+        try {
+            joining.remove(session);
+            Format format = members.remove(session);
+            Shared frames = format == null ? null : shared.get(format);
+            if (frames != null) {
+                frames.writers().remove(writer);
+                if (frames.writers().isEmpty()) {
+                    shared.remove(format);
+                }
+            }
+            return joining.isEmpty() && members.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void publish(
+            LogEntry entry
+    ) {
+        lock.lock();
+        try {
+            joining.values().forEach(it -> it.subscriber().onLogEvent(entry));
+            shared.values().forEach(it -> it.encoder().onLogEvent(entry));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the pending frames.
+     */
+    void flush() {
+        lock.lock();
+        try {
+            joining.values().forEach(it -> it.subscriber().flush());
+            shared.values().forEach(it -> it.encoder().flush());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the writers of every session
+     */
+    List<SessionWriter> writers() {
+        lock.lock();
+        try {
+            List<SessionWriter> writers = new ArrayList<>();
+            joining.values().forEach(it -> writers.add(it.writer()));
+            shared.values().forEach(it -> writers.addAll(it.writers()));
+            return writers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
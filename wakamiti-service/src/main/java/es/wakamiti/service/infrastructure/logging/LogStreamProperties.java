@@ -0,0 +1,42 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import java.time.Duration;
+
+
+/**
+ * Settings of the log stream sent to the WebSocket sessions.
+ *
+ * @param batchInterval the maximum time a log line is held back before the
+ *                      frame it belongs to is sent, in batched sessions
+ * @param batchMaxSize  the number of characters that makes a frame be sent
+ *                      without waiting for the interval, in batched sessions
+ * @param queueSize     the maximum number of frames waiting to be sent to a
+ *                      session
+ * @param slowConsumer  what to do when the queue of a session is full
+ */
+public record LogStreamProperties(
+        Duration batchInterval,
+        int batchMaxSize,
+        int queueSize,
+        SlowConsumerPolicy slowConsumer
+) {
+
+    public LogStreamProperties {
+        if (batchInterval.isNegative() || batchInterval.isZero()) {
+            throw new IllegalArgumentException("Batch interval must be greater than 0");
+        }
+        if (batchMaxSize < 1) {
+            throw new IllegalArgumentException("Batch max size must be greater than 0");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be greater than 0");
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.model.LogEventSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+
+/**
+ * Subscriber that delivers the log of an execution from a given sequence
+ * number, exactly once and in order, joining the history replay with the
+ * live log events.
+ *
+ * <p>The subscriber is registered before the history is read, so no live
+ * event is lost in between: the live events received while the history is
+ * being replayed are held back, and the ones already replayed are skipped.
+ * If the history no longer holds some of the requested lines, a marker with
+ * their number is delivered in their place.</p>
+ */
+final class ResumingLogEventSubscriber implements LogEventSubscriber {
+
+    private static final String GAP_MARKER = "[%d log lines no longer available]%n";
+
+    private final LogEventSubscriber delegate;
+
+    private List<LogEntry> held = new ArrayList<>();
+    private long next;
+
+    ResumingLogEventSubscriber(
+            long from,
+            LogEventSubscriber delegate
+    ) {
+        this.next = Math.max(from, 0);
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the sequence number of the first line to replay
+     */
+    long from() {
+        return next;
+    }
+
+    /**
+     * Delivers the given history. The live log events keep being held back
+     * until {@link #release()} is called.
+     */
+    void replay(
+            Stream<LogEntry> history
+    ) {
+        history.forEach(entry -> {
+            synchronized (this) {
+                deliver(entry);
+            }
+        });
+    }
+
+    /**
+     * Delivers the live log events received during the replay, as well as
+     * the following ones, and sends the pending frame.
+     */
+    void release() {
+        synchronized (this) {
+            held.forEach(this::deliver);
+            held = null;
+        }
+        delegate.flush();
+    }
+
+    @Override
+    public synchronized void onLogEvent(
+            LogEntry entry
+    ) {
+        if (held != null) {
+            held.add(entry);
+        } else {
+            deliver(entry);
+        }
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    private void deliver(
+            LogEntry entry
+    ) {
+        if (entry.sequence() < next) {
+            return;
+        }
+        if (entry.sequence() > next) {
+            delegate.onLogEvent(new LogEntry(entry.sequence() - 1, LogEvent.of(
+                    entry.event().timestamp(),
+                    "WARN",
+                    WakamitiServiceApplication.NAME,
+                    GAP_MARKER.formatted(entry.sequence() - next)
+            )));
+        }
+        next = entry.sequence() + 1;
+        delegate.onLogEvent(entry);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import ch.qos.logback.core.ConsoleAppender;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Console appender writing to the standard output (or error) of the service
+ * as it was when the appender started.
+ *
+ * <p>The executions run inside the service replace {@link System#out} and
+ * {@link System#err} to capture what their threads write, and the console
+ * appender of logback looks them up on every write. The log of the service
+ * written by those threads, e.g. by the WebSocket sessions while publishing
+ * a line of the execution, would otherwise end in the output of the
+ * execution.</p>
+ *
+ * <p>Usage in logback.xml:</p>
+ * <pre>{@code
+ * <appender name="Console" class="es.wakamiti.service.infrastructure.logging.ServiceConsoleAppender">
+ *   <encoder>
+ *     <pattern>%msg%n</pattern>
+ *   </encoder>
+ * </appender>
+ * }</pre>
+ */
+public class ServiceConsoleAppender<E> extends ConsoleAppender<E> {
+
+    private static final String SYSTEM_ERR = "System.err";
+
+    @Override
+    public void start() {
+        super.start();
+        if (isStarted()) {
+            setOutputStream(new Unclosed(SYSTEM_ERR.equals(getTarget()) ? System.err : System.out));
+        }
+    }
+
+    /**
+     * Stream left open when the appender stops, since it is the one of the
+     * service.
+     */
+    private static final class Unclosed extends FilterOutputStream {
+
+        private Unclosed(
+                OutputStream output
+        ) {
+            super(output);
+        }
+
+        @Override
+        public void write(
+                byte[] b,
+                int off,
+                int len
+        ) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+    }
+
+}
@@ -7,86 +7,295 @@ package es.wakamiti.service.infrastructure.logging;
 
 
 import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.ExecutionRepository;
 import es.wakamiti.service.domain.spi.LogEventPublisher;
-import es.wakamiti.service.domain.model.LogEventSubscriber;
 import es.wakamiti.service.domain.spi.LogHistoryRepository;
+import es.wakamiti.service.domain.spi.LogStreamMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.websocket.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
 
 
+/**
+ * Publishes the log of each execution to the WebSocket sessions watching it.
+ *
+ * <p>By default every log line is sent in its own text frame. A client may
+ * ask for batched frames by opening the session with the
+ * {@value #BATCH_PARAMETER}{@code =true} query parameter: the lines of the
+ * session are then coalesced into one frame per
+ * {@code wakamiti.log.stream.batch-interval}, or as soon as the pending lines
+ * reach {@code wakamiti.log.stream.batch-max-size} characters. Since every
+ * line keeps its line separator, the client gets the original lines back by
+ * splitting the frame.</p>
+ *
+ * <p>A client opening the session with {@value #SEQUENCE_PARAMETER}{@code =true}
+ * gets every frame prefixed with a {@code #<sequence>} header line, holding
+ * the sequence number of the last log line in the frame. After losing the
+ * connection, it can open a new session with
+ * {@value #RESUME_PARAMETER}{@code =<sequence + 1>} to receive only the lines
+ * it missed.</p>
+ *
+ * <p>A client opening the session with the {@value #BINARY_PROTOCOL}
+ * subprotocol receives the log as binary frames instead, with the level,
+ * timestamp, logger and sequence number of every line in a compact encoding,
+ * compressed unless the session negotiated {@code permessage-deflate} (see
+ * {@link BinaryLogEventSubscriber}). The {@value #BATCH_PARAMETER} and
+ * {@value #RESUME_PARAMETER} parameters apply to them too. Any other client
+ * keeps receiving text frames.</p>
+ *
+ * <p>The sessions of an execution that negotiated the same stream share
+ * their frames: each frame is built once, and binary frames are encoded once
+ * into a read-only buffer sent to all of them (see
+ * {@link ExecutionLogStream}).</p>
+ *
+ * <p>Frames are not sent by the publishing thread, but queued in a bounded
+ * {@link SessionWriter} per session, so a stalled client neither slows down
+ * the other sessions nor makes the memory grow without limit. What happens
+ * when that queue is full is set by {@code wakamiti.log.stream.slow-consumer}
+ * (see {@link SlowConsumerPolicy}). A paused session gets the lines it
+ * missed from the history once it has sent its queue.</p>
+ *
+ * <p>The lines published, and the frames sent, dropped or failed, are
+ * recorded in the {@link LogStreamMetrics}. The lines are also handed to the
+ * {@link ExecutionRepository}, which keeps them with the record of the
+ * execution.</p>
+ */
 @ApplicationScoped
 public class SessionLogEventPublisher implements LogEventPublisher<Session> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WakamitiServiceApplication.NAME);
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
 
-    private final Map<Session, LogEventSubscriber> subscribers = new ConcurrentHashMap<>();
-    private final Map<Session, Object> sessionLocks = new ConcurrentHashMap<>();
+    /**
+     * Query parameter used by the clients to negotiate batched frames.
+     */
+    public static final String BATCH_PARAMETER = "batch";
+    /**
+     * Query parameter used by the clients to ask for sequence headers.
+     */
+    public static final String SEQUENCE_PARAMETER = "seq";
+    /**
+     * Query parameter with the sequence number of the first line to send.
+     */
+    public static final String RESUME_PARAMETER = "from";
+
+    /**
+     * Sessions grouped by the execution whose log they are receiving.
+     */
+    private final Map<String, ExecutionLogStream> streams = new ConcurrentHashMap<>();
+    private final Map<Session, SessionWriter> writers = new ConcurrentHashMap<>();
 
     private final LogHistoryRepository history;
+    private final LogStreamProperties properties;
+    private final LogStreamMetrics metrics;
+    private final ExecutionRepository executions;
+
+    private ScheduledExecutorService batcher;
+
+    /**
+     * Flushes the log events pending to be published, if they are queued
+     * before reaching this publisher.
+     */
+    private volatile Runnable flusher = () -> { };
 
     @Inject
     public SessionLogEventPublisher(
-            LogHistoryRepository history
+            LogHistoryRepository history,
+            LogStreamProperties properties,
+            LogStreamMetrics metrics,
+            ExecutionRepository executions
     ) {
         this.history = history;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.executions = executions;
     }
 
+    @PostConstruct
+    void start() {
+        batcher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("wakamiti-log-batcher").daemon().factory());
+        long interval = properties.batchInterval().toNanos();
+        batcher.scheduleAtFixedRate(this::flushSubscribers, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batcher.shutdownNow();
+        flushSubscribers();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a query parameter of the session is
+     *                                  invalid, in which case the session is
+     *                                  not subscribed
+     */
     @Override
     public void subscribe(
+            String executionId,
             Session session
     ) {
-        history.find().forEach(msg -> sendMessage(session, msg));
-        subscribers.put(session, msg -> sendMessage(session, msg));
+        long from = resumeFrom(session);
+        boolean binary = BINARY_PROTOCOL.equals(session.getNegotiatedSubprotocol());
+        ExecutionLogStream.Format format = new ExecutionLogStream.Format(
+                binary,
+                parameter(session, BATCH_PARAMETER).map(Boolean::parseBoolean).orElse(false)
+                        ? properties.batchMaxSize() : 1,
+                !binary && parameter(session, SEQUENCE_PARAMETER).map(Boolean::parseBoolean).orElse(false),
+                binary && !compressed(session)
+        );
+        LongFunction<Stream<LogEntry>> replay = sequence -> history.find(executionId, sequence);
+        SessionWriter writer = SessionWriter.start(
+                session, format, properties.queueSize(), properties.slowConsumer(), metrics, from,
+                (paused, sequence) -> {
+                    ExecutionLogStream current = streams.get(executionId);
+                    if (current == null || !current.resume(session, paused, sequence, replay)) {
+                        paused.unpause();
+                    }
+                });
+        writers.put(session, writer);
+        ExecutionLogStream stream = streams.compute(executionId, (_, current) -> {
+            ExecutionLogStream result = current == null ? new ExecutionLogStream() : current;
+            result.subscribe(session, writer, format, from);
+            return result;
+        });
+        stream.catchUp(session, replay);
     }
 
-    /**
-     * According to the Jakarta WebSocket specification, it is not
-     * permitted to send a new message before the previous one has been
-     * fully sent. Failure to do so could result in an
-     * IllegalStateException being thrown.
-     * Synchronization is used to ensure that only one message is sent
-     * at a time per socket.
-     */
-    private void sendMessage(Session session, String message) {
-        if (session.isOpen()) {
-            synchronized (sessionLocks.computeIfAbsent(session, _ -> new Object())) {
-                try {
-                    session.getAsyncRemote().sendText(message);
-                } catch (Exception _) {
-                    LOGGER.error("WARN: Unable to send message: {}", message);
-                }
+    private static long resumeFrom(
+            Session session
+    ) {
+        String value = parameter(session, RESUME_PARAMETER).orElse(null);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long from = Long.parseLong(value);
+            if (from >= 0) {
+                return from;
             }
+        } catch (NumberFormatException _) {
+            // Reported below
         }
+        throw new IllegalArgumentException("Invalid " + RESUME_PARAMETER + " parameter: " + value);
+    }
+
+    private static Optional<String> parameter(
+            Session session,
+            String name
+    ) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? Optional.empty() : Optional.of(values.getFirst().trim());
+    }
+
+    private static boolean compressed(
+            Session session
+    ) {
+        return session.getNegotiatedExtensions().stream()
+                .anyMatch(extension -> PERMESSAGE_DEFLATE.equals(extension.getName()));
+    }
+
+    /**
+     * @return the number of frames waiting to be sent, by session ID
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        writers.forEach((session, writer) -> depths.put(session.getId(), writer.depth()));
+        return depths;
+    }
+
+    /**
+     * @return the number of sessions receiving the log
+     */
+    public int getSessionCount() {
+        return writers.size();
     }
 
 
     @Override
     public void unsubscribe(
+            String executionId,
             Session session
     ) {
-        subscribers.remove(session);
-        sessionLocks.remove(session);
+        SessionWriter writer = writers.remove(session);
+        streams.computeIfPresent(executionId, (_, stream) -> stream.unsubscribe(session, writer) ? null : stream);
+        if (writer != null) {
+            writer.close();
+        }
     }
 
 
     @Override
     public void publish(
-            String message
+            String executionId,
+            LogEvent event
     ) {
-        history.save(message);
-        subscribers.values().forEach(it -> it.onLogEvent(message));
+        LogEntry entry = history.save(executionId, event);
+        metrics.published();
+        executions.logged(executionId, entry);
+        ExecutionLogStream stream = streams.get(executionId);
+        if (stream != null) {
+            stream.publish(entry);
+        }
+    }
+
+
+    public void setFlusher(
+            Runnable flusher
+    ) {
+        this.flusher = flusher;
+    }
+
+
+    /**
+     * Waits for the queued log events to be published, sends the batched
+     * frames still pending, and waits for the sessions of the execution to
+     * send them.
+     */
+    @Override
+    public void flush(
+            String executionId
+    ) {
+        flusher.run();
+        ExecutionLogStream stream = streams.get(executionId);
+        if (stream != null) {
+            stream.flush();
+            stream.writers().forEach(writer -> writer.drain(DRAIN_TIMEOUT_MILLIS));
+        }
+    }
+
+    private void flushSubscribers() {
+        try {
+            streams.values().forEach(ExecutionLogStream::flush);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to flush batched log events", e);
+        }
     }
 
 
     @Override
-    public void clear() {
-        history.clear();
+    public void clear(
+            String executionId
+    ) {
+        history.close(executionId);
     }
 
 }
@@ -0,0 +1,423 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.model.LogEventSubscriber;
+import es.wakamiti.service.domain.spi.LogStreamMetrics;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+
+/**
+ * Bounded outbound queue of a WebSocket session, drained by its own virtual
+ * thread.
+ *
+ * <p>Messages are sent one at a time with the blocking remote, so a client
+ * that does not keep up only stalls its own writer, and the memory held for
+ * it is limited by the queue size. When the queue is full, the
+ * {@link SlowConsumerPolicy} decides what happens to the new message. No
+ * policy makes the thread queueing the message wait, since it is the one
+ * publishing the log of every execution.</p>
+ *
+ * <p>A paused writer ignores the messages until its queue is empty, and then
+ * asks for the lines it missed from the sequence number after the last one
+ * queued, e.g. to replay them from the history. The gap marker of the
+ * dropped messages is encoded in the {@link ExecutionLogStream.Format} of
+ * the session, as if it were a log line.</p>
+ *
+ * <p>The messages sent, dropped and failed are recorded in the
+ * {@link LogStreamMetrics}.</p>
+ */
+final class SessionWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WakamitiServiceApplication.NAME);
+    private static final String GAP_MARKER = "[%d log messages skipped: the connection is too slow]%n";
+    private static final CloseReason SLOW_CONSUMER = new CloseReason(
+            CloseReason.CloseCodes.TRY_AGAIN_LATER, "Connection too slow to keep up with the log");
+
+    /**
+     * Queued element: either a text or binary message, with the sequence
+     * number of its last log line, or a drain barrier.
+     */
+    private record Frame(
+            String text,
+            ByteBuffer binary,
+            long sequence,
+            CountDownLatch barrier
+    ) {
+
+    }
+
+    private final Session session;
+    private final ExecutionLogStream.Format format;
+    private final SlowConsumerPolicy policy;
+    private final LogStreamMetrics metrics;
+    private final ObjLongConsumer<SessionWriter> resumer;
+    private final BlockingQueue<Frame> queue;
+    private final Lock lock = new ReentrantLock();
+    /**
+     * Barriers reached while the writer is behind, used only by its thread.
+     */
+    private final List<CountDownLatch> barriers = new ArrayList<>();
+
+    private Thread writer;
+    private volatile boolean closed;
+    private volatile boolean paused;
+    private long skipped;
+    private long queued;
+    private long sent = -1;
+    private boolean catchingUp;
+
+    private SessionWriter(
+            Session session,
+            ExecutionLogStream.Format format,
+            int queueSize,
+            SlowConsumerPolicy policy,
+            LogStreamMetrics metrics,
+            long from,
+            ObjLongConsumer<SessionWriter> resumer
+    ) {
+        this.session = session;
+        this.format = format;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.resumer = resumer;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.queued = from - 1;
+    }
+
+    /**
+     * @param from    the sequence number of the first line the session gets
+     * @param resumer asked for the lines missed while paused by the writer,
+     *                from the given sequence number, once the queue is empty
+     */
+    static SessionWriter start(
+            Session session,
+            ExecutionLogStream.Format format,
+            int queueSize,
+            SlowConsumerPolicy policy,
+            LogStreamMetrics metrics,
+            long from,
+            ObjLongConsumer<SessionWriter> resumer
+    ) {
+        SessionWriter writer = new SessionWriter(session, format, queueSize, policy, metrics, from, resumer);
+        writer.writer = Thread.ofVirtual()
+                .name("wakamiti-ws-writer-" + session.getId())
+                .start(writer::write);
+        return writer;
+    }
+
+    /**
+     * Queues a text message to be sent, applying the overflow policy if the
+     * queue is full.
+     *
+     * @param sequence the sequence number of the last log line in the message
+     */
+    void send(
+            String message,
+            long sequence
+    ) {
+        send(new Frame(message, null, sequence, null));
+    }
+
+    /**
+     * Queues a binary message to be sent, applying the overflow policy if
+     * the queue is full.
+     *
+     * @param sequence the sequence number of the last log line in the message
+     */
+    void send(
+            ByteBuffer message,
+            long sequence
+    ) {
+        send(new Frame(null, message, sequence, null));
+    }
+
+    private void send(
+            Frame frame
+    ) {
+        if (closed) {
+            return;
+        }
+        switch (policy) {
+            case DROP -> drop(frame);
+            case DISCONNECT -> {
+                if (!queue.offer(frame)) {
+                    metrics.dropped();
+                    LOGGER.warn("Outbound queue of session {} is full, disconnecting", session.getId());
+                    disconnect();
+                }
+            }
+            case PAUSE -> pause(frame);
+        }
+    }
+
+    /**
+     * Queues the message, or pauses the writer if the queue is full. The
+     * messages are ignored while paused, since the lines they hold are asked
+     * for again once the queue is empty.
+     */
+    private void pause(
+            Frame frame
+    ) {
+        lock.lock();
+        try {
+            if (paused) {
+                return;
+            }
+            if (queue.offer(frame)) {
+                queued = frame.sequence();
+            } else {
+                paused = true;
+                LOGGER.debug("Outbound queue of session {} is full, pausing", session.getId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the messages again after a pause. Must be called once the lines
+     * missed can no longer be queued after later ones, i.e. while the
+     * session does not receive the live log.
+     */
+    void unpause() {
+        paused = false;
+    }
+
+    /**
+     * Queues the message, or drops it if the queue is full. Once a message
+     * is dropped, the following ones are dropped too until the queue is
+     * empty, so that a single gap marker is sent in place of all of them.
+     */
+    private void drop(
+            Frame frame
+    ) {
+        lock.lock();
+        try {
+            if (skipped > 0 || !queue.offer(frame)) {
+                metrics.dropped();
+                if (skipped++ == 0) {
+                    LOGGER.warn("Outbound queue of session {} is full, dropping messages", session.getId());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every message queued before this call has been sent, or
+     * the timeout elapses.
+     */
+    void drain(
+            long timeoutMillis
+    ) {
+        if (closed) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        try {
+            if (queue.offer(new Frame(null, null, -1, barrier), timeoutMillis, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    release();
+                }
+                barrier.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be sent
+     */
+    int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the writer, discarding the messages not sent yet.
+     */
+    void close() {
+        closed = true;
+        writer.interrupt();
+        release();
+    }
+
+    private void disconnect() {
+        close();
+        Thread.ofVirtual().start(() -> {
+            try {
+                session.close(SLOW_CONSUMER);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close session {}", session.getId(), e);
+            }
+        });
+    }
+
+    private void write() {
+        try {
+            while (!closed) {
+                Frame frame = queue.take();
+                if (frame.text() != null) {
+                    transmit(frame.text());
+                    sent = frame.sequence();
+                } else if (frame.binary() != null) {
+                    transmit(frame.binary());
+                    sent = frame.sequence();
+                } else {
+                    barriers.add(frame.barrier());
+                }
+                if (queue.isEmpty()) {
+                    transmitGap();
+                    resume();
+                }
+                // The lines missed while paused were queued before the barriers
+                if (!paused && !catchingUp) {
+                    barriers.forEach(CountDownLatch::countDown);
+                    barriers.clear();
+                }
+            }
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Asks for the lines missed while paused, if any, once the queue is
+     * empty.
+     */
+    private void resume() {
+        if (!paused) {
+            catchingUp = false;
+            return;
+        }
+        LOGGER.debug("Outbound queue of session {} is empty, resuming from line {}", session.getId(), queued + 1);
+        try {
+            resumer.accept(this, queued + 1);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to resume session {}: {}", session.getId(), e.getMessage());
+            paused = false;
+        }
+        catchingUp = !queue.isEmpty();
+    }
+
+    /**
+     * Tells the client how many messages were dropped, if any, with the
+     * sequence number of the last line sent, the one to resume after.
+     */
+    private void transmitGap() {
+        long gap;
+        lock.lock();
+        try {
+            gap = skipped;
+            skipped = 0;
+        } finally {
+            lock.unlock();
+        }
+        if (gap == 0) {
+            return;
+        }
+        LogEntry marker = new LogEntry(Math.max(sent, 0), LogEvent.of(
+                Instant.now(), "WARN", WakamitiServiceApplication.NAME, GAP_MARKER.formatted(gap)));
+        LogEventSubscriber encoder = format.binary()
+                ? new BinaryLogEventSubscriber(1, false, (frame, _) -> transmit(frame))
+                : new BatchingLogEventSubscriber(1, format.sequenced(), (frame, _) -> transmit(frame));
+        encoder.onLogEvent(marker);
+    }
+
+    private void transmit(
+            String message
+    ) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.getBasicRemote().sendText(message);
+            metrics.sent(encodedLength(message));
+        } catch (IOException | RuntimeException e) {
+            metrics.sendFailed();
+            LOGGER.warn("Unable to send message to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Number of bytes of the text once encoded in UTF-8, as sent in a text
+     * frame, counted without encoding it.
+     */
+    private static int encodedLength(
+            String text
+    ) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                // A pair of surrogates takes 4 bytes
+                length++;
+            } else if (c >= 0x800) {
+                length += 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private void transmit(
+            ByteBuffer message
+    ) {
+        if (!session.isOpen()) {
+            return;
+        }
+        int bytes = message.remaining();
+        try {
+            session.getBasicRemote().sendBinary(message);
+            metrics.sent(bytes);
+        } catch (IOException | RuntimeException e) {
+            metrics.sendFailed();
+            LOGGER.warn("Unable to send message to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Discards the queued messages, releasing the threads waiting for them
+     * to be sent.
+     */
+    private void release() {
+        List<Frame> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.stream()
+                .filter(frame -> frame.barrier() != null)
+                .forEach(frame -> frame.barrier().countDown());
+        if (Thread.currentThread() == writer) {
+            barriers.forEach(CountDownLatch::countDown);
+            barriers.clear();
+        }
+    }
+
+}
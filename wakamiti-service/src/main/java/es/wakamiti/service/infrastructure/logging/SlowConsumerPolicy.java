@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.logging;
+
+
+import java.util.Locale;
+
+
+/**
+ * What to do with a new message when the outbound queue of a WebSocket
+ * session is full, i.e. when the client does not keep up with the log.
+ */
+public enum SlowConsumerPolicy {
+    /** The message is dropped, and a marker with the number of dropped messages is sent once the queue is empty. */
+    DROP,
+    /** The session is closed with a reason explaining it is too slow. */
+    DISCONNECT,
+    /** The session stops receiving the live log until its queue is empty, and then gets the lines it missed from the history. */
+    PAUSE;
+
+    public static SlowConsumerPolicy of(
+            String value
+    ) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
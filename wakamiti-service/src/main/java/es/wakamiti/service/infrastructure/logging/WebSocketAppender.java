@@ -6,39 +6,105 @@
 package es.wakamiti.service.infrastructure.logging;
 
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.AppenderBase;
 import ch.qos.logback.core.Layout;
+import es.wakamiti.service.domain.model.LogEvent;
 import es.wakamiti.service.domain.spi.LogEventPublisher;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * Custom Log4j2 appender that streams log messages to WebSocket clients in real-time.
- * 
+ *
  * <p>This appender extends AbstractAppender to integrate with Log4j2's logging framework
  * and provides real-time log streaming capabilities via WebSocket connections. When a log
  * event occurs, it formats the message, stores it in a buffer for new connections, and
- * broadcasts it to all active WebSocket sessions.</p>
- * 
+ * sends it to the WebSocket sessions watching the execution that produced it.</p>
+ *
+ * <p>The execution is taken from the {@value LogEventPublisher#EXECUTION_ID} MDC
+ * entry, bound by the execution service while the runner is working. Events
+ * logged outside an execution are discarded.</p>
+ *
+ * <p>The logging thread only hands the event to a bounded queue, which is
+ * drained by a dedicated thread that publishes it, so a slow client or a
+ * large fan-out does not slow down the execution. The logging thread only
+ * captures the thread-bound data and the message of the event, so that
+ * mutable arguments are logged with the value they had; the layout is only
+ * applied if some consumer needs the text, and once for all of them. When
+ * the queue is full, the
+ * {@link OverflowPolicy} decides whether the logging thread waits or the
+ * event is dropped; dropped events are counted.</p>
+ *
  * <p>Key features:</p>
  * <ul>
- *   <li>Real-time log streaming to WebSocket clients</li>
+ *   <li>Real-time log streaming to WebSocket clients, per execution</li>
  *   <li>Message buffering for connection history replay</li>
  *   <li>Integration with Log4j2 plugin system</li>
  *   <li>Thread-safe message broadcasting</li>
+ *   <li>Constant cost on the logging thread</li>
  * </ul>
- * 
- * <p>Usage in log4j2.xml:</p>
+ *
+ * <p>Usage in logback.xml:</p>
  * <pre>{@code
- * <WebSocketAppender name="WS">
- *   <PatternLayout pattern="%msg%n"/>
- * </WebSocketAppender>
+ * <appender name="WS" class="es.wakamiti.service.infrastructure.logging.WebSocketAppender">
+ *   <queueSize>8192</queueSize>
+ *   <overflowPolicy>DROP_BELOW_LEVEL</overflowPolicy>
+ *   <dropBelowLevel>WARN</dropBelowLevel>
+ *   <layout class="ch.qos.logback.classic.PatternLayout">
+ *     <pattern>%msg%n</pattern>
+ *   </layout>
+ * </appender>
  * }</pre>
  */
 public class WebSocketAppender extends AppenderBase<ILoggingEvent> {
 
+    private static final int DEFAULT_QUEUE_SIZE = 8192;
+    private static final int DRAIN_BATCH = 256;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * What to do with a new event when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** The logging thread waits until there is room in the queue. */
+        BLOCK,
+        /** The oldest queued event is dropped to make room. */
+        DROP_OLDEST,
+        /** The event is dropped if its level is below {@code dropBelowLevel}, otherwise it waits. */
+        DROP_BELOW_LEVEL
+    }
+
+    /**
+     * Queued element: either an event of an execution, or a flush barrier.
+     */
+    private record Pending(
+            String executionId,
+            LogEvent event,
+            CountDownLatch barrier
+    ) {
+
+    }
+
+    private final AtomicLong dropped = new AtomicLong();
+
     private LogEventPublisher<?> publisher;
     private Layout<ILoggingEvent> layout;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Level dropBelowLevel = Level.WARN;
+
+    private BlockingQueue<Pending> queue;
+    private Thread drainer;
 
     public WebSocketAppender() {
         super();
@@ -56,6 +122,63 @@ public class WebSocketAppender extends AppenderBase<ILoggingEvent> {
         this.layout = layout;
     }
 
+    public void setQueueSize(
+            int queueSize
+    ) {
+        this.queueSize = queueSize;
+    }
+
+    public void setOverflowPolicy(
+            String overflowPolicy
+    ) {
+        this.overflowPolicy = OverflowPolicy.valueOf(
+                overflowPolicy.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public void setDropBelowLevel(
+            String dropBelowLevel
+    ) {
+        this.dropBelowLevel = Level.toLevel(dropBelowLevel, Level.WARN);
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of events waiting to be published
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public void start() {
+        if (queueSize < 1) {
+            addError("Invalid queue size [" + queueSize + "]");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        drainer = Thread.ofPlatform()
+                .name("wakamiti-log-drainer")
+                .daemon()
+                .start(this::drain);
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        flush();
+        drainer.interrupt();
+    }
+
     @Override
     protected void append(
             ILoggingEvent event
@@ -65,8 +188,100 @@ public class WebSocketAppender extends AppenderBase<ILoggingEvent> {
             return;
         }
 
-        if (publisher != null && layout != null) {
-            publisher.publish(layout.doLayout(event));
+        String executionId = event.getMDCPropertyMap().get(LogEventPublisher.EXECUTION_ID);
+        if (publisher != null && layout != null && executionId != null) {
+            // Capture the thread-bound data and the arguments before handing the event over
+            event.prepareForDeferredProcessing();
+            enqueue(new Pending(executionId, LogEvent.of(
+                    event.getInstant(),
+                    event.getLevel().toString(),
+                    event.getThreadName(),
+                    event.getLoggerName(),
+                    event.getMDCPropertyMap(),
+                    event.getMessage(),
+                    event.getArgumentArray(),
+                    event::getFormattedMessage,
+                    () -> layout.doLayout(event)
+            ), null));
+        }
+    }
+
+    private void enqueue(
+            Pending pending
+    ) {
+        try {
+            switch (overflowPolicy) {
+                case BLOCK -> queue.put(pending);
+                case DROP_OLDEST -> {
+                    while (!queue.offer(pending)) {
+                        Pending oldest = queue.poll();
+                        if (oldest != null && oldest.barrier() != null) {
+                            oldest.barrier().countDown();
+                        } else if (oldest != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+                case DROP_BELOW_LEVEL -> {
+                    if (!queue.offer(pending)) {
+                        if (Level.toLevel(pending.event().level()).isGreaterOrEqual(dropBelowLevel)) {
+                            queue.put(pending);
+                        } else {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException _) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until every event appended before this call has been published,
+     * or a timeout elapses.
+     */
+    public void flush() {
+        if (queue == null || Thread.currentThread() == drainer) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        try {
+            if (queue.offer(new Pending(null, null, barrier), FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                barrier.await(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(DRAIN_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            queue.drainTo(batch, DRAIN_BATCH - 1);
+            batch.forEach(this::publish);
+            batch.clear();
+        }
+    }
+
+    private void publish(
+            Pending pending
+    ) {
+        if (pending.barrier() != null) {
+            pending.barrier().countDown();
+            return;
+        }
+        try {
+            publisher.publish(pending.executionId(), pending.event());
+        } catch (RuntimeException e) {
+            addError("Unable to publish log event", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.metrics;
+
+
+import es.wakamiti.service.domain.spi.ExecutionMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Records the {@link ExecutionMetrics} in the application
+ * {@link MetricRegistry}, exposed on {@code /metrics}:
+ * <ul>
+ *   <li>{@code wakamiti.executions.started}: executions started</li>
+ *   <li>{@code wakamiti.executions.rejected}: executions rejected because
+ *   the queue was full</li>
+ *   <li>{@code wakamiti.executions.duration}: timer with the distribution of
+ *   the execution durations</li>
+ *   <li>{@code wakamiti.executions.active}: executions in progress</li>
+ *   <li>{@code wakamiti.executions.queued}: executions waiting in the
+ *   queue</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class RegistryExecutionMetrics implements ExecutionMetrics {
+
+    private final MetricRegistry registry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private Counter started;
+    private Counter rejected;
+    private Timer duration;
+
+    @Inject
+    public RegistryExecutionMetrics(
+            MetricRegistry registry
+    ) {
+        this.registry = registry;
+    }
+
+    /**
+     * Creates the bean on startup, so the metrics are exposed before
+     * the first execution.
+     */
+    void startup(
+            @Observes @Initialized(ApplicationScoped.class) Object event
+    ) {
+        // The metrics are registered on construction
+    }
+
+    @PostConstruct
+    void register() {
+        started = registry.counter(Metadata.builder()
+                .withName("wakamiti.executions.started")
+                .withDescription("Executions started")
+                .build());
+        rejected = registry.counter(Metadata.builder()
+                .withName("wakamiti.executions.rejected")
+                .withDescription("Executions rejected because the queue was full")
+                .build());
+        duration = registry.timer(Metadata.builder()
+                .withName("wakamiti.executions.duration")
+                .withDescription("Duration of the finished executions")
+                .withUnit(MetricUnits.SECONDS)
+                .build());
+        registry.gauge(Metadata.builder()
+                .withName("wakamiti.executions.active")
+                .withDescription("Executions in progress")
+                .build(), active, AtomicInteger::get);
+        registry.gauge(Metadata.builder()
+                .withName("wakamiti.executions.queued")
+                .withDescription("Executions waiting in the queue")
+                .build(), queued, AtomicInteger::get);
+    }
+
+    @Override
+    public void started() {
+        started.inc();
+        active.incrementAndGet();
+    }
+
+    @Override
+    public void queued() {
+        queued.incrementAndGet();
+    }
+
+    @Override
+    public void dequeued() {
+        queued.decrementAndGet();
+    }
+
+    @Override
+    public void rejected() {
+        rejected.inc();
+    }
+
+    @Override
+    public void finished(
+            Duration duration
+    ) {
+        active.decrementAndGet();
+        this.duration.update(duration);
+    }
+
+}
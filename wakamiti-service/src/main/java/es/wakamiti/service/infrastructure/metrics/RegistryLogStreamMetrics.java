@@ -0,0 +1,151 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.metrics;
+
+
+import es.wakamiti.service.domain.spi.LogHistoryRepository;
+import es.wakamiti.service.domain.spi.LogStreamMetrics;
+import es.wakamiti.service.infrastructure.logging.SessionLogEventPublisher;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+import java.util.function.Supplier;
+
+
+/**
+ * Records the {@link LogStreamMetrics} in the application
+ * {@link MetricRegistry}, exposed on {@code /metrics}, together with gauges
+ * of the sessions and of the log history:
+ * <ul>
+ *   <li>{@code wakamiti.log.published}: log lines published</li>
+ *   <li>{@code wakamiti.log.sent} and {@code wakamiti.log.sent.bytes}: frames
+ *   sent to the clients, and their size (characters of the text frames,
+ *   bytes of the binary ones)</li>
+ *   <li>{@code wakamiti.log.send.failures}: frames that could not be
+ *   sent</li>
+ *   <li>{@code wakamiti.log.dropped}: frames dropped because the client did
+ *   not keep up</li>
+ *   <li>{@code wakamiti.log.subscribers}: sessions receiving the log</li>
+ *   <li>{@code wakamiti.log.backlog} and {@code wakamiti.log.backlog.max}:
+ *   frames waiting to be sent, in total and to the slowest session</li>
+ *   <li>{@code wakamiti.log.history.size} and
+ *   {@code wakamiti.log.history.bytes}: lines kept in the history, and their
+ *   size</li>
+ * </ul>
+ *
+ * <p>The gauges are read when the metrics are scraped, so they do not cost
+ * anything to the log stream.</p>
+ */
+@ApplicationScoped
+public class RegistryLogStreamMetrics implements LogStreamMetrics {
+
+    private final MetricRegistry registry;
+    private final SessionLogEventPublisher publisher;
+    private final LogHistoryRepository history;
+
+    private Counter published;
+    private Counter sent;
+    private Counter sentBytes;
+    private Counter sendFailures;
+    private Counter dropped;
+
+    @Inject
+    public RegistryLogStreamMetrics(
+            MetricRegistry registry,
+            SessionLogEventPublisher publisher,
+            LogHistoryRepository history
+    ) {
+        this.registry = registry;
+        this.publisher = publisher;
+        this.history = history;
+    }
+
+    /**
+     * Creates the bean on startup, so the metrics are exposed before
+     * the first log line.
+     */
+    void startup(
+            @Observes @Initialized(ApplicationScoped.class) Object event
+    ) {
+        // The metrics are registered on construction
+    }
+
+    @PostConstruct
+    void register() {
+        published = counter("wakamiti.log.published", "Log lines published", MetricUnits.NONE);
+        sent = counter("wakamiti.log.sent", "Frames sent to the clients", MetricUnits.NONE);
+        sentBytes = counter("wakamiti.log.sent.bytes", "Size of the frames sent to the clients", MetricUnits.BYTES);
+        sendFailures = counter("wakamiti.log.send.failures", "Frames that could not be sent", MetricUnits.NONE);
+        dropped = counter("wakamiti.log.dropped", "Frames dropped for slow clients", MetricUnits.NONE);
+
+        gauge("wakamiti.log.subscribers", "Sessions receiving the log", MetricUnits.NONE,
+              () -> publisher.getQueueDepths().size());
+        gauge("wakamiti.log.backlog", "Frames waiting to be sent", MetricUnits.NONE,
+              () -> publisher.getQueueDepths().values().stream().mapToInt(Integer::intValue).sum());
+        gauge("wakamiti.log.backlog.max", "Frames waiting to be sent to the slowest session", MetricUnits.NONE,
+              () -> publisher.getQueueDepths().values().stream().mapToInt(Integer::intValue).max().orElse(0));
+        gauge("wakamiti.log.history.size", "Log lines kept in the history", MetricUnits.NONE,
+              history::size);
+        gauge("wakamiti.log.history.bytes", "Size of the log lines kept in the history", MetricUnits.BYTES,
+              history::bytes);
+    }
+
+    private Counter counter(
+            String name,
+            String description,
+            String unit
+    ) {
+        return registry.counter(Metadata.builder()
+                .withName(name)
+                .withDescription(description)
+                .withUnit(unit)
+                .build());
+    }
+
+    private void gauge(
+            String name,
+            String description,
+            String unit,
+            Supplier<Number> value
+    ) {
+        registry.gauge(Metadata.builder()
+                .withName(name)
+                .withDescription(description)
+                .withUnit(unit)
+                .build(), value);
+    }
+
+    @Override
+    public void published() {
+        published.inc();
+    }
+
+    @Override
+    public void sent(
+            long bytes
+    ) {
+        sent.inc();
+        sentBytes.inc(bytes);
+    }
+
+    @Override
+    public void sendFailed() {
+        sendFailures.inc();
+    }
+
+    @Override
+    public void dropped() {
+        dropped.inc();
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.persistence;
+
+
+import java.time.Duration;
+
+
+/**
+ * Settings of the database where the executions are recorded.
+ *
+ * @param url            the JDBC URL of the embedded H2 database
+ * @param username       the user of the database
+ * @param password       the password of the user
+ * @param batchSize      the maximum number of changes written in one
+ *                       transaction
+ * @param queueSize      the maximum number of log lines waiting to be
+ *                       written, the new ones are dropped meanwhile
+ * @param retention      how long the finished executions are kept
+ * @param maxLines       the maximum number of log lines kept for each
+ *                       execution, the oldest ones are deleted first
+ * @param maxStoredLines the maximum number of log lines kept for all the
+ *                       executions, the oldest finished executions are
+ *                       deleted first
+ */
+public record ExecutionStoreProperties(
+        String url,
+        String username,
+        String password,
+        int batchSize,
+        int queueSize,
+        Duration retention,
+        int maxLines,
+        long maxStoredLines
+) {
+
+    public ExecutionStoreProperties {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("Execution store URL must be given");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be greater than 0");
+        }
+        if (retention.isNegative() || retention.isZero()) {
+            throw new IllegalArgumentException("Retention must be greater than 0");
+        }
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("Max lines must be greater than 0");
+        }
+        if (maxStoredLines < maxLines) {
+            throw new IllegalArgumentException("Max stored lines must not be less than max lines");
+        }
+    }
+
+}
@@ -0,0 +1,561 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.persistence;
+
+
+import es.wakamiti.service.WakamitiServiceApplication;
+import es.wakamiti.service.domain.model.ExecutionRecord;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.spi.ExecutionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Execution records kept in an embedded H2 database, given by
+ * {@link ExecutionStoreProperties#url()}: in memory for the life of the
+ * service, or in a file to keep them across restarts.
+ *
+ * <p>The changes are not written by the threads reporting them, which only
+ * queue them, but by a writer thread that takes every change queued so far,
+ * up to {@link ExecutionStoreProperties#batchSize()}, and writes them with
+ * one JDBC batch per statement in a single transaction; if the batch fails,
+ * its changes are written one by one, so that a bad one does not lose the
+ * others. The reporting threads never wait: once
+ * {@link ExecutionStoreProperties#queueSize()} log lines are waiting to be
+ * written, the new ones are dropped and counted, while the submission,
+ * start and end of the executions are still queued.</p>
+ *
+ * <p>The executions are found newest first through an index on their
+ * submission time, and the log lines through the primary key of the
+ * execution and line number. The executions that ended longer than
+ * {@link ExecutionStoreProperties#retention()} ago are deleted on startup,
+ * and then every hour.</p>
+ *
+ * <p>The log is bounded as well, whatever the retention: only the last
+ * {@link ExecutionStoreProperties#maxLines()} lines of each execution are
+ * kept, and the oldest finished executions are deleted as soon as all of
+ * them have more than {@link ExecutionStoreProperties#maxStoredLines()}
+ * lines. The {@link ExecutionRecord#lines()} still count every line
+ * logged.</p>
+ */
+@ApplicationScoped
+public class JdbcExecutionRepository implements ExecutionRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WakamitiServiceApplication.NAME);
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+    private static final long POLLING_MILLIS = 100;
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final int SHRINK_CHUNK = 64;
+
+    private static final List<String> SCHEMA = List.of(
+            """
+            CREATE TABLE IF NOT EXISTS execution (
+                id VARCHAR(64) PRIMARY KEY,
+                command VARCHAR NOT NULL,
+                submitted TIMESTAMP WITH TIME ZONE NOT NULL,
+                started TIMESTAMP WITH TIME ZONE,
+                ended TIMESTAMP WITH TIME ZONE,
+                status INTEGER,
+                lines BIGINT DEFAULT 0 NOT NULL
+            )""",
+            "CREATE INDEX IF NOT EXISTS execution_submitted ON execution (submitted DESC, id DESC)",
+            """
+            CREATE TABLE IF NOT EXISTS execution_log (
+                execution_id VARCHAR(64) NOT NULL,
+                line BIGINT NOT NULL,
+                logged TIMESTAMP WITH TIME ZONE NOT NULL,
+                level VARCHAR(16) NOT NULL,
+                logger VARCHAR NOT NULL,
+                message VARCHAR NOT NULL,
+                PRIMARY KEY (execution_id, line)
+            )"""
+    );
+    private static final String INSERT_EXECUTION =
+            "INSERT INTO execution (id, command, submitted) VALUES (?, ?, ?)";
+    private static final String START_EXECUTION =
+            "UPDATE execution SET started = ? WHERE id = ?";
+    private static final String INSERT_LINE =
+            "INSERT INTO execution_log (execution_id, line, logged, level, logger, message) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String COUNT_LINES =
+            "UPDATE execution SET lines = lines + ? WHERE id = ?";
+    private static final String TRIM_LINES =
+            "DELETE FROM execution_log WHERE execution_id = ? AND line <= ?";
+    private static final String FINISH_EXECUTION =
+            "UPDATE execution SET ended = ?, status = ? WHERE id = ?";
+    private static final String FIND_EXECUTIONS =
+            "SELECT id, command, submitted, started, ended, status, lines FROM execution "
+                    + "ORDER BY submitted DESC, id DESC OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+    private static final String COUNT_EXECUTIONS =
+            "SELECT COUNT(*) FROM execution";
+    private static final String PURGE_LINES =
+            "DELETE FROM execution_log WHERE execution_id IN (SELECT id FROM execution WHERE ended < ?)";
+    private static final String PURGE_EXECUTIONS =
+            "DELETE FROM execution WHERE ended < ?";
+    private static final String COUNT_STORED_LINES =
+            "SELECT COUNT(*) FROM execution_log";
+    private static final String OLDEST_EXECUTIONS =
+            "SELECT id FROM execution WHERE ended IS NOT NULL ORDER BY submitted, id FETCH FIRST ? ROWS ONLY";
+    private static final String DELETE_LINES =
+            "DELETE FROM execution_log WHERE execution_id = ?";
+    private static final String DELETE_EXECUTION =
+            "DELETE FROM execution WHERE id = ?";
+
+    /**
+     * A change of an execution, waiting to be written.
+     */
+    private sealed interface Change {
+
+        String id();
+
+    }
+
+    private record Submitted(
+            String id,
+            String command,
+            Instant timestamp
+    ) implements Change {
+
+    }
+
+    private record Started(
+            String id,
+            Instant timestamp
+    ) implements Change {
+
+    }
+
+    private record Logged(
+            String id,
+            long line,
+            Instant logged,
+            String level,
+            String logger,
+            String message
+    ) implements Change {
+
+    }
+
+    private record Finished(
+            String id,
+            Instant timestamp,
+            int status
+    ) implements Change {
+
+    }
+
+    private final ExecutionStoreProperties properties;
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private final AtomicInteger queuedLines = new AtomicInteger();
+    private final AtomicLong droppedLines = new AtomicLong();
+
+    private JdbcConnectionPool pool;
+    private Thread writer;
+    private volatile boolean closed;
+    /** The log lines in the database, only known by the writer. */
+    private long stored;
+
+    @Inject
+    public JdbcExecutionRepository(
+            ExecutionStoreProperties properties
+    ) {
+        this.properties = properties;
+    }
+
+    /**
+     * Creates the tables if missing, deletes the expired executions, and
+     * starts writing the changes.
+     *
+     * @throws IllegalStateException if the database is not available
+     */
+    @PostConstruct
+    public void start() {
+        pool = JdbcConnectionPool.create(properties.url(), properties.username(), properties.password());
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+            try (ResultSet result = statement.executeQuery(COUNT_STORED_LINES)) {
+                result.next();
+                stored = result.getLong(1);
+            }
+            purge(connection);
+            shrink(connection);
+        } catch (SQLException e) {
+            pool.dispose();
+            throw new IllegalStateException("Unable to open the execution store " + properties.url(), e);
+        }
+        writer = Thread.ofPlatform().name("wakamiti-execution-store").daemon().start(this::write);
+    }
+
+    /**
+     * Writes the changes still queued, and closes the database.
+     */
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        try {
+            writer.join(DRAIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+        pool.dispose();
+    }
+
+    @Override
+    public void submitted(
+            String executionId,
+            String command,
+            Instant timestamp
+    ) {
+        queue(new Submitted(executionId, command, timestamp));
+    }
+
+    @Override
+    public void started(
+            String executionId,
+            Instant timestamp
+    ) {
+        queue(new Started(executionId, timestamp));
+    }
+
+    /**
+     * Queues the text of the line, so that the event itself is not kept
+     * until written.
+     */
+    @Override
+    public void logged(
+            String executionId,
+            LogEntry entry
+    ) {
+        if (queuedLines.incrementAndGet() > properties.queueSize()) {
+            queuedLines.decrementAndGet();
+            if (droppedLines.getAndIncrement() == 0) {
+                LOGGER.warn("The execution store falls behind, log lines are dropped");
+            }
+            return;
+        }
+        queue(new Logged(
+                executionId,
+                entry.sequence(),
+                entry.event().timestamp(),
+                entry.event().level(),
+                entry.event().logger(),
+                entry.text()
+        ));
+    }
+
+    @Override
+    public void finished(
+            String executionId,
+            Instant timestamp,
+            int status
+    ) {
+        queue(new Finished(executionId, timestamp, status));
+    }
+
+    private void queue(
+            Change change
+    ) {
+        if (!closed) {
+            changes.add(change);
+        }
+    }
+
+    /**
+     * @return the number of log lines dropped because the writer fell
+     *         behind
+     */
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    @Override
+    public List<ExecutionRecord> find(
+            int offset,
+            int limit
+    ) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(FIND_EXECUTIONS)) {
+            statement.setInt(1, offset);
+            statement.setInt(2, limit);
+            List<ExecutionRecord> records = new ArrayList<>(limit);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    records.add(new ExecutionRecord(
+                            result.getString(1),
+                            result.getString(2),
+                            instant(result, 3),
+                            instant(result, 4),
+                            instant(result, 5),
+                            result.getObject(6, Integer.class),
+                            result.getLong(7)
+                    ));
+                }
+            }
+            return records;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to read the execution store", e);
+        }
+    }
+
+    @Override
+    public long count() {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(COUNT_EXECUTIONS)) {
+            result.next();
+            return result.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to read the execution store", e);
+        }
+    }
+
+    /**
+     * Writes the queued changes in batches until closed, and then the ones
+     * left.
+     */
+    private void write() {
+        List<Change> batch = new ArrayList<>(properties.batchSize());
+        long nextPurge = System.nanoTime() + PURGE_INTERVAL.toNanos();
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            while (!closed || !changes.isEmpty()) {
+                Change first = changes.poll(POLLING_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    changes.drainTo(batch, properties.batchSize() - 1);
+                    queuedLines.addAndGet(-(int) batch.stream().filter(Logged.class::isInstance).count());
+                    write(connection, batch);
+                    batch.clear();
+                    if (stored > properties.maxStoredLines()) {
+                        shrink(connection);
+                    }
+                }
+                if (System.nanoTime() - nextPurge >= 0) {
+                    purge(connection);
+                    nextPurge = System.nanoTime() + PURGE_INTERVAL.toNanos();
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.error("The executions are no longer recorded", e);
+            closed = true;
+            changes.clear();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a batch of changes in one transaction, or one by one if it
+     * fails. The changes that still fail are discarded, so that the next
+     * ones are still written.
+     */
+    private void write(
+            Connection connection,
+            List<Change> batch
+    ) {
+        try {
+            writeBatch(connection, batch);
+        } catch (SQLException e) {
+            rollback(connection);
+            if (batch.size() == 1) {
+                LOGGER.warn("Unable to record a change of the execution {}", batch.getFirst().id(), e);
+                return;
+            }
+            LOGGER.debug("Unable to record {} changes of the executions at once", batch.size(), e);
+            for (Change change : batch) {
+                write(connection, List.of(change));
+            }
+        }
+    }
+
+    private void writeBatch(
+            Connection connection,
+            List<Change> batch
+    ) throws SQLException {
+        Map<String, Integer> lines = new HashMap<>();
+        Map<String, Long> last = new HashMap<>();
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_EXECUTION);
+             PreparedStatement start = connection.prepareStatement(START_EXECUTION);
+             PreparedStatement log = connection.prepareStatement(INSERT_LINE);
+             PreparedStatement count = connection.prepareStatement(COUNT_LINES);
+             PreparedStatement trim = connection.prepareStatement(TRIM_LINES);
+             PreparedStatement finish = connection.prepareStatement(FINISH_EXECUTION)) {
+            for (Change change : batch) {
+                switch (change) {
+                    case Submitted(String id, String command, Instant timestamp) -> {
+                        insert.setString(1, id);
+                        insert.setString(2, command);
+                        insert.setObject(3, timestamp(timestamp));
+                        insert.addBatch();
+                    }
+                    case Started(String id, Instant timestamp) -> {
+                        start.setObject(1, timestamp(timestamp));
+                        start.setString(2, id);
+                        start.addBatch();
+                    }
+                    case Logged(String id, long line, Instant logged, String level, String logger, String message) -> {
+                        log.setString(1, id);
+                        log.setLong(2, line);
+                        log.setObject(3, timestamp(logged));
+                        log.setString(4, level);
+                        log.setString(5, logger);
+                        log.setString(6, message);
+                        log.addBatch();
+                        lines.merge(id, 1, Integer::sum);
+                        last.merge(id, line, Math::max);
+                    }
+                    case Finished(String id, Instant timestamp, int status) -> {
+                        finish.setObject(1, timestamp(timestamp));
+                        finish.setInt(2, status);
+                        finish.setString(3, id);
+                        finish.addBatch();
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> entry : lines.entrySet()) {
+                count.setInt(1, entry.getValue());
+                count.setString(2, entry.getKey());
+                count.addBatch();
+            }
+            // The lines are numbered from 0, so only those up to the last
+            // one less the maximum are deleted
+            for (Map.Entry<String, Long> entry : last.entrySet()) {
+                if (entry.getValue() >= properties.maxLines()) {
+                    trim.setString(1, entry.getKey());
+                    trim.setLong(2, entry.getValue() - properties.maxLines());
+                    trim.addBatch();
+                }
+            }
+            // The executions are inserted before being updated
+            insert.executeBatch();
+            start.executeBatch();
+            int[] inserted = log.executeBatch();
+            count.executeBatch();
+            int[] trimmed = trim.executeBatch();
+            finish.executeBatch();
+            connection.commit();
+            stored += inserted.length - Arrays.stream(trimmed).sum();
+        }
+    }
+
+    private void purge(
+            Connection connection
+    ) {
+        OffsetDateTime limit = timestamp(Instant.now().minus(properties.retention()));
+        try (PreparedStatement lines = connection.prepareStatement(PURGE_LINES);
+             PreparedStatement executions = connection.prepareStatement(PURGE_EXECUTIONS)) {
+            lines.setObject(1, limit);
+            int deleted = lines.executeUpdate();
+            executions.setObject(1, limit);
+            int purged = executions.executeUpdate();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            stored -= deleted;
+            LOGGER.debug("Purged {} executions ended before {}", purged, limit);
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to purge the expired executions", e);
+            rollback(connection);
+        }
+    }
+
+    /**
+     * Deletes the oldest finished executions, with their lines, until the
+     * lines stored are no more than the maximum.
+     */
+    private void shrink(
+            Connection connection
+    ) {
+        long remaining = stored;
+        int purged = 0;
+        try (PreparedStatement oldest = connection.prepareStatement(OLDEST_EXECUTIONS);
+             PreparedStatement lines = connection.prepareStatement(DELETE_LINES);
+             PreparedStatement execution = connection.prepareStatement(DELETE_EXECUTION)) {
+            oldest.setInt(1, SHRINK_CHUNK);
+            List<String> ids = new ArrayList<>(SHRINK_CHUNK);
+            while (remaining > properties.maxStoredLines()) {
+                ids.clear();
+                try (ResultSet result = oldest.executeQuery()) {
+                    while (result.next()) {
+                        ids.add(result.getString(1));
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (int i = 0; i < ids.size() && remaining > properties.maxStoredLines(); i++) {
+                    lines.setString(1, ids.get(i));
+                    remaining -= lines.executeUpdate();
+                    execution.setString(1, ids.get(i));
+                    execution.executeUpdate();
+                    purged++;
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            stored = remaining;
+            LOGGER.debug("Purged {} executions to keep {} log lines", purged, remaining);
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to purge the oldest executions", e);
+            rollback(connection);
+        }
+    }
+
+    private static void rollback(
+            Connection connection
+    ) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to roll back the execution store", e);
+        }
+    }
+
+    private static OffsetDateTime timestamp(
+            Instant instant
+    ) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static Instant instant(
+            ResultSet result,
+            int column
+    ) throws SQLException {
+        OffsetDateTime value = result.getObject(column, OffsetDateTime.class);
+        return value == null ? null : value.toInstant();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.infrastructure.webservice;
+
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Decides which web pages may submit commands.
+ *
+ * <p>A plain text {@code POST} is a CORS simple request, which browsers send
+ * to any site without asking it first, so any page opened by the user could
+ * run commands in a service listening on localhost. Browsers always tell the
+ * page that sent the request in the {@code Origin} header, which is used to
+ * reject them: requests without it come from other clients (e.g. the CLI),
+ * and the only pages accepted are those served by the service itself on a
+ * loopback address, such as the OpenAPI UI, and the given ones.</p>
+ *
+ * <p>The host of the request is not trusted to tell the pages of the service,
+ * since a page that rebinds its own name to the loopback address would send
+ * it.</p>
+ */
+public final class OriginPolicy {
+
+    public static final String ORIGIN = "Origin";
+
+    private static final Set<String> LOOPBACK = Set.of("localhost", "127.0.0.1", "[::1]");
+
+    private final Set<String> allowed;
+
+    /**
+     * @param allowed the origins of the pages served elsewhere that may
+     *                submit commands, e.g. {@code https://wakamiti.example.org}
+     */
+    public OriginPolicy(
+            Set<String> allowed
+    ) {
+        this.allowed = allowed.stream()
+                .map(it -> it.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * @param origin  the {@value #ORIGIN} header of the request, or
+     *                {@code null} if it has none
+     * @param service the URI of the service the request was sent to
+     * @return whether the request is accepted
+     */
+    public boolean accepts(
+            String origin,
+            URI service
+    ) {
+        if (origin == null) {
+            return true;
+        }
+        if (allowed.contains(origin.trim().toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        try {
+            URI page = new URI(origin.trim());
+            return page.getScheme() != null
+                    && page.getHost() != null
+                    && page.getScheme().equalsIgnoreCase(service.getScheme())
+                    && LOOPBACK.contains(page.getHost().toLowerCase(Locale.ROOT))
+                    && port(page) == port(service);
+        } catch (URISyntaxException _) {
+            return false;
+        }
+    }
+
+    private static int port(
+            URI uri
+    ) {
+        if (uri.getPort() >= 0) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+}
@@ -8,16 +8,26 @@ package es.wakamiti.service.infrastructure.webservice.http;
 
 import es.wakamiti.service.WakamitiServiceApplication;
 import es.wakamiti.service.domain.api.ExecutionService;
+import es.wakamiti.service.domain.model.ExecutionOptions;
+import es.wakamiti.service.domain.model.ExecutionPage;
+import es.wakamiti.service.domain.model.ExecutionPriority;
+import es.wakamiti.service.infrastructure.webservice.OriginPolicy;
 import io.helidon.common.configurable.ResourceException;
 import io.helidon.http.NotFoundException;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
 import org.eclipse.microprofile.openapi.annotations.OpenAPIDefinition;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
@@ -26,6 +36,7 @@ import org.eclipse.microprofile.openapi.annotations.info.License;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.ExampleObject;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
@@ -43,7 +54,7 @@ import org.slf4j.LoggerFactory;
  * <p>Key features:</p>
  * <ul>
  *   <li>Asynchronous command execution - commands are submitted and processed in background</li>
- *   <li>Real-time output streaming via WebSocket (/execution endpoint)</li>
+ *   <li>Real-time output streaming via WebSocket (/exec/{id} endpoint)</li>
  *   <li>Comprehensive error handling with appropriate HTTP status codes</li>
  *   <li>Input validation and sanitization</li>
  *   <li>Rate limiting support to prevent system overload</li>
@@ -52,13 +63,16 @@ import org.slf4j.LoggerFactory;
  * <p>HTTP Status Codes Explained:</p>
  * <ul>
  *   <li><strong>202 Accepted</strong>: Command was successfully submitted for execution.
- *       This is the appropriate response for asynchronous operations where the client
- *       doesn't need response data and should monitor execution via WebSocket.</li>
+ *       The response body contains the execution ID, which the client uses to
+ *       monitor the execution via WebSocket.</li>
  *   <li><strong>400 Bad Request</strong>: Invalid command format or empty/null command.
  *       Indicates client-side error in request formation.</li>
+ *   <li><strong>403 Forbidden</strong>: The command was sent by a web page not allowed to
+ *       submit commands, as told by the {@code Origin} header (see {@link OriginPolicy}).</li>
  *   <li><strong>404 Not Found</strong>: The requested command could not be found or is not available.</li>
- *   <li><strong>429 Too Many Requests</strong>: Rate limit exceeded. Prevents system
- *       overload by limiting concurrent command executions.</li>
+ *   <li><strong>429 Too Many Requests</strong>: The execution queue is full. The commands
+ *       beyond the concurrency limit wait in a bounded queue, and are only rejected when
+ *       it has no room left.</li>
  *   <li><strong>500 Internal Server Error</strong>: Unexpected server-side error during
  *       command submission or system failure.</li>
  * </ul>
@@ -70,13 +84,20 @@ import org.slf4j.LoggerFactory;
  *
  * ls -la /tmp
  * }</pre>
+ *
+ * <p>The optional {@code priority} query parameter ({@code high}, {@code normal} or
+ * {@code low}) decides which queued commands start first, e.g. {@code POST /exec?priority=low}
+ * for a nightly batch.</p>
+ *
+ * <p>The executions submitted so far are listed newest first, a page at a time, with
+ * {@code GET /exec?page=0&size=20}.</p>
  */
 @Path("/exec")
 @OpenAPIDefinition(
         info = @Info(
                 title = "Wakamiti Command Execution API",
                 description = "RESTful API for executing system commands asynchronously with real-time output streaming via WebSocket. " +
-                        "Submit commands via POST /exec and monitor execution output through WebSocket connection at /execution.",
+                        "Submit commands via POST /exec and monitor execution output through WebSocket connection at /exec/{id}.",
                 version = "1.0.0",
                 license = @License(
                         name = "Mozilla Public License 2.0",
@@ -98,12 +119,15 @@ public class ExecutionResource {
      * Injected via CDI to ensure proper lifecycle management and thread safety.
      */
     private final ExecutionService executionService;
+    private final OriginPolicy originPolicy;
 
     @Inject
     public ExecutionResource(
-            ExecutionService executionService
+            ExecutionService executionService,
+            OriginPolicy originPolicy
     ) {
         this.executionService = executionService;
+        this.originPolicy = originPolicy;
         LOGGER.trace("Iniciando execution resource");
     }
 
@@ -112,14 +136,17 @@ public class ExecutionResource {
      *
      * <p>This endpoint accepts a command as plain text and submits it for asynchronous execution.
      * The command will be processed in the background by the ExecutionService, and its output
-     * will be streamed in real-time through the WebSocket endpoint at '/execution'.</p>
+     * will be streamed in real-time through the WebSocket endpoint at '/exec/{id}', where
+     * {@code id} is the execution ID returned in the response body.</p>
      *
      * <p>The method implements proper error handling and returns appropriate HTTP status codes:</p>
      * <ul>
-     *   <li><strong>202 Accepted</strong>: Command successfully submitted for execution</li>
+     *   <li><strong>202 Accepted</strong>: Command successfully submitted for execution,
+     *   with the execution ID as body</li>
      *   <li><strong>400 Bad Request</strong>: Invalid or empty command</li>
+     *   <li><strong>403 Forbidden</strong>: Sent by a web page not allowed to submit commands</li>
      *   <li><strong>404 Not Found</strong>: Command not found</li>
-     *   <li><strong>429 Too Many Requests</strong>: Rate limit exceeded</li>
+     *   <li><strong>429 Too Many Requests</strong>: Execution queue is full</li>
      *   <li><strong>500 Internal Server Error</strong>: Server-side execution error</li>
      * </ul>
      *
@@ -133,10 +160,15 @@ public class ExecutionResource {
      *   <li>Resource efficiency - HTTP connection is freed immediately</li>
      * </ul>
      *
-     * @param command the system command to execute (plain text format)
-     * @return HTTP response indicating submission status
+     * @param command     the system command to execute (plain text format)
+     * @param priority    the priority of the command if it has to wait, {@code normal} by default
+     * @param incremental whether to run only the features changed or failed since their last run
+     * @param shards      the number of parts the features are split into to run in parallel, 1 by default
+     * @param origin      the web page that sent the command, if sent by a browser
+     * @param uriInfo     the URI the command was sent to
+     * @return HTTP response indicating submission status and the execution ID
      * @throws IllegalArgumentException if command is null, empty, or invalid
-     * @see ExecutionService#execute(String)
+     * @see ExecutionService#execute(String, ExecutionOptions)
      */
     @POST
     @Consumes(MediaType.TEXT_PLAIN)
@@ -145,14 +177,30 @@ public class ExecutionResource {
             operationId = "execution",
             summary = "Execute system command asynchronously",
             description = "Submits a system command for asynchronous execution. The command output will be " +
-                    "streamed in real-time through the WebSocket endpoint at '/execution'. " +
-                    "Common commands include shell commands, scripts, or system utilities."
+                    "streamed in real-time through the WebSocket endpoint at '/exec/{id}'. " +
+                    "Common commands include shell commands, scripts, or system utilities. " +
+                    "If too many commands are running, it waits in a queue, by priority and then in order " +
+                    "of submission, and its position is streamed as well. " +
+                    "An incremental execution only runs the features changed or failed since their last run, " +
+                    "and reports the cached results of the others. " +
+                    "A sharded execution splits the features into parts run in parallel, and tags every line " +
+                    "with the part it comes from."
     )
     @APIResponse(
             responseCode = "202",
             description = "Command successfully submitted for asynchronous execution. " +
-                    "Monitor execution progress and output via WebSocket at '/execution'.",
-            content = @Content()
+                    "Monitor execution progress and output via WebSocket at '/exec/{id}', using the returned " +
+                    "execution ID.",
+            content = @Content(
+                    mediaType = MediaType.TEXT_PLAIN,
+                    schema = @Schema(type = SchemaType.STRING),
+                    examples = {
+                            @ExampleObject(
+                                    name = "Execution ID",
+                                    value = "0f8fad5b-d9cb-469f-a165-70867728950e"
+                            )
+                    }
+            )
     )
     @APIResponse(
             responseCode = "400",
@@ -166,6 +214,14 @@ public class ExecutionResource {
                                     name = "Empty Command Error",
                                     value = "Command cannot be null or empty"
                             ),
+                            @ExampleObject(
+                                    name = "Unknown Priority Error",
+                                    value = "Unknown priority: urgent"
+                            ),
+                            @ExampleObject(
+                                    name = "Invalid Shards Error",
+                                    value = "Shards must be greater than 0"
+                            ),
                             @ExampleObject(
                                     name = "Invalid Format Error",
                                     value = "Invalid command format"
@@ -173,6 +229,22 @@ public class ExecutionResource {
                     }
             )
     )
+    @APIResponse(
+            responseCode = "403",
+            description = "Forbidden - The command was sent by a web page not allowed to submit commands. " +
+                    "Only the pages served by the service on a loopback address, and those in " +
+                    "'wakamiti.service.allowed-origins', may submit commands.",
+            content = @Content(
+                    mediaType = MediaType.TEXT_PLAIN,
+                    schema = @Schema(type = SchemaType.STRING),
+                    examples = {
+                            @ExampleObject(
+                                    name = "Origin Not Allowed Error",
+                                    value = "Origin not allowed: https://example.org"
+                            )
+                    }
+            )
+    )
     @APIResponse(
             responseCode = "404",
             description = "Command not found - The requested command is not available in the system.",
@@ -189,15 +261,16 @@ public class ExecutionResource {
     )
     @APIResponse(
             responseCode = "429",
-            description = "Too Many Requests - Rate limit exceeded. The system is currently processing " +
-                    "the maximum number of concurrent commands. Please wait and try again.",
+            description = "Too Many Requests - The execution queue is full. The system is currently processing " +
+                    "the maximum number of concurrent commands, and as many are waiting as the queue holds. " +
+                    "Please wait and try again.",
             content = @Content(
                     mediaType = MediaType.TEXT_PLAIN,
                     schema = @Schema(type = SchemaType.STRING),
                     examples = {
                             @ExampleObject(
-                                    name = "Rate Limit Error",
-                                    value = "Maximum concurrent executions reached. Please try again later."
+                                    name = "Queue Full Error",
+                                    value = "Execution queue is full. Please try again later."
                             )
                     }
             )
@@ -229,15 +302,56 @@ public class ExecutionResource {
                             schema = @Schema(type = SchemaType.STRING, minLength = 1, maxLength = 1000)
                     )
             )
-            String command
+            String command,
+            @Parameter(
+                    description = "Priority of the command if it has to wait for others to finish: " +
+                            "'high', 'normal' or 'low'",
+                    example = "high",
+                    schema = @Schema(type = SchemaType.STRING, enumeration = {"high", "normal", "low"})
+            )
+            @QueryParam("priority")
+            String priority,
+            @Parameter(
+                    description = "Whether to run only the features changed or failed since their last run",
+                    example = "true",
+                    schema = @Schema(type = SchemaType.BOOLEAN, defaultValue = "false")
+            )
+            @QueryParam("incremental")
+            boolean incremental,
+            @Parameter(
+                    description = "Number of parts the features are split into, to run them in parallel",
+                    example = "8",
+                    schema = @Schema(type = SchemaType.INTEGER, minimum = "1", defaultValue = "1")
+            )
+            @QueryParam("shards")
+            @DefaultValue("1")
+            int shards,
+            @Parameter(hidden = true)
+            @HeaderParam(OriginPolicy.ORIGIN)
+            String origin,
+            @Context
+            UriInfo uriInfo
     ) {
+        if (!originPolicy.accepts(origin, uriInfo.getBaseUri())) {
+            // A page opened in a browser cannot run commands
+            LOGGER.warn("Command rejected from origin {}", origin);
+            return Response.status(Response.Status.FORBIDDEN)
+                    .entity("Origin not allowed: " + origin)
+                    .type(MediaType.TEXT_PLAIN)
+                    .build();
+        }
 
+        String id;
         try {
-            executionService.execute(command);
+            id = executionService.execute(command, new ExecutionOptions(
+                    priority == null || priority.isBlank() ? ExecutionPriority.NORMAL : ExecutionPriority.of(priority),
+                    incremental,
+                    shards
+            ));
         } catch (ResourceException _) {
-            // Rate limiting - too many concurrent executions
+            // Rate limiting - the queue is full
             return Response.status(Response.Status.TOO_MANY_REQUESTS)
-                    .entity("Maximum concurrent executions reached. Please try again later.")
+                    .entity("Execution queue is full. Please try again later.")
                     .type(MediaType.TEXT_PLAIN)
                     .build();
         } catch (NotFoundException ex) {
@@ -247,7 +361,7 @@ public class ExecutionResource {
                     .type(MediaType.TEXT_PLAIN)
                     .build();
         } catch (IllegalArgumentException ex) {
-            // Invalid input - null, empty, or unknown command
+            // Invalid input - null, empty, or unknown command or priority, or no shards
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(ex.getMessage())
                     .type(MediaType.TEXT_PLAIN)
@@ -260,7 +374,77 @@ public class ExecutionResource {
                     .build();
         }
 
-        return Response.accepted().build();
+        return Response.accepted(id)
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+    }
+
+    /**
+     * Lists the executions submitted so far, newest first, with their command, when they were
+     * submitted, started and ended, their exit status and the number of log lines.
+     *
+     * @param page the page number, from 0
+     * @param size the executions per page, 20 by default
+     * @return HTTP response with the page of executions, or the error if the page is out of range
+     * @see ExecutionService#history(int, int)
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(
+            operationId = "history",
+            summary = "List the executions",
+            description = "Lists the executions submitted so far, newest first, including those in progress " +
+                    "or queued, with when they were submitted, started and ended, their exit status and " +
+                    "the number of log lines."
+    )
+    @APIResponse(
+            responseCode = "200",
+            description = "The page of executions, and the total number of executions recorded.",
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ExecutionPage.class)
+            )
+    )
+    @APIResponse(
+            responseCode = "400",
+            description = "Bad Request - The page is negative, or the page size is out of range.",
+            content = @Content(
+                    mediaType = MediaType.TEXT_PLAIN,
+                    schema = @Schema(type = SchemaType.STRING),
+                    examples = {
+                            @ExampleObject(
+                                    name = "Invalid Page Size Error",
+                                    value = "Page size must be between 1 and 100"
+                            )
+                    }
+            )
+    )
+    public Response history(
+            @Parameter(
+                    description = "Page number, from 0",
+                    example = "0",
+                    schema = @Schema(type = SchemaType.INTEGER, minimum = "0", defaultValue = "0")
+            )
+            @QueryParam("page")
+            @DefaultValue("0")
+            int page,
+            @Parameter(
+                    description = "Executions per page",
+                    example = "20",
+                    schema = @Schema(type = SchemaType.INTEGER, minimum = "1", maximum = "100", defaultValue = "20")
+            )
+            @QueryParam("size")
+            @DefaultValue("20")
+            int size
+    ) {
+        try {
+            return Response.ok(executionService.history(page, size), MediaType.APPLICATION_JSON_TYPE).build();
+        } catch (IllegalArgumentException ex) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ex.getMessage())
+                    .type(MediaType.TEXT_PLAIN)
+                    .build();
+        }
     }
 
 }
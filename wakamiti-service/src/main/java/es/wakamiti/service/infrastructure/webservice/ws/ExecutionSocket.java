@@ -14,6 +14,7 @@ import es.wakamiti.service.infrastructure.logging.WebSocketAppender;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.websocket.*;
+import jakarta.websocket.server.PathParam;
 import jakarta.websocket.server.ServerEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,14 +26,33 @@ import java.io.IOException;
  * WebSocket endpoint for streaming command execution output to clients.
  *
  * <p>This WebSocket endpoint provides real-time streaming of command execution output
- * to connected clients. It integrates with the WebSocketAppender to broadcast log
- * messages and command output to all connected WebSocket sessions.</p>
+ * to connected clients. It integrates with the WebSocketAppender to send log
+ * messages and command output to the WebSocket sessions of each execution.</p>
+ *
+ * <p>Each session is bound to the execution given by the {@code id} path
+ * parameter, i.e. the execution ID returned by {@code POST /exec}. The
+ * session only receives (and replays) the log of that execution, it is
+ * closed with the exit status of that execution when it ends, and a
+ * {@code STOP} message only stops that execution.</p>
+ *
+ * <p>The log stream is negotiated with query parameters when the session is
+ * opened: {@code batch=true} coalesces the lines into larger frames,
+ * {@code seq=true} prefixes every frame with the {@code #<sequence>} of its
+ * last line, and {@code from=<sequence>} resumes the stream from that line
+ * after a lost connection. A session opened after the execution ended is
+ * closed right away with its exit status, and a session with an invalid
+ * parameter is closed right away as not acceptable.</p>
+ *
+ * <p>Clients asking for the {@value LogEventPublisher#BINARY_PROTOCOL}
+ * subprotocol receive the log as compact binary frames instead of text. The
+ * {@code permessage-deflate} extension is negotiated by the container, when
+ * it supports it and the client offers it.</p>
  *
  * @author mgalbis
  * @see WebSocketAppender
  * @see ServerEndpoint
  */
-@ServerEndpoint("/exec")
+@ServerEndpoint(value = "/exec/{id}", subprotocols = LogEventPublisher.BINARY_PROTOCOL)
 @ApplicationScoped
 public class ExecutionSocket {
 
@@ -58,7 +78,7 @@ public class ExecutionSocket {
     /**
      * Handles new WebSocket connection establishment.
      *
-     * <p>When a client connects to the /exec WebSocket endpoint, this method
+     * <p>When a client connects to the /exec/{id} WebSocket endpoint, this method
      * is called to set up the session for receiving command execution output.
      * The session is automatically registered with the WebSocketAppender to
      * start receiving broadcast messages.</p>
@@ -71,30 +91,40 @@ public class ExecutionSocket {
      *   <li>Logs connection establishment for monitoring</li>
      * </ul>
      *
+     * @param id      the execution ID
      * @param session the WebSocket session that was just established
      */
     @OnOpen
     public void onOpen(
+            @PathParam("id") String id,
             Session session
-    ) {
-        LOGGER.trace("WebSocket open for session {}", session.getId());
-        publisher.subscribe(session);
-        notifier.addObserver(session);
+    ) throws IOException {
+        LOGGER.trace("WebSocket open for session {} on execution {}", session.getId(), id);
+        try {
+            publisher.subscribe(id, session);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("WebSocket session {} rejected: {}", session.getId(), e.getMessage());
+            session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, e.getMessage()));
+            return;
+        }
+        notifier.addObserver(id, session);
     }
 
     /**
      * Handles messages received from WebSocket clients.
      *
+     * @param id      the execution ID
      * @param message the message received from the client
      * @param session the WebSocket session that sent the message
      */
     @OnMessage
     public void onMessage(
+            @PathParam("id") String id,
             String message,
             Session session
     ) {
         if (STOP.equals(message)) {
-            service.stop();
+            service.stop(id);
         } else {
             throw new IllegalArgumentException("Invalid message received: " + message);
         }
@@ -137,17 +167,19 @@ public class ExecutionSocket {
      *   <li><strong>Protocol Error</strong>: WebSocket protocol violation</li>
      * </ul>
      *
+     * @param id      the execution ID
      * @param session the WebSocket session being closed
      * @param reason  the reason for connection closure
      */
     @OnClose
     public void onClose(
+            @PathParam("id") String id,
             Session session,
             CloseReason reason
     ) {
         LOGGER.trace("WebSocket closed for session {}", session.getId());
-        publisher.unsubscribe(session);
-        notifier.removeObserver(session);
+        publisher.unsubscribe(id, session);
+        notifier.removeObserver(id, session);
 
         if (!reason.getCloseCode().equals(CloseReason.CloseCodes.NORMAL_CLOSURE)) {
             LOGGER.warn("WebSocket connection closed abnormally for session {}: {} - {}",
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test;
+
+
+import es.wakamiti.service.application.service.ExecutionServiceImpl;
+import es.wakamiti.service.infrastructure.webservice.http.ExecutionResource;
+import es.wakamiti.service.infrastructure.webservice.ws.ExecutionSocket;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.websocket.server.ServerEndpoint;
+import jakarta.ws.rs.Path;
+import org.jboss.jandex.AnnotationInstance;
+import org.jboss.jandex.AnnotationTarget;
+import org.jboss.jandex.DotName;
+import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexReader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * Checks the Jandex index built with the service classes, which the CDI
+ * container and OpenAPI read instead of scanning them at startup.
+ */
+class JandexIndexTest {
+
+    private static Index index;
+
+    @BeforeAll
+    static void readIndex() throws IOException, URISyntaxException {
+        // The index of the service classes, not of any other jar in the class path
+        URI classes = ExecutionSocket.class.getProtectionDomain().getCodeSource().getLocation().toURI();
+        try (InputStream input = Files.newInputStream(Paths.get(classes).resolve("META-INF/jandex.idx"))) {
+            index = new IndexReader(input).read();
+        }
+    }
+
+    @DisplayName("The index has the WebSocket endpoints")
+    @Test
+    void testEndpoints() {
+        assertThat(annotated(ServerEndpoint.class)).contains(DotName.createSimple(ExecutionSocket.class));
+    }
+
+    @DisplayName("The index has the REST resources")
+    @Test
+    void testResources() {
+        assertThat(annotated(Path.class)).contains(DotName.createSimple(ExecutionResource.class));
+    }
+
+    @DisplayName("The index has the beans")
+    @Test
+    void testBeans() {
+        assertThat(annotated(ApplicationScoped.class)).contains(
+                DotName.createSimple(ExecutionServiceImpl.class),
+                DotName.createSimple(ExecutionResource.class),
+                DotName.createSimple(ExecutionSocket.class)
+        );
+    }
+
+    private static List<DotName> annotated(
+            Class<?> annotation
+    ) {
+        return index.getAnnotations(annotation).stream()
+                .map(AnnotationInstance::target)
+                .filter(it -> it.kind() == AnnotationTarget.Kind.CLASS)
+                .map(it -> it.asClass().name())
+                .toList();
+    }
+
+}
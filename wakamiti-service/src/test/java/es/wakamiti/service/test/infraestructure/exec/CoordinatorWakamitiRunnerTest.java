@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.infrastructure.exec.CoordinatorProperties;
+import es.wakamiti.service.infrastructure.exec.CoordinatorWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.PeerPool;
+import io.helidon.microprofile.testing.junit5.AddConfig;
+import io.helidon.microprofile.testing.junit5.HelidonTest;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.WebTarget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * The service under test is the peer of the coordinator, as another
+ * instance on localhost would be.
+ */
+@HelidonTest
+@AddConfig(key = "wakamiti.execution.runner", value = "dummy")
+class CoordinatorWakamitiRunnerTest {
+
+    private static final String ID = "exec-1";
+
+    @Inject
+    private WebTarget target;
+
+    private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+    private PeerPool peers;
+
+    @BeforeEach
+    void setUp() {
+        MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.remove(LogEventPublisher.EXECUTION_ID);
+        if (peers != null) {
+            peers.shutdown();
+        }
+    }
+
+    private CoordinatorWakamitiRunner runner(
+            URI... uris
+    ) {
+        peers = new PeerPool(new CoordinatorProperties(
+                List.of(uris), Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(30)
+        ));
+        return new CoordinatorWakamitiRunner(peers, new CapturingSink());
+    }
+
+    private URI live() {
+        return target.getUri();
+    }
+
+    /**
+     * A peer that is not running, at a port nobody listens to.
+     */
+    private static URI dead() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return URI.create("http://localhost:" + socket.getLocalPort());
+        }
+    }
+
+    private List<String> messages() {
+        return events.stream().map(LogEvent::message).map(String::strip).toList();
+    }
+
+    @DisplayName("The log and the exit status of the peer are those of the execution")
+    @Test
+    void testRunInPeer() {
+        int status = runner(live()).run("run something");
+
+        assertThat(status).isZero();
+        assertThat(messages()).containsExactly(
+                "Ejecutando comando: run something",
+                "Una línea",
+                "Otra línea",
+                "Si se ha cancelado la ejecución, esta línea no debería salir"
+        );
+    }
+
+    @DisplayName("A peer silent for longer than the idle timeout is not lost while it answers the pings")
+    @Test
+    void testSilentPeer() {
+        // The dummy runner logs nothing for the first 3 seconds
+        int status = runner(live()).run("run something");
+
+        assertThat(status).isZero();
+        assertThat(messages()).doesNotContain("Running again in another peer");
+    }
+
+    @DisplayName("The execution of a failed peer runs again in another one")
+    @Test
+    void testPeerFailed() throws IOException {
+        URI dead = dead();
+
+        int status = runner(dead, live()).run("run something");
+
+        assertThat(status).isZero();
+        assertThat(messages()).startsWith("Peer " + dead + "/ failed: ", "Running again in another peer")
+                .contains("Ejecutando comando: run something");
+    }
+
+    @DisplayName("The execution fails once every peer has failed it")
+    @Test
+    void testEveryPeerFailed() throws IOException {
+        int status = runner(dead(), dead()).run("run something");
+
+        assertThat(status).isEqualTo(1);
+        assertThat(messages()).last().isEqualTo("No peer left to run the execution");
+    }
+
+    private class CapturingSink implements LogSink {
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            assertThat(executionId).isEqualTo(ID);
+            events.add(event);
+        }
+    }
+
+}
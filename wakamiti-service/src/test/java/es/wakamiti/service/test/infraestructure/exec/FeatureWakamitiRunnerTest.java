@@ -0,0 +1,308 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.ExecutionOptions;
+import es.wakamiti.service.domain.model.ExecutionPriority;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.domain.spi.WakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.FeatureResultCache;
+import es.wakamiti.service.infrastructure.exec.FeatureWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.IncrementalProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+
+class FeatureWakamitiRunnerTest {
+
+    private static final String ID = "exec-1";
+    private static final ExecutionOptions INCREMENTAL = new ExecutionOptions(ExecutionPriority.NORMAL, true, 1);
+
+    @TempDir
+    private Path directory;
+    @TempDir
+    private Path cache;
+
+    private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final List<List<String>> arguments = new CopyOnWriteArrayList<>();
+    private volatile ToIntFunction<String> status = _ -> 0;
+    private volatile CyclicBarrier barrier;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+        Files.writeString(directory.resolve("wakamiti.yaml"), "wakamiti: {}");
+        Files.createDirectories(directory.resolve("features"));
+        Files.writeString(feature("a"), "Feature: A\n  Scenario: 1\n  Scenario: 2");
+        Files.writeString(feature("b"), "Feature: B\n  Scenario: 1");
+        Files.writeString(feature("c"), "Feature: C");
+        Files.createDirectories(directory.resolve(".hidden"));
+        Files.writeString(directory.resolve(".hidden").resolve("d.feature"), "Feature: D");
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.remove(LogEventPublisher.EXECUTION_ID);
+    }
+
+    private Path feature(
+            String name
+    ) {
+        return directory.resolve("features").resolve(name + ".feature");
+    }
+
+    private String command(
+            String command,
+            String... features
+    ) {
+        StringBuilder result = new StringBuilder(command);
+        for (String name : features) {
+            result.append(' ').append(feature(name));
+        }
+        return result.toString();
+    }
+
+    private static ExecutionOptions sharded(
+            int shards,
+            boolean incremental
+    ) {
+        return new ExecutionOptions(ExecutionPriority.NORMAL, incremental, shards);
+    }
+
+    /**
+     * A new runner, with its own cache reading the same file, as after a
+     * restart of the service.
+     */
+    private FeatureWakamitiRunner runner() {
+        FeatureResultCache results = new FeatureResultCache(new IncrementalProperties(
+                "glob:{wakamiti.yaml,**/wakamiti.yaml}", List.of(), cache.resolve("results")
+        ));
+        return new FeatureWakamitiRunner(
+                RecordingRunner::new, results, new CapturingSink(), directory, "glob:**.feature", 4
+        );
+    }
+
+    private List<String> messages() {
+        return events.stream().map(LogEvent::message).map(String::strip).toList();
+    }
+
+    @DisplayName("Every feature runs the first time")
+    @Test
+    void testFirstRun() {
+        assertThat(runner().run("run", INCREMENTAL)).isZero();
+
+        assertThat(commands).containsExactly(command("run", "a", "b", "c"));
+    }
+
+    @DisplayName("Every feature is passed as a single argument, whatever its path")
+    @Test
+    void testFeatureArguments() throws IOException {
+        Files.writeString(feature("with spaces; echo"), "Feature: D");
+
+        assertThat(runner().run("run", INCREMENTAL)).isZero();
+
+        assertThat(arguments).containsExactly(List.of(
+                feature("a").toString(), feature("b").toString(), feature("c").toString(),
+                feature("with spaces; echo").toString()
+        ));
+    }
+
+    @DisplayName("The features that passed unchanged are skipped")
+    @Test
+    void testUnchangedSkipped() throws IOException {
+        runner().run("run", INCREMENTAL);
+        Files.writeString(feature("b"), "Feature: B changed");
+
+        assertThat(runner().run("run", INCREMENTAL)).isZero();
+
+        assertThat(commands).last().isEqualTo(command("run", "b"));
+        assertThat(messages()).anyMatch(it -> it.startsWith("Skipped " + feature("a") + ": passed unchanged at "));
+        assertThat(messages()).contains("Running 1 of 3 features, changed or failed since their last run");
+    }
+
+    @DisplayName("Nothing runs when every feature passed unchanged")
+    @Test
+    void testNothingToRun() {
+        runner().run("run", INCREMENTAL);
+
+        assertThat(runner().run("run", INCREMENTAL)).isZero();
+
+        assertThat(commands).hasSize(1);
+        assertThat(messages()).contains("All 3 features passed unchanged");
+    }
+
+    @DisplayName("The features of a failed run run again")
+    @Test
+    void testFailedRunAgain() {
+        status = _ -> 1;
+        assertThat(runner().run("run", INCREMENTAL)).isEqualTo(1);
+        status = _ -> 0;
+
+        assertThat(runner().run("run", INCREMENTAL)).isZero();
+
+        assertThat(commands).hasSize(2).containsOnly(command("run", "a", "b", "c"));
+    }
+
+    @DisplayName("Every feature runs again when the configuration or the command change")
+    @Test
+    void testConfigurationChanged() throws IOException {
+        runner().run("run", INCREMENTAL);
+        Files.writeString(directory.resolve("wakamiti.yaml"), "wakamiti: {tags: smoke}");
+        runner().run("run", INCREMENTAL);
+        runner().run("run --debug", INCREMENTAL);
+
+        assertThat(commands).containsExactly(
+                command("run", "a", "b", "c"),
+                command("run", "a", "b", "c"),
+                command("run --debug", "a", "b", "c")
+        );
+    }
+
+    @DisplayName("The command runs as is when the execution is neither incremental nor sharded")
+    @Test
+    void testAsIs() {
+        assertThat(runner().run("run", ExecutionOptions.DEFAULT)).isZero();
+
+        assertThat(commands).containsExactly("run");
+    }
+
+    @DisplayName("The shards run in parallel, with the features spread by size")
+    @Test
+    void testShardsInParallel() {
+        barrier = new CyclicBarrier(2);
+
+        assertThat(runner().run("run", sharded(2, false))).isZero();
+
+        assertThat(commands).containsExactlyInAnyOrder(command("run", "a"), command("run", "b", "c"));
+    }
+
+    @DisplayName("The lines of each shard are tagged with the shard")
+    @Test
+    void testShardLinesTagged() {
+        runner().run("run", sharded(2, false));
+
+        assertThat(messages()).contains("[1/2] ran " + command("run", "a"), "[2/2] ran " + command("run", "b", "c"));
+        assertThat(events).filteredOn(it -> it.message().startsWith("[1/2] ran"))
+                .allMatch(it -> "1/2".equals(it.mdc().get(FeatureWakamitiRunner.SHARD)));
+    }
+
+    @DisplayName("An execution is split into no more shards than features, nor than the maximum")
+    @Test
+    void testShardsBounded() {
+        runner().run("run", sharded(16, false));
+
+        assertThat(commands).hasSize(3);
+    }
+
+    @DisplayName("A sharded execution ends with the status of its failed shard, which runs again")
+    @Test
+    void testShardFailed() {
+        status = it -> it.contains(feature("b").toString()) ? 3 : 0;
+        assertThat(runner().run("run", sharded(2, true))).isEqualTo(3);
+        status = _ -> 0;
+
+        assertThat(runner().run("run", sharded(2, true))).isZero();
+
+        assertThat(commands.subList(2, commands.size()))
+                .containsExactlyInAnyOrder(command("run", "b"), command("run", "c"));
+        assertThat(messages()).contains("Running 2 of 3 features, changed or failed since their last run");
+    }
+
+    @DisplayName("Stopping the runner stops every shard")
+    @Test
+    void testStop() {
+        status = _ -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+                return 0;
+            } catch (InterruptedException _) {
+                return 1;
+            }
+        };
+        FeatureWakamitiRunner runner = runner();
+        CompletableFuture<Integer> result = CompletableFuture.supplyAsync(() -> {
+            MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+            return runner.run("run", sharded(3, false));
+        });
+        await().atMost(Duration.ofSeconds(10)).until(() -> commands.size() == 3);
+
+        runner.stop();
+
+        assertThat(result).succeedsWithin(Duration.ofSeconds(10)).isEqualTo(1);
+    }
+
+    private class RecordingRunner implements WakamitiRunner {
+
+        private final LogSink publisher;
+        private volatile Thread thread;
+
+        private RecordingRunner(
+                LogSink publisher
+        ) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public int run(String command, List<String> features) {
+            thread = Thread.currentThread();
+            String line = Stream.concat(Stream.of(command), features.stream()).collect(Collectors.joining(" "));
+            commands.add(line);
+            arguments.add(features);
+            publisher.publish(ID, LogEvent.of(Instant.now(), "INFO", "test", "ran " + line));
+            try {
+                if (barrier != null) {
+                    barrier.await(10, TimeUnit.SECONDS);
+                }
+                return status.applyAsInt(line);
+            } catch (Exception e) {
+                return 1;
+            }
+        }
+
+        @Override
+        public void stop() {
+            Thread running = thread;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+    }
+
+    private class CapturingSink implements LogSink {
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            assertThat(executionId).isEqualTo(ID);
+            events.add(event);
+        }
+    }
+
+}
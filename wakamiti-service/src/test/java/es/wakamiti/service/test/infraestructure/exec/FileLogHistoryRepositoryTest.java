@@ -0,0 +1,190 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.infrastructure.exec.FileLogHistoryRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+
+class FileLogHistoryRepositoryTest {
+
+    @TempDir
+    private Path directory;
+
+    @DisplayName("Messages are read back across segments from a sequence number")
+    @Test
+    void testFindFromSequence() {
+        // 256 bytes per segment fit 5 records of 51 bytes
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 256, Duration.ofDays(1));
+        IntStream.range(0, 1000).forEach(i -> history.save("a", event("line %03d".formatted(i))));
+
+        assertThat(history.size()).isEqualTo(1000);
+        assertThat(history.find("a")).extracting(LogEntry::sequence)
+                .containsExactlyElementsOf(IntStream.range(0, 1000).mapToObj(Long::valueOf).toList());
+        assertThat(history.find("a", 998)).extracting(LogEntry::text).containsExactly("line 998", "line 999");
+        assertThat(history.find("a", 1000)).isEmpty();
+    }
+
+    @DisplayName("Messages bigger than a segment are stored")
+    @Test
+    void testBigMessage() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 16, Duration.ofDays(1));
+        history.save("a", event("small"));
+        history.save("a", event("a message bigger than a segment, with ñ"));
+        history.save("a", event("small again"));
+
+        assertThat(history.find("a")).extracting(LogEntry::text)
+                .containsExactly("small", "a message bigger than a segment, with ñ", "small again");
+    }
+
+    @DisplayName("Events are read back with their level, thread, logger, message and text")
+    @Test
+    void testEventFields() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        String line = System.lineSeparator();
+        history.save("a", new LogEvent(Instant.ofEpochMilli(1000), "WARN", "main", "es.wakamiti.core", Map.of(),
+                                       "{} failed", new Object[]{"step"}, () -> "step failed" + line));
+        history.save("a", new LogEvent(Instant.ofEpochMilli(2000), "INFO", "main", "es.wakamiti.core", Map.of(),
+                                       "done", null, () -> "[INFO] done"));
+
+        assertThat(history.find("a")).map(LogEntry::event)
+                .extracting(LogEvent::timestamp, LogEvent::level, LogEvent::thread, LogEvent::logger,
+                            LogEvent::message, LogEvent::text)
+                .containsExactly(
+                        tuple(Instant.ofEpochMilli(1000), "WARN", "main", "es.wakamiti.core", "step failed", "step failed" + line),
+                        tuple(Instant.ofEpochMilli(2000), "INFO", "main", "es.wakamiti.core", "done", "[INFO] done")
+                );
+    }
+
+    @DisplayName("Messages are kept after closing the execution and restarting")
+    @Test
+    void testPersistence() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        IntStream.range(0, 300).forEach(i -> history.save("a", event("line " + i)));
+        history.close("a");
+        history.shutdown();
+
+        assertThat(history.size()).isZero();
+        FileLogHistoryRepository restarted = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        assertThat(restarted.find("a", 150)).extracting(LogEntry::text)
+                .containsExactlyElementsOf(IntStream.range(150, 300).mapToObj(i -> "line " + i).toList());
+    }
+
+    @DisplayName("The segments of a closed execution are truncated to the written data")
+    @Test
+    void testClosedTruncated() throws Exception {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        history.save("a", event("line 0"));
+        history.save("a", event("line 1"));
+        long written = history.bytes();
+        history.close("a");
+
+        try (Stream<Path> files = Files.list(directory.resolve("a"))) {
+            assertThat(files).singleElement().satisfies(file -> assertThat(Files.size(file)).isEqualTo(written));
+        }
+        assertThat(history.find("a")).extracting(LogEntry::text).containsExactly("line 0", "line 1");
+        assertThat(history.find("a", 1)).extracting(LogEntry::text).containsExactly("line 1");
+        history.shutdown();
+    }
+
+    @DisplayName("A log being read when the execution is closed is read to the end")
+    @Test
+    void testReadWhileClosing() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 256, Duration.ofDays(1));
+        IntStream.range(0, 20).forEach(i -> history.save("a", event("line %02d".formatted(i))));
+        Iterator<LogEntry> entries = history.find("a", 2).iterator();
+        assertThat(entries.next().text()).isEqualTo("line 02");
+
+        history.close("a");
+
+        List<String> rest = new ArrayList<>();
+        entries.forEachRemaining(entry -> rest.add(entry.text()));
+        assertThat(rest).containsExactlyElementsOf(IntStream.range(3, 20).mapToObj("line %02d"::formatted).toList());
+        history.shutdown();
+    }
+
+    @DisplayName("Expired executions are purged on start")
+    @Test
+    void testRetention() throws Exception {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        history.save("old", event("line"));
+        history.save("new", event("line"));
+        history.shutdown();
+        Files.setLastModifiedTime(directory.resolve("old"), FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        FileLogHistoryRepository restarted = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        assertThat(restarted.find("old")).isEmpty();
+        assertThat(restarted.find("new")).hasSize(1);
+    }
+
+    @DisplayName("Expired executions are purged while running, except those in progress")
+    @Test
+    void testPeriodicRetention() throws Exception {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        history.save("old", event("line"));
+        history.save("running", event("line"));
+        history.close("old");
+        FileTime expired = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+        Files.setLastModifiedTime(directory.resolve("old"), expired);
+        Files.setLastModifiedTime(directory.resolve("running"), expired);
+
+        history.purge(Duration.ofDays(1));
+        assertThat(directory.resolve("old")).doesNotExist();
+        assertThat(history.find("running")).hasSize(1);
+        history.shutdown();
+    }
+
+    @DisplayName("Messages saved after closing the execution are appended to its log")
+    @Test
+    void testSaveAfterClose() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory, 1024, Duration.ofDays(1));
+        history.save("a", event("line 0"));
+        history.save("a", event("line 1"));
+        history.close("a");
+
+        assertThat(history.save("a", event("line 2")).sequence()).isEqualTo(2);
+        assertThat(history.find("a")).extracting(LogEntry::sequence, LogEntry::text)
+                .containsExactly(tuple(0L, "line 0"), tuple(1L, "line 1"), tuple(2L, "line 2"));
+        history.shutdown();
+    }
+
+    @DisplayName("Invalid execution IDs are not resolved outside the log directory")
+    @Test
+    void testInvalidExecutionId() {
+        FileLogHistoryRepository history = new FileLogHistoryRepository(directory.resolve("logs"), 1024, Duration.ofDays(1));
+        history.save("a", event("line"));
+
+        assertThat(history.find("../logs/a")).isEmpty();
+        assertThat(history.find("unknown")).isEmpty();
+    }
+
+    private static LogEvent event(
+            String message
+    ) {
+        return LogEvent.of(Instant.now(), "INFO", "es.wakamiti.core", message);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+class InMemoryLogHistoryRepositoryTest {
+
+    @DisplayName("Messages get increasing sequence numbers per execution")
+    @Test
+    void testSequenceNumbers() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10, 1000);
+
+        assertThat(history.save("a", event("one")).sequence()).isZero();
+        assertThat(history.save("a", event("two")).sequence()).isEqualTo(1);
+        assertThat(history.save("b", event("three")).sequence()).isZero();
+
+        assertThat(history.find("a")).extracting(LogEntry::text).containsExactly("one", "two");
+        assertThat(history.find("b")).extracting(LogEntry::text).containsExactly("three");
+        assertThat(history.size()).isEqualTo(3);
+    }
+
+    @DisplayName("Oldest messages are evicted when the line limit is reached")
+    @Test
+    void testLineLimit() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(3, 1000);
+        IntStream.range(0, 5).forEach(i -> history.save("a", event("line " + i)));
+
+        assertThat(history.find("a")).extracting(LogEntry::sequence).containsExactly(2L, 3L, 4L);
+        assertThat(history.size()).isEqualTo(3);
+    }
+
+    @DisplayName("Oldest messages are evicted when the byte limit is reached")
+    @Test
+    void testByteLimit() {
+        // 10 chars per message = 20 bytes
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(100, 50);
+        IntStream.range(0, 5).forEach(i -> history.save("a", event("message %02d".formatted(i).substring(0, 10))));
+
+        assertThat(history.find("a")).extracting(LogEntry::sequence).containsExactly(3L, 4L);
+        assertThat(history.size()).isEqualTo(2);
+    }
+
+    @DisplayName("The newest message is kept even if it exceeds the byte limit")
+    @Test
+    void testByteLimitKeepsNewest() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(100, 4);
+        history.save("a", event("small"));
+        history.save("a", event("a much bigger message"));
+
+        assertThat(history.find("a")).extracting(LogEntry::text).containsExactly("a much bigger message");
+    }
+
+    @DisplayName("Evicted messages give back the bytes they took, even if formatted meanwhile")
+    @Test
+    void testByteCountStable() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(2, 1000);
+        for (int i = 0; i < 3; i++) {
+            // 1 char = 2 bytes until formatted, 24 chars afterwards
+            history.save("a", new LogEvent(Instant.now(), "INFO", "main", "es.wakamiti.core", Map.of(),
+                                           "x", null, () -> "a line longer than its x")).event().text();
+        }
+
+        assertThat(history.bytes()).isEqualTo(4);
+    }
+
+    @DisplayName("Messages are found from a sequence number")
+    @Test
+    void testFindFromSequence() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10, 1000);
+        IntStream.range(0, 5).forEach(i -> history.save("a", event("line " + i)));
+
+        assertThat(history.find("a", 3)).extracting(LogEntry::text).containsExactly("line 3", "line 4");
+        assertThat(history.find("a", 5)).isEmpty();
+        assertThat(history.find("unknown", 0)).isEmpty();
+    }
+
+    @DisplayName("Concurrent producers get unique sequence numbers")
+    @Test
+    void testConcurrentSave() throws Exception {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10_000, Long.MAX_VALUE);
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            IntStream.range(0, 4).forEach(t -> executor.execute(
+                    () -> IntStream.range(0, 1000).forEach(i -> history.save("a", event(t + "-" + i)))));
+        }
+
+        List<LogEntry> entries = history.find("a").toList();
+        assertThat(entries).hasSize(4000);
+        assertThat(entries).extracting(LogEntry::sequence).doesNotHaveDuplicates().isSorted();
+    }
+
+    @DisplayName("Closing an execution removes its messages only")
+    @Test
+    void testClose() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10, 1000);
+        history.save("a", event("one"));
+        history.save("b", event("two"));
+
+        history.close("a");
+
+        assertThat(history.find("a")).isEmpty();
+        assertThat(history.size()).isEqualTo(1);
+    }
+
+    @DisplayName("The messages of a finished execution are kept for a while")
+    @Test
+    void testLinger() throws InterruptedException {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10, 1000, Duration.ofMillis(200));
+        history.save("a", event("one"));
+
+        history.close("a");
+
+        assertThat(history.find("a")).extracting(LogEntry::text).containsExactly("one");
+        Thread.sleep(300);
+        history.save("b", event("two"));
+        assertThat(history.find("a")).isEmpty();
+    }
+
+    @DisplayName("Only the messages of the last finished executions are kept")
+    @Test
+    void testLingerBounded() {
+        InMemoryLogHistoryRepository history = new InMemoryLogHistoryRepository(10, 1000, Duration.ofMinutes(1));
+        IntStream.range(0, 17).forEach(i -> {
+            history.save("exec-" + i, event("line " + i));
+            history.close("exec-" + i);
+        });
+
+        assertThat(history.find("exec-0")).isEmpty();
+        assertThat(history.find("exec-1")).extracting(LogEntry::text).containsExactly("line 1");
+        assertThat(history.size()).isEqualTo(16);
+    }
+
+    @DisplayName("Limits must be positive")
+    @Test
+    void testInvalidLimits() {
+        assertThatThrownBy(() -> new InMemoryLogHistoryRepository(0, 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new InMemoryLogHistoryRepository(10, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static LogEvent event(
+            String message
+    ) {
+        return LogEvent.of(Instant.now(), "INFO", "es.wakamiti.core", message);
+    }
+
+}
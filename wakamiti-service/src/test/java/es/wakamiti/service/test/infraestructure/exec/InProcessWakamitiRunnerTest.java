@@ -0,0 +1,169 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.infrastructure.exec.InProcessProperties;
+import es.wakamiti.service.infrastructure.exec.InProcessWakamitiRunner;
+import es.wakamiti.service.infrastructure.exec.PluginClassLoaderCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+
+class InProcessWakamitiRunnerTest {
+
+    private static final String ID = "exec-1";
+
+    private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+    private PluginClassLoaderCache loaders;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+        // The plan is loaded again from the test classes, apart from the test
+        String classes = Path.of(Plan.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        loaders = new PluginClassLoaderCache(new InProcessProperties(
+                Plan.class.getName(), List.of(classes), 1, 1, Duration.ofMinutes(1)
+        ));
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.remove(LogEventPublisher.EXECUTION_ID);
+        loaders.shutdown();
+    }
+
+    private InProcessWakamitiRunner runner() {
+        return new InProcessWakamitiRunner(loaders, new CapturingSink());
+    }
+
+    private List<String> messages() {
+        return events.stream().map(LogEvent::message).toList();
+    }
+
+    @DisplayName("The output of the plan and its threads is published line by line")
+    @Test
+    void testOutputPublished() {
+        int status = runner().run("print one two");
+
+        assertThat(status).isZero();
+        assertThat(messages()).containsExactly("one", "two", "thread");
+    }
+
+    @DisplayName("The quoted words of the command and every argument are passed as single arguments")
+    @Test
+    void testArguments() {
+        int status = runner().run("print 'one two' \"three \\\"four\\\"\" C:\\five", List.of("six seven", "'eight'"));
+
+        assertThat(status).isZero();
+        assertThat(messages()).containsExactly("one two", "three \"four\"", "C:\\five", "six seven", "'eight'", "thread");
+    }
+
+    @DisplayName("The plan runs in an isolated classloader reused by the next runs")
+    @Test
+    void testClassLoaderReused() {
+        assertThat(runner().run("loader")).isZero();
+        assertThat(runner().run("loader")).isZero();
+
+        assertThat(messages()).hasSize(2).doesNotHaveDuplicates();
+        assertThat(messages()).allMatch(it -> it.startsWith("wakamiti-plugins "));
+        assertThat(events.get(0).message().split(" ")[1]).isEqualTo(events.get(1).message().split(" ")[1]);
+    }
+
+    @DisplayName("The least recently used classloader is discarded beyond the limit")
+    @Test
+    void testClassLoaderEvicted(@TempDir Path plugin) {
+        assertThat(runner().run("loader")).isZero();
+        assertThat(runner().run("-cp " + plugin + " loader")).isZero();
+        assertThat(runner().run("loader")).isZero();
+
+        List<String> loaders = messages().stream().map(it -> it.split(" ")[1]).toList();
+        assertThat(loaders).doesNotHaveDuplicates();
+    }
+
+    @DisplayName("A plan failing with an exception ends with the status 1, after publishing its stack trace")
+    @Test
+    void testException() {
+        int status = runner().run("fail");
+
+        assertThat(status).isEqualTo(1);
+        assertThat(messages().getFirst()).isEqualTo("java.lang.IllegalStateException: failed");
+        assertThat(messages()).anyMatch(it -> it.startsWith("\tat ") && it.contains(Plan.class.getName() + ".main"));
+    }
+
+    @DisplayName("Stopping the runner interrupts the plan")
+    @Test
+    void testStop() {
+        InProcessWakamitiRunner runner = runner();
+        CompletableFuture<Integer> status = CompletableFuture.supplyAsync(() -> {
+            MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+            return runner.run("sleep");
+        });
+        await().atMost(Duration.ofSeconds(10)).until(() -> !events.isEmpty());
+
+        runner.stop();
+
+        assertThat(status).succeedsWithin(Duration.ofSeconds(10)).isEqualTo(1);
+    }
+
+    /**
+     * Main class of the plans.
+     */
+    public static class Plan {
+
+        public static void main(
+                String[] args
+        ) throws InterruptedException {
+            switch (args[0]) {
+                case "print" -> {
+                    for (int i = 1; i < args.length; i++) {
+                        System.out.println(args[i]);
+                    }
+                    Thread thread = Thread.ofVirtual().start(() -> System.err.print("thread"));
+                    thread.join();
+                }
+                case "loader" -> {
+                    ClassLoader loader = Plan.class.getClassLoader();
+                    System.out.println(loader.getName() + " " + System.identityHashCode(loader) + " "
+                                               + System.nanoTime());
+                }
+                case "fail" -> throw new IllegalStateException("failed");
+                case "sleep" -> {
+                    System.out.println("sleeping");
+                    Thread.sleep(Duration.ofMinutes(1));
+                }
+                default -> throw new IllegalArgumentException(args[0]);
+            }
+        }
+
+    }
+
+    private class CapturingSink implements LogSink {
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            assertThat(executionId).isEqualTo(ID);
+            events.add(event);
+        }
+    }
+
+}
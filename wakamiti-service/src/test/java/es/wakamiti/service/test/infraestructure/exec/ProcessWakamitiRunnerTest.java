@@ -0,0 +1,142 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.infrastructure.exec.ProcessWakamitiRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.slf4j.MDC;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+@DisabledOnOs(OS.WINDOWS)
+class ProcessWakamitiRunnerTest {
+
+    private static final String ID = "exec-1";
+
+    private final CapturingSink publisher = new CapturingSink();
+    private final ProcessWakamitiRunner runner = new ProcessWakamitiRunner(publisher, null);
+
+    @BeforeEach
+    void setUp() {
+        MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.remove(LogEventPublisher.EXECUTION_ID);
+    }
+
+    @DisplayName("The output and errors of the process are published line by line")
+    @Test
+    void testOutputPublished() {
+        int status = runner.run("echo one; echo two >&2; printf 'three'");
+
+        assertThat(status).isZero();
+        assertThat(publisher.events).extracting(LogEvent::message).containsExactly("one", "two", "three");
+        assertThat(publisher.events).extracting(LogEvent::text)
+                .containsExactly("one" + System.lineSeparator(), "two" + System.lineSeparator(),
+                                 "three" + System.lineSeparator());
+        assertThat(runner.pid()).isPresent();
+    }
+
+    @DisplayName("Every argument is passed to the process as a single word")
+    @Test
+    void testArguments() {
+        int status = runner.run("printf '%s\\n'", List.of("with spaces", "it's; echo injected", "$HOME"));
+
+        assertThat(status).isZero();
+        assertThat(publisher.events).extracting(LogEvent::message)
+                .containsExactly("with spaces", "it's; echo injected", "$HOME");
+    }
+
+    @DisplayName("Lines longer than the read buffer are published whole")
+    @Test
+    void testLongLines() {
+        int status = runner.run("head -c 200000 /dev/zero | tr '\\0' x; echo; echo {}");
+
+        assertThat(status).isZero();
+        assertThat(publisher.events).extracting(LogEvent::message)
+                .containsExactly("x".repeat(200_000), "{}");
+    }
+
+    @DisplayName("Lines longer than the maximum are split between two characters")
+    @Test
+    void testSplitLines() {
+        assumeTrue(StandardCharsets.UTF_8.equals(Charset.forName(System.getProperty("native.encoding"))));
+        int status = runner.run("head -c 1048575 /dev/zero | tr '\\0' x; printf '\\303\\251\\n'");
+
+        assertThat(status).isZero();
+        assertThat(publisher.events).extracting(LogEvent::message)
+                .containsExactly("x".repeat(1048575), "é");
+    }
+
+    @DisplayName("The exit status of the process is returned")
+    @Test
+    void testExitStatus() {
+        assertThat(runner.run("exit 3")).isEqualTo(3);
+    }
+
+    @DisplayName("Stopping the runner destroys the process and its children")
+    @Test
+    void testStop() {
+        CompletableFuture<Integer> status = CompletableFuture.supplyAsync(() -> {
+            MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+            return runner.run("sleep 60 & echo started; wait");
+        });
+        await().atMost(Duration.ofSeconds(10)).until(() -> !publisher.events.isEmpty());
+        List<ProcessHandle> children = ProcessHandle.of(runner.pid().orElseThrow()).orElseThrow()
+                .descendants().toList();
+
+        runner.stop();
+
+        assertThat(status).succeedsWithin(Duration.ofSeconds(10)).isEqualTo(1);
+        await().atMost(Duration.ofSeconds(10)).until(() -> children.stream().noneMatch(ProcessHandle::isAlive));
+    }
+
+    @DisplayName("A descendant left in the background holding the output open is destroyed")
+    @Test
+    void testBackgroundDescendant() {
+        long start = System.nanoTime();
+        int status = runner.run("(sleep 60; echo late) & sleep 1; echo done");
+
+        assertThat(status).isZero();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(30));
+        assertThat(publisher.events).extracting(LogEvent::message).containsExactly("done");
+        await().atMost(Duration.ofSeconds(10)).until(() -> ProcessHandle.current().descendants()
+                .noneMatch(it -> it.info().commandLine().orElse("").contains("sleep 60")));
+    }
+
+    private static class CapturingSink implements LogSink {
+
+        private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            assertThat(executionId).isEqualTo(ID);
+            events.add(event);
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.exec;
+
+
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogSink;
+import es.wakamiti.service.infrastructure.exec.WorkerPool;
+import es.wakamiti.service.infrastructure.exec.WorkerPoolProperties;
+import es.wakamiti.service.infrastructure.exec.WorkerWakamitiRunner;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+
+class WorkerWakamitiRunnerTest {
+
+    private static final String ID = "exec-1";
+    private static final List<LogEvent> EVENTS = new CopyOnWriteArrayList<>();
+
+    private static WorkerPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new WorkerPool(new WorkerPoolProperties(
+                Plan.class.getName(), List.of(), List.of(), null, 1, 1, Long.MAX_VALUE
+        ));
+        pool.start();
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.remove(LogEventPublisher.EXECUTION_ID);
+        EVENTS.clear();
+    }
+
+    private static WorkerWakamitiRunner runner() {
+        return new WorkerWakamitiRunner(pool, new CapturingSink());
+    }
+
+    @DisplayName("The output of the plan is published line by line")
+    @Test
+    void testOutputPublished() {
+        int status = runner().run("print one two");
+
+        assertThat(status).isZero();
+        assertThat(EVENTS).extracting(LogEvent::message).containsExactly("one", "two");
+    }
+
+    @DisplayName("The quoted words of the command and every argument are passed as single arguments")
+    @Test
+    void testArguments() {
+        int status = runner().run("print 'one two'", List.of("three four", "", "five"));
+
+        assertThat(status).isZero();
+        assertThat(EVENTS).extracting(LogEvent::message).containsExactly("one two", "three four", "", "five");
+    }
+
+    @DisplayName("Every run is done by a different worker once they reach their maximum runs")
+    @Test
+    void testWorkersRecycled() {
+        assertThat(runner().run("pid")).isZero();
+        assertThat(runner().run("pid")).isZero();
+
+        assertThat(EVENTS).extracting(LogEvent::message).doesNotHaveDuplicates().hasSize(2);
+    }
+
+    @DisplayName("A plan failing with an exception ends with the status 1")
+    @Test
+    void testException() {
+        int status = runner().run("fail");
+
+        assertThat(status).isEqualTo(1);
+        assertThat(EVENTS).extracting(LogEvent::message).contains("java.lang.IllegalStateException: failed");
+    }
+
+    @DisplayName("A plan exiting the worker ends with its exit status")
+    @Test
+    void testExit() {
+        assertThat(runner().run("exit 3")).isEqualTo(3);
+    }
+
+    @DisplayName("A worker whose output cannot be published is discarded")
+    @Test
+    void testPublishFailure() {
+        WorkerWakamitiRunner runner = new WorkerWakamitiRunner(pool, new CapturingSink() {
+            @Override
+            public void publish(String executionId, LogEvent event) {
+                super.publish(executionId, event);
+                throw new IllegalStateException("cannot publish");
+            }
+        });
+
+        assertThatThrownBy(() -> runner.run("pid")).hasMessage("cannot publish");
+        ProcessHandle worker = ProcessHandle.of(Long.parseLong(EVENTS.getFirst().message())).orElseThrow();
+        await().atMost(Duration.ofSeconds(10)).until(() -> !worker.isAlive());
+    }
+
+    @DisplayName("Stopping the runner destroys the worker")
+    @Test
+    void testStop() {
+        WorkerWakamitiRunner runner = runner();
+        CompletableFuture<Integer> status = CompletableFuture.supplyAsync(() -> {
+            MDC.put(LogEventPublisher.EXECUTION_ID, ID);
+            return runner.run("sleep");
+        });
+        await().atMost(Duration.ofSeconds(20)).until(() -> !EVENTS.isEmpty());
+
+        runner.stop();
+
+        assertThat(status).succeedsWithin(Duration.ofSeconds(10)).isEqualTo(1);
+    }
+
+    /**
+     * Main class run by the workers.
+     */
+    public static class Plan {
+
+        public static void main(
+                String[] args
+        ) throws InterruptedException {
+            switch (args[0]) {
+                case "print" -> {
+                    for (int i = 1; i < args.length; i++) {
+                        System.out.println(args[i]);
+                    }
+                }
+                case "pid" -> System.out.print(ProcessHandle.current().pid());
+                case "fail" -> throw new IllegalStateException("failed");
+                case "exit" -> System.exit(Integer.parseInt(args[1]));
+                case "sleep" -> {
+                    System.out.println("sleeping");
+                    Thread.sleep(Duration.ofMinutes(1));
+                }
+                default -> throw new IllegalArgumentException(args[0]);
+            }
+        }
+
+    }
+
+    private static class CapturingSink implements LogSink {
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            assertThat(executionId).isEqualTo(ID);
+            EVENTS.add(event);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.lifecycle;
+
+
+import es.wakamiti.service.infrastructure.lifecycle.IdleProperties;
+import es.wakamiti.service.infrastructure.lifecycle.IdleShutdown;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+
+class IdleShutdownTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(300);
+
+    private final AtomicInteger activity = new AtomicInteger();
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private IdleShutdown idle;
+
+    @AfterEach
+    void tearDown() {
+        if (idle != null) {
+            idle.stop();
+        }
+    }
+
+    private void start(
+            Duration timeout
+    ) {
+        idle = new IdleShutdown(new IdleProperties(timeout), activity::get, shutdown::countDown);
+        idle.start();
+    }
+
+    @DisplayName("The service shuts down after the idle timeout")
+    @Test
+    void testIdle() throws InterruptedException {
+        long start = System.nanoTime();
+        start(TIMEOUT);
+
+        assertThat(shutdown.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(TIMEOUT);
+    }
+
+    @DisplayName("The service does not shut down while in use, and counts the idle time from the last use")
+    @Test
+    void testInUse() throws InterruptedException {
+        activity.set(1);
+        start(TIMEOUT);
+
+        assertThat(shutdown.await(TIMEOUT.multipliedBy(3).toMillis(), TimeUnit.MILLISECONDS)).isFalse();
+
+        long released = System.nanoTime();
+        activity.set(0);
+        await().atMost(Duration.ofSeconds(5)).until(() -> shutdown.getCount() == 0);
+        assertThat(Duration.ofNanos(System.nanoTime() - released)).isGreaterThanOrEqualTo(TIMEOUT);
+    }
+
+    @DisplayName("The service runs until stopped without an idle timeout")
+    @Test
+    void testNoTimeout() throws InterruptedException {
+        start(null);
+
+        assertThat(shutdown.await(TIMEOUT.multipliedBy(2).toMillis(), TimeUnit.MILLISECONDS)).isFalse();
+    }
+
+    @DisplayName("The idle timeout must be greater than 0")
+    @Test
+    void testInvalidTimeout() {
+        assertThatThrownBy(() -> new IdleProperties(Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Idle timeout must be greater than 0");
+    }
+
+}
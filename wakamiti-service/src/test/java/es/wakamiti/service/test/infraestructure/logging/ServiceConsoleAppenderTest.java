@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.logging;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import es.wakamiti.service.infrastructure.logging.ServiceConsoleAppender;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+class ServiceConsoleAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    @DisplayName("Events are written to the standard output of the service, even if it is replaced later")
+    @Test
+    void testServiceOutput() {
+        PrintStream original = System.out;
+        ByteArrayOutputStream service = new ByteArrayOutputStream();
+        ByteArrayOutputStream execution = new ByteArrayOutputStream();
+        try {
+            PrintStream serviceOutput = new PrintStream(service, true, StandardCharsets.UTF_8);
+            System.setOut(serviceOutput);
+            PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+            encoder.setContext(context);
+            encoder.setPattern("%msg%n");
+            encoder.start();
+            ServiceConsoleAppender<ILoggingEvent> appender = new ServiceConsoleAppender<>();
+            appender.setContext(context);
+            appender.setEncoder(encoder);
+            appender.start();
+
+            System.setOut(new PrintStream(execution, true, StandardCharsets.UTF_8));
+            LoggingEvent event = new LoggingEvent(getClass().getName(), context.getLogger("service.wakamiti"),
+                                                  Level.INFO, "logged", null, null);
+            event.setMDCPropertyMap(Map.of());
+            appender.doAppend(event);
+            appender.stop();
+            System.out.println("execution");
+            serviceOutput.println("still open");
+        } finally {
+            System.setOut(original);
+        }
+
+        assertThat(service.toString(StandardCharsets.UTF_8))
+                .isEqualTo("logged" + System.lineSeparator() + "still open" + System.lineSeparator());
+        assertThat(execution.toString(StandardCharsets.UTF_8)).isEqualTo("execution" + System.lineSeparator());
+    }
+
+}
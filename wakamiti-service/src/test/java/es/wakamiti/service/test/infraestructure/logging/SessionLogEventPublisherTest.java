@@ -0,0 +1,543 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.logging;
+
+
+import es.wakamiti.service.domain.model.ExecutionRecord;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.ExecutionRepository;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.domain.spi.LogStreamMetrics;
+import es.wakamiti.service.infrastructure.exec.InMemoryLogHistoryRepository;
+import es.wakamiti.service.infrastructure.logging.LogStreamProperties;
+import es.wakamiti.service.infrastructure.logging.SessionLogEventPublisher;
+import es.wakamiti.service.infrastructure.logging.SlowConsumerPolicy;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+
+class SessionLogEventPublisherTest {
+
+    private static final String ID = "exec-1";
+
+    private final StubSession client = new StubSession();
+    private final CountingMetrics metrics = new CountingMetrics();
+    private final RecordingExecutions executions = new RecordingExecutions();
+
+    @AfterEach
+    void tearDown() {
+        client.gate.countDown();
+    }
+
+    private SessionLogEventPublisher publisher(
+            SlowConsumerPolicy policy
+    ) {
+        return publisher(policy, 100);
+    }
+
+    private SessionLogEventPublisher publisher(
+            SlowConsumerPolicy policy,
+            int historyLines
+    ) {
+        return publisher(policy, historyLines, 2);
+    }
+
+    private SessionLogEventPublisher publisher(
+            SlowConsumerPolicy policy,
+            int historyLines,
+            int queueSize
+    ) {
+        return new SessionLogEventPublisher(
+                new InMemoryLogHistoryRepository(historyLines, 100_000),
+                new LogStreamProperties(Duration.ofMillis(50), 1024, queueSize, policy),
+                metrics,
+                executions
+        );
+    }
+
+    /**
+     * Publishes the given number of lines, once the first one is being sent.
+     */
+    private void publish(
+            SessionLogEventPublisher publisher,
+            int lines
+    ) {
+        publisher.publish(ID, event("line 0"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> client.sending.get() > 0);
+        for (int i = 1; i < lines; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+    }
+
+    @DisplayName("A slow session drops the overflow and is told how many messages it missed")
+    @Test
+    void testDrop() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DROP);
+        publisher.subscribe(ID, client.session);
+        publish(publisher, 10);
+        assertThat(publisher.getQueueDepths()).containsEntry("1", 2);
+        publisher.publish(ID, event("line 10"));
+
+        client.gate.countDown();
+        publisher.flush(ID);
+
+        // One message is being sent, two are queued, and the rest are dropped
+        assertThat(client.received).containsExactly(
+                "line 0", "line 1", "line 2", "[8 log messages skipped: the connection is too slow]" + System.lineSeparator());
+        assertThat(publisher.getQueueDepths()).containsEntry("1", 0);
+
+        publisher.publish(ID, event("line 11"));
+        publisher.flush(ID);
+        assertThat(client.received).last().isEqualTo("line 11");
+        assertThat(metrics.dropped).hasValue(8);
+    }
+
+    @DisplayName("A slow session is disconnected with a reason")
+    @Test
+    void testDisconnect() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DISCONNECT);
+        publisher.subscribe(ID, client.session);
+        publish(publisher, 10);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> client.closeReason != null);
+        assertThat(client.closeReason.getCloseCode()).isEqualTo(CloseReason.CloseCodes.TRY_AGAIN_LATER);
+        // The pending messages are discarded
+        client.gate.countDown();
+        publisher.flush(ID);
+        assertThat(client.received).isSubsetOf("line 0");
+    }
+
+    @DisplayName("A slow sequenced session is told how many messages it missed after the last line it got")
+    @Test
+    void testDropSequenced() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DROP);
+        client.parameters.put("seq", List.of("true"));
+        publisher.subscribe(ID, client.session);
+        publish(publisher, 10);
+
+        client.gate.countDown();
+        publisher.flush(ID);
+
+        String nl = System.lineSeparator();
+        assertThat(client.received).containsExactly(
+                "#0" + nl + "line 0", "#1" + nl + "line 1", "#2" + nl + "line 2",
+                "#2" + nl + "[7 log messages skipped: the connection is too slow]" + nl);
+    }
+
+    @DisplayName("A slow binary session is told how many messages it missed in a binary frame")
+    @Test
+    void testDropBinary() throws DataFormatException {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DROP);
+        client.subprotocol = LogEventPublisher.BINARY_PROTOCOL;
+        publisher.subscribe(ID, client.session);
+        publish(publisher, 10);
+
+        client.gate.countDown();
+        publisher.flush(ID);
+
+        assertThat(client.received).isEmpty();
+        List<String> records = new ArrayList<>();
+        for (byte[] frame : client.binary) {
+            records.addAll(decode(frame));
+        }
+        assertThat(records).filteredOn(record -> !record.startsWith("logger")).hasSize(4)
+                .last().asString().matches("2 \\d+ 3 0 \\[7 log messages skipped: the connection is too slow]");
+    }
+
+    @DisplayName("A slow session is paused without holding the publisher, and then gets the lines it missed")
+    @Test
+    void testPause() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE);
+        StubSession other = new StubSession();
+        other.gate.countDown();
+        publisher.subscribe(ID, client.session);
+        publisher.subscribe("exec-2", other.session);
+        publish(publisher, 10);
+        publisher.publish("exec-2", event("other line"));
+        publisher.flush("exec-2");
+
+        assertThat(other.received).containsExactly("other line");
+        assertThat(client.received).isEmpty();
+        client.gate.countDown();
+        publisher.flush(ID);
+        assertThat(client.received).containsExactlyElementsOf(
+                IntStream.range(0, 10).mapToObj(i -> "line " + i).toList());
+        assertThat(metrics.dropped).hasValue(0);
+
+        publisher.publish(ID, event("line 10"));
+        publisher.flush(ID);
+        assertThat(client.received).last().isEqualTo("line 10");
+    }
+
+    @DisplayName("The lines published and the frames sent or failed are recorded")
+    @Test
+    void testMetrics() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE);
+        publisher.subscribe(ID, client.session);
+        client.gate.countDown();
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+        publisher.flush(ID);
+
+        assertThat(metrics.published).hasValue(5);
+        assertThat(metrics.sent).hasValue(5);
+        assertThat(metrics.bytes).hasValue(5 * "line 0".length());
+        assertThat(metrics.failed).hasValue(0);
+
+        publisher.publish(ID, event("línea €😀"));
+        publisher.flush(ID);
+        assertThat(metrics.bytes).hasValue(5 * "line 0".length() + "línea €😀".getBytes(StandardCharsets.UTF_8).length);
+
+        client.failing = true;
+        publisher.publish(ID, event("line 5"));
+        publisher.flush(ID);
+        assertThat(metrics.published).hasValue(7);
+        assertThat(metrics.sent).hasValue(6);
+        assertThat(metrics.failed).hasValue(1);
+    }
+
+    @DisplayName("The lines published are recorded with the execution, also without sessions")
+    @Test
+    void testExecutionRecord() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DROP);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+
+        assertThat(executions.lines).extracting(LogEntry::sequence).containsExactly(0L, 1L, 2L);
+        assertThat(executions.lines).extracting(LogEntry::text).containsExactly("line 0", "line 1", "line 2");
+    }
+
+    @DisplayName("A session resumed from a sequence number only receives the lines after it")
+    @Test
+    void testResume() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE);
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+        client.gate.countDown();
+        client.parameters.put("seq", List.of("true"));
+        client.parameters.put("from", List.of("3"));
+        publisher.subscribe(ID, client.session);
+        publisher.publish(ID, event("line 5"));
+        publisher.flush(ID);
+
+        String nl = System.lineSeparator();
+        assertThat(client.received).containsExactly("#3" + nl + "line 3", "#4" + nl + "line 4", "#5" + nl + "line 5");
+    }
+
+    @DisplayName("A session with an invalid sequence number to resume from is not subscribed")
+    @Test
+    void testInvalidResume() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.DROP);
+        client.parameters.put("from", List.of("abc"));
+
+        assertThatThrownBy(() -> publisher.subscribe(ID, client.session))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid from parameter: abc");
+        client.parameters.put("from", List.of("-1"));
+        assertThatThrownBy(() -> publisher.subscribe(ID, client.session))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(publisher.getSessionCount()).isZero();
+    }
+
+    @DisplayName("A session resumed from lines no longer in the history is told how many it missed")
+    @Test
+    void testResumeFromEvictedLines() {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE, 2);
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+        client.gate.countDown();
+        client.parameters.put("from", List.of("1"));
+        client.parameters.put("batch", List.of("true"));
+        publisher.subscribe(ID, client.session);
+        publisher.flush(ID);
+
+        assertThat(client.received).containsExactly("[2 log lines no longer available]" + System.lineSeparator() + "line 3line 4");
+    }
+
+    @DisplayName("Sessions watching the live log share its frames, also when joining late")
+    @Test
+    void testSharedFrames() {
+        // Room for every frame, so that no session pauses and leaves the shared ones
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE, 100, 16);
+        StubSession late = new StubSession();
+        client.gate.countDown();
+        late.gate.countDown();
+        publisher.subscribe(ID, client.session);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+        publisher.subscribe(ID, late.session);
+        for (int i = 3; i < 5; i++) {
+            publisher.publish(ID, event("line " + i));
+        }
+        publisher.flush(ID);
+
+        assertThat(client.received).containsExactly("line 0", "line 1", "line 2", "line 3", "line 4");
+        assertThat(late.received).containsExactly("line 0", "line 1", "line 2", "line 3", "line 4");
+        assertThat(late.received.getLast()).isSameAs(client.received.getLast());
+    }
+
+    @DisplayName("A session with the binary subprotocol receives compressed binary records")
+    @Test
+    void testBinaryProtocol() throws DataFormatException {
+        SessionLogEventPublisher publisher = publisher(SlowConsumerPolicy.PAUSE);
+        client.gate.countDown();
+        client.subprotocol = LogEventPublisher.BINARY_PROTOCOL;
+        client.parameters.put("batch", List.of("true"));
+        publisher.subscribe(ID, client.session);
+        for (int i = 0; i < 50; i++) {
+            publisher.publish(ID, LogEvent.of(Instant.ofEpochMilli(1000 + i), i % 2 == 0 ? "INFO" : "ERROR",
+                                              "es.wakamiti.core", "line " + i + " ñ€😀" + System.lineSeparator()));
+        }
+        publisher.flush(ID);
+
+        assertThat(client.binary).isNotEmpty();
+        assertThat(client.binary.getFirst()[0]).isEqualTo((byte) 1);
+        List<String> records = new ArrayList<>();
+        for (byte[] frame : client.binary) {
+            records.addAll(decode(frame));
+        }
+        assertThat(records.getFirst()).isEqualTo("logger 0 es.wakamiti.core");
+        assertThat(records).filteredOn(record -> !record.startsWith("logger")).hasSize(50)
+                .startsWith("0 1000 2 0 line 0 ñ€😀", "1 1001 4 0 line 1 ñ€😀")
+                .endsWith("49 1049 4 0 line 49 ñ€😀");
+        assertThat(client.received).isEmpty();
+    }
+
+    /**
+     * Decodes the records of a binary frame as readable strings.
+     */
+    private static List<String> decode(
+            byte[] frame
+    ) throws DataFormatException {
+        byte[] body = Arrays.copyOfRange(frame, 1, frame.length);
+        if ((frame[0] & 1) != 0) {
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(body);
+            byte[] inflated = new byte[65536];
+            body = Arrays.copyOf(inflated, inflater.inflate(inflated));
+            inflater.end();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        List<String> records = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.get() == 1) {
+                long id = varint(buffer);
+                records.add("logger " + id + " " + string(buffer));
+            } else {
+                long sequence = varint(buffer);
+                long timestamp = varint(buffer);
+                int level = buffer.get();
+                long logger = varint(buffer);
+                records.add(sequence + " " + timestamp + " " + level + " " + logger + " " + string(buffer).strip());
+            }
+        }
+        return records;
+    }
+
+    private static long varint(
+            ByteBuffer buffer
+    ) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String string(
+            ByteBuffer buffer
+    ) {
+        byte[] bytes = new byte[(int) varint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * WebSocket session whose messages are not sent until the gate opens.
+     */
+    private static class StubSession {
+
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final List<byte[]> binary = new CopyOnWriteArrayList<>();
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final AtomicInteger sending = new AtomicInteger();
+        private final Map<String, List<String>> parameters = new ConcurrentHashMap<>();
+        private volatile CloseReason closeReason;
+        private volatile String subprotocol;
+        private volatile boolean failing;
+
+        private final RemoteEndpoint.Basic remote = (RemoteEndpoint.Basic) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{RemoteEndpoint.Basic.class}, (_, method, args) -> {
+                    if (method.getName().equals("sendText")) {
+                        sending.incrementAndGet();
+                        gate.await(5, TimeUnit.SECONDS);
+                        if (failing) {
+                            throw new IOException("Broken pipe");
+                        }
+                        received.add((String) args[0]);
+                    } else if (method.getName().equals("sendBinary")) {
+                        sending.incrementAndGet();
+                        gate.await(5, TimeUnit.SECONDS);
+                        ByteBuffer data = (ByteBuffer) args[0];
+                        byte[] bytes = new byte[data.remaining()];
+                        data.get(bytes);
+                        binary.add(bytes);
+                    }
+                    return null;
+                });
+
+        private final Session session = (Session) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> "1";
+                    case "isOpen" -> closeReason == null;
+                    case "getBasicRemote" -> remote;
+                    case "getRequestParameterMap" -> parameters;
+                    case "getNegotiatedSubprotocol" -> subprotocol;
+                    case "getNegotiatedExtensions" -> List.of();
+                    case "close" -> {
+                        closeReason = (CloseReason) args[0];
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    /**
+     * Metrics counting what they are told.
+     */
+    private static class CountingMetrics implements LogStreamMetrics {
+
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        @Override
+        public void published() {
+            published.incrementAndGet();
+        }
+
+        @Override
+        public void sent(
+                long bytes
+        ) {
+            sent.incrementAndGet();
+            this.bytes.addAndGet(bytes);
+        }
+
+        @Override
+        public void sendFailed() {
+            failed.incrementAndGet();
+        }
+
+        @Override
+        public void dropped() {
+            dropped.incrementAndGet();
+        }
+
+    }
+
+    private static class RecordingExecutions implements ExecutionRepository {
+
+        private final List<LogEntry> lines = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void submitted(
+                String executionId,
+                String command,
+                Instant timestamp
+        ) {
+            // Not used by the publisher
+        }
+
+        @Override
+        public void started(
+                String executionId,
+                Instant timestamp
+        ) {
+            // Not used by the publisher
+        }
+
+        @Override
+        public void logged(
+                String executionId,
+                LogEntry entry
+        ) {
+            lines.add(entry);
+        }
+
+        @Override
+        public void finished(
+                String executionId,
+                Instant timestamp,
+                int status
+        ) {
+            // Not used by the publisher
+        }
+
+        @Override
+        public List<ExecutionRecord> find(
+                int offset,
+                int limit
+        ) {
+            return List.of();
+        }
+
+        @Override
+        public long count() {
+            return 0;
+        }
+
+    }
+
+    private static LogEvent event(
+            String message
+    ) {
+        return LogEvent.of(Instant.now(), "INFO", "es.wakamiti.core", message);
+    }
+
+}
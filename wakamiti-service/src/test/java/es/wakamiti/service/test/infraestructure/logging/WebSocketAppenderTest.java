@@ -0,0 +1,233 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.logging;
+
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.domain.spi.LogEventPublisher;
+import es.wakamiti.service.infrastructure.logging.WebSocketAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+
+class WebSocketAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final StubPublisher publisher = new StubPublisher();
+    private WebSocketAppender appender;
+
+    @BeforeEach
+    void setUp() {
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        appender = new WebSocketAppender();
+        appender.setContext(context);
+        appender.setLayout(layout);
+        appender.setPublisher(publisher);
+        appender.setQueueSize(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.gate.countDown();
+        appender.stop();
+    }
+
+    @DisplayName("Events are published in order by the drain thread")
+    @Test
+    void testPublish() {
+        publisher.gate.countDown();
+        appender.start();
+
+        appender.doAppend(event("a", Level.INFO, "one"));
+        appender.doAppend(event(null, Level.INFO, "outside an execution"));
+        appender.doAppend(event("a", Level.INFO, "two"));
+        appender.doAppend(event("b", Level.INFO, "three"));
+        appender.flush();
+
+        assertThat(publisher.messages()).containsExactly("a:one", "a:two", "b:three");
+        assertThat(publisher.threads).containsOnly("wakamiti-log-drainer");
+    }
+
+    @DisplayName("Events below the level are dropped when the queue is full")
+    @Test
+    void testDropBelowLevel() {
+        appender.setOverflowPolicy("drop-below-level");
+        appender.setDropBelowLevel("WARN");
+        appender.start();
+
+        appender.doAppend(event("a", Level.INFO, "taken by the drainer"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> appender.getQueueDepth() == 0);
+        appender.doAppend(event("a", Level.INFO, "one"));
+        appender.doAppend(event("a", Level.INFO, "two"));
+        appender.doAppend(event("a", Level.INFO, "dropped"));
+        assertThat(appender.getDroppedCount()).isEqualTo(1);
+
+        publisher.gate.countDown();
+        appender.doAppend(event("a", Level.WARN, "waits"));
+        appender.flush();
+
+        assertThat(publisher.messages()).containsExactly("a:taken by the drainer", "a:one", "a:two", "a:waits");
+    }
+
+    @DisplayName("The oldest events are dropped when the queue is full")
+    @Test
+    void testDropOldest() {
+        appender.setOverflowPolicy("DROP_OLDEST");
+        appender.start();
+
+        appender.doAppend(event("a", Level.INFO, "taken by the drainer"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> appender.getQueueDepth() == 0);
+        appender.doAppend(event("a", Level.INFO, "one"));
+        appender.doAppend(event("a", Level.INFO, "two"));
+        appender.doAppend(event("a", Level.ERROR, "three"));
+        assertThat(appender.getDroppedCount()).isEqualTo(1);
+
+        publisher.gate.countDown();
+        appender.flush();
+
+        assertThat(publisher.messages()).containsExactly("a:taken by the drainer", "a:two", "a:three");
+    }
+
+    private AtomicInteger countingLayout() {
+        AtomicInteger layouts = new AtomicInteger();
+        PatternLayout layout = new PatternLayout() {
+            @Override
+            public String doLayout(ILoggingEvent event) {
+                layouts.incrementAndGet();
+                return super.doLayout(event);
+            }
+        };
+        layout.setContext(context);
+        layout.setPattern("%level %msg");
+        layout.start();
+        appender.setLayout(layout);
+        return layouts;
+    }
+
+    @DisplayName("Events are laid out once, when first asked for, with the value their arguments had")
+    @Test
+    void testFormatting() {
+        AtomicInteger layouts = countingLayout();
+        appender.start();
+
+        List<String> failed = new ArrayList<>(List.of("one", "two"));
+        LoggingEvent logged = new LoggingEvent(getClass().getName(), context.getLogger("es.wakamiti.core"),
+                                               Level.WARN, "{} of {} failed", null, new Object[]{failed, 3});
+        logged.setMDCPropertyMap(Map.of(LogEventPublisher.EXECUTION_ID, "a"));
+        appender.doAppend(logged);
+        failed.add("three");
+        publisher.gate.countDown();
+        appender.flush();
+
+        LogEvent event = publisher.events.getFirst();
+        assertThat(event.level()).isEqualTo("WARN");
+        assertThat(event.logger()).isEqualTo("es.wakamiti.core");
+        assertThat(event.thread()).isEqualTo(Thread.currentThread().getName());
+        assertThat(event.mdc()).containsEntry(LogEventPublisher.EXECUTION_ID, "a");
+        assertThat(event.message()).isEqualTo("[one, two] of 3 failed");
+        assertThat(layouts).hasValue(0);
+        assertThat(event.text()).isEqualTo("WARN [one, two] of 3 failed");
+        assertThat(event.text()).isEqualTo("WARN [one, two] of 3 failed");
+        assertThat(layouts).hasValue(1);
+    }
+
+    @DisplayName("Events are never laid out if nobody asks for their text")
+    @Test
+    void testNoTextSubscriber() {
+        AtomicInteger layouts = countingLayout();
+        publisher.gate.countDown();
+        appender.start();
+
+        appender.doAppend(event("a", Level.INFO, "one"));
+        appender.doAppend(event("a", Level.INFO, "two"));
+        appender.flush();
+
+        assertThat(publisher.events).extracting(LogEvent::message).containsExactly("one", "two");
+        assertThat(layouts).hasValue(0);
+    }
+
+    private ILoggingEvent event(
+            String executionId,
+            Level level,
+            String message
+    ) {
+        LoggingEvent event = new LoggingEvent(
+                getClass().getName(), context.getLogger("es.wakamiti.core"), level, message, null, null);
+        event.setMDCPropertyMap(executionId == null ? Map.of() : Map.of(LogEventPublisher.EXECUTION_ID, executionId));
+        return event;
+    }
+
+    private static class StubPublisher implements LogEventPublisher<Object> {
+
+        private final List<String> executions = new CopyOnWriteArrayList<>();
+        private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void publish(String executionId, LogEvent event) {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+            executions.add(executionId);
+            events.add(event);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        private List<String> messages() {
+            return IntStream.range(0, events.size())
+                    .mapToObj(i -> executions.get(i) + ":" + events.get(i).text())
+                    .toList();
+        }
+
+        @Override
+        public void subscribe(String executionId, Object subscriber) {
+            // Not used
+        }
+
+        @Override
+        public void unsubscribe(String executionId, Object subscriber) {
+            // Not used
+        }
+
+        @Override
+        public void flush(String executionId) {
+            // Not used
+        }
+
+        @Override
+        public void clear(String executionId) {
+            // Not used
+        }
+    }
+
+}
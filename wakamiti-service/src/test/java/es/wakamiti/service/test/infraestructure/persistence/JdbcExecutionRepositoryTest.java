@@ -0,0 +1,260 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.persistence;
+
+
+import es.wakamiti.service.domain.model.ExecutionRecord;
+import es.wakamiti.service.domain.model.LogEntry;
+import es.wakamiti.service.domain.model.LogEvent;
+import es.wakamiti.service.infrastructure.persistence.ExecutionStoreProperties;
+import es.wakamiti.service.infrastructure.persistence.JdbcExecutionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+
+class JdbcExecutionRepositoryTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final List<JdbcExecutionRepository> repositories = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        repositories.forEach(JdbcExecutionRepository::shutdown);
+    }
+
+    private JdbcExecutionRepository repository(
+            String url,
+            Duration retention,
+            int maxLines,
+            long maxStoredLines
+    ) {
+        JdbcExecutionRepository repository = new JdbcExecutionRepository(
+                new ExecutionStoreProperties(url, "sa", "", 3, 100, retention, maxLines, maxStoredLines)
+        );
+        repository.start();
+        repositories.add(repository);
+        return repository;
+    }
+
+    private JdbcExecutionRepository repository(
+            String url,
+            Duration retention
+    ) {
+        return repository(url, retention, 1000, 10000);
+    }
+
+    private JdbcExecutionRepository repository() {
+        return repository("jdbc:h2:mem:" + UUID.randomUUID(), Duration.ofDays(7));
+    }
+
+    private static void log(
+            JdbcExecutionRepository repository,
+            String executionId,
+            int lines
+    ) {
+        for (int i = 0; i < lines; i++) {
+            repository.logged(executionId, new LogEntry(i, LogEvent.of(NOW, "INFO", "es.wakamiti.core", "line " + i)));
+        }
+    }
+
+    /**
+     * @return the numbers of the log lines stored for the execution
+     */
+    private static List<Long> storedLines(
+            String url,
+            String executionId
+    ) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT line FROM execution_log WHERE execution_id = ? ORDER BY line")) {
+            statement.setString(1, executionId);
+            List<Long> lines = new ArrayList<>();
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    lines.add(result.getLong(1));
+                }
+            }
+            return lines;
+        }
+    }
+
+    @DisplayName("An execution is recorded with its times, exit status and log lines")
+    @Test
+    void testExecution() {
+        JdbcExecutionRepository repository = repository();
+        repository.submitted("a", "run a", NOW);
+        repository.started("a", NOW.plusSeconds(1));
+        // More lines than fit in a batch
+        log(repository, "a", 10);
+        repository.finished("a", NOW.plusSeconds(2), 3);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.find(0, 10).stream()
+                .anyMatch(it -> it.status() != null));
+        assertThat(repository.find(0, 10)).containsExactly(
+                new ExecutionRecord("a", "run a", NOW, NOW.plusSeconds(1), NOW.plusSeconds(2), 3, 10)
+        );
+    }
+
+    @DisplayName("An execution in progress, or stopped while queued, has no start or no end")
+    @Test
+    void testUnfinished() {
+        JdbcExecutionRepository repository = repository();
+        repository.submitted("running", "run", NOW);
+        repository.started("running", NOW.plusSeconds(1));
+        repository.submitted("stopped", "run", NOW.plusSeconds(2));
+        repository.finished("stopped", NOW.plusSeconds(3), 1);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.count() == 2
+                && repository.find(0, 1).getFirst().status() != null);
+        assertThat(repository.find(0, 10)).containsExactly(
+                new ExecutionRecord("stopped", "run", NOW.plusSeconds(2), null, NOW.plusSeconds(3), 1, 0),
+                new ExecutionRecord("running", "run", NOW, NOW.plusSeconds(1), null, null, 0)
+        );
+    }
+
+    @DisplayName("The executions are found newest first, a page at a time")
+    @Test
+    void testPages() {
+        JdbcExecutionRepository repository = repository();
+        for (int i = 0; i < 5; i++) {
+            repository.submitted("e" + i, "run " + i, NOW.plusSeconds(i));
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.count() == 5);
+        assertThat(repository.find(0, 2)).extracting(ExecutionRecord::id).containsExactly("e4", "e3");
+        assertThat(repository.find(2, 2)).extracting(ExecutionRecord::id).containsExactly("e2", "e1");
+        assertThat(repository.find(4, 2)).extracting(ExecutionRecord::id).containsExactly("e0");
+        assertThat(repository.find(6, 2)).isEmpty();
+    }
+
+    @DisplayName("The executions are kept across restarts in a file, except those past the retention")
+    @Test
+    void testRetention(
+            @TempDir Path directory
+    ) {
+        String url = "jdbc:h2:file:" + directory.resolve("executions");
+        Instant old = Instant.now().minus(Duration.ofDays(2));
+        JdbcExecutionRepository repository = repository(url, Duration.ofDays(1));
+        repository.submitted("old", "run", old);
+        repository.logged("old", new LogEntry(0, LogEvent.of(old, "INFO", "es.wakamiti.core", "line")));
+        repository.finished("old", old, 0);
+        repository.submitted("new", "run", Instant.now());
+        repository.shutdown();
+        repositories.remove(repository);
+
+        JdbcExecutionRepository reopened = repository(url, Duration.ofDays(1));
+        assertThat(reopened.find(0, 10)).extracting(ExecutionRecord::id).containsExactly("new");
+    }
+
+    @DisplayName("Only the last lines of an execution are kept, though all of them are counted")
+    @Test
+    void testMaxLines() throws SQLException {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID();
+        JdbcExecutionRepository repository = repository(url, Duration.ofDays(7), 4, 100);
+        repository.submitted("a", "run a", NOW);
+        log(repository, "a", 10);
+        repository.finished("a", NOW.plusSeconds(1), 0);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.find(0, 1).getFirst().status() != null);
+        assertThat(repository.find(0, 1)).extracting(ExecutionRecord::lines).containsExactly(10L);
+        assertThat(storedLines(url, "a")).containsExactly(6L, 7L, 8L, 9L);
+    }
+
+    @DisplayName("The oldest finished executions are deleted when the lines of all of them exceed the maximum")
+    @Test
+    void testMaxStoredLines() throws SQLException {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID();
+        JdbcExecutionRepository repository = repository(url, Duration.ofDays(7), 10, 10);
+        repository.submitted("running", "run", NOW);
+        log(repository, "running", 4);
+        for (int i = 0; i < 3; i++) {
+            repository.submitted("e" + i, "run " + i, NOW.plusSeconds(i + 1));
+            log(repository, "e" + i, 3);
+            repository.finished("e" + i, NOW.plusSeconds(i + 1), 0);
+        }
+        repository.submitted("last", "run", NOW.plusSeconds(10));
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(repository.find(0, 10))
+                .extracting(ExecutionRecord::id).containsExactly("last", "e2", "e1", "running"));
+        assertThat(storedLines(url, "running")).hasSize(4);
+        assertThat(storedLines(url, "e0")).isEmpty();
+    }
+
+    @DisplayName("The log lines are dropped when too many are waiting, but not the executions")
+    @Test
+    void testQueueFull() {
+        JdbcExecutionRepository repository = new JdbcExecutionRepository(new ExecutionStoreProperties(
+                "jdbc:h2:mem:" + UUID.randomUUID(), "sa", "", 3, 2, Duration.ofDays(7), 1000, 10000
+        ));
+        // Nothing is written until started
+        repository.submitted("a", "run a", NOW);
+        log(repository, "a", 5);
+        repository.finished("a", NOW.plusSeconds(1), 0);
+        assertThat(repository.getDroppedLines()).isEqualTo(3);
+
+        repository.start();
+        repositories.add(repository);
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.count() == 1
+                && repository.find(0, 1).getFirst().status() != null);
+        assertThat(repository.find(0, 1)).containsExactly(
+                new ExecutionRecord("a", "run a", NOW, null, NOW.plusSeconds(1), 0, 2)
+        );
+    }
+
+    @DisplayName("A change that cannot be written does not lose the others of its batch")
+    @Test
+    void testFailedChange() {
+        JdbcExecutionRepository repository = repository();
+        repository.submitted("a", "run a", NOW);
+        repository.submitted("a", "run a again", NOW);
+        repository.submitted("b", "run b", NOW.plusSeconds(1));
+        repository.finished("b", NOW.plusSeconds(2), 0);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> repository.count() == 2
+                && repository.find(0, 1).getFirst().status() != null);
+        assertThat(repository.find(0, 10)).containsExactly(
+                new ExecutionRecord("b", "run b", NOW.plusSeconds(1), null, NOW.plusSeconds(2), 0, 0),
+                new ExecutionRecord("a", "run a", NOW, null, null, null, 0)
+        );
+    }
+
+    @DisplayName("The store settings must be valid")
+    @Test
+    void testInvalidProperties() {
+        assertThatThrownBy(() -> new ExecutionStoreProperties(" ", "sa", "", 1, 1, Duration.ofDays(1), 1, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Execution store URL must be given");
+        assertThatThrownBy(() -> new ExecutionStoreProperties("jdbc:h2:mem:x", "sa", "", 0, 1, Duration.ofDays(1), 1, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Batch size must be greater than 0");
+        assertThatThrownBy(() -> new ExecutionStoreProperties("jdbc:h2:mem:x", "sa", "", 1, 1, Duration.ZERO, 1, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Retention must be greater than 0");
+        assertThatThrownBy(() -> new ExecutionStoreProperties("jdbc:h2:mem:x", "sa", "", 1, 1, Duration.ofDays(1), 2, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Max stored lines must not be less than max lines");
+    }
+
+}
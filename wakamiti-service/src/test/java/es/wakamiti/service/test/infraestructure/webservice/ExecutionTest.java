@@ -6,7 +6,10 @@
 package es.wakamiti.service.test.infraestructure.webservice;
 
 
+import es.wakamiti.service.domain.model.ExecutionPage;
+import es.wakamiti.service.domain.model.ExecutionRecord;
 import es.wakamiti.service.domain.spi.LogHistoryRepository;
+import io.helidon.microprofile.testing.junit5.AddConfig;
 import io.helidon.microprofile.testing.junit5.HelidonTest;
 import jakarta.inject.Inject;
 import jakarta.websocket.*;
@@ -25,38 +28,52 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.*;
 
 
 @HelidonTest
+@AddConfig(key = "wakamiti.execution.max-concurrent", value = "2")
+@AddConfig(key = "wakamiti.execution.queue-size", value = "1")
+@AddConfig(key = "wakamiti.execution.runner", value = "dummy")
 class ExecutionTest {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("system");
     private static final LinkedBlockingDeque<String> MESSAGES = new LinkedBlockingDeque<>();
-    private static final AtomicInteger STATUS = new AtomicInteger(99);
+    private static final Map<String, Integer> STATUS = new ConcurrentHashMap<>();
 
     @Inject
     private WebTarget target;
     @Inject
     private LogHistoryRepository history;
-    private URI uri;
-
-    @BeforeEach
-    void setUp() {
-        uri = URI.create("ws://%s:%s/exec".formatted(target.getUri().getHost(), target.getUri().getPort()));
-    }
 
     @AfterEach
     void shutdown() {
         MESSAGES.clear();
-        STATUS.set(99);
+        STATUS.clear();
+    }
+
+    private URI uri(String id) {
+        return URI.create("ws://%s:%s/exec/%s".formatted(target.getUri().getHost(), target.getUri().getPort(), id));
+    }
+
+    private String submit(String command) {
+        try (Response response = target
+                .path("exec")
+                .request()
+                .post(Entity.entity(command, MediaType.TEXT_PLAIN_TYPE))) {
+            assertThat(response.getStatus(), is(202));
+            return response.readEntity(String.class);
+        }
     }
 
     @Test
@@ -70,31 +87,133 @@ class ExecutionTest {
         }
     }
 
+    @DisplayName("The execution and log stream metrics are exposed")
+    @Test
+    void testMetrics() {
+        try (Response response = target
+                .path("metrics")
+                .request(MediaType.TEXT_PLAIN)
+                .get()) {
+            String metrics = response.readEntity(String.class);
+            assertThat(response.getStatus(), is(200));
+            assertThat(metrics, containsString("wakamiti_executions_started"));
+            assertThat(metrics, containsString("wakamiti_executions_active"));
+            assertThat(metrics, containsString("wakamiti_log_published"));
+            assertThat(metrics, containsString("wakamiti_log_history_size"));
+        }
+    }
+
     @DisplayName("Execution with success")
     @Test
     void testExecutionWithSuccess() throws Exception {
+        String id = submit("run something");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(id))) {
+            try {
+                assertEquals("Ejecutando comando: run something" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+                assertEquals("Una línea" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+                assertEquals("Otra línea" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+                assertEquals("Si se ha cancelado la ejecución, esta línea no debería salir" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+            } finally {
+                await().atMost(Duration.ofSeconds(20))
+                        .until(session::isOpen, is(false));
+            }
+        }
+        assertEquals(0, history.size());
+        assertEquals(0, STATUS.get(id));
+    }
+
+    @DisplayName("Execution with success in batched frames")
+    @Test
+    void testExecutionWithSuccessInBatchedFrames() throws Exception {
+        String id = submit("run something");
+        URI uri = URI.create(uri(id) + "?batch=true");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
+            await().atMost(Duration.ofSeconds(20))
+                    .until(session::isOpen, is(false));
+        }
+        // Frames may hold several lines, but the lines are received whole and in order
+        assertEquals(String.join(System.lineSeparator(),
+                                 "Ejecutando comando: run something",
+                                 "Una línea",
+                                 "Otra línea",
+                                 "Si se ha cancelado la ejecución, esta línea no debería salir",
+                                 ""),
+                     String.join("", MESSAGES));
+        assertEquals(0, STATUS.get(id));
+    }
+
+    @DisplayName("Execution resumed after the end with its exit status")
+    @Test
+    void testExecutionResumedAfterTheEnd() throws Exception {
+        String id = submit("run something");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(id))) {
+            await().atMost(Duration.ofSeconds(20))
+                    .until(session::isOpen, is(false));
+        }
+        STATUS.clear();
+        URI uri = URI.create(uri(id) + "?seq=true&from=4");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
+            await().atMost(Duration.ofSeconds(5))
+                    .until(session::isOpen, is(false));
+        }
+        assertEquals(4, MESSAGES.size());
+        assertEquals(0, STATUS.get(id));
+    }
+
+    @DisplayName("Execution listed in the history with its exit status and log lines")
+    @Test
+    void testExecutionHistory() throws Exception {
+        String id = submit("run something");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(id))) {
+            await().atMost(Duration.ofSeconds(20))
+                    .until(session::isOpen, is(false));
+        }
+        // The records are written in the background
+        ExecutionRecord execution = await().atMost(Duration.ofSeconds(5))
+                .until(() -> history(0, 100).executions().stream()
+                        .filter(it -> it.id().equals(id) && it.status() != null)
+                        .findFirst()
+                        .orElse(null), notNullValue());
+        assertEquals("run something", execution.command());
+        assertEquals(0, execution.status());
+        assertEquals(4, execution.lines());
+        assertFalse(execution.started().isBefore(execution.submitted()));
+        assertFalse(execution.ended().isBefore(execution.started()));
+
+        ExecutionPage first = history(0, 1);
+        assertEquals(1, first.executions().size());
+        assertTrue(first.total() >= 1);
+    }
+
+    @DisplayName("Execution history with bad request error")
+    @Test
+    void testExecutionHistoryWithBadRequestError() {
         try (Response response = target
                 .path("exec")
+                .queryParam("size", 0)
                 .request()
-                .post(Entity.entity("run something", MediaType.TEXT_PLAIN_TYPE))) {
-            assertThat(response.getStatus(), is(202));
-            try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
-                try {
-                    assertEquals("Ejecutando comando: run something" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Una línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Otra línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Si se ha cancelado la ejecución, esta línea no debería salir" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                } finally {
-                    await().atMost(Duration.ofSeconds(20))
-                            .until(session::isOpen, is(false));
-                }
-            }
-            assertEquals(0, history.size());
-            assertEquals(0, STATUS.get());
+                .get()) {
+            assertThat(response.getStatus(), is(400));
+            assertThat(response.readEntity(String.class), is("Page size must be between 1 and 100"));
+        }
+    }
+
+    private ExecutionPage history(
+            int page,
+            int size
+    ) {
+        try (Response response = target
+                .path("exec")
+                .queryParam("page", page)
+                .queryParam("size", size)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get()) {
+            assertThat(response.getStatus(), is(200));
+            return response.readEntity(ExecutionPage.class);
         }
     }
 
@@ -110,73 +229,89 @@ class ExecutionTest {
         }
     }
 
-    @DisplayName("Execution with too many requests error")
+    @DisplayName("Execution queued, and with too many requests error when the queue is full")
     @Test
     void testExecutionWithTooManyRequestsError() throws Exception {
+        String first = submit("abc");
+        String second = submit("def");
+        String queued = submit("ghi");
+        assertNotEquals(first, second);
         try (Response response = target
                 .path("exec")
                 .request()
-                .post(Entity.entity("abc", MediaType.TEXT_PLAIN_TYPE))) {
-            assertThat(response.getStatus(), is(202));
-        }
-        await().pollDelay(Duration.ofSeconds(1)).until(() -> true);
-        try (Response response = target
-                .path("exec")
-                .request()
-                .post(Entity.entity("abc", MediaType.TEXT_PLAIN_TYPE))) {
+                .post(Entity.entity("jkl", MediaType.TEXT_PLAIN_TYPE))) {
             assertThat(response.getStatus(), is(429));
-            try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
-                try {
-                    assertEquals("Ejecutando comando: abc" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Una línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Otra línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Si se ha cancelado la ejecución, esta línea no debería salir" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                } finally {
-                    await().atMost(Duration.ofSeconds(20))
-                            .until(session::isOpen, is(false));
-                }
-            }
-            assertEquals(0, history.size());
-            assertEquals(0, STATUS.get());
         }
+        try (Session firstSession = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(first));
+             Session secondSession = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(second));
+             Session queuedSession = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(queued))) {
+            await().atMost(Duration.ofSeconds(40))
+                    .until(() -> firstSession.isOpen() || secondSession.isOpen() || queuedSession.isOpen(), is(false));
+        }
+        // Each session only receives the lines of its own execution
+        assertEquals(1, MESSAGES.stream().filter(("Ejecutando comando: abc" + System.lineSeparator())::equals).count());
+        assertEquals(1, MESSAGES.stream().filter(("Ejecutando comando: def" + System.lineSeparator())::equals).count());
+        assertEquals(1, MESSAGES.stream().filter(("Ejecutando comando: ghi" + System.lineSeparator())::equals).count());
+        // The queued execution is told its position before it starts
+        assertEquals(1, MESSAGES.stream().filter(it -> it.startsWith("Queued in position 1 of 1")).count());
+        assertEquals(0, history.size());
+        assertEquals(0, STATUS.get(first));
+        assertEquals(0, STATUS.get(second));
+        assertEquals(0, STATUS.get(queued));
     }
 
     @DisplayName("Execution Socket when send STOP with success")
     @Test
     void testExecutionSocketWhenSendStopWithSuccess() throws Exception {
-        try (Response response = target
-                .path("exec")
-                .request()
-                .post(Entity.entity("run something", MediaType.TEXT_PLAIN_TYPE))) {
-            assertThat(response.getStatus(), is(202));
-            try (Session session = ContainerProvider.getWebSocketContainer()
-                    .connectToServer(Client.class, uri)) {
-                try {
-                    session.getBasicRemote().sendText("STOP");
-                    assertEquals("Ejecutando comando: run something" + System.lineSeparator(),
-                                 MESSAGES.poll(15, TimeUnit.SECONDS));
-                    assertEquals("Una línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                    assertEquals("Otra línea" + System.lineSeparator(),
-                                 MESSAGES.poll(10, TimeUnit.SECONDS));
-                } finally {
-                    await().atMost(Duration.ofSeconds(20))
-                            .until(session::isOpen, is(false));
-                }
+        String id = submit("run something");
+        try (Session session = ContainerProvider.getWebSocketContainer()
+                .connectToServer(Client.class, uri(id))) {
+            try {
+                session.getBasicRemote().sendText("STOP");
+                assertEquals("Ejecutando comando: run something" + System.lineSeparator(),
+                             MESSAGES.poll(15, TimeUnit.SECONDS));
+                assertEquals("Una línea" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+                assertEquals("Otra línea" + System.lineSeparator(),
+                             MESSAGES.poll(10, TimeUnit.SECONDS));
+            } finally {
+                await().atMost(Duration.ofSeconds(20))
+                        .until(session::isOpen, is(false));
             }
-            assertEquals(0, history.size());
-            assertEquals(1, STATUS.get());
+        }
+        assertEquals(0, history.size());
+        assertEquals(1, STATUS.get(id));
+    }
+
+    @DisplayName("Execution Socket when send STOP only stops its own execution")
+    @Test
+    void testExecutionSocketWhenSendStopOnlyStopsItsExecution() throws Exception {
+        String stopped = submit("abc");
+        String running = submit("def");
+        try (Session stoppedSession = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(stopped));
+             Session runningSession = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri(running))) {
+            stoppedSession.getBasicRemote().sendText("STOP");
+            await().atMost(Duration.ofSeconds(20))
+                    .until(() -> stoppedSession.isOpen() || runningSession.isOpen(), is(false));
+        }
+        assertEquals(1, STATUS.get(stopped));
+        assertEquals(0, STATUS.get(running));
+    }
+
+    @DisplayName("Execution Socket when send STOP to unknown execution with error")
+    @Test
+    void testExecutionSocketWhenSendStopToUnknownExecutionWithError() throws Exception {
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri("abc"))) {
+            session.getBasicRemote().sendText("STOP");
+            assertEquals("Execution not found: abc", MESSAGES.poll(10, TimeUnit.SECONDS));
+            assertFalse(session.isOpen());
         }
     }
 
     @DisplayName("Execution Socket when send invalid message with success")
     @Test
     void testExecutionSocketWhenSendInvalidMessageWithSuccess() throws Exception {
-        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri("abc"))) {
             session.getBasicRemote().sendText("ABC");
             assertEquals("Invalid message received: ABC", MESSAGES.poll(10, TimeUnit.SECONDS));
             assertFalse(session.isOpen());
@@ -184,6 +319,16 @@ class ExecutionTest {
         assertEquals(0, history.size());
     }
 
+    @DisplayName("Execution Socket with an invalid sequence number to resume from with error")
+    @Test
+    void testExecutionSocketWithInvalidResumeWithError() throws Exception {
+        URI uri = URI.create(uri("abc") + "?from=abc");
+        try (Session session = ContainerProvider.getWebSocketContainer().connectToServer(Client.class, uri)) {
+            assertEquals("Invalid from parameter: abc", MESSAGES.poll(10, TimeUnit.SECONDS));
+            assertFalse(session.isOpen());
+        }
+    }
+
     /**
      * Test client
      */
@@ -217,7 +362,8 @@ class ExecutionTest {
             if (!reason.getCloseCode().equals(CloseReason.CloseCodes.NORMAL_CLOSURE)) {
                 MESSAGES.add(reason.getReasonPhrase());
             } else {
-                STATUS.set(Integer.parseInt(reason.getReasonPhrase()));
+                String path = session.getRequestURI().getPath();
+                STATUS.put(path.substring(path.lastIndexOf('/') + 1), Integer.parseInt(reason.getReasonPhrase()));
             }
             await().pollDelay(1, TimeUnit.SECONDS).until(() -> true);
         }
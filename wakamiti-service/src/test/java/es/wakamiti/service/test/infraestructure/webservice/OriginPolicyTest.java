@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.infraestructure.webservice;
+
+
+import es.wakamiti.service.infrastructure.webservice.OriginPolicy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+class OriginPolicyTest {
+
+    private static final URI SERVICE = URI.create("http://127.0.0.1:7264/");
+
+    private final OriginPolicy policy = new OriginPolicy(Set.of(" https://Wakamiti.example.org "));
+
+    @DisplayName("Requests not sent by a browser are accepted")
+    @Test
+    void testNoOrigin() {
+        assertThat(policy.accepts(null, SERVICE)).isTrue();
+    }
+
+    @DisplayName("Pages served by the service on a loopback address are accepted")
+    @Test
+    void testLoopback() {
+        assertThat(policy.accepts("http://127.0.0.1:7264", SERVICE)).isTrue();
+        assertThat(policy.accepts("http://localhost:7264", SERVICE)).isTrue();
+        assertThat(policy.accepts("http://[::1]:7264", SERVICE)).isTrue();
+        assertThat(policy.accepts("http://localhost", URI.create("http://localhost/"))).isTrue();
+    }
+
+    @DisplayName("Pages of other sites, ports or schemes are rejected")
+    @Test
+    void testOtherPages() {
+        assertThat(policy.accepts("https://example.org", SERVICE)).isFalse();
+        assertThat(policy.accepts("http://localhost:3000", SERVICE)).isFalse();
+        assertThat(policy.accepts("https://localhost:7264", SERVICE)).isFalse();
+        assertThat(policy.accepts("null", SERVICE)).isFalse();
+        assertThat(policy.accepts("not an origin", SERVICE)).isFalse();
+    }
+
+    @DisplayName("Pages of a site rebound to the loopback address are rejected")
+    @Test
+    void testRebinding() {
+        assertThat(policy.accepts("http://example.org:7264", URI.create("http://example.org:7264/"))).isFalse();
+    }
+
+    @DisplayName("The allowed pages are accepted")
+    @Test
+    void testAllowed() {
+        assertThat(policy.accepts("https://wakamiti.example.org", SERVICE)).isTrue();
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package es.wakamiti.service.test.startup;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Measurement of the time from the launch of the service jar to the first
+ * accepted {@code POST /exec}, as built, without its Jandex index, and
+ * optionally with a JDK AOT cache created by a training run.
+ *
+ * <p>The jar without the index is a copy next to it, where the container
+ * has to scan the classes to find the beans, endpoints and OpenAPI
+ * annotations. Each launch is stopped as soon as its first execution is
+ * accepted.</p>
+ *
+ * <p>Given a cache file, the training launches the jar with
+ * {@code -XX:AOTCacheOutput}, waits for the service to accept an
+ * execution, follows its log through the WebSocket until it finishes, and
+ * then stops the service, which writes the cache when exiting. The jar is
+ * then also measured with {@code -XX:AOTCache}.</p>
+ *
+ * <p>The executions are run by the {@code dummy} runner, so nothing but
+ * the service is needed. The options are given as {@code --name=value}
+ * arguments:</p>
+ * <ul>
+ *   <li>{@code jar}: the service jar (required)</li>
+ *   <li>{@code cache}: the AOT cache file to create (none)</li>
+ *   <li>{@code runs}: launches measured of each kind (3)</li>
+ *   <li>{@code timeout}: seconds given to the service to accept an
+ *   execution, or to stop (60)</li>
+ *   <li>{@code log}: file where the output of the launches is appended
+ *   (none)</li>
+ *   <li>{@code result}: file where the results are written as JSON
+ *   (none)</li>
+ * </ul>
+ * <p>The service is stopped with a termination signal, so the training
+ * cannot create the cache on Windows, where the process is killed.</p>
+ */
+public final class StartupBenchmark {
+
+    private static final Duration POLLING = Duration.ofMillis(10);
+    private static final String INDEX = "META-INF/jandex.idx";
+
+    private StartupBenchmark() {
+        // Utility class
+    }
+
+    /**
+     * A way of launching the service.
+     *
+     * @param name       the name in the results
+     * @param title      the name in the report
+     * @param jar        the service jar
+     * @param jvmOptions the options of the JVM
+     */
+    private record Launch(
+            String name,
+            String title,
+            Path jar,
+            List<String> jvmOptions
+    ) { }
+
+    public static void main(
+            String[] args
+    ) throws Exception {
+        Map<String, String> options = options(args);
+        Path jar = Path.of(required(options, "jar"));
+        Path cache = options.containsKey("cache") ? Path.of(options.get("cache")) : null;
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+        Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout", "60")));
+        Path log = options.containsKey("log") ? Path.of(options.get("log")) : null;
+
+        HttpClient http = HttpClient.newHttpClient();
+        List<Launch> launches = new ArrayList<>(List.of(
+                new Launch("jar", "Jar", jar, List.of()),
+                new Launch("unindexed", "Jar without index", withoutIndex(jar), List.of())
+        ));
+        if (cache != null) {
+            Files.deleteIfExists(cache);
+            train(http, jar, cache, timeout, log);
+            if (Files.notExists(cache)) {
+                throw new IllegalStateException("The training run did not create the AOT cache " + cache);
+            }
+            launches.add(new Launch("cached", "Jar with AOT cache", jar, List.of("-XX:AOTCache=" + cache)));
+        }
+
+        Map<Launch, List<Long>> times = new LinkedHashMap<>();
+        launches.forEach(it -> times.put(it, new ArrayList<>()));
+        for (int i = 0; i < runs; i++) {
+            // Interleaved, so that the noise of the machine spreads evenly
+            for (Launch launch : launches) {
+                times.get(launch).add(timeToFirstExecution(http, launch, timeout, log));
+            }
+        }
+
+        Map<String, Object> results = new HashMap<>();
+        results.put("runs", runs);
+        if (cache != null) {
+            results.put("cacheBytes", Files.size(cache));
+        }
+        times.forEach((launch, millis) -> {
+            results.put(launch.name() + "Millis", millis);
+            results.put(launch.name() + "MedianMillis", median(millis));
+        });
+        report(times);
+        if (options.containsKey("result")) {
+            write(Path.of(options.get("result")), results);
+        }
+    }
+
+    private static Map<String, String> options(
+            String[] args
+    ) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(
+                    arg.substring(2, separator < 0 ? arg.length() : separator),
+                    separator < 0 ? "true" : arg.substring(separator + 1)
+            );
+        }
+        return options;
+    }
+
+    private static String required(
+            Map<String, String> options,
+            String name
+    ) {
+        String value = options.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing option --" + name);
+        }
+        return value;
+    }
+
+    /**
+     * Copies the jar without its Jandex index, next to it so that the class
+     * path of its manifest still resolves.
+     *
+     * @return the copy
+     */
+    private static Path withoutIndex(
+            Path jar
+    ) throws IOException {
+        String name = jar.getFileName().toString().replaceFirst("\\.jar$", "");
+        Path copy = jar.resolveSibling(name + "-unindexed.jar");
+        boolean indexed = false;
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(jar));
+             ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(copy))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                if (INDEX.equals(entry.getName())) {
+                    indexed = true;
+                    continue;
+                }
+                output.putNextEntry(new ZipEntry(entry.getName()));
+                input.transferTo(output);
+                output.closeEntry();
+            }
+        }
+        if (!indexed) {
+            System.out.println("The jar " + jar + " has no " + INDEX);
+        }
+        return copy;
+    }
+
+    /**
+     * Runs an execution to its end in the service launched with
+     * {@code -XX:AOTCacheOutput}, and stops it so that the cache is
+     * created.
+     */
+    private static void train(
+            HttpClient http,
+            Path jar,
+            Path cache,
+            Duration timeout,
+            Path log
+    ) throws IOException, InterruptedException {
+        int port = freePort();
+        Process service = launch(jar, List.of("-XX:AOTCacheOutput=" + cache), port, log);
+        try {
+            String id = submit(http, port, service, timeout);
+            CompletableFuture<String> closed = new CompletableFuture<>();
+            http.newWebSocketBuilder()
+                    .buildAsync(URI.create("ws://127.0.0.1:%d/exec/%s".formatted(port, id)), new WebSocket.Listener() {
+                        @Override
+                        public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+                            closed.complete(reason);
+                            return null;
+                        }
+
+                        @Override
+                        public void onError(WebSocket socket, Throwable error) {
+                            closed.completeExceptionally(error);
+                        }
+                    })
+                    .join();
+            closed.get(timeout.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            service.destroyForcibly();
+            throw new IllegalStateException("The training run failed", e);
+        }
+        stop(service, timeout);
+    }
+
+    /**
+     * Launches the service and stops it once the first execution is
+     * accepted.
+     *
+     * @return the milliseconds from the launch to the acceptance
+     */
+    private static long timeToFirstExecution(
+            HttpClient http,
+            Launch launch,
+            Duration timeout,
+            Path log
+    ) throws IOException, InterruptedException {
+        int port = freePort();
+        long start = System.nanoTime();
+        Process service = launch(launch.jar(), launch.jvmOptions(), port, log);
+        try {
+            submit(http, port, service, timeout);
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            stop(service, timeout);
+        }
+    }
+
+    private static Process launch(
+            Path jar,
+            List<String> jvmOptions,
+            int port,
+            Path log
+    ) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar.toString());
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().put("WAKAMITI_HOST", "127.0.0.1");
+        builder.environment().put("WAKAMITI_PORT", String.valueOf(port));
+        builder.environment().put("WAKAMITI_RUNNER", "dummy");
+        if (log != null) {
+            Files.createDirectories(log.toAbsolutePath().getParent());
+            builder.redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()));
+        } else {
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        }
+        return builder.start();
+    }
+
+    /**
+     * Submits an execution, retrying until the service accepts
+     * connections.
+     *
+     * @return the execution ID
+     */
+    private static String submit(
+            HttpClient http,
+            int port,
+            Process service,
+            Duration timeout
+    ) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:%d/exec".formatted(port)))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString("run startup"))
+                .build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            try {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 202) {
+                    throw new IllegalStateException(
+                            "Execution rejected with " + response.statusCode() + ": " + response.body()
+                    );
+                }
+                return response.body().trim();
+            } catch (ConnectException e) {
+                if (!service.isAlive()) {
+                    throw new IllegalStateException("The service exited with " + service.exitValue(), e);
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("The service did not start in " + timeout, e);
+                }
+                Thread.sleep(POLLING);
+            }
+        }
+    }
+
+    private static void stop(
+            Process service,
+            Duration timeout
+    ) throws InterruptedException {
+        service.destroy();
+        if (!service.waitFor(timeout.toSeconds(), TimeUnit.SECONDS)) {
+            service.destroyForcibly();
+            throw new IllegalStateException("The service did not stop in " + timeout);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(
+            List<Long> values
+    ) {
+        List<Long> sorted = values.stream().sorted().toList();
+        return sorted.isEmpty() ? 0 : sorted.get(sorted.size() / 2);
+    }
+
+    private static void report(
+            Map<Launch, List<Long>> times
+    ) {
+        StringBuilder report = new StringBuilder("%nTime to the first accepted POST /exec:%n".formatted());
+        times.forEach((launch, millis) -> report.append("  %-20s %6d ms (median of %s)%n"
+                .formatted(launch.title() + ":", median(millis), millis)));
+        System.out.println(report);
+    }
+
+    private static void write(
+            Path file,
+            Map<String, Object> results
+    ) {
+        StringBuilder json = new StringBuilder("{");
+        results.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(it -> json.append(json.length() > 1 ? ",\n  " : "\n  ")
+                        .append('"').append(it.getKey()).append("\": ").append(it.getValue()));
+        json.append("\n}\n");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}